@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.craftercms.core.processors.ItemProcessor;
+import org.craftercms.core.service.ContentStoreService;
+import org.craftercms.core.service.Context;
+import org.craftercms.core.service.Item;
+
+/**
+ * Keeps the items loaded during a single {@link BatchIndexer#updateIndex} call, so the indexer, the metadata
+ * extractors and the locale extractor resolve and parse each path only once. Indexers should {@link #evict} the
+ * items of a path once it has been processed, in any case at most {@link #maxItems} items are kept and the oldest
+ * ones are removed first. Instances are thread safe.
+ *
+ * @since 4.2.0
+ */
+public class ItemCache {
+
+    public static final int DEFAULT_MAX_ITEMS = 500;
+
+    /**
+     * The content store service used to load the items
+     */
+    protected final ContentStoreService contentStoreService;
+
+    /**
+     * The context used to load the items
+     */
+    protected final Context context;
+
+    /**
+     * The maximum number of items kept, including the ones loaded with a processor
+     */
+    protected final int maxItems;
+
+    /**
+     * The loaded items, by processor and path
+     */
+    protected final Map<ItemKey, Item> items = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of the loaded items, in the order they were loaded
+     */
+    protected final Queue<ItemKey> loadOrder = new ConcurrentLinkedQueue<>();
+
+    public ItemCache(ContentStoreService contentStoreService, Context context) {
+        this(contentStoreService, context, DEFAULT_MAX_ITEMS);
+    }
+
+    public ItemCache(ContentStoreService contentStoreService, Context context, int maxItems) {
+        this.contentStoreService = contentStoreService;
+        this.context = context;
+        this.maxItems = maxItems;
+    }
+
+    public ContentStoreService getContentStoreService() {
+        return contentStoreService;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the item for the given path, loading it only the first time
+     * @param path the path of the item
+     * @return the item
+     */
+    public Item getItem(String path) {
+        return getItem(path, null);
+    }
+
+    /**
+     * Returns the item for the given path processed by the given processor, loading it only the first time
+     * @param path the path of the item
+     * @param processor the processor for the item, can be null
+     * @return the item
+     */
+    public Item getItem(String path, ItemProcessor processor) {
+        ItemKey itemKey = new ItemKey(path, processor);
+        Item item = items.get(itemKey);
+        if (item != null) {
+            return item;
+        }
+
+        item = items.computeIfAbsent(itemKey, key -> {
+            loadOrder.add(key);
+            return processor != null? contentStoreService.getItem(context, null, path, processor) :
+                                      contentStoreService.getItem(context, path);
+        });
+        removeOldest();
+        return item;
+    }
+
+    /**
+     * Removes all the items for the given path
+     */
+    public void evict(String path) {
+        items.keySet().removeIf(key -> key.path.equals(path));
+        loadOrder.removeIf(key -> key.path.equals(path));
+    }
+
+    /**
+     * Returns the number of items in the cache
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Removes the oldest items until there are at most {@link #maxItems}
+     */
+    protected void removeOldest() {
+        while (items.size() > maxItems) {
+            ItemKey oldest = loadOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            items.remove(oldest);
+        }
+    }
+
+    /**
+     * The key of an item, by path and processor
+     */
+    protected static class ItemKey {
+
+        protected final String path;
+        protected final ItemProcessor processor;
+
+        public ItemKey(String path, ItemProcessor processor) {
+            this.path = path;
+            this.processor = processor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ItemKey itemKey = (ItemKey) o;
+            return path.equals(itemKey.path) && Objects.equals(processor, itemKey.processor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, processor);
+        }
+
+    }
+
+}
@@ -27,6 +27,12 @@ public class UpdateSet extends AbstractUpdateDetailProvider {
     private final List<String> updatePaths;
     private final List<String> deletePaths;
 
+    /**
+     * Optional id used to resume the processing of the set if it's interrupted. It must identify a single run of
+     * the set, like the id of the publish or commit, the journal is not used if it's not provided
+     */
+    private String runId;
+
     public UpdateSet(List<String> updatePaths, List<String> deletePaths) {
         this.updatePaths = updatePaths;
         this.deletePaths = deletePaths;
@@ -40,4 +46,12 @@ public class UpdateSet extends AbstractUpdateDetailProvider {
         return deletePaths;
     }
 
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
 }
@@ -19,124 +19,170 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class that is used to hold the progress of a single batch index update operation.
+ * Class that is used to hold the progress of a single batch index update operation. It can be safely updated by
+ * several threads at the same time without blocking: the paths are kept in lock-free queues (in the order they were
+ * added), the counts in atomic counters and the paths already processed in a concurrent set.
  *
  * @author avasquez
  */
 public class UpdateStatus {
 
-    protected List<String> successfulUpdates;
-    protected List<String> successfulDeletes;
-    protected List<String> failedUpdates;
-    protected List<String> failedDeletes;
-    protected Lock listLock;
+    protected final Queue<String> successfulUpdates;
+    protected final Queue<String> successfulDeletes;
+    protected final Queue<String> failedUpdates;
+    protected final Queue<String> failedDeletes;
+    protected final Queue<String> skippedUpdates;
+    protected final Queue<String> contentTimeouts;
+    protected final AtomicInteger successfulCount;
+    protected final AtomicInteger failedCount;
+    protected final Set<String> processedPaths;
+    protected final List<Listener> listeners;
 
     public UpdateStatus() {
-        this.successfulUpdates = new ArrayList<>();
-        this.successfulDeletes = new ArrayList<>();
-        this.failedUpdates = new ArrayList<>();
-        this.failedDeletes = new ArrayList<>();
-        this.listLock = new ReentrantLock();
+        this.successfulUpdates = new ConcurrentLinkedQueue<>();
+        this.successfulDeletes = new ConcurrentLinkedQueue<>();
+        this.failedUpdates = new ConcurrentLinkedQueue<>();
+        this.failedDeletes = new ConcurrentLinkedQueue<>();
+        this.skippedUpdates = new ConcurrentLinkedQueue<>();
+        this.contentTimeouts = new ConcurrentLinkedQueue<>();
+        this.successfulCount = new AtomicInteger();
+        this.failedCount = new AtomicInteger();
+        this.processedPaths = ConcurrentHashMap.newKeySet();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Adds a listener that will be notified every time a result is added
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
     }
 
     @JsonProperty("successful_updates")
     public List<String> getSuccessfulUpdates() {
-        return synchronizedCopy(successfulUpdates);
+        return new ArrayList<>(successfulUpdates);
     }
 
     @JsonProperty("successful_deletes")
     public List<String> getSuccessfulDeletes() {
-        return synchronizedCopy(successfulDeletes);
+        return new ArrayList<>(successfulDeletes);
     }
 
     @JsonProperty("failed_updates")
     public List<String> getFailedUpdates() {
-        return synchronizedCopy(failedUpdates);
+        return new ArrayList<>(failedUpdates);
     }
 
     @JsonProperty("failed_deletes")
     public List<String> getFailedDeletes() {
-        return synchronizedCopy(failedDeletes);
+        return new ArrayList<>(failedDeletes);
+    }
+
+    /**
+     * Returns the paths that were not sent because their document didn't change since the last time they were
+     * indexed. Skipped updates are not included in the successful or failed counts.
+     */
+    @JsonProperty("skipped_updates")
+    public List<String> getSkippedUpdates() {
+        return new ArrayList<>(skippedUpdates);
+    }
+
+    /**
+     * Returns the paths that were indexed without their content because parsing them took too long. These paths are
+     * also included in the successful updates.
+     */
+    @JsonProperty("content_timeouts")
+    public List<String> getContentTimeouts() {
+        return new ArrayList<>(contentTimeouts);
     }
 
     public void addSuccessfulUpdate(String path) {
-        synchronizedAdd(successfulUpdates, path);
+        add(successfulUpdates, successfulCount, path, false, true);
     }
 
     public void addSuccessfulDelete(String path) {
-        synchronizedAdd(successfulDeletes, path);
+        add(successfulDeletes, successfulCount, path, true, true);
     }
 
     public void addFailedUpdate(String path) {
-        synchronizedAdd(failedUpdates, path);
+        add(failedUpdates, failedCount, path, false, false);
     }
 
     public void addFailedDelete(String path) {
-        synchronizedAdd(failedDeletes, path);
+        add(failedDeletes, failedCount, path, true, false);
+    }
+
+    public void addSkippedUpdate(String path) {
+        processedPaths.add(path);
+        skippedUpdates.add(path);
+
+        // For listeners the path has been processed the same as a successful update
+        for (Listener listener : listeners) {
+            listener.onResult(path, false, true);
+        }
+    }
+
+    public void addContentTimeout(String path) {
+        contentTimeouts.add(path);
     }
 
     @JsonProperty("failed_updates_and_deletes")
     public int getFailedUpdatesAndDeletes() {
-        listLock.lock();
-        try {
-            return failedUpdates.size() + failedDeletes.size();
-        } finally {
-            listLock.unlock();
-        }
+        return failedCount.get();
     }
 
     @JsonProperty("successful_updates_and_deletes")
     public int getSuccessfulUpdatesAndDeletes() {
-        listLock.lock();
-        try {
-            return successfulUpdates.size() + successfulDeletes.size();
-        } finally {
-            listLock.unlock();
-        }
+        return successfulCount.get();
     }
 
     @JsonProperty("attempted_updates_and_deletes")
     public int getAttemptedUpdatesAndDeletes() {
-        listLock.lock();
-        try {
-            return successfulUpdates.size() + successfulDeletes.size() + failedUpdates.size() + failedDeletes.size();
-        } finally {
-            listLock.unlock();
-        }
+        return successfulCount.get() + failedCount.get();
     }
 
     public boolean hasBeenUpdatedOrDeleted(String path) {
-        listLock.lock();
-        try {
-            return successfulUpdates.contains(path) ||
-                   successfulDeletes.contains(path) ||
-                   failedUpdates.contains(path) ||
-                   failedDeletes.contains(path);
-        } finally {
-            listLock.unlock();
-        }
+        return processedPaths.contains(path);
     }
 
-    protected List<String> synchronizedCopy(List<String> list) {
-        listLock.lock();
-        try {
-            return new ArrayList<>(list);
-        } finally {
-            listLock.unlock();
+    protected void add(Queue<String> paths, AtomicInteger counter, String path, boolean delete,
+                       boolean successful) {
+        // Mark the path first so it's never counted without being reported as processed
+        processedPaths.add(path);
+        paths.add(path);
+        counter.incrementAndGet();
+
+        for (Listener listener : listeners) {
+            listener.onResult(path, delete, successful);
         }
     }
 
-    protected void synchronizedAdd(List<String> list, String path) {
-        listLock.lock();
-        try {
-            list.add(path);
-        } finally {
-            listLock.unlock();
-        }
+    /**
+     * Receives the results added to an {@link UpdateStatus}
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called after a result has been added
+         * @param path the path of the file
+         * @param delete true if the operation was a delete
+         * @param successful true if the operation was successful
+         */
+        void onResult(String path, boolean delete, boolean successful);
+
     }
 
 }
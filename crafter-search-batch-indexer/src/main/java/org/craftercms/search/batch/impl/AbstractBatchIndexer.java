@@ -15,22 +15,40 @@
  */
 package org.craftercms.search.batch.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.collections4.CollectionUtils;
-import org.craftercms.commons.lang.RegexUtils;
 import org.craftercms.search.batch.UpdateDetail;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
 import org.craftercms.search.batch.BatchIndexer;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
 import org.craftercms.search.batch.exception.BatchIndexingException;
+import org.craftercms.search.batch.journal.IndexingJournal;
+import org.craftercms.search.batch.pipeline.IndexingPipeline;
+import org.craftercms.search.batch.pipeline.IndexingTask;
+import org.craftercms.search.batch.pipeline.StageMetrics;
+import org.craftercms.search.batch.utils.PathClassifier;
+import org.craftercms.search.batch.utils.UpdateSetUtils;
 import org.craftercms.search.metadata.impl.AbstractMetadataCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import static org.craftercms.search.batch.utils.PathClassifier.is;
 
 /**
  * Base class for {@link BatchIndexer}s. Basically sub-classes only need to provide the processing of each of the files to be indexed.
@@ -41,51 +59,521 @@ public abstract class AbstractBatchIndexer extends AbstractMetadataCollector imp
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractBatchIndexer.class);
 
+    public static final int DEFAULT_THREAD_POOL_SIZE = 1;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 100;
+    public static final int DEFAULT_FETCH_THREADS = 8;
+    public static final int DEFAULT_BUILD_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_SEND_THREADS = 8;
+    public static final int DEFAULT_STAGE_QUEUE_CAPACITY = 100;
+
+    /**
+     * Flag for paths that match the include patterns (or all paths if there are none)
+     */
+    protected static final int INCLUDED_PATH = 1;
+
+    /**
+     * Flag for paths that match the exclude patterns
+     */
+    protected static final int EXCLUDED_PATH = 1 << 1;
+
     protected List<String> includePathPatterns;
     protected List<String> excludePathPatterns;
 
+    /**
+     * The number of threads used to process the files of each call. If it's 1 or less the files are processed
+     * sequentially in the calling thread
+     */
+    protected int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+
+    /**
+     * The maximum number of files that can be waiting or being processed at the same time when the files are
+     * processed in parallel
+     */
+    protected int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Indicates if the files should be processed by a pipeline with separate fetch, build and send stages
+     */
+    protected boolean stagedProcessing = false;
+
+    /**
+     * The number of threads for the fetch stage (reading files from the content store)
+     */
+    protected int fetchThreads = DEFAULT_FETCH_THREADS;
+
+    /**
+     * The number of threads for the build stage (parsing files and building documents)
+     */
+    protected int buildThreads = DEFAULT_BUILD_THREADS;
+
+    /**
+     * The number of threads for the send stage (sending documents to the search engine)
+     */
+    protected int sendThreads = DEFAULT_SEND_THREADS;
+
+    /**
+     * The maximum number of files waiting in the queue of each stage
+     */
+    protected int stageQueueCapacity = DEFAULT_STAGE_QUEUE_CAPACITY;
+
+    /**
+     * The metrics of the stages for the current or last call using staged processing
+     */
+    protected volatile List<StageMetrics> stageMetrics = Collections.emptyList();
+
+    /**
+     * The journal used to resume interrupted runs, if null runs are always processed from the start
+     */
+    protected IndexingJournal journal;
+
+    /**
+     * Identifies this indexer in the journal, so indexers that process the same set keep separate journals. If null
+     * the name of the class is used
+     */
+    protected String journalName;
+
+    /**
+     * The classifier for the configured patterns, built when first used
+     */
+    protected volatile PathClassifier pathClassifier;
+
+    /**
+     * Indicates if duplicated and redundant operations should be removed before processing each set
+     */
+    protected boolean normalizeUpdateSet = true;
+
     public void setIncludePathPatterns(List<String> includePathPatterns) {
         this.includePathPatterns = includePathPatterns;
+        this.pathClassifier = null;
     }
 
     public void setExcludePathPatterns(List<String> excludePathPatterns) {
         this.excludePathPatterns = excludePathPatterns;
+        this.pathClassifier = null;
+    }
+
+    public void setThreadPoolSize(int threadPoolSize) {
+        this.threadPoolSize = threadPoolSize;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setJournal(IndexingJournal journal) {
+        this.journal = journal;
+    }
+
+    public void setJournalName(String journalName) {
+        this.journalName = journalName;
+    }
+
+    public void setNormalizeUpdateSet(boolean normalizeUpdateSet) {
+        this.normalizeUpdateSet = normalizeUpdateSet;
+    }
+
+    public void setStagedProcessing(boolean stagedProcessing) {
+        this.stagedProcessing = stagedProcessing;
+    }
+
+    public void setFetchThreads(int fetchThreads) {
+        this.fetchThreads = fetchThreads;
+    }
+
+    public void setBuildThreads(int buildThreads) {
+        this.buildThreads = buildThreads;
+    }
+
+    public void setSendThreads(int sendThreads) {
+        this.sendThreads = sendThreads;
+    }
+
+    public void setStageQueueCapacity(int stageQueueCapacity) {
+        this.stageQueueCapacity = stageQueueCapacity;
+    }
+
+    /**
+     * Returns the queue depth, throughput and other metrics of each stage for the current (or last) call that used
+     * staged processing
+     */
+    public List<StageMetrics> getStageMetrics() {
+        return stageMetrics;
     }
 
     @Override
     public void updateIndex(String indexId, String siteName, ContentStoreService contentStoreService,
                             Context context, UpdateSet updateSet, UpdateStatus updateStatus) throws BatchIndexingException {
+        if (normalizeUpdateSet) {
+            updateSet = normalizeUpdateSet(updateSet);
+        }
+
+        prepareMetadataExtractors(updateSet);
+        openItemCache(updateStatus, contentStoreService, context);
+        try {
+            if (journal == null || updateSet.getRunId() == null) {
+                doUpdateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            } else {
+                doJournaledUpdateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            }
+        } finally {
+            closeItemCache(updateStatus);
+        }
+    }
+
+    /**
+     * Processes the operations of the given set that haven't been completed by a previous run, recording each
+     * completed operation in the journal. The journal is finished only if all the operations of this indexer were
+     * successful, the results of other indexers sharing the same {@link UpdateStatus} are ignored.
+     */
+    protected void doJournaledUpdateIndex(String indexId, String siteName, ContentStoreService contentStoreService,
+                                          Context context, UpdateSet updateSet, UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        IndexingJournal.Run run = journal.open(getRunId(indexId, siteName, updateSet));
+        UpdateSet pendingSet = getPendingUpdateSet(updateSet, run);
+        Set<String> pendingUpdates = new HashSet<>(pendingSet.getUpdatePaths());
+        Set<String> pendingDeletes = new HashSet<>(pendingSet.getDeletePaths());
+        AtomicInteger failures = new AtomicInteger();
+        UpdateStatus.Listener listener = (path, delete, successful) -> {
+            if (!(delete? pendingDeletes : pendingUpdates).contains(path)) {
+                // Reported by another indexer, or a related file that is not part of the set
+                return;
+            }
+            if (successful) {
+                run.markCompleted(path, delete);
+            } else {
+                failures.incrementAndGet();
+            }
+        };
+        updateStatus.addListener(listener);
+        boolean completed = false;
+        try {
+            doUpdateIndex(indexId, siteName, contentStoreService, context, pendingSet, updateStatus);
+            completed = true;
+        } finally {
+            updateStatus.removeListener(listener);
+            if (completed && failures.get() == 0) {
+                run.finish();
+            } else {
+                logger.info("Run {} for {} was not completed, keeping journal to resume it", run.getId(), siteName);
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * Removes the duplicated and redundant operations of the given set, see {@link UpdateSetUtils#normalize(UpdateSet)}
+     */
+    protected UpdateSet normalizeUpdateSet(UpdateSet updateSet) {
+        UpdateSet normalizedSet = UpdateSetUtils.normalize(updateSet);
+        if (normalizedSet != updateSet) {
+            logger.debug("Normalized update set from {} to {} operations",
+                         updateSet.getUpdatePaths().size() + updateSet.getDeletePaths().size(),
+                         normalizedSet.getUpdatePaths().size() + normalizedSet.getDeletePaths().size());
+        }
+        return normalizedSet;
+    }
+
+    /**
+     * Returns the id of the journal for the given set, built from the index, this indexer and the run id provided
+     * by the caller (like the id of the publish or commit), so the journal is only resumed by the same run
+     */
+    protected String getRunId(String indexId, String siteName, UpdateSet updateSet) {
+        return indexId + ":" + siteName + ":" + getJournalName() + ":" + updateSet.getRunId();
+    }
+
+    protected String getJournalName() {
+        return journalName != null? journalName : getClass().getName();
+    }
+
+    /**
+     * Returns a copy of the given set without the operations already completed by the given run
+     */
+    protected UpdateSet getPendingUpdateSet(UpdateSet updateSet, IndexingJournal.Run run) {
+        if (run.getCompletedCount() == 0) {
+            return updateSet;
+        }
+
+        List<String> updatePaths = new ArrayList<>();
         for (String path : updateSet.getUpdatePaths()) {
-            if (include(path)) {
-                try {
-                    Map<String, Object> metadata = collectMetadata(path, contentStoreService, context);
-                    doSingleFileUpdate(indexId, siteName, contentStoreService, context, path, false,
-                        updateSet.getUpdateDetail(path), updateStatus, metadata);
-                } catch (Exception e) {
-                    logger.error("Error while trying to perform update of file {}:{}", siteName, path, e);
+            if (!run.isCompleted(path, false)) {
+                updatePaths.add(path);
+            }
+        }
+        List<String> deletePaths = new ArrayList<>();
+        for (String path : updateSet.getDeletePaths()) {
+            if (!run.isCompleted(path, true)) {
+                deletePaths.add(path);
+            }
+        }
 
-                    updateStatus.addFailedUpdate(path);
-                }
+        logger.info("Skipping {} operations already completed by run {}",
+                    updateSet.getUpdatePaths().size() + updateSet.getDeletePaths().size() - updatePaths.size() -
+                    deletePaths.size(), run.getId());
+
+        return UpdateSetUtils.copy(updateSet, updatePaths, deletePaths);
+    }
+
+    /**
+     * Processes all the operations of the given set
+     */
+    protected void doUpdateIndex(String indexId, String siteName, ContentStoreService contentStoreService,
+                                 Context context, UpdateSet updateSet, UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        if (stagedProcessing) {
+            doStagedUpdates(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            return;
+        }
+
+        if (threadPoolSize > 1) {
+            doParallelUpdates(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            return;
+        }
+
+        for (String path : updateSet.getUpdatePaths()) {
+            if (include(path)) {
+                processUpdate(indexId, siteName, contentStoreService, context, updateSet, updateStatus, path);
             }
         }
 
         for (String path : updateSet.getDeletePaths()) {
             if (include(path)) {
+                processDelete(indexId, siteName, contentStoreService, context, updateStatus, path);
+            }
+        }
+    }
+
+    /**
+     * Processes the files using a thread pool of {@link #threadPoolSize} threads. All the operations for the same
+     * path are executed by a single task in the same order used by the sequential mode (updates first, then deletes),
+     * so they never run concurrently.
+     */
+    protected void doParallelUpdates(String indexId, String siteName, ContentStoreService contentStoreService,
+                                     Context context, UpdateSet updateSet, UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        Map<String, List<Boolean>> operationsByPath = groupOperationsByPath(updateSet);
+        if (operationsByPath.isEmpty()) {
+            return;
+        }
+
+        logger.debug("Processing {} files for {} using {} threads", operationsByPath.size(), siteName,
+                     threadPoolSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadPoolSize, operationsByPath.size()),
+            new CustomizableThreadFactory(getClass().getSimpleName() + "-"));
+        Semaphore inFlight = new Semaphore(Math.max(maxInFlight, 1));
+        try {
+            for (Map.Entry<String, List<Boolean>> entry : operationsByPath.entrySet()) {
+                String path = entry.getKey();
+                List<Boolean> operations = entry.getValue();
+
+                inFlight.acquire();
                 try {
-                    doSingleFileUpdate(indexId, siteName, contentStoreService, context, path, true, null,
-                        updateStatus, Collections.emptyMap());
-                } catch (Exception e) {
-                    logger.error("Error while trying to perform delete of file {}:{}", siteName, path, e);
+                    executor.execute(() -> {
+                        try {
+                            for (boolean delete : operations) {
+                                if (delete) {
+                                    processDelete(indexId, siteName, contentStoreService, context, updateStatus,
+                                                  path);
+                                } else {
+                                    processUpdate(indexId, siteName, contentStoreService, context, updateSet,
+                                                  updateStatus, path);
+                                }
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.debug("Waiting for pending files of {} to be processed", siteName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new BatchIndexingException("Interrupted while processing files for site " + siteName, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes the files using an {@link IndexingPipeline} with fetch, build and send stages, each one with its
+     * own threads. When a path has more than one operation, each operation is processed in a separate round after
+     * the previous one has been completed, so operations for the same path never run concurrently.
+     */
+    protected void doStagedUpdates(String indexId, String siteName, ContentStoreService contentStoreService,
+                                   Context context, UpdateSet updateSet, UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        Map<String, List<Boolean>> operationsByPath = groupOperationsByPath(updateSet);
+        if (operationsByPath.isEmpty()) {
+            return;
+        }
+
+        ItemCache itemCache = getItemCache(updateStatus, contentStoreService, context);
+        IndexingPipeline<IndexingTask> pipeline = new IndexingPipeline<>(getClass().getSimpleName(),
+            (task, e) -> {
+                if (task.isDelete()) {
+                    logger.error("Error while trying to perform delete of file {}:{}", siteName, task.getPath(), e);
+
+                    updateStatus.addFailedDelete(task.getPath());
+                } else {
+                    logger.error("Error while trying to perform update of file {}:{}", siteName, task.getPath(), e);
+
+                    updateStatus.addFailedUpdate(task.getPath());
+                }
+                itemCache.evict(task.getPath());
+            });
+        pipeline
+            .addStage("fetch", fetchThreads, stageQueueCapacity,
+                      task -> doFetch(contentStoreService, context, task))
+            .addStage("build", buildThreads, stageQueueCapacity, this::doBuild)
+            .addStage("send", sendThreads, stageQueueCapacity, task -> {
+                doSend(contentStoreService, context, task, updateStatus);
+                itemCache.evict(task.getPath());
+                return false;
+            });
+        stageMetrics = pipeline.getMetrics();
+
+        try {
+            for (int round = 0; !operationsByPath.isEmpty(); round++) {
+                for (Map.Entry<String, List<Boolean>> entry : operationsByPath.entrySet()) {
+                    String path = entry.getKey();
+                    boolean delete = entry.getValue().get(round);
 
-                    updateStatus.addFailedDelete(path);
+                    IndexingTask task = new IndexingTask(indexId, siteName, path, delete,
+                                                         delete? null : updateSet.getUpdateDetail(path));
+                    task.setItemCache(itemCache);
+                    pipeline.submit(task);
                 }
+                pipeline.awaitCompletion();
+
+                int nextRound = round + 1;
+                operationsByPath.values().removeIf(operations -> operations.size() <= nextRound);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new BatchIndexingException("Interrupted while processing files for site " + siteName, e);
+        } finally {
+            pipeline.close();
+
+            logger.debug("Stage metrics for {}: {}", siteName, stageMetrics);
+        }
+    }
+
+    /**
+     * Performs the fetch stage for the given file. By default it collects the metadata for updates.
+     * @return true if the file should continue to the build stage
+     */
+    protected boolean doFetch(ContentStoreService contentStoreService, Context context, IndexingTask task)
+            throws Exception {
+        if (!task.isDelete()) {
+            task.setMetadata(collectMetadata(task.getPath(), contentStoreService, context, task.getItemCache()));
+        }
+        return true;
+    }
+
+    /**
+     * Performs the build stage for the given file. By default it does nothing.
+     * @return true if the file should continue to the send stage
+     */
+    protected boolean doBuild(IndexingTask task) throws Exception {
+        return true;
+    }
+
+    /**
+     * Performs the send stage for the given file. By default it performs the whole single file update, sub-classes
+     * should override the stages to split the work.
+     */
+    protected void doSend(ContentStoreService contentStoreService, Context context, IndexingTask task,
+                          UpdateStatus updateStatus) throws Exception {
+        Map<String, Object> metadata = task.getMetadata() != null? task.getMetadata() : Collections.emptyMap();
+        doSingleFileUpdate(task.getIndexId(), task.getSiteName(), contentStoreService, context, task.getPath(),
+            task.isDelete(), task.getUpdateDetail(), updateStatus, metadata);
+    }
+
+    /**
+     * Groups the included operations of the given set by path, true means delete. Updates are always before deletes
+     */
+    protected Map<String, List<Boolean>> groupOperationsByPath(UpdateSet updateSet) {
+        Map<String, List<Boolean>> operationsByPath = new LinkedHashMap<>();
+        for (String path : updateSet.getUpdatePaths()) {
+            if (include(path)) {
+                operationsByPath.computeIfAbsent(path, key -> new ArrayList<>()).add(false);
             }
         }
+        for (String path : updateSet.getDeletePaths()) {
+            if (include(path)) {
+                operationsByPath.computeIfAbsent(path, key -> new ArrayList<>()).add(true);
+            }
+        }
+        return operationsByPath;
+    }
+
+    protected void processUpdate(String indexId, String siteName, ContentStoreService contentStoreService,
+                                 Context context, UpdateSet updateSet, UpdateStatus updateStatus, String path) {
+        try {
+            Map<String, Object> metadata = collectMetadata(path, contentStoreService, context,
+                                                           getItemCache(updateStatus, contentStoreService, context));
+            doSingleFileUpdate(indexId, siteName, contentStoreService, context, path, false,
+                updateSet.getUpdateDetail(path), updateStatus, metadata);
+        } catch (Exception e) {
+            logger.error("Error while trying to perform update of file {}:{}", siteName, path, e);
+
+            updateStatus.addFailedUpdate(path);
+        } finally {
+            evictFromItemCache(updateStatus, path);
+        }
+    }
+
+    protected void processDelete(String indexId, String siteName, ContentStoreService contentStoreService,
+                                 Context context, UpdateStatus updateStatus, String path) {
+        try {
+            doSingleFileUpdate(indexId, siteName, contentStoreService, context, path, true, null,
+                updateStatus, Collections.emptyMap());
+        } catch (Exception e) {
+            logger.error("Error while trying to perform delete of file {}:{}", siteName, path, e);
+
+            updateStatus.addFailedDelete(path);
+        }
     }
 
     protected boolean include(String path) {
-        return (CollectionUtils.isEmpty(includePathPatterns) || RegexUtils.matchesAny(path, includePathPatterns)) &&
-               (CollectionUtils.isEmpty(excludePathPatterns) || !RegexUtils.matchesAny(path, excludePathPatterns));
+        return include(getPathClassifier().classify(path));
+    }
+
+    /**
+     * Indicates if a path with the given classification should be indexed
+     */
+    protected boolean include(int classification) {
+        return is(classification, INCLUDED_PATH) && !is(classification, EXCLUDED_PATH);
+    }
+
+    /**
+     * Returns the classifier for the configured patterns, building it if needed
+     */
+    protected PathClassifier getPathClassifier() {
+        PathClassifier classifier = pathClassifier;
+        if (classifier == null) {
+            classifier = configurePathClassifier(new PathClassifier.Builder()).build();
+            pathClassifier = classifier;
+        }
+        return classifier;
+    }
+
+    /**
+     * Adds the rules used to classify the paths, sub-classes can override it to add their own flags
+     */
+    protected PathClassifier.Builder configurePathClassifier(PathClassifier.Builder builder) {
+        return builder
+            .addPatterns(INCLUDED_PATH, includePathPatterns, true)
+            .addPatterns(EXCLUDED_PATH, excludePathPatterns);
     }
 
     protected abstract void doSingleFileUpdate(String indexId, String siteName,
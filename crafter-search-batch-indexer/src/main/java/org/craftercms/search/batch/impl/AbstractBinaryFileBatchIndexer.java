@@ -20,6 +20,8 @@ import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
 import org.craftercms.search.batch.UpdateDetail;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.pipeline.IndexingTask;
+import org.craftercms.search.batch.utils.PathClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.mail.javamail.ConfigurableMimeFileTypeMap;
@@ -28,7 +30,7 @@ import jakarta.activation.FileTypeMap;
 import java.util.List;
 import java.util.Map;
 
-import static org.craftercms.search.batch.utils.IndexingUtils.isMimeTypeSupported;
+import static org.craftercms.search.batch.utils.PathClassifier.is;
 
 
 /**
@@ -43,6 +45,11 @@ public abstract class AbstractBinaryFileBatchIndexer extends AbstractBatchIndexe
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractBinaryFileBatchIndexer.class);
 
+    /**
+     * Flag for paths with a supported mime type (or all paths if there are no supported mime types)
+     */
+    protected static final int SUPPORTED_MIME_TYPE = 1 << 2;
+
     protected List<String> supportedMimeTypes;
     protected FileTypeMap mimeTypesMap;
 
@@ -52,6 +59,7 @@ public abstract class AbstractBinaryFileBatchIndexer extends AbstractBatchIndexe
 
     public void setSupportedMimeTypes(List<String> supportedMimeTypes) {
         this.supportedMimeTypes = supportedMimeTypes;
+        this.pathClassifier = null;
     }
 
     @Override
@@ -70,6 +78,35 @@ public abstract class AbstractBinaryFileBatchIndexer extends AbstractBatchIndexe
         }
     }
 
+    @Override
+    protected boolean doFetch(ContentStoreService contentStoreService, Context context, IndexingTask task)
+            throws Exception {
+        if (task.isDelete()) {
+            return true;
+        }
+
+        Content binaryContent = contentStoreService.findContent(context, task.getPath());
+        if (binaryContent != null && binaryContent.getLength() > 0) {
+            super.doFetch(contentStoreService, context, task);
+            task.setSource(binaryContent);
+            return true;
+        } else {
+            logger.debug("No binary file found at '{}':'{}'. Skipping update", task.getSiteName(), task.getPath());
+            return false;
+        }
+    }
+
+    @Override
+    protected void doSend(ContentStoreService contentStoreService, Context context, IndexingTask task,
+                          UpdateStatus updateStatus) {
+        if (task.isDelete()) {
+            doDelete(task.getIndexId(), task.getSiteName(), task.getPath(), updateStatus);
+        } else {
+            doUpdateContent(task.getIndexId(), task.getSiteName(), task.getPath(), task.getSource(),
+                            task.getUpdateDetail(), updateStatus, task.getMetadata());
+        }
+    }
+
     protected abstract void doDelete(String indexId, String siteName, String path, UpdateStatus updateStatus);
 
     protected abstract void doUpdateContent(String indexId, String siteName, String path, Content binaryContent,
@@ -77,12 +114,14 @@ public abstract class AbstractBinaryFileBatchIndexer extends AbstractBatchIndexe
                                             Map<String, Object> metadata);
 
     @Override
-    protected boolean include(String path) {
-        if (super.include(path)) {
-            return isMimeTypeSupported(mimeTypesMap, supportedMimeTypes, path);
-        }
+    protected boolean include(int classification) {
+        return super.include(classification) && is(classification, SUPPORTED_MIME_TYPE);
+    }
 
-        return false;
+    @Override
+    protected PathClassifier.Builder configurePathClassifier(PathClassifier.Builder builder) {
+        return super.configurePathClassifier(builder)
+            .addMimeTypes(SUPPORTED_MIME_TYPE, mimeTypesMap, supportedMimeTypes);
     }
 
 }
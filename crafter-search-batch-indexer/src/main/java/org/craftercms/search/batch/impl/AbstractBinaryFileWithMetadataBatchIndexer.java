@@ -21,17 +21,22 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.commons.file.stores.RemoteFile;
 import org.craftercms.commons.file.stores.RemoteFileResolver;
-import org.craftercms.commons.lang.RegexUtils;
 import org.craftercms.core.processors.ItemProcessor;
 import org.craftercms.core.processors.impl.ItemProcessorPipeline;
 import org.craftercms.core.service.Content;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
 import org.craftercms.search.batch.BatchIndexer;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.batch.UpdateDetail;
 import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
 import org.craftercms.search.batch.exception.BatchIndexingException;
+import org.craftercms.search.batch.relationship.RelationshipStore;
+import org.craftercms.search.batch.remote.RemoteBinaryCache;
+import org.craftercms.search.batch.remote.RemoteBinaryPrefetcher;
+import org.craftercms.search.batch.utils.PathClassifier;
+import org.craftercms.search.batch.utils.UpdateSetUtils;
 import org.craftercms.search.metadata.impl.AbstractMetadataCollector;
 import org.dom4j.Document;
 import org.dom4j.Element;
@@ -44,13 +49,15 @@ import org.springframework.mail.javamail.ConfigurableMimeFileTypeMap;
 
 import jakarta.activation.FileTypeMap;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.apache.commons.lang3.StringUtils.trim;
-import static org.craftercms.search.batch.utils.IndexingUtils.isMimeTypeSupported;
+import static org.craftercms.search.batch.utils.PathClassifier.is;
 import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
 
 
@@ -71,6 +78,16 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
     public static final String DEFAULT_METADATA_PATH_FIELD_NAME = "metadataPath";
     public static final String DEFAULT_LOCAL_ID_FIELD_NAME = "localId";
     public static final String DEFAULT_INTERNAL_NAME_FIELD_NAME = "internalName";
+    public static final int DEFAULT_REMOTE_PREFETCH_THREADS = 2;
+    public static final int DEFAULT_REMOTE_PREFETCH_SIZE = 4;
+
+    protected static final int METADATA_PATH = 1;
+    protected static final int REMOTE_BINARY_PATH = 1 << 1;
+    protected static final int CHILD_BINARY_PATH = 1 << 2;
+    protected static final int SUPPORTED_MIME_TYPE = 1 << 3;
+
+    protected static final int INCLUDED_PROPERTY = 1;
+    protected static final int EXCLUDED_PROPERTY = 1 << 1;
 
     protected List<String> supportedMimeTypes;
     protected FileTypeMap mimeTypesMap;
@@ -88,6 +105,66 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
     protected String localIdFieldName;
     protected String internalNameFieldName;
 
+    /**
+     * The classifier for the configured path patterns, built when first used
+     */
+    protected volatile PathClassifier pathClassifier;
+
+    /**
+     * The classifier for the configured property patterns, built when first used
+     */
+    protected volatile PathClassifier propertyClassifier;
+
+    /**
+     * Indicates if duplicated and redundant operations should be removed before processing each set
+     */
+    protected boolean normalizeUpdateSet = true;
+
+    /**
+     * Store used to find the associations between metadata and binary files without querying the index, if null
+     * (or not initialized for the index) the index is always queried
+     */
+    protected RelationshipStore relationshipStore;
+
+    /**
+     * Indicates if binaries that haven't changed should only get their metadata fields updated when their metadata
+     * changes, instead of being parsed and indexed again. Remote binaries are always indexed again because their
+     * changes are never part of the update. The search service also needs to keep track of the metadata fields of
+     * each binary, otherwise the binaries are always indexed again.
+     */
+    protected boolean partialMetadataUpdates = false;
+
+    /**
+     * Cache for the content of remote binaries, if null the binaries are downloaded every time they are indexed
+     */
+    protected RemoteBinaryCache remoteBinaryCache;
+
+    /**
+     * The number of threads used to download remote binaries ahead of time
+     */
+    protected int remotePrefetchThreads = DEFAULT_REMOTE_PREFETCH_THREADS;
+
+    /**
+     * The maximum number of remote binaries downloaded ahead of time, 0 disables the prefetching
+     */
+    protected int remotePrefetchSize = DEFAULT_REMOTE_PREFETCH_SIZE;
+
+    /**
+     * The prefetcher used for the remote binaries of each batch in progress
+     */
+    protected final Map<UpdateStatus, RemoteBinaryPrefetcher> remoteBinaryPrefetchers = new ConcurrentHashMap<>();
+
+    /**
+     * The changes to the {@link #relationshipStore} of each batch in progress, applied once all its operations have
+     * been sent
+     */
+    protected final Map<UpdateStatus, List<RelationshipUpdate>> relationshipUpdates = new ConcurrentHashMap<>();
+
+    /**
+     * The classification of the paths of each batch in progress, so each path is classified only once
+     */
+    protected final Map<UpdateStatus, Map<String, Integer>> pathClassifications = new ConcurrentHashMap<>();
+
     public AbstractBinaryFileWithMetadataBatchIndexer() {
         mimeTypesMap = new ConfigurableMimeFileTypeMap();
         metadataPathFieldName = DEFAULT_METADATA_PATH_FIELD_NAME;
@@ -97,6 +174,7 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
 
     public void setSupportedMimeTypes(List<String> supportedMimeTypes) {
         this.supportedMimeTypes = supportedMimeTypes;
+        this.pathClassifier = null;
     }
 
     public void setRemoteFileResolver(RemoteFileResolver remoteFileResolver) {
@@ -113,14 +191,17 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
 
     public void setMetadataPathPatterns(List<String> metadataPathPatterns) {
         this.metadataPathPatterns = metadataPathPatterns;
+        this.pathClassifier = null;
     }
 
     public void setRemoteBinaryPathPatterns(List<String> remoteBinaryPathPatterns) {
         this.remoteBinaryPathPatterns = remoteBinaryPathPatterns;
+        this.pathClassifier = null;
     }
 
     public void setChildBinaryPathPatterns(List<String> childBinaryPathPatterns) {
         this.childBinaryPathPatterns = childBinaryPathPatterns;
+        this.pathClassifier = null;
     }
 
     public void setReferenceXPaths(List<String> referenceXPaths) {
@@ -129,10 +210,12 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
 
     public void setIncludePropertyPatterns(List<String> includePropertyPatterns) {
         this.includePropertyPatterns = includePropertyPatterns;
+        this.propertyClassifier = null;
     }
 
     public void setExcludePropertyPatterns(List<String> excludePropertyPatterns) {
         this.excludePropertyPatterns = excludePropertyPatterns;
+        this.propertyClassifier = null;
     }
 
     @Deprecated
@@ -152,33 +235,105 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
         this.internalNameFieldName = internalNameFieldName;
     }
 
+    public void setNormalizeUpdateSet(boolean normalizeUpdateSet) {
+        this.normalizeUpdateSet = normalizeUpdateSet;
+    }
+
+    public void setRelationshipStore(RelationshipStore relationshipStore) {
+        this.relationshipStore = relationshipStore;
+    }
+
+    public void setPartialMetadataUpdates(boolean partialMetadataUpdates) {
+        this.partialMetadataUpdates = partialMetadataUpdates;
+    }
+
+    public void setRemoteBinaryCache(RemoteBinaryCache remoteBinaryCache) {
+        this.remoteBinaryCache = remoteBinaryCache;
+    }
+
+    public void setRemotePrefetchThreads(int remotePrefetchThreads) {
+        this.remotePrefetchThreads = remotePrefetchThreads;
+    }
+
+    public void setRemotePrefetchSize(int remotePrefetchSize) {
+        this.remotePrefetchSize = remotePrefetchSize;
+    }
+
     @Override
     public void updateIndex(String indexId, String siteName,
                             ContentStoreService contentStoreService, Context context, UpdateSet updateSet,
                             UpdateStatus updateStatus) throws BatchIndexingException {
-        doUpdates(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
-        doDeletes(indexId, siteName, contentStoreService, context, updateSet.getDeletePaths(), updateStatus);
+        if (normalizeUpdateSet) {
+            updateSet = UpdateSetUtils.normalize(updateSet);
+        }
+
+        prepareMetadataExtractors(updateSet);
+        openItemCache(updateStatus, contentStoreService, context);
+        openRemoteBinaryPrefetcher(updateStatus);
+        if (relationshipStore != null) {
+            relationshipUpdates.put(updateStatus, Collections.synchronizedList(new ArrayList<>()));
+        }
+        pathClassifications.put(updateStatus, new ConcurrentHashMap<>());
+        try {
+            doUpdates(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            doDeletes(indexId, siteName, contentStoreService, context, updateSet.getDeletePaths(), updateStatus);
+            flushUpdates(indexId, updateStatus);
+            applyRelationshipUpdates(indexId, updateStatus);
+        } finally {
+            relationshipUpdates.remove(updateStatus);
+            pathClassifications.remove(updateStatus);
+            closeRemoteBinaryPrefetcher(updateStatus);
+            closeItemCache(updateStatus);
+        }
+    }
+
+    /**
+     * Sends the operations of the batch that are still pending, so their results are known before the changes to
+     * the {@link #relationshipStore} are applied. Sub-classes that queue operations should override it.
+     */
+    protected void flushUpdates(String indexId, UpdateStatus updateStatus) {
     }
 
     protected void doUpdates(String indexId, String siteName, ContentStoreService contentStoreService, Context context,
                              UpdateSet updateSet, UpdateStatus updateStatus) {
         List<String> updatePaths = updateSet.getUpdatePaths();
+        Set<String> binaryUpdatePaths = new HashSet<>(updatePaths);
         Set<String> metadataUpdatePaths = new LinkedHashSet<>();
+        ItemCache itemCache = getItemCache(updateStatus, contentStoreService, context);
 
         for (String path : updatePaths) {
-            if (isMetadata(path)) {
+            if (isMetadata(classify(path, updateStatus))) {
                 metadataUpdatePaths.add(path);
             }
         }
 
+        Map<String, List<String>> binaryPathsByMetadataPath =
+            findBinaryPathsFromMetadataPaths(indexId, siteName, metadataUpdatePaths);
+
+        // Load all the metadata first so the remote binaries can be downloaded while the others are indexed
+        Map<String, Document> metadataDocs = new HashMap<>();
+        Map<String, Collection<String>> newBinaryPathsByMetadataPath = new HashMap<>();
+        List<String> remoteBinaryPaths = new ArrayList<>();
+        for (String metadataPath : metadataUpdatePaths) {
+            Document metadataDoc = loadMetadata(contentStoreService, context, siteName, metadataPath, itemCache);
+            Collection<String> newBinaryPaths = metadataDoc != null? getBinaryFilePaths(metadataDoc) : null;
+            metadataDocs.put(metadataPath, metadataDoc);
+            newBinaryPathsByMetadataPath.put(metadataPath, newBinaryPaths);
+
+            addBinariesToReindex(binaryPathsByMetadataPath.get(metadataPath), newBinaryPaths, binaryUpdatePaths,
+                                 remoteBinaryPaths, updateStatus);
+        }
+        prefetchRemoteBinaries(remoteBinaryPaths, updateStatus);
+
         for (String metadataPath : metadataUpdatePaths) {
             Collection<String> newBinaryPaths = Collections.emptyList();
-            List<String> previousBinaryPaths = searchBinaryPathsFromMetadataPath(indexId, siteName, metadataPath);
-            Document metadataDoc = loadMetadata(contentStoreService, context, siteName, metadataPath);
+            List<String> previousBinaryPaths = binaryPathsByMetadataPath.get(metadataPath);
+            Document metadataDoc = metadataDocs.get(metadataPath);
 
             if (metadataDoc != null) {
-                newBinaryPaths = getBinaryFilePaths(metadataDoc);
+                newBinaryPaths = newBinaryPathsByMetadataPath.get(metadataPath);
             }
+            updateRelationships(indexId, metadataPath, previousBinaryPaths, newBinaryPaths, updateStatus);
 
             // If there are previous binaries that are not associated to the metadata anymore, reindex them without
             // metadata or delete them if they're child binaries.
@@ -188,13 +343,46 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
             // Index the new associated binaries
             if (isNotEmpty(newBinaryPaths)) {
                 Map<String, Object> metadata = extractMetadata(metadataPath, metadataDoc);
+                Map<String, Object> additionalFields =
+                    collectMetadata(metadataPath, contentStoreService, context, itemCache);
 
                 for (String newBinaryPath : newBinaryPaths) {
-                    Map<String, Object> additionalFields = collectMetadata(metadataPath, contentStoreService, context);
                     Map<String, Object> mergedMetadata = mergeMaps(metadata, additionalFields);
 
-                    updateBinaryWithMetadata(indexId, siteName, contentStoreService, context, newBinaryPath,
-                            mergedMetadata, updateSet.getUpdateDetail(metadataPath), updateStatus);
+                    if (binaryUpdatePaths.contains(newBinaryPath)) {
+                        updateBinaryWithMetadata(indexId, siteName, contentStoreService, context, newBinaryPath,
+                                mergedMetadata, updateSet.getUpdateDetail(metadataPath), updateStatus);
+                    } else {
+                        updateBinaryMetadata(indexId, siteName, contentStoreService, context, newBinaryPath,
+                                mergedMetadata, updateSet.getUpdateDetail(metadataPath), updateStatus);
+                    }
+                }
+            }
+            evictFromItemCache(updateStatus, metadataPath);
+        }
+    }
+
+    /**
+     * Adds the binaries of a metadata file that will need to be downloaded and parsed again: the previous binaries
+     * that are no longer referenced (unless they're child binaries) and the new binaries that are part of the update
+     * or remote (or all of them if {@link #partialMetadataUpdates} is disabled)
+     */
+    protected void addBinariesToReindex(Collection<String> previousBinaryPaths, Collection<String> newBinaryPaths,
+                                        Set<String> binaryUpdatePaths, List<String> binaryPaths,
+                                        UpdateStatus updateStatus) {
+        if (isNotEmpty(previousBinaryPaths)) {
+            for (String previousBinaryPath : previousBinaryPaths) {
+                if ((CollectionUtils.isEmpty(newBinaryPaths) || !newBinaryPaths.contains(previousBinaryPath)) &&
+                    !isChildBinary(classify(previousBinaryPath, updateStatus))) {
+                    binaryPaths.add(previousBinaryPath);
+                }
+            }
+        }
+        if (isNotEmpty(newBinaryPaths)) {
+            for (String newBinaryPath : newBinaryPaths) {
+                if (!partialMetadataUpdates || binaryUpdatePaths.contains(newBinaryPath) ||
+                    isRemoteBinary(classify(newBinaryPath, updateStatus))) {
+                    binaryPaths.add(newBinaryPath);
                 }
             }
         }
@@ -212,7 +400,7 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
             if (CollectionUtils.isEmpty(newBinaryPaths) || !newBinaryPaths.contains(previousBinaryPath)) {
                 binaryUpdatePaths.remove(previousBinaryPath);
 
-                if (isChildBinary(previousBinaryPath)) {
+                if (isChildBinary(classify(previousBinaryPath, updateStatus))) {
                     logger.debug(
                             "Reference of child binary {} removed from  parent {}. Deleting binary from index...",
                             previousBinaryPath, metadataPath);
@@ -234,14 +422,27 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
 
     protected void doDeletes(String indexId, String siteName, ContentStoreService contentStoreService, Context context,
                              List<String> deletePaths, UpdateStatus updateStatus) {
+        List<String> metadataDeletePaths = new ArrayList<>();
         for (String path : deletePaths) {
-            if (!isMetadata(path)) {
-                continue;
+            if (isMetadata(classify(path, updateStatus))) {
+                metadataDeletePaths.add(path);
+            } else {
+                removeBinaryRelationships(indexId, path);
             }
+        }
+        if (metadataDeletePaths.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<String>> binaryPathsByMetadataPath =
+            findBinaryPathsFromMetadataPaths(indexId, siteName, metadataDeletePaths);
+        prefetchBinariesOfDeletedMetadata(binaryPathsByMetadataPath, updateStatus);
 
-            List<String> binaryPaths = searchBinaryPathsFromMetadataPath(indexId, siteName, path);
+        for (String path : metadataDeletePaths) {
+            List<String> binaryPaths = binaryPathsByMetadataPath.getOrDefault(path, Collections.emptyList());
+            updateRelationships(indexId, path, binaryPaths, null, updateStatus);
             for (String binaryPath : binaryPaths) {
-                if (isChildBinary(binaryPath)) {
+                if (isChildBinary(classify(binaryPath, updateStatus))) {
                     logger.debug("Parent of binary {} deleted. Deleting child binary too", binaryPath);
 
                     // If the binary is a child binary, when the metadata file is deleted, then delete it
@@ -257,16 +458,155 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
         }
     }
 
+    /**
+     * Starts downloading the binaries that will be indexed again without metadata because their metadata was deleted
+     */
+    protected void prefetchBinariesOfDeletedMetadata(Map<String, List<String>> binaryPathsByMetadataPath,
+                                                     UpdateStatus updateStatus) {
+        List<String> binaryPaths = new ArrayList<>();
+        for (List<String> paths : binaryPathsByMetadataPath.values()) {
+            for (String path : paths) {
+                if (!isChildBinary(classify(path, updateStatus))) {
+                    binaryPaths.add(path);
+                }
+            }
+        }
+        prefetchRemoteBinaries(binaryPaths, updateStatus);
+    }
+
+    protected void openRemoteBinaryPrefetcher(UpdateStatus updateStatus) {
+        if (remoteFileResolver != null && remotePrefetchSize > 0) {
+            remoteBinaryPrefetchers.put(updateStatus, new RemoteBinaryPrefetcher(remoteFileResolver,
+                    remoteBinaryCache, remotePrefetchThreads, remotePrefetchSize));
+        }
+    }
+
+    protected void closeRemoteBinaryPrefetcher(UpdateStatus updateStatus) {
+        RemoteBinaryPrefetcher prefetcher = remoteBinaryPrefetchers.remove(updateStatus);
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+    }
+
+    /**
+     * Starts downloading the remote binaries in the given list, in order, while the current files are indexed
+     */
+    protected void prefetchRemoteBinaries(Collection<String> binaryPaths, UpdateStatus updateStatus) {
+        RemoteBinaryPrefetcher prefetcher = remoteBinaryPrefetchers.get(updateStatus);
+        if (prefetcher == null || CollectionUtils.isEmpty(binaryPaths)) {
+            return;
+        }
+
+        List<String> remoteBinaryPaths = new ArrayList<>();
+        for (String binaryPath : binaryPaths) {
+            if (isRemoteBinary(classify(binaryPath, updateStatus))) {
+                remoteBinaryPaths.add(binaryPath);
+            }
+        }
+        prefetcher.prefetch(remoteBinaryPaths);
+    }
+
+    /**
+     * Returns the content of a remote binary, using the prefetched or cached copy if there is one
+     */
+    protected Resource resolveRemoteBinary(String binaryPath, UpdateStatus updateStatus) throws IOException {
+        RemoteBinaryPrefetcher prefetcher = remoteBinaryPrefetchers.get(updateStatus);
+        if (prefetcher != null) {
+            return prefetcher.get(binaryPath);
+        }
+
+        RemoteFile remoteFile = remoteFileResolver.resolve(binaryPath);
+        if (remoteBinaryCache != null) {
+            return remoteBinaryCache.get(binaryPath, remoteFile);
+        }
+        return remoteFile.toResource();
+    }
+
+    /**
+     * Removes the temporary copy of a remote binary once it has been indexed
+     */
+    protected void releaseRemoteBinary(Resource resource, UpdateStatus updateStatus) {
+        RemoteBinaryPrefetcher prefetcher = remoteBinaryPrefetchers.get(updateStatus);
+        if (prefetcher != null) {
+            prefetcher.release(resource);
+        }
+    }
+
     protected boolean isMetadata(String path) {
-        return RegexUtils.matchesAny(path, metadataPathPatterns);
+        return isMetadata(getPathClassifier().classify(path));
+    }
+
+    protected boolean isMetadata(int classification) {
+        return is(classification, METADATA_PATH);
     }
 
     protected boolean isRemoteBinary(String path) {
-        return RegexUtils.matchesAny(path, remoteBinaryPathPatterns);
+        return isRemoteBinary(getPathClassifier().classify(path));
+    }
+
+    protected boolean isRemoteBinary(int classification) {
+        return is(classification, REMOTE_BINARY_PATH);
     }
 
     protected boolean isChildBinary(String path) {
-        return RegexUtils.matchesAny(path, childBinaryPathPatterns);
+        return isChildBinary(getPathClassifier().classify(path));
+    }
+
+    protected boolean isChildBinary(int classification) {
+        return is(classification, CHILD_BINARY_PATH);
+    }
+
+    /**
+     * Returns the classification of the given path, reusing the one from the current batch if it has already been
+     * classified
+     * @param path the path to classify
+     * @param updateStatus the status of the current batch
+     * @return the flags of the rules that match the path
+     */
+    protected int classify(String path, UpdateStatus updateStatus) {
+        Map<String, Integer> classifications = pathClassifications.get(updateStatus);
+        if (classifications == null) {
+            return getPathClassifier().classify(path);
+        }
+        return classifications.computeIfAbsent(path, key -> getPathClassifier().classify(key));
+    }
+
+    /**
+     * Returns the classifier for the configured path patterns, building it if needed
+     */
+    protected PathClassifier getPathClassifier() {
+        PathClassifier classifier = pathClassifier;
+        if (classifier == null) {
+            classifier = configurePathClassifier(new PathClassifier.Builder()).build();
+            pathClassifier = classifier;
+        }
+        return classifier;
+    }
+
+    /**
+     * Adds the rules used to classify the paths, sub-classes can override it to add their own flags
+     */
+    protected PathClassifier.Builder configurePathClassifier(PathClassifier.Builder builder) {
+        return builder
+            .addPatterns(METADATA_PATH, metadataPathPatterns)
+            .addPatterns(REMOTE_BINARY_PATH, remoteBinaryPathPatterns)
+            .addPatterns(CHILD_BINARY_PATH, childBinaryPathPatterns)
+            .addMimeTypes(SUPPORTED_MIME_TYPE, mimeTypesMap, supportedMimeTypes);
+    }
+
+    /**
+     * Returns the classifier for the configured property patterns, building it if needed
+     */
+    protected PathClassifier getPropertyClassifier() {
+        PathClassifier classifier = propertyClassifier;
+        if (classifier == null) {
+            classifier = new PathClassifier.Builder()
+                .addPatterns(INCLUDED_PROPERTY, includePropertyPatterns, true)
+                .addPatterns(EXCLUDED_PROPERTY, excludePropertyPatterns)
+                .build();
+            propertyClassifier = classifier;
+        }
+        return classifier;
     }
 
     protected abstract List<String> searchBinaryPathsFromMetadataPath(String indexId, String siteName,
@@ -274,11 +614,168 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
 
     protected abstract String searchMetadataPathFromBinaryPath(String indexId, String siteName, String binaryPath);
 
+    /**
+     * Returns the binary paths associated to each of the given metadata paths, using the {@link #relationshipStore}
+     * if it has been initialized for the index
+     * @return the binary paths by metadata path, paths without binaries are not included
+     */
+    protected Map<String, List<String>> findBinaryPathsFromMetadataPaths(String indexId, String siteName,
+                                                                         Collection<String> metadataPaths) {
+        if (relationshipStore == null || !relationshipStore.isInitialized(indexId)) {
+            return searchBinaryPathsFromMetadataPaths(indexId, siteName, metadataPaths);
+        }
+
+        Map<String, List<String>> binaryPaths = new HashMap<>();
+        for (String metadataPath : metadataPaths) {
+            List<String> paths = relationshipStore.getBinaryPaths(indexId, metadataPath);
+            if (isNotEmpty(paths)) {
+                binaryPaths.put(metadataPath, paths);
+            }
+        }
+        return binaryPaths;
+    }
+
+    /**
+     * Returns the metadata path associated to each of the given binary paths, using the {@link #relationshipStore}
+     * if it has been initialized for the index
+     * @return the metadata path by binary path, binaries without metadata are not included
+     */
+    protected Map<String, String> findMetadataPathsFromBinaryPaths(String indexId, String siteName,
+                                                                  Collection<String> binaryPaths) {
+        if (relationshipStore == null || !relationshipStore.isInitialized(indexId)) {
+            return searchMetadataPathsFromBinaryPaths(indexId, siteName, binaryPaths);
+        }
+
+        Map<String, String> metadataPaths = new HashMap<>();
+        for (String binaryPath : binaryPaths) {
+            String metadataPath = relationshipStore.getMetadataPath(indexId, binaryPath);
+            if (StringUtils.isNotEmpty(metadataPath)) {
+                metadataPaths.put(binaryPath, metadataPath);
+            }
+        }
+        return metadataPaths;
+    }
+
+    /**
+     * Records the binaries currently referenced by the given metadata file in the {@link #relationshipStore}
+     */
+    protected void updateRelationships(String indexId, String metadataPath, Collection<String> binaryPaths) {
+        if (relationshipStore != null) {
+            if (isNotEmpty(binaryPaths)) {
+                relationshipStore.setBinaryPaths(indexId, metadataPath, binaryPaths);
+            } else {
+                relationshipStore.removeMetadataPath(indexId, metadataPath);
+            }
+        }
+    }
+
+    /**
+     * Records the binaries currently referenced by the given metadata file in the {@link #relationshipStore}. During
+     * a batch the change is only applied after the operations of the batch have been sent, see
+     * {@link #applyRelationshipUpdates(String, UpdateStatus)}.
+     * @param indexId the id of the index
+     * @param metadataPath the path of the metadata file
+     * @param previousBinaryPaths the binaries previously referenced by the metadata file
+     * @param binaryPaths the binaries currently referenced by the metadata file
+     * @param updateStatus the status of the current batch
+     */
+    protected void updateRelationships(String indexId, String metadataPath, Collection<String> previousBinaryPaths,
+                                       Collection<String> binaryPaths, UpdateStatus updateStatus) {
+        if (relationshipStore == null) {
+            return;
+        }
+        List<RelationshipUpdate> updates = relationshipUpdates.get(updateStatus);
+        if (updates != null) {
+            updates.add(new RelationshipUpdate(metadataPath, previousBinaryPaths, binaryPaths));
+        } else {
+            updateRelationships(indexId, metadataPath, binaryPaths);
+        }
+    }
+
+    /**
+     * Applies the relationship changes of the batch. If any of the operations for the files of a metadata file
+     * failed, the previous binaries are kept together with the new ones so all of them are processed again the next
+     * time the metadata file changes.
+     */
+    protected void applyRelationshipUpdates(String indexId, UpdateStatus updateStatus) {
+        List<RelationshipUpdate> updates = relationshipUpdates.remove(updateStatus);
+        if (CollectionUtils.isEmpty(updates)) {
+            return;
+        }
+
+        Set<String> failedPaths = new HashSet<>(updateStatus.getFailedUpdates());
+        failedPaths.addAll(updateStatus.getFailedDeletes());
+        for (RelationshipUpdate update : updates) {
+            if (failedPaths.isEmpty() || !update.isAffectedBy(failedPaths)) {
+                updateRelationships(indexId, update.metadataPath, update.binaryPaths);
+            } else {
+                logger.warn("Some files referenced by {} failed to be indexed, keeping its previous relationships",
+                            update.metadataPath);
+                Set<String> binaryPaths = new LinkedHashSet<>();
+                if (update.previousBinaryPaths != null) {
+                    binaryPaths.addAll(update.previousBinaryPaths);
+                }
+                if (update.binaryPaths != null) {
+                    binaryPaths.addAll(update.binaryPaths);
+                }
+                updateRelationships(indexId, update.metadataPath, binaryPaths);
+            }
+        }
+    }
+
+    /**
+     * Removes the associations of a deleted binary from the {@link #relationshipStore}
+     */
+    protected void removeBinaryRelationships(String indexId, String binaryPath) {
+        if (relationshipStore != null) {
+            relationshipStore.removeBinaryPath(indexId, binaryPath);
+        }
+    }
+
+    /**
+     * Returns the binary paths associated to each of the given metadata paths. By default it searches each path
+     * separately, sub-classes should override it to resolve all the paths with fewer requests.
+     * @return the binary paths by metadata path, paths without binaries are not included
+     */
+    protected Map<String, List<String>> searchBinaryPathsFromMetadataPaths(String indexId, String siteName,
+                                                                           Collection<String> metadataPaths) {
+        Map<String, List<String>> binaryPaths = new HashMap<>();
+        for (String metadataPath : metadataPaths) {
+            List<String> paths = searchBinaryPathsFromMetadataPath(indexId, siteName, metadataPath);
+            if (isNotEmpty(paths)) {
+                binaryPaths.put(metadataPath, paths);
+            }
+        }
+        return binaryPaths;
+    }
+
+    /**
+     * Returns the metadata path associated to each of the given binary paths. By default it searches each path
+     * separately, sub-classes should override it to resolve all the paths with fewer requests.
+     * @return the metadata path by binary path, binaries without metadata are not included
+     */
+    protected Map<String, String> searchMetadataPathsFromBinaryPaths(String indexId, String siteName,
+                                                                    Collection<String> binaryPaths) {
+        Map<String, String> metadataPaths = new HashMap<>();
+        for (String binaryPath : binaryPaths) {
+            String metadataPath = searchMetadataPathFromBinaryPath(indexId, siteName, binaryPath);
+            if (StringUtils.isNotEmpty(metadataPath)) {
+                metadataPaths.put(binaryPath, metadataPath);
+            }
+        }
+        return metadataPaths;
+    }
+
     protected Document loadMetadata(ContentStoreService contentStoreService, Context context, String siteName,
                                     String metadataPath) {
+        return loadMetadata(contentStoreService, context, siteName, metadataPath,
+                            new ItemCache(contentStoreService, context));
+    }
+
+    protected Document loadMetadata(ContentStoreService contentStoreService, Context context, String siteName,
+                                    String metadataPath, ItemCache itemCache) {
         try {
-            Document metadataDoc = contentStoreService.getItem(context, null, metadataPath,
-                                                               itemProcessor).getDescriptorDom();
+            Document metadataDoc = itemCache.getItem(metadataPath, itemProcessor).getDescriptorDom();
             if (metadataDoc != null) {
                 return metadataDoc;
             } else {
@@ -304,7 +801,7 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
             for (Node reference : references) {
                 String referenceValue = reference.getText();
                 if (StringUtils.isNotBlank(referenceValue) &&
-                    isMimeTypeSupported(mimeTypesMap, supportedMimeTypes, referenceValue)) {
+                    getPathClassifier().matches(referenceValue, SUPPORTED_MIME_TYPE)) {
                     binaryPaths.add(referenceValue);
                 }
             }
@@ -319,12 +816,15 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
                                             UpdateDetail updateDetail, UpdateStatus updateStatus) {
         try {
             // Check if the binary file is stored remotely
-            if (remoteFileResolver != null && isRemoteBinary(binaryPath)) {
+            if (remoteFileResolver != null && isRemoteBinary(classify(binaryPath, updateStatus))) {
                 logger.debug("Indexing remote file {}", binaryPath);
 
-                RemoteFile remoteFile = remoteFileResolver.resolve(binaryPath);
-                doUpdateContent(indexId, siteName, binaryPath, remoteFile.toResource(), metadata, updateDetail,
-                                updateStatus);
+                Resource resource = resolveRemoteBinary(binaryPath, updateStatus);
+                try {
+                    doUpdateContent(indexId, siteName, binaryPath, resource, metadata, updateDetail, updateStatus);
+                } finally {
+                    releaseRemoteBinary(resource, updateStatus);
+                }
             } else {
                 Content binaryContent = contentStoreService.findContent(context, binaryPath);
                 if (binaryContent == null) {
@@ -338,7 +838,45 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
         } catch (Exception e) {
             logger.error("Error when trying to send index update with metadata for binary file {}:{}", siteName,
                          binaryPath, e);
+
+            updateStatus.addFailedUpdate(binaryPath);
+        }
+    }
+
+    /**
+     * Updates the metadata of a binary file whose content hasn't changed. If {@link #partialMetadataUpdates} is
+     * enabled only the metadata fields are sent, otherwise (or if the binary can't be partially updated) the
+     * binary is indexed again with the new metadata. Remote binaries are always indexed again since there is no
+     * way to know if their content has changed.
+     */
+    protected void updateBinaryMetadata(String indexId, String siteName,
+                                        ContentStoreService contentStoreService, Context context,
+                                        String binaryPath, Map<String, Object> metadata,
+                                        UpdateDetail updateDetail, UpdateStatus updateStatus) {
+        if (partialMetadataUpdates && !isRemoteBinary(classify(binaryPath, updateStatus))) {
+            try {
+                if (doUpdateMetadata(indexId, siteName, binaryPath, metadata, updateDetail, updateStatus)) {
+                    logger.debug("Updated metadata for binary file {}:{}", siteName, binaryPath);
+                    return;
+                }
+            } catch (Exception e) {
+                logger.warn("Error updating metadata for binary file {}:{}, it will be indexed again", siteName,
+                            binaryPath, e);
+            }
         }
+        updateBinaryWithMetadata(indexId, siteName, contentStoreService, context, binaryPath, metadata, updateDetail,
+                                 updateStatus);
+    }
+
+    /**
+     * Sends only the metadata fields for an already indexed binary file, the fields from the previous metadata
+     * must be removed
+     * @return true if the binary was updated, false if it needs to be indexed again
+     */
+    protected boolean doUpdateMetadata(final String indexId, final String siteName, final String binaryPath,
+                                       final Map<String, Object> metadata, final UpdateDetail updateDetail,
+                                       final UpdateStatus updateStatus) {
+        return false;
     }
 
     protected abstract void doUpdateContent(final String indexId, final String siteName, final String binaryPath,
@@ -354,17 +892,21 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
                                 UpdateStatus updateStatus) {
         try {
             // Check if the binary file is stored remotely
-            if (remoteFileResolver != null && isRemoteBinary(binaryPath)) {
+            if (remoteFileResolver != null && isRemoteBinary(classify(binaryPath, updateStatus))) {
                 logger.info("Indexing remote file {}", binaryPath);
 
-                RemoteFile remoteFile = remoteFileResolver.resolve(binaryPath);
-
-                Map<String, Object> metadata = collectRemoteAssetMetadata(binaryPath);
-                doUpdateContent(indexId, siteName, binaryPath, remoteFile.toResource(), metadata, updateDetail, updateStatus);
+                Resource resource = resolveRemoteBinary(binaryPath, updateStatus);
+                try {
+                    Map<String, Object> metadata = collectRemoteAssetMetadata(binaryPath);
+                    doUpdateContent(indexId, siteName, binaryPath, resource, metadata, updateDetail, updateStatus);
+                } finally {
+                    releaseRemoteBinary(resource, updateStatus);
+                }
             } else {
                 Content binaryContent = contentStoreService.findContent(context, binaryPath);
                 if (binaryContent != null && binaryContent.getLength() > 0) {
-                    Map<String, Object> metadata = collectMetadata(binaryPath, contentStoreService, context);
+                    Map<String, Object> metadata = collectMetadata(binaryPath, contentStoreService, context,
+                        getItemCache(updateStatus, contentStoreService, context));
                     doUpdateContent(indexId, siteName, binaryPath, binaryContent, metadata, updateDetail,
                                     updateStatus);
                 } else {
@@ -373,6 +915,8 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
             }
         } catch (Exception e) {
             logger.error("Error when trying to send index update for binary file {}:{}", siteName, binaryPath, e);
+
+            updateStatus.addFailedUpdate(binaryPath);
         }
     }
 
@@ -453,10 +997,8 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
     }
 
     protected boolean shouldIncludeProperty(String name) {
-        return (CollectionUtils.isEmpty(includePropertyPatterns) ||
-                RegexUtils.matchesAny(name, includePropertyPatterns)) &&
-               (CollectionUtils.isEmpty(excludePropertyPatterns) ||
-                !RegexUtils.matchesAny(name, excludePropertyPatterns));
+        int classification = getPropertyClassifier().classify(name);
+        return is(classification, INCLUDED_PROPERTY) && !is(classification, EXCLUDED_PROPERTY);
     }
 
     public static class EmptyContent implements Content {
@@ -478,4 +1020,31 @@ public abstract class AbstractBinaryFileWithMetadataBatchIndexer
 
     }
 
+    /**
+     * A pending change to the binaries referenced by a metadata file
+     */
+    protected static class RelationshipUpdate {
+
+        protected final String metadataPath;
+        protected final Collection<String> previousBinaryPaths;
+        protected final Collection<String> binaryPaths;
+
+        public RelationshipUpdate(String metadataPath, Collection<String> previousBinaryPaths,
+                                  Collection<String> binaryPaths) {
+            this.metadataPath = metadataPath;
+            this.previousBinaryPaths = previousBinaryPaths;
+            this.binaryPaths = binaryPaths;
+        }
+
+        /**
+         * Indicates if any of the files involved in the change is in the given paths
+         */
+        public boolean isAffectedBy(Set<String> paths) {
+            return paths.contains(metadataPath) ||
+                   (previousBinaryPaths != null && previousBinaryPaths.stream().anyMatch(paths::contains)) ||
+                   (binaryPaths != null && binaryPaths.stream().anyMatch(paths::contains));
+        }
+
+    }
+
 }
@@ -19,12 +19,16 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.StringTokenizer;
 
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.batch.UpdateDetail;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.pipeline.IndexingTask;
 import org.craftercms.core.exception.CrafterException;
 import org.craftercms.core.exception.XmlException;
 import org.craftercms.core.processors.ItemProcessor;
@@ -33,7 +37,14 @@ import org.craftercms.core.service.Content;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
 import org.craftercms.core.service.Item;
+import org.dom4j.Attribute;
+import org.dom4j.CDATA;
+import org.dom4j.Comment;
 import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.ProcessingInstruction;
+import org.dom4j.Text;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
 import org.slf4j.Logger;
@@ -52,6 +63,12 @@ public abstract class AbstractXmlFileBatchIndexer extends AbstractBatchIndexer {
 
     protected ItemProcessor itemProcessor;
 
+    /**
+     * Indicates if the processed descriptors should be sent for indexing as they are, instead of serializing them to
+     * a string that has to be parsed again to build the documents
+     */
+    protected boolean indexDescriptorDom = false;
+
     public AbstractXmlFileBatchIndexer() {
         includePathPatterns = DEFAULT_INCLUDE_FILENAME_PATTERNS;
     }
@@ -64,6 +81,10 @@ public abstract class AbstractXmlFileBatchIndexer extends AbstractBatchIndexer {
         this.itemProcessor = new ItemProcessorPipeline(itemProcessors);
     }
 
+    public void setIndexDescriptorDom(boolean indexDescriptorDom) {
+        this.indexDescriptorDom = indexDescriptorDom;
+    }
+
     @Override
     protected void doSingleFileUpdate(String indexId, String siteName, ContentStoreService contentStoreService,
                                       Context context, String path, boolean delete,
@@ -71,24 +92,73 @@ public abstract class AbstractXmlFileBatchIndexer extends AbstractBatchIndexer {
                                       Map<String, Object> metadata) {
         if (delete) {
             doDelete(indexId, siteName, path, updateStatus);
+        } else if (indexDescriptorDom) {
+            Document document = processDom(siteName, contentStoreService, context, path,
+                                           getItemCache(updateStatus, contentStoreService, context));
+
+            doUpdate(indexId, siteName, path, document, updateDetail, updateStatus, metadata);
         } else {
-            String xml = processXml(siteName, contentStoreService, context, path);
+            String xml = processXml(siteName, contentStoreService, context, path,
+                                    getItemCache(updateStatus, contentStoreService, context));
 
             doUpdate(indexId, siteName, path, xml, updateDetail, updateStatus, metadata);
         }
     }
 
+    @Override
+    protected boolean doFetch(ContentStoreService contentStoreService, Context context, IndexingTask task)
+            throws Exception {
+        super.doFetch(contentStoreService, context, task);
+        if (!task.isDelete() && indexDescriptorDom) {
+            task.setSource(processDom(task.getSiteName(), contentStoreService, context, task.getPath(),
+                                      task.getItemCache()));
+        } else if (!task.isDelete()) {
+            task.setSource(processXml(task.getSiteName(), contentStoreService, context, task.getPath(),
+                                      task.getItemCache()));
+        }
+        return true;
+    }
+
+    @Override
+    protected void doSend(ContentStoreService contentStoreService, Context context, IndexingTask task,
+                          UpdateStatus updateStatus) {
+        if (task.isDelete()) {
+            doDelete(task.getIndexId(), task.getSiteName(), task.getPath(), updateStatus);
+        } else if (task.getSource() instanceof Document) {
+            doUpdate(task.getIndexId(), task.getSiteName(), task.getPath(), task.<Document>getSource(),
+                     task.getUpdateDetail(), updateStatus, task.getMetadata());
+        } else {
+            doUpdate(task.getIndexId(), task.getSiteName(), task.getPath(), task.<String>getSource(),
+                     task.getUpdateDetail(), updateStatus, task.getMetadata());
+        }
+    }
+
     protected abstract void doDelete(String indexId, String siteName, String path, UpdateStatus updateStatus);
 
     protected abstract void doUpdate(String indexId, String siteName, String path, String xml,
                                      UpdateDetail updateDetail, UpdateStatus updateStatus,
                                      Map<String, Object> metadata);
 
+    /**
+     * Updates the given document using the already processed descriptor. By default the descriptor is serialized
+     * and indexed the same way as when {@link #indexDescriptorDom} is false.
+     */
+    protected void doUpdate(String indexId, String siteName, String path, Document document,
+                            UpdateDetail updateDetail, UpdateStatus updateStatus, Map<String, Object> metadata) {
+        doUpdate(indexId, siteName, path, documentToString(document), updateDetail, updateStatus, metadata);
+    }
+
     protected String processXml(String siteName, ContentStoreService contentStoreService, Context context,
                                 String path) throws CrafterException {
+        return processXml(siteName, contentStoreService, context, path,
+                          new ItemCache(contentStoreService, context));
+    }
+
+    protected String processXml(String siteName, ContentStoreService contentStoreService, Context context,
+                                String path, ItemCache itemCache) throws CrafterException {
         logger.debug("Processing XML @ {}:{} before indexing", siteName, path);
 
-        Item item = contentStoreService.getItem(context, null, path, itemProcessor);
+        Item item = itemCache.getItem(path, itemProcessor);
         Document doc = item.getDescriptorDom();
 
         if (doc != null) {
@@ -102,6 +172,113 @@ public abstract class AbstractXmlFileBatchIndexer extends AbstractBatchIndexer {
         }
     }
 
+    /**
+     * Processes the descriptor of the given item, returning a copy of it with the text trimmed the same way it is
+     * when the descriptor is serialized by {@link #documentToString(Document)}. The copy is the only one made, it's
+     * handed over to the document builder which can modify it without affecting the item in the cache.
+     */
+    protected Document processDom(String siteName, ContentStoreService contentStoreService, Context context,
+                                  String path, ItemCache itemCache) throws CrafterException {
+        logger.debug("Processing XML @ {}:{} before indexing", siteName, path);
+
+        Item item = itemCache.getItem(path, itemProcessor);
+        Document doc = item.getDescriptorDom();
+
+        if (doc != null) {
+            Document copy = (Document) doc.clone();
+            copy.normalize();
+            trimText(copy.getRootElement());
+
+            logger.debug("XML @ {}:{} processed successfully", siteName, path);
+
+            return copy;
+        } else {
+            throw new XmlException("Item @ " + siteName + ":" + path + " doesn't seem to be an XML file");
+        }
+    }
+
+    /**
+     * Trims the text of the given element and its children exactly like {@link XMLWriter} does with the compact
+     * {@link OutputFormat}: adjacent text nodes are merged, split by the same whitespace characters and joined with
+     * single spaces, text nodes that are left empty are removed and elements with {@code xml:space="preserve"} are
+     * kept as they are. CDATA sections are never trimmed.
+     */
+    protected void trimText(Element element) {
+        trimText(element, false);
+    }
+
+    protected void trimText(Element element, boolean preserve) {
+        preserve = isSpacePreserved(element, preserve);
+
+        // Same as the last output node type of the writer being a text node
+        boolean afterText = false;
+        List<Text> textNodes = new ArrayList<>();
+        for (Node node : element.content().toArray(new Node[0])) {
+            if (node instanceof Text) {
+                textNodes.add((Text) node);
+                continue;
+            }
+            if (!preserve) {
+                afterText = trimText(element, textNodes, afterText);
+            }
+            textNodes.clear();
+
+            if (node instanceof Element) {
+                trimText((Element) node, preserve);
+                afterText = false;
+            } else if (node instanceof CDATA || node instanceof Comment || node instanceof ProcessingInstruction) {
+                afterText = false;
+            }
+        }
+        if (!preserve) {
+            trimText(element, textNodes, afterText);
+        }
+    }
+
+    /**
+     * Replaces the given adjacent text nodes with a single trimmed one
+     * @return true if a text node was kept
+     */
+    protected boolean trimText(Element element, List<Text> textNodes, boolean afterText) {
+        if (textNodes.isEmpty()) {
+            return afterText;
+        }
+
+        StringBuilder text = new StringBuilder();
+        textNodes.forEach(node -> text.append(node.getText()));
+        StringTokenizer tokenizer = new StringTokenizer(text.toString());
+        StringBuilder trimmed = new StringBuilder();
+        while (tokenizer.hasMoreTokens()) {
+            if (trimmed.length() > 0 || afterText) {
+                trimmed.append(' ');
+            }
+            trimmed.append(tokenizer.nextToken());
+        }
+
+        Text first = textNodes.get(0);
+        for (int i = 1; i < textNodes.size(); i++) {
+            element.remove(textNodes.get(i));
+        }
+        if (trimmed.length() == 0) {
+            element.remove(first);
+            return afterText;
+        }
+
+        first.setText(trimmed.toString());
+        return true;
+    }
+
+    /**
+     * Indicates if the whitespace of the given element should be kept, same as {@link XMLWriter} does
+     */
+    protected boolean isSpacePreserved(Element element, boolean preserve) {
+        Attribute space = element.attribute("space");
+        if (space != null) {
+            return "xml".equals(space.getNamespacePrefix()) && "preserve".equals(space.getText());
+        }
+        return preserve;
+    }
+
     protected String documentToString(Document document) {
         StringWriter stringWriter = new StringWriter();
         OutputFormat format = OutputFormat.createCompactFormat();
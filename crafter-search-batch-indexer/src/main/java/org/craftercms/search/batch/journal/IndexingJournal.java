@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.journal;
+
+import org.craftercms.search.batch.exception.BatchIndexingException;
+
+/**
+ * Keeps track of the files that have already been processed by a batch indexing run, so the run can be resumed
+ * if it's interrupted.
+ *
+ * @since 4.2.0
+ */
+public interface IndexingJournal {
+
+    /**
+     * Opens the journal for the given run, loading the files completed by any previous attempt
+     * @param runId the id of the run
+     * @return the journal of the run
+     * @throws BatchIndexingException if the journal can't be opened
+     */
+    Run open(String runId) throws BatchIndexingException;
+
+    /**
+     * The journal of a single run
+     */
+    interface Run extends AutoCloseable {
+
+        /**
+         * Returns the id of the run
+         */
+        String getId();
+
+        /**
+         * Returns the number of operations that were completed by previous attempts of the run
+         */
+        int getCompletedCount();
+
+        /**
+         * Indicates if the given operation was completed by a previous attempt of the run
+         * @param path the path of the file
+         * @param delete true for deletes, false for updates
+         */
+        boolean isCompleted(String path, boolean delete);
+
+        /**
+         * Records that the given operation has been completed
+         * @param path the path of the file
+         * @param delete true for deletes, false for updates
+         */
+        void markCompleted(String path, boolean delete);
+
+        /**
+         * Discards the journal because the whole run has been completed
+         */
+        void finish();
+
+        /**
+         * Releases the journal keeping all the records, so a future attempt can resume the run
+         */
+        @Override
+        void close();
+
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.craftercms.search.batch.exception.BatchIndexingException;
+import org.craftercms.search.batch.journal.IndexingJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link IndexingJournal} that uses an append-only file for each run. Each completed operation is
+ * written as a single line ({@code U <path>} or {@code D <path>}) and flushed right away, an incomplete last line
+ * (if the process died while writing it) is ignored when the journal is loaded.
+ *
+ * @since 4.2.0
+ */
+public class FileIndexingJournal implements IndexingJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIndexingJournal.class);
+
+    public static final String JOURNAL_EXTENSION = ".journal";
+
+    public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+    protected static final char UPDATE_MARKER = 'U';
+    protected static final char DELETE_MARKER = 'D';
+
+    /**
+     * The folder where the journals are stored
+     */
+    protected final File directory;
+
+    /**
+     * The time in milliseconds after which journals of abandoned runs are deleted
+     */
+    protected long maxAge = DEFAULT_MAX_AGE;
+
+    public FileIndexingJournal(File directory) {
+        this.directory = directory;
+    }
+
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public Run open(String runId) throws BatchIndexingException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new BatchIndexingException("Unable to create journal folder " + directory);
+        }
+
+        deleteExpiredJournals();
+
+        File file = new File(directory, DigestUtils.sha256Hex(runId) + JOURNAL_EXTENSION);
+        try {
+            FileRun run = new FileRun(runId, file);
+            if (run.getCompletedCount() > 0) {
+                logger.info("Resuming run {} with {} completed operations", runId, run.getCompletedCount());
+            }
+            return run;
+        } catch (IOException e) {
+            throw new BatchIndexingException("Error opening journal " + file + " for run " + runId, e);
+        }
+    }
+
+    protected void deleteExpiredJournals() {
+        File[] journals = directory.listFiles((dir, name) -> name.endsWith(JOURNAL_EXTENSION));
+        if (journals == null || maxAge <= 0) {
+            return;
+        }
+
+        long limit = System.currentTimeMillis() - maxAge;
+        for (File journal : journals) {
+            if (journal.lastModified() < limit) {
+                logger.debug("Deleting expired journal {}", journal);
+                try {
+                    Files.deleteIfExists(journal.toPath());
+                } catch (IOException e) {
+                    logger.warn("Unable to delete expired journal {}", journal, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Journal of a single run backed by a file
+     */
+    protected static class FileRun implements Run {
+
+        protected final String id;
+        protected final File file;
+        protected final Set<String> completedUpdates = ConcurrentHashMap.newKeySet();
+        protected final Set<String> completedDeletes = ConcurrentHashMap.newKeySet();
+        protected final int completedCount;
+        protected Writer writer;
+
+        public FileRun(String id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+
+            boolean incompleteLine = file.exists() && load();
+            this.completedCount = completedUpdates.size() + completedDeletes.size();
+            this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                                                  StandardOpenOption.APPEND);
+            if (incompleteLine) {
+                // Terminate the incomplete line so it doesn't get mixed with the new records
+                writer.write('\n');
+                writer.flush();
+            }
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public int getCompletedCount() {
+            return completedCount;
+        }
+
+        @Override
+        public boolean isCompleted(String path, boolean delete) {
+            return delete? completedDeletes.contains(path) : completedUpdates.contains(path);
+        }
+
+        @Override
+        public synchronized void markCompleted(String path, boolean delete) {
+            if (writer == null) {
+                logger.debug("Journal for run {} already closed, {} will not be recorded", id, path);
+                return;
+            }
+            try {
+                writer.write(delete? DELETE_MARKER : UPDATE_MARKER);
+                writer.write(' ');
+                writer.write(path);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                logger.warn("Error recording {} in journal for run {}", path, id, e);
+            }
+        }
+
+        @Override
+        public synchronized void finish() {
+            close();
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                logger.warn("Unable to delete journal {} for run {}", file, id, e);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing journal for run {}", id, e);
+                }
+                writer = null;
+            }
+        }
+
+        /**
+         * Loads the records from the file
+         * @return true if the last line of the file is incomplete
+         */
+        protected boolean load() throws IOException {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int start = 0;
+            int end;
+            // Only complete lines are loaded
+            while ((end = content.indexOf('\n', start)) >= 0) {
+                String line = content.substring(start, end);
+                if (line.length() > 2 && line.charAt(1) == ' ') {
+                    String path = line.substring(2);
+                    if (line.charAt(0) == UPDATE_MARKER) {
+                        completedUpdates.add(path);
+                    } else if (line.charAt(0) == DELETE_MARKER) {
+                        completedDeletes.add(path);
+                    }
+                }
+                start = end + 1;
+            }
+            return start < content.length();
+        }
+
+    }
+
+}
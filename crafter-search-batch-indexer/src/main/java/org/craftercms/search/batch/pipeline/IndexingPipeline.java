@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Processes items through a sequence of stages. Each stage has its own workers and a bounded queue, when the queue
+ * of a stage is full the workers of the previous stage (or the caller of {@link #submit(Object)} for the first
+ * stage) block until there is space, so a slow stage limits the rate of all the stages before it.
+ *
+ * <p>Stages must be added before submitting any item, and the pipeline must be closed to release the workers.</p>
+ *
+ * @param <T> the type of the items to process
+ * @since 4.2.0
+ */
+public class IndexingPipeline<T> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexingPipeline.class);
+
+    /**
+     * The name of the pipeline, used for the worker threads
+     */
+    protected final String name;
+
+    /**
+     * Called when any of the stages fails to process an item
+     */
+    protected final BiConsumer<T, Exception> errorHandler;
+
+    protected final List<Stage<T>> stages = new ArrayList<>();
+
+    protected final Lock lock = new ReentrantLock();
+
+    protected final Condition completed = lock.newCondition();
+
+    protected long pending;
+
+    protected boolean started;
+
+    public IndexingPipeline(String name, BiConsumer<T, Exception> errorHandler) {
+        this.name = name;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Adds a new stage at the end of the pipeline
+     * @param stageName the name of the stage
+     * @param workers the number of threads for the stage
+     * @param queueCapacity the maximum number of items waiting to be processed by the stage
+     * @param processor the processor for the stage
+     * @return this pipeline
+     */
+    public IndexingPipeline<T> addStage(String stageName, int workers, int queueCapacity,
+                                        StageProcessor<T> processor) {
+        lock.lock();
+        try {
+            if (started) {
+                throw new IllegalStateException("Stages can't be added after items have been submitted");
+            }
+
+            stages.add(new Stage<>(name + "-" + stageName, Math.max(workers, 1), Math.max(queueCapacity, 1),
+                                   processor));
+        } finally {
+            lock.unlock();
+        }
+
+        return this;
+    }
+
+    /**
+     * Submits an item to the first stage, blocking while the queue of the stage is full
+     * @param item the item to process
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void submit(T item) throws InterruptedException {
+        lock.lock();
+        try {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("The pipeline doesn't have any stage");
+            }
+
+            started = true;
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            execute(0, item);
+        } catch (InterruptedException | RuntimeException e) {
+            complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all the submitted items have been processed by all stages
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending > 0) {
+                completed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the metrics of all the stages in order
+     */
+    public List<StageMetrics> getMetrics() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableList(stages.stream().map(stage -> stage.metrics).collect(toList()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the workers of all stages, any item that has not been processed yet will be discarded
+     */
+    @Override
+    public void close() {
+        stages.forEach(stage -> stage.executor.shutdownNow());
+    }
+
+    protected void execute(int index, T item) throws InterruptedException {
+        Stage<T> stage = stages.get(index);
+        try {
+            stage.executor.execute(() -> run(index, item));
+        } catch (RejectedExecutionException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    protected void run(int index, T item) {
+        Stage<T> stage = stages.get(index);
+        long start = System.nanoTime();
+        boolean next;
+
+        try {
+            next = stage.processor.process(item);
+            stage.metrics.recordProcessed(System.nanoTime() - start);
+        } catch (Exception e) {
+            stage.metrics.recordFailed(System.nanoTime() - start);
+            handleError(item, e);
+            complete();
+            return;
+        }
+
+        if (next && index + 1 < stages.size()) {
+            try {
+                execute(index + 1, item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handleError(item, e);
+                complete();
+            } catch (Exception e) {
+                handleError(item, e);
+                complete();
+            }
+        } else {
+            complete();
+        }
+    }
+
+    protected void handleError(T item, Exception e) {
+        try {
+            errorHandler.accept(item, e);
+        } catch (Exception ex) {
+            logger.error("Error handling failure of item {}", item, ex);
+        }
+    }
+
+    protected void complete() {
+        lock.lock();
+        try {
+            if (--pending == 0) {
+                completed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Holds the workers and metrics of a single stage
+     */
+    protected static class Stage<T> {
+
+        protected final StageProcessor<T> processor;
+        protected final ThreadPoolExecutor executor;
+        protected final StageMetrics metrics;
+
+        public Stage(String name, int workers, int queueCapacity, StageProcessor<T> processor) {
+            this.processor = processor;
+            this.metrics = new StageMetrics(name, workers, queueCapacity);
+            this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                                                   new ArrayBlockingQueue<>(queueCapacity),
+                                                   new CustomizableThreadFactory(name + "-"),
+                                                   new BlockingPolicy());
+            this.executor.prestartAllCoreThreads();
+            this.metrics.setExecutor(executor);
+        }
+
+    }
+
+    /**
+     * Waits for space in the queue instead of rejecting the task, this is what propagates the backpressure
+     */
+    protected static class BlockingPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The stage has already been stopped");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                throw new RejectedExecutionException("Interrupted while waiting for space in the queue", e);
+            }
+        }
+
+    }
+
+}
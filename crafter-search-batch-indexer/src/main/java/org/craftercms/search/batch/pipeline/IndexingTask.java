@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.pipeline;
+
+import java.util.Map;
+
+import org.craftercms.search.batch.ItemCache;
+import org.craftercms.search.batch.UpdateDetail;
+
+/**
+ * Holds the state of a single file while it goes through the stages of an {@link IndexingPipeline}.
+ *
+ * @since 4.2.0
+ */
+public class IndexingTask {
+
+    protected final String siteName;
+    protected final String path;
+    protected final boolean delete;
+    protected final UpdateDetail updateDetail;
+
+    /**
+     * The index to update, stages can change it (for example to use a locale specific index)
+     */
+    protected String indexId;
+
+    /**
+     * The metadata collected for the file
+     */
+    protected Map<String, Object> metadata;
+
+    /**
+     * The content loaded by the fetch stage (the processed XML, the binary content, etc)
+     */
+    protected Object source;
+
+    /**
+     * The document generated by the build stage
+     */
+    protected Map<String, Object> document;
+
+    /**
+     * The cache for the items of the current batch
+     */
+    protected ItemCache itemCache;
+
+    public IndexingTask(String indexId, String siteName, String path, boolean delete, UpdateDetail updateDetail) {
+        this.indexId = indexId;
+        this.siteName = siteName;
+        this.path = path;
+        this.delete = delete;
+        this.updateDetail = updateDetail;
+    }
+
+    public String getIndexId() {
+        return indexId;
+    }
+
+    public void setIndexId(String indexId) {
+        this.indexId = indexId;
+    }
+
+    public String getSiteName() {
+        return siteName;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isDelete() {
+        return delete;
+    }
+
+    public UpdateDetail getUpdateDetail() {
+        return updateDetail;
+    }
+
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(Map<String, Object> metadata) {
+        this.metadata = metadata;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getSource() {
+        return (T) source;
+    }
+
+    public void setSource(Object source) {
+        this.source = source;
+    }
+
+    public Map<String, Object> getDocument() {
+        return document;
+    }
+
+    public void setDocument(Map<String, Object> document) {
+        this.document = document;
+    }
+
+    public ItemCache getItemCache() {
+        return itemCache;
+    }
+
+    public void setItemCache(ItemCache itemCache) {
+        this.itemCache = itemCache;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexingTask{" + "indexId='" + indexId + '\'' + ", siteName='" + siteName + '\'' + ", path='" +
+               path + '\'' + ", delete=" + delete + '}';
+    }
+
+}
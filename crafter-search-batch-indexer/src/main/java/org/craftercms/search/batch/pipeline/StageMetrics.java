@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.pipeline;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Holds the metrics of a single stage of an {@link IndexingPipeline}. The queue depth and active workers are read
+ * from the stage when requested, the rest of the values are accumulated since the pipeline was created.
+ *
+ * @since 4.2.0
+ */
+public class StageMetrics {
+
+    protected final String name;
+    protected final int workers;
+    protected final int queueCapacity;
+    protected final long startTime;
+    protected final AtomicLong processed = new AtomicLong();
+    protected final AtomicLong failed = new AtomicLong();
+    protected final AtomicLong busyNanos = new AtomicLong();
+    protected volatile ThreadPoolExecutor executor;
+
+    public StageMetrics(String name, int workers, int queueCapacity) {
+        this.name = name;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.startTime = System.nanoTime();
+    }
+
+    @JsonProperty("name")
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty("workers")
+    public int getWorkers() {
+        return workers;
+    }
+
+    @JsonProperty("queue_capacity")
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the number of items waiting in the queue of the stage
+     */
+    @JsonProperty("queue_depth")
+    public int getQueueDepth() {
+        BlockingQueue<Runnable> queue = executor != null? executor.getQueue() : null;
+        return queue != null? queue.size() : 0;
+    }
+
+    /**
+     * Returns the number of workers currently processing an item
+     */
+    @JsonProperty("active_workers")
+    public int getActiveWorkers() {
+        return executor != null? executor.getActiveCount() : 0;
+    }
+
+    @JsonProperty("processed")
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    @JsonProperty("failed")
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of items processed per second since the pipeline was created
+     */
+    @JsonProperty("throughput")
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed > 0? (processed.get() + failed.get()) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+
+    /**
+     * Returns the average time in milliseconds spent processing a single item
+     */
+    @JsonProperty("average_time")
+    public double getAverageTime() {
+        long count = processed.get() + failed.get();
+        return count > 0? busyNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1) / count : 0;
+    }
+
+    protected void setExecutor(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    protected void recordProcessed(long nanos) {
+        processed.incrementAndGet();
+        busyNanos.addAndGet(nanos);
+    }
+
+    protected void recordFailed(long nanos) {
+        failed.incrementAndGet();
+        busyNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{workers=%d, queueDepth=%d/%d, processed=%d, failed=%d, throughput=%.2f/s, " +
+                             "averageTime=%.2fms}", name, workers, getQueueDepth(), queueCapacity, getProcessed(),
+                             getFailed(), getThroughput(), getAverageTime());
+    }
+
+}
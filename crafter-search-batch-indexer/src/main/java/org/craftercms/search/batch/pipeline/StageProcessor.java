@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.pipeline;
+
+/**
+ * Performs the work of a single stage of an {@link IndexingPipeline}.
+ *
+ * @param <T> the type of the items processed by the pipeline
+ * @since 4.2.0
+ */
+@FunctionalInterface
+public interface StageProcessor<T> {
+
+    /**
+     * Processes the given item
+     * @param item the item to process
+     * @return true if the item should continue to the next stage, false if it has been completely processed
+     * @throws Exception if there is any error processing the item, the item will not continue to the next stages
+     */
+    boolean process(T item) throws Exception;
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.relationship;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.craftercms.search.batch.exception.BatchIndexingException;
+
+/**
+ * Keeps the associations between metadata files and the binary files they reference, so indexers can find them
+ * without querying the search index. The associations of an index are only used after the store has been
+ * initialized for it with {@link #rebuild(String, Map)}.
+ *
+ * @since 4.2.0
+ */
+public interface RelationshipStore {
+
+    /**
+     * Indicates if the associations for the given index have been loaded
+     * @param indexId the id of the index
+     * @return true if the store can answer lookups for the index
+     */
+    boolean isInitialized(String indexId) throws BatchIndexingException;
+
+    /**
+     * Returns the binary files referenced by the given metadata file
+     * @param indexId the id of the index
+     * @param metadataPath the path of the metadata file
+     * @return the paths of the binary files, empty if there are none
+     */
+    List<String> getBinaryPaths(String indexId, String metadataPath) throws BatchIndexingException;
+
+    /**
+     * Returns the metadata file that references the given binary file
+     * @param indexId the id of the index
+     * @param binaryPath the path of the binary file
+     * @return the path of the metadata file, null if there is none
+     */
+    String getMetadataPath(String indexId, String binaryPath) throws BatchIndexingException;
+
+    /**
+     * Replaces the binary files referenced by the given metadata file
+     * @param indexId the id of the index
+     * @param metadataPath the path of the metadata file
+     * @param binaryPaths the paths of the binary files
+     */
+    void setBinaryPaths(String indexId, String metadataPath, Collection<String> binaryPaths)
+            throws BatchIndexingException;
+
+    /**
+     * Removes all the associations of the given metadata file
+     * @param indexId the id of the index
+     * @param metadataPath the path of the metadata file
+     */
+    void removeMetadataPath(String indexId, String metadataPath) throws BatchIndexingException;
+
+    /**
+     * Removes all the associations of the given binary file
+     * @param indexId the id of the index
+     * @param binaryPath the path of the binary file
+     */
+    void removeBinaryPath(String indexId, String binaryPath) throws BatchIndexingException;
+
+    /**
+     * Replaces all the associations for the given index and marks it as initialized
+     * @param indexId the id of the index
+     * @param binaryPathsByMetadataPath the binary paths referenced by each metadata file
+     */
+    void rebuild(String indexId, Map<String, ? extends Collection<String>> binaryPathsByMetadataPath)
+            throws BatchIndexingException;
+
+    /**
+     * Removes all the associations for the given index, it will not be used until it's rebuilt
+     * @param indexId the id of the index
+     */
+    void clear(String indexId) throws BatchIndexingException;
+
+}
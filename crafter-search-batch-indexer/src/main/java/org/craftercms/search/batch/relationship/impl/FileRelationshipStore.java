@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.relationship.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.craftercms.search.batch.exception.BatchIndexingException;
+import org.craftercms.search.batch.relationship.RelationshipStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link RelationshipStore} that keeps the associations of each index in memory, backed by an
+ * append-only file. Each change is written as a single line ({@code S <metadata>\t<binary>...} to set the binaries
+ * of a metadata file, {@code R <metadata>} or {@code B <binary>} to remove the associations of a file) and the file
+ * is compacted when it has too many superseded records. An incomplete last line is ignored when the file is loaded.
+ *
+ * @since 4.2.0
+ */
+public class FileRelationshipStore implements RelationshipStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileRelationshipStore.class);
+
+    public static final String STORE_EXTENSION = ".relationships";
+
+    public static final int DEFAULT_MIN_COMPACTION_RECORDS = 1000;
+
+    protected static final char SET_MARKER = 'S';
+    protected static final char REMOVE_METADATA_MARKER = 'R';
+    protected static final char REMOVE_BINARY_MARKER = 'B';
+    protected static final char SEPARATOR = '\t';
+
+    /**
+     * The folder where the files are stored
+     */
+    protected final File directory;
+
+    /**
+     * The minimum number of records before the file of an index is compacted
+     */
+    protected int minCompactionRecords = DEFAULT_MIN_COMPACTION_RECORDS;
+
+    /**
+     * The loaded associations by index
+     */
+    protected final Map<String, IndexRelationships> indexes = new ConcurrentHashMap<>();
+
+    public FileRelationshipStore(File directory) {
+        this.directory = directory;
+    }
+
+    public void setMinCompactionRecords(int minCompactionRecords) {
+        this.minCompactionRecords = minCompactionRecords;
+    }
+
+    @Override
+    public boolean isInitialized(String indexId) throws BatchIndexingException {
+        return getIndex(indexId).initialized;
+    }
+
+    @Override
+    public List<String> getBinaryPaths(String indexId, String metadataPath) throws BatchIndexingException {
+        return getIndex(indexId).getBinaryPaths(metadataPath);
+    }
+
+    @Override
+    public String getMetadataPath(String indexId, String binaryPath) throws BatchIndexingException {
+        return getIndex(indexId).getMetadataPath(binaryPath);
+    }
+
+    @Override
+    public void setBinaryPaths(String indexId, String metadataPath, Collection<String> binaryPaths)
+            throws BatchIndexingException {
+        getIndex(indexId).setBinaryPaths(metadataPath, binaryPaths);
+    }
+
+    @Override
+    public void removeMetadataPath(String indexId, String metadataPath) throws BatchIndexingException {
+        getIndex(indexId).removeMetadataPath(metadataPath);
+    }
+
+    @Override
+    public void removeBinaryPath(String indexId, String binaryPath) throws BatchIndexingException {
+        getIndex(indexId).removeBinaryPath(binaryPath);
+    }
+
+    @Override
+    public void rebuild(String indexId, Map<String, ? extends Collection<String>> binaryPathsByMetadataPath)
+            throws BatchIndexingException {
+        getIndex(indexId).rebuild(binaryPathsByMetadataPath);
+    }
+
+    @Override
+    public void clear(String indexId) throws BatchIndexingException {
+        IndexRelationships index = indexes.remove(indexId);
+        if (index != null) {
+            index.clear();
+        } else {
+            try {
+                Files.deleteIfExists(getFile(indexId).toPath());
+            } catch (IOException e) {
+                throw new BatchIndexingException("Error removing relationships for index " + indexId, e);
+            }
+        }
+        logger.info("Cleared relationship store for index {}", indexId);
+    }
+
+    protected File getFile(String indexId) {
+        return new File(directory, DigestUtils.sha256Hex(indexId) + STORE_EXTENSION);
+    }
+
+    protected IndexRelationships getIndex(String indexId) throws BatchIndexingException {
+        return indexes.computeIfAbsent(indexId, key -> {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new BatchIndexingException("Unable to create relationship store folder " + directory);
+            }
+            File file = getFile(key);
+            try {
+                return new IndexRelationships(key, file);
+            } catch (IOException e) {
+                throw new BatchIndexingException("Error loading relationships for index " + key + " from " + file,
+                                                 e);
+            }
+        });
+    }
+
+    /**
+     * Associations of a single index backed by a file
+     */
+    protected class IndexRelationships {
+
+        protected final String indexId;
+        protected final File file;
+        protected final Map<String, Set<String>> binaryPathsByMetadataPath = new HashMap<>();
+        protected final Map<String, Set<String>> metadataPathsByBinaryPath = new HashMap<>();
+        protected boolean initialized;
+        protected int records;
+        protected Writer writer;
+
+        public IndexRelationships(String indexId, File file) throws IOException {
+            this.indexId = indexId;
+            this.file = file;
+
+            if (file.exists()) {
+                initialized = true;
+                if (load()) {
+                    // Drop the incomplete line so it doesn't get mixed with the new records
+                    compact();
+                }
+                logger.info("Loaded {} metadata associations for index {}", binaryPathsByMetadataPath.size(),
+                            indexId);
+            }
+        }
+
+        public synchronized List<String> getBinaryPaths(String metadataPath) {
+            Set<String> binaryPaths = binaryPathsByMetadataPath.get(metadataPath);
+            return binaryPaths != null? new ArrayList<>(binaryPaths) : Collections.emptyList();
+        }
+
+        public synchronized String getMetadataPath(String binaryPath) {
+            Set<String> metadataPaths = metadataPathsByBinaryPath.get(binaryPath);
+            return metadataPaths != null && !metadataPaths.isEmpty()? metadataPaths.iterator().next() : null;
+        }
+
+        public synchronized void setBinaryPaths(String metadataPath, Collection<String> binaryPaths) {
+            if (!initialized) {
+                return;
+            }
+            doSetBinaryPaths(metadataPath, binaryPaths);
+
+            StringBuilder record = new StringBuilder().append(SET_MARKER).append(' ').append(metadataPath);
+            binaryPaths.forEach(binaryPath -> record.append(SEPARATOR).append(binaryPath));
+            append(record.toString());
+        }
+
+        public synchronized void removeMetadataPath(String metadataPath) {
+            if (!initialized || !binaryPathsByMetadataPath.containsKey(metadataPath)) {
+                return;
+            }
+            doSetBinaryPaths(metadataPath, Collections.emptyList());
+            append(REMOVE_METADATA_MARKER + " " + metadataPath);
+        }
+
+        public synchronized void removeBinaryPath(String binaryPath) {
+            if (!initialized || !metadataPathsByBinaryPath.containsKey(binaryPath)) {
+                return;
+            }
+            doRemoveBinaryPath(binaryPath);
+            append(REMOVE_BINARY_MARKER + " " + binaryPath);
+        }
+
+        public synchronized void rebuild(Map<String, ? extends Collection<String>> associations) {
+            closeWriter();
+            binaryPathsByMetadataPath.clear();
+            metadataPathsByBinaryPath.clear();
+            associations.forEach(this::doSetBinaryPaths);
+            initialized = true;
+            compact();
+
+            logger.info("Rebuilt relationship store for index {} with {} metadata files", indexId,
+                        binaryPathsByMetadataPath.size());
+        }
+
+        public synchronized void clear() {
+            closeWriter();
+            binaryPathsByMetadataPath.clear();
+            metadataPathsByBinaryPath.clear();
+            initialized = false;
+            records = 0;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                throw new BatchIndexingException("Error removing relationships file " + file, e);
+            }
+        }
+
+        protected void doSetBinaryPaths(String metadataPath, Collection<String> binaryPaths) {
+            Set<String> previousPaths = binaryPathsByMetadataPath.remove(metadataPath);
+            if (previousPaths != null) {
+                for (String binaryPath : previousPaths) {
+                    Set<String> metadataPaths = metadataPathsByBinaryPath.get(binaryPath);
+                    if (metadataPaths != null) {
+                        metadataPaths.remove(metadataPath);
+                        if (metadataPaths.isEmpty()) {
+                            metadataPathsByBinaryPath.remove(binaryPath);
+                        }
+                    }
+                }
+            }
+            if (binaryPaths != null && !binaryPaths.isEmpty()) {
+                binaryPathsByMetadataPath.put(metadataPath, new LinkedHashSet<>(binaryPaths));
+                for (String binaryPath : binaryPaths) {
+                    metadataPathsByBinaryPath.computeIfAbsent(binaryPath, key -> new LinkedHashSet<>())
+                                             .add(metadataPath);
+                }
+            }
+        }
+
+        protected void doRemoveBinaryPath(String binaryPath) {
+            Set<String> metadataPaths = metadataPathsByBinaryPath.remove(binaryPath);
+            if (metadataPaths != null) {
+                for (String metadataPath : metadataPaths) {
+                    Set<String> binaryPaths = binaryPathsByMetadataPath.get(metadataPath);
+                    if (binaryPaths != null) {
+                        binaryPaths.remove(binaryPath);
+                        if (binaryPaths.isEmpty()) {
+                            binaryPathsByMetadataPath.remove(metadataPath);
+                        }
+                    }
+                }
+            }
+        }
+
+        protected void append(String record) {
+            try {
+                if (writer == null) {
+                    writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                                                     StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                writer.write(record);
+                writer.write('\n');
+                writer.flush();
+                records++;
+            } catch (IOException e) {
+                logger.warn("Error recording relationship change for index {}", indexId, e);
+            }
+
+            if (records > minCompactionRecords && records > binaryPathsByMetadataPath.size() * 2) {
+                try {
+                    compact();
+                } catch (BatchIndexingException e) {
+                    logger.warn("Error compacting relationships for index {}", indexId, e);
+                }
+            }
+        }
+
+        /**
+         * Rewrites the file with only the current associations
+         */
+        protected void compact() {
+            closeWriter();
+
+            File tmp = new File(file.getAbsolutePath() + ".tmp");
+            try (Writer tmpWriter = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Set<String>> entry : binaryPathsByMetadataPath.entrySet()) {
+                    tmpWriter.write(SET_MARKER);
+                    tmpWriter.write(' ');
+                    tmpWriter.write(entry.getKey());
+                    for (String binaryPath : entry.getValue()) {
+                        tmpWriter.write(SEPARATOR);
+                        tmpWriter.write(binaryPath);
+                    }
+                    tmpWriter.write('\n');
+                }
+            } catch (IOException e) {
+                throw new BatchIndexingException("Error writing relationships for index " + indexId + " to " + tmp,
+                                                 e);
+            }
+
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new BatchIndexingException("Error replacing relationships file " + file, e);
+            }
+            records = binaryPathsByMetadataPath.size();
+        }
+
+        protected void closeWriter() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing relationships file {}", file, e);
+                }
+                writer = null;
+            }
+        }
+
+        /**
+         * Loads the records from the file
+         * @return true if the last line of the file is incomplete
+         */
+        protected boolean load() throws IOException {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int start = 0;
+            int end;
+            // Only complete lines are loaded
+            while ((end = content.indexOf('\n', start)) >= 0) {
+                String line = content.substring(start, end);
+                if (line.length() > 2 && line.charAt(1) == ' ') {
+                    String[] values = line.substring(2).split(String.valueOf(SEPARATOR));
+                    switch (line.charAt(0)) {
+                        case SET_MARKER:
+                            List<String> binaryPaths = new ArrayList<>(values.length - 1);
+                            Collections.addAll(binaryPaths, values);
+                            binaryPaths.remove(0);
+                            doSetBinaryPaths(values[0], binaryPaths);
+                            break;
+                        case REMOVE_METADATA_MARKER:
+                            doSetBinaryPaths(values[0], Collections.emptyList());
+                            break;
+                        case REMOVE_BINARY_MARKER:
+                            doRemoveBinaryPath(values[0]);
+                            break;
+                        default:
+                            break;
+                    }
+                    records++;
+                }
+                start = end + 1;
+            }
+            return start < content.length();
+        }
+
+    }
+
+}
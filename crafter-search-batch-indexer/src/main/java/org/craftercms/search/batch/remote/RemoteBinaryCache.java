@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.craftercms.commons.file.stores.RemoteFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Keeps local copies of remote binary files, so assets that haven't changed are not downloaded again on every
+ * reindex. Entries are keyed by the remote path and its version (the last modified date reported by the remote
+ * store), a new version of a file creates a new entry and the old one is eventually evicted. Once the size of all
+ * entries exceeds {@link #maxSize} the least recently used ones are removed.
+ *
+ * @since 4.2.0
+ */
+public class RemoteBinaryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteBinaryCache.class);
+
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+    public static final String FILE_EXTENSION = ".bin";
+
+    /**
+     * The folder where the entries are stored
+     */
+    protected final File directory;
+
+    /**
+     * The maximum size in bytes of all the entries, it should be large enough to hold all the binaries prefetched
+     * at the same time
+     */
+    protected long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * The size of each entry, in access order
+     */
+    protected Map<String, Long> entries;
+
+    protected long totalSize;
+
+    public RemoteBinaryCache(File directory) {
+        this.directory = directory;
+    }
+
+    public void setMaxSize(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Returns a local copy of the given remote file, downloading it only if there is no entry for its current version
+     * @param path the path of the remote file
+     * @param remoteFile the resolved remote file
+     * @return the local copy, or the remote resource if the version of the file is unknown
+     * @throws IOException if there is any error downloading the file
+     */
+    public Resource get(String path, RemoteFile remoteFile) throws IOException {
+        Resource resource = remoteFile.toResource();
+        String version = getVersion(resource);
+        if (version == null) {
+            logger.debug("Unable to find the version of remote file {}, it will not be cached", path);
+            return resource;
+        }
+
+        String key = DigestUtils.sha256Hex(path + '\n' + version);
+        File file = getFile(key);
+        if (touch(key, file)) {
+            logger.debug("Using cached copy of remote file {}", path);
+            return new FileSystemResource(file);
+        }
+
+        logger.debug("Downloading remote file {}", path);
+        File tempFile = Files.createTempFile(directory.toPath(), key, ".tmp").toFile();
+        try {
+            try (InputStream in = resource.getInputStream()) {
+                Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        add(key, file);
+
+        return new FileSystemResource(file);
+    }
+
+    /**
+     * Returns the version of the remote resource used as part of the key, null if it's not known
+     */
+    protected String getVersion(Resource resource) {
+        try {
+            long lastModified = resource.lastModified();
+            return lastModified > 0? Long.toString(lastModified) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Marks the entry as recently used
+     * @return true if the entry exists
+     */
+    protected synchronized boolean touch(String key, File file) {
+        loadEntries();
+        if (entries.get(key) == null) {
+            return false;
+        }
+        if (!file.exists()) {
+            remove(key);
+            return false;
+        }
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            logger.debug("Unable to update last modified date of {}", file);
+        }
+        return true;
+    }
+
+    protected synchronized void add(String key, File file) {
+        loadEntries();
+        Long previousSize = entries.put(key, file.length());
+        totalSize += file.length() - (previousSize != null? previousSize : 0);
+        evict();
+    }
+
+    /**
+     * Removes the least recently used entries until the total size is under the limit
+     */
+    protected void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.getValue();
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    protected void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size;
+        }
+        deleteFile(key);
+    }
+
+    protected void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(getFile(key).toPath());
+        } catch (IOException e) {
+            logger.warn("Unable to delete cache entry {}", getFile(key), e);
+        }
+    }
+
+    /**
+     * Loads the existing entries from the folder, using their last modified date as the access order
+     */
+    protected void loadEntries() {
+        if (entries != null) {
+            return;
+        }
+
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        totalSize = 0;
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.error("Unable to create cache folder {}", directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                String name = file.getName();
+                entries.put(name.substring(0, name.length() - FILE_EXTENSION.length()), file.length());
+                totalSize += file.length();
+            }
+        }
+        logger.info("Loaded {} entries ({} bytes) from cache folder {}", entries.size(), totalSize, directory);
+
+        evict();
+    }
+
+    protected File getFile(String key) {
+        return new File(directory, key + FILE_EXTENSION);
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.craftercms.commons.file.stores.RemoteFile;
+import org.craftercms.commons.file.stores.RemoteFileResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Resolves and downloads remote binary files ahead of time during a single batch, so the indexer doesn't wait for
+ * each download. Files are downloaded to the {@link RemoteBinaryCache} if there is one, otherwise to a temporary
+ * spool folder that is removed when the prefetcher is closed. At most {@code maxPrefetched} files are downloaded
+ * ahead of the ones being indexed. Instances are not thread safe, they should be used by a single indexing thread.
+ *
+ * @since 4.2.0
+ */
+public class RemoteBinaryPrefetcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteBinaryPrefetcher.class);
+
+    /**
+     * The resolver for the remote files
+     */
+    protected final RemoteFileResolver remoteFileResolver;
+
+    /**
+     * The cache for the downloaded files (optional)
+     */
+    protected final RemoteBinaryCache cache;
+
+    /**
+     * The maximum number of files downloaded ahead of time
+     */
+    protected final int maxPrefetched;
+
+    protected final ExecutorService executor;
+
+    /**
+     * The paths waiting to be downloaded, in order
+     */
+    protected final Deque<String> pendingPaths = new ArrayDeque<>();
+
+    /**
+     * The downloads already started, by path
+     */
+    protected final Map<String, Future<Resource>> downloads = new HashMap<>();
+
+    /**
+     * The files in the spool folder that have not been released
+     */
+    protected final Set<File> spooledFiles = new HashSet<>();
+
+    protected File spoolDirectory;
+
+    public RemoteBinaryPrefetcher(RemoteFileResolver remoteFileResolver, RemoteBinaryCache cache, int threads,
+                                  int maxPrefetched) {
+        this.remoteFileResolver = remoteFileResolver;
+        this.cache = cache;
+        this.maxPrefetched = maxPrefetched;
+        this.executor = Executors.newFixedThreadPool(threads,
+                new CustomizableThreadFactory(getClass().getSimpleName() + "-"));
+    }
+
+    /**
+     * Adds the given paths to the files that will be downloaded ahead of time
+     * @param paths the paths of the remote files, in the order they will be indexed
+     */
+    public void prefetch(Collection<String> paths) {
+        for (String path : paths) {
+            if (!downloads.containsKey(path) && !pendingPaths.contains(path)) {
+                pendingPaths.add(path);
+            }
+        }
+        startDownloads();
+    }
+
+    /**
+     * Returns the content of the given remote file, waiting for its download if it was prefetched or downloading it
+     * right away if it wasn't
+     * @param path the path of the remote file
+     * @return the downloaded file
+     * @throws IOException if there is any error downloading the file
+     */
+    public Resource get(String path) throws IOException {
+        Future<Resource> download = downloads.remove(path);
+        pendingPaths.remove(path);
+        startDownloads();
+
+        if (download == null) {
+            logger.debug("Remote file {} was not prefetched, downloading it now", path);
+            return download(path);
+        }
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading remote file " + path, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error downloading remote file " + path, e.getCause());
+        }
+    }
+
+    /**
+     * Removes the temporary copy of a file returned by {@link #get(String)} once it has been indexed
+     */
+    public void release(Resource resource) {
+        if (resource instanceof FileSystemResource) {
+            File file = ((FileSystemResource) resource).getFile();
+            boolean spooled;
+            synchronized (spooledFiles) {
+                spooled = spooledFiles.remove(file);
+            }
+            if (spooled) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    protected void startDownloads() {
+        while (downloads.size() < maxPrefetched && !pendingPaths.isEmpty()) {
+            String path = pendingPaths.poll();
+            logger.debug("Prefetching remote file {}", path);
+            downloads.put(path, executor.submit(() -> download(path)));
+        }
+    }
+
+    protected Resource download(String path) throws IOException {
+        RemoteFile remoteFile = remoteFileResolver.resolve(path);
+        if (cache != null) {
+            return cache.get(path, remoteFile);
+        }
+
+        File file = Files.createTempFile(getSpoolDirectory().toPath(), "remote-", ".bin").toFile();
+        synchronized (spooledFiles) {
+            spooledFiles.add(file);
+        }
+        try (InputStream in = remoteFile.toResource().getInputStream()) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new FileSystemResource(file);
+    }
+
+    protected synchronized File getSpoolDirectory() throws IOException {
+        if (spoolDirectory == null) {
+            spoolDirectory = Files.createTempDirectory("remote-binaries-").toFile();
+        }
+        return spoolDirectory;
+    }
+
+    /**
+     * Cancels the pending downloads and removes the spool folder
+     */
+    @Override
+    public void close() {
+        pendingPaths.clear();
+        downloads.values().forEach(download -> download.cancel(true));
+        downloads.clear();
+        executor.shutdownNow();
+
+        synchronized (this) {
+            if (spoolDirectory != null) {
+                FileUtils.deleteQuietly(spoolDirectory);
+                spoolDirectory = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import jakarta.activation.FileTypeMap;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.util.MimeType;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Classifies paths using several lists of patterns and mime type rules that are compiled only once. Each rule is
+ * identified by a flag (a single bit) and {@link #classify(String)} returns the flags of all the rules that match the
+ * path.
+ *
+ * <p>Patterns have the same semantics as {@link org.craftercms.commons.lang.RegexUtils#matchesAny(String, List)}
+ * (the whole path must match). The most common forms are resolved without regular expressions: extension patterns
+ * like {@code ^.*\.xml$} with a map lookup, prefix patterns like {@code ^/static-assets/.*$} with
+ * {@link String#startsWith(String)} and literal paths with a map lookup. All the remaining patterns of a rule are
+ * combined in a single regular expression.</p>
+ *
+ * @since 4.2.0
+ */
+public class PathClassifier {
+
+    /**
+     * Classifier that doesn't match any path
+     */
+    public static final PathClassifier EMPTY = new Builder().build();
+
+    protected static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<");
+
+    /**
+     * Flags that match any path
+     */
+    protected final int alwaysFlags;
+
+    /**
+     * Flags by file extension
+     */
+    protected final Map<String, Integer> extensionFlags;
+
+    /**
+     * Flags by exact path
+     */
+    protected final Map<String, Integer> exactFlags;
+
+    /**
+     * Flags by path prefix
+     */
+    protected final Map<String, Integer> prefixFlags;
+
+    /**
+     * Combined regular expressions by flag
+     */
+    protected final Map<Integer, List<Pattern>> regexRules;
+
+    /**
+     * Mime type rules by flag
+     */
+    protected final Map<Integer, MimeTypeRule> mimeTypeRules;
+
+    /**
+     * Flags of all the rules
+     */
+    protected final int allFlags;
+
+    protected PathClassifier(Builder builder) {
+        this.alwaysFlags = builder.alwaysFlags;
+        this.extensionFlags = new HashMap<>(builder.extensionFlags);
+        this.exactFlags = new HashMap<>(builder.exactFlags);
+        this.prefixFlags = new LinkedHashMap<>(builder.prefixFlags);
+        this.regexRules = new LinkedHashMap<>();
+        builder.regexes.forEach((flag, regexes) -> regexRules.put(flag, compile(regexes)));
+        this.mimeTypeRules = new LinkedHashMap<>(builder.mimeTypeRules);
+        this.allFlags = builder.allFlags;
+    }
+
+    /**
+     * Returns the flags of all the rules that match the given path
+     * @param path the path to classify
+     * @return the flags of the matching rules, 0 if none matches
+     */
+    public int classify(String path) {
+        int result = alwaysFlags;
+        // The .* of extension and prefix patterns doesn't match line terminators
+        boolean singleLine = (extensionFlags.isEmpty() && prefixFlags.isEmpty()) || !hasLineTerminator(path);
+
+        if (singleLine && !extensionFlags.isEmpty()) {
+            String extension = getExtension(path);
+            if (extension != null) {
+                result |= extensionFlags.getOrDefault(extension, 0);
+            }
+        }
+        if (!exactFlags.isEmpty()) {
+            result |= exactFlags.getOrDefault(path, 0);
+        }
+        for (Map.Entry<String, Integer> entry : prefixFlags.entrySet()) {
+            if (singleLine && (result & entry.getValue()) != entry.getValue() && path.startsWith(entry.getKey())) {
+                result |= entry.getValue();
+            }
+        }
+        for (Map.Entry<Integer, List<Pattern>> entry : regexRules.entrySet()) {
+            int flag = entry.getKey();
+            if ((result & flag) == 0 && matches(entry.getValue(), path)) {
+                result |= flag;
+            }
+        }
+        for (Map.Entry<Integer, MimeTypeRule> entry : mimeTypeRules.entrySet()) {
+            int flag = entry.getKey();
+            if ((result & flag) == 0 && entry.getValue().matches(path)) {
+                result |= flag;
+            }
+        }
+
+        return result & allFlags;
+    }
+
+    /**
+     * Indicates if the given path matches the rule for the given flag
+     */
+    public boolean matches(String path, int flag) {
+        return is(classify(path), flag);
+    }
+
+    /**
+     * Indicates if the given classification contains the given flag
+     */
+    public static boolean is(int classification, int flag) {
+        return (classification & flag) != 0;
+    }
+
+    protected static boolean matches(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates if the given path contains any of the characters that {@code .} doesn't match
+     */
+    protected static boolean hasLineTerminator(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the extension of the file name of the given path (the text after the last dot), or null if it doesn't
+     * have one
+     */
+    protected static String getExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || path.indexOf('/', dot) >= 0) {
+            return null;
+        }
+        return path.substring(dot + 1);
+    }
+
+    /**
+     * Combines the given expressions in as few patterns as possible. Expressions with back references are kept apart
+     * because the group numbers change when they are combined.
+     */
+    protected static List<Pattern> compile(List<String> regexes) {
+        List<Pattern> patterns = new ArrayList<>();
+        List<String> combinable = new ArrayList<>();
+        for (String regex : regexes) {
+            if (BACK_REFERENCE.matcher(regex).find()) {
+                patterns.add(Pattern.compile(regex));
+            } else {
+                combinable.add(regex);
+            }
+        }
+        if (!combinable.isEmpty()) {
+            patterns.add(0, Pattern.compile(combinable.stream().map(regex -> "(?:" + regex + ")")
+                                                      .collect(joining("|"))));
+        }
+        return patterns;
+    }
+
+    /**
+     * Returns the literal text of the given expression, or null if it contains any special construct
+     */
+    protected static String toLiteral(String regex) {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    literal.append(regex.charAt(++i));
+                } else {
+                    return null;
+                }
+            } else if (Character.isLetterOrDigit(c) || c == '/' || c == '-' || c == '_' || c == ' ' || c == '~' ||
+                       c == ',' || c == '@' || c == '#' || c == '%' || c == '=' || c == '\'' || c == '"' ||
+                       c == '!' || c == '<' || c == '>' || c == ':' || c == ';' || c == '&') {
+                literal.append(c);
+            } else {
+                return null;
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * Builds {@link PathClassifier} instances
+     */
+    public static class Builder {
+
+        protected int alwaysFlags;
+        protected int allFlags;
+        protected final Map<String, Integer> extensionFlags = new HashMap<>();
+        protected final Map<String, Integer> exactFlags = new HashMap<>();
+        protected final Map<String, Integer> prefixFlags = new LinkedHashMap<>();
+        protected final Map<Integer, List<String>> regexes = new LinkedHashMap<>();
+        protected final Map<Integer, MimeTypeRule> mimeTypeRules = new LinkedHashMap<>();
+
+        /**
+         * Adds a rule that matches if any of the given patterns matches, or never if there are no patterns
+         */
+        public Builder addPatterns(int flag, List<String> patterns) {
+            return addPatterns(flag, patterns, false);
+        }
+
+        /**
+         * Adds a rule that matches if any of the given patterns matches
+         * @param flag the flag of the rule
+         * @param patterns the patterns
+         * @param matchIfEmpty indicates if the rule should match all paths when there are no patterns
+         */
+        public Builder addPatterns(int flag, List<String> patterns, boolean matchIfEmpty) {
+            checkFlag(flag);
+            if (CollectionUtils.isEmpty(patterns)) {
+                if (matchIfEmpty) {
+                    alwaysFlags |= flag;
+                }
+                return this;
+            }
+
+            for (String pattern : patterns) {
+                addPattern(flag, pattern);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a rule that matches if the mime type of the path is compatible with any of the given mime types, or
+         * always if there are no mime types (same as {@link IndexingUtils#isMimeTypeSupported})
+         */
+        public Builder addMimeTypes(int flag, FileTypeMap mimeTypesMap, List<String> supportedMimeTypes) {
+            checkFlag(flag);
+            if (mimeTypesMap == null || CollectionUtils.isEmpty(supportedMimeTypes)) {
+                alwaysFlags |= flag;
+            } else {
+                mimeTypeRules.put(flag, new MimeTypeRule(mimeTypesMap, supportedMimeTypes));
+            }
+            return this;
+        }
+
+        public PathClassifier build() {
+            return new PathClassifier(this);
+        }
+
+        protected void checkFlag(int flag) {
+            if (Integer.bitCount(flag) != 1) {
+                throw new IllegalArgumentException("The flag " + flag + " must have a single bit set");
+            }
+            allFlags |= flag;
+        }
+
+        protected void addPattern(int flag, String pattern) {
+            String regex = pattern;
+            if (regex.startsWith("^")) {
+                regex = regex.substring(1);
+            }
+            if (regex.endsWith("$") && !regex.endsWith("\\$")) {
+                regex = regex.substring(0, regex.length() - 1);
+            }
+
+            if (regex.startsWith(".*")) {
+                String suffix = toLiteral(regex.substring(2));
+                if (suffix != null && suffix.length() > 1 && suffix.charAt(0) == '.' &&
+                    suffix.indexOf('.', 1) < 0 && suffix.indexOf('/') < 0) {
+                    extensionFlags.merge(suffix.substring(1), flag, (a, b) -> a | b);
+                    return;
+                }
+            } else if (regex.endsWith(".*") && !regex.endsWith("\\.*")) {
+                String prefix = toLiteral(regex.substring(0, regex.length() - 2));
+                if (prefix != null) {
+                    prefixFlags.merge(prefix, flag, (a, b) -> a | b);
+                    return;
+                }
+            } else {
+                String literal = toLiteral(regex);
+                if (literal != null) {
+                    exactFlags.merge(literal, flag, (a, b) -> a | b);
+                    return;
+                }
+            }
+
+            regexes.computeIfAbsent(flag, key -> new ArrayList<>()).add(pattern);
+        }
+
+    }
+
+    /**
+     * Checks the mime type of a path against a list of supported mime types. The result is cached by extension, since
+     * that's all the {@link FileTypeMap} uses to resolve the mime type.
+     */
+    protected static class MimeTypeRule {
+
+        protected final FileTypeMap mimeTypesMap;
+        protected final List<MimeType> supportedMimeTypes;
+        protected final Map<String, Boolean> resultsByExtension = new ConcurrentHashMap<>();
+
+        public MimeTypeRule(FileTypeMap mimeTypesMap, List<String> supportedMimeTypes) {
+            this.mimeTypesMap = mimeTypesMap;
+            this.supportedMimeTypes = supportedMimeTypes.stream().map(MimeType::valueOf).collect(toList());
+        }
+
+        public boolean matches(String path) {
+            String filename = path.toLowerCase();
+            String extension = FilenameUtils.getExtension(filename);
+            return resultsByExtension.computeIfAbsent(extension, key -> {
+                MimeType mimeType = MimeType.valueOf(mimeTypesMap.getContentType(filename));
+                return supportedMimeTypes.stream().anyMatch(type -> type.isCompatibleWith(mimeType));
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.search.batch.UpdateSet;
+
+/**
+ * Utility methods for {@link UpdateSet}s
+ *
+ * @since 4.2.0
+ */
+public abstract class UpdateSetUtils {
+
+    /**
+     * Returns a normalized copy of the given set:
+     * <ul>
+     *     <li>Duplicated paths are removed</li>
+     *     <li>Paths that are both updated and deleted only keep the delete, which is the net result of processing the
+     *     original set (updates are always executed before deletes)</li>
+     *     <li>Paths are grouped by parent folder, keeping the order in which each folder first appears, so files
+     *     from the same folder are read from the content store one after the other</li>
+     * </ul>
+     * Only the paths are checked, no content is read.
+     * @param updateSet the set to normalize
+     * @return the normalized set, or the same instance if it was already normalized
+     */
+    public static UpdateSet normalize(UpdateSet updateSet) {
+        Set<String> deletePaths = new LinkedHashSet<>(updateSet.getDeletePaths());
+        Set<String> updatePaths = new LinkedHashSet<>(updateSet.getUpdatePaths());
+        updatePaths.removeAll(deletePaths);
+
+        List<String> normalizedUpdates = groupByFolder(updatePaths);
+        List<String> normalizedDeletes = groupByFolder(deletePaths);
+        if (normalizedUpdates.equals(updateSet.getUpdatePaths()) &&
+            normalizedDeletes.equals(updateSet.getDeletePaths())) {
+            return updateSet;
+        }
+
+        return copy(updateSet, normalizedUpdates, normalizedDeletes);
+    }
+
+    /**
+     * Returns a copy of the given set with different paths, keeping the run id and the update details
+     */
+    public static UpdateSet copy(UpdateSet updateSet, List<String> updatePaths, List<String> deletePaths) {
+        UpdateSet copy = new UpdateSet(updatePaths, deletePaths);
+        copy.setRunId(updateSet.getRunId());
+        copy.setUpdateDetails(updateSet.getUpdateDetails());
+        copy.setUpdateLog(updateSet.getUpdateLog());
+        return copy;
+    }
+
+    /**
+     * Groups the given paths by parent folder, keeping the original order of the folders and of the paths in each one
+     */
+    protected static List<String> groupByFolder(Collection<String> paths) {
+        Map<String, List<String>> pathsByFolder = new LinkedHashMap<>();
+        for (String path : paths) {
+            pathsByFolder.computeIfAbsent(StringUtils.substringBeforeLast(path, "/"), key -> new ArrayList<>())
+                         .add(path);
+        }
+
+        List<String> grouped = new ArrayList<>(paths.size());
+        pathsByFolder.values().forEach(grouped::addAll);
+        return grouped;
+    }
+
+}
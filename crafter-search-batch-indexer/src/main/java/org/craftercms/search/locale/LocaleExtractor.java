@@ -16,6 +16,7 @@
 package org.craftercms.search.locale;
 
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
 
 import java.util.Locale;
 
@@ -36,4 +37,17 @@ public interface LocaleExtractor {
      */
     Locale extract(Context context, String path);
 
+    /**
+     * Extract the locale for the given file, using the given cache to load the item
+     *
+     * @param context the current context
+     * @param path the path of the file
+     * @param itemCache the cache for the current batch
+     * @return the locale
+     * @since 4.2.0
+     */
+    default Locale extract(Context context, String path, ItemCache itemCache) {
+        return extract(context, path);
+    }
+
 }
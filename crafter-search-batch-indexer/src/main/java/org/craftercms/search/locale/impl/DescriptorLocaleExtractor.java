@@ -19,6 +19,7 @@ import org.craftercms.commons.locale.LocaleUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
 import org.craftercms.core.service.Item;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.locale.LocaleExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +55,15 @@ public class DescriptorLocaleExtractor implements LocaleExtractor {
 
     @Override
     public Locale extract(Context context, String path) {
-        Item item = contentStoreService.getItem(context, path);
+        return resolveLocale(contentStoreService.getItem(context, path), path);
+    }
+
+    @Override
+    public Locale extract(Context context, String path, ItemCache itemCache) {
+        return resolveLocale(itemCache.getItem(path), path);
+    }
+
+    protected Locale resolveLocale(Item item, String path) {
         String localeValue = item.queryDescriptorValue(localeXPath);
         Locale locale = LocaleUtils.parseLocale(localeValue);
         logger.debug("Resolved locale {} for item {}", locale, path);
@@ -20,6 +20,8 @@ import java.util.Map;
 
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
+import org.craftercms.search.batch.UpdateSet;
 
 /**
  * Performs any metadata processing needed for files in the site repository.
@@ -38,4 +40,27 @@ public interface MetadataExtractor {
      */
     Map<String, Object> extract(String path, ContentStoreService contentStoreService, Context context);
 
+    /**
+     * Performs the metadata extraction on the given file, using the given cache to load the items
+     * @param path the path of the file to process
+     * @param contentStoreService the content store service
+     * @param context the current context
+     * @param itemCache the cache for the current batch
+     * @return the extracted metadata
+     * @since 4.2.0
+     */
+    default Map<String, Object> extract(String path, ContentStoreService contentStoreService, Context context,
+                                        ItemCache itemCache) {
+        return extract(path, contentStoreService, context);
+    }
+
+    /**
+     * Called before the files of an update set are processed, so any cached state that depends on the changed files
+     * can be discarded
+     * @param updateSet the update set that will be processed
+     * @since 4.2.0
+     */
+    default void prepare(UpdateSet updateSet) {
+    }
+
 }
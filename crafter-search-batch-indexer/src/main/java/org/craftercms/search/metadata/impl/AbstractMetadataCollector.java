@@ -16,15 +16,31 @@
 
 package org.craftercms.search.metadata.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
+import org.craftercms.search.batch.UpdateSet;
+import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.exception.BatchIndexingException;
 import org.craftercms.search.metadata.MetadataExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * Base implementation for classes that use a list of {@link MetadataExtractor}s to process items
@@ -34,15 +50,89 @@ import org.craftercms.search.metadata.MetadataExtractor;
  */
 public abstract class AbstractMetadataCollector {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractMetadataCollector.class);
+
+    public static final int DEFAULT_METADATA_EXTRACTION_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_METADATA_EXTRACTION_TIMEOUT = 10000;
+
     /**
      * List of metadata extractors
      */
     protected List<MetadataExtractor> metadataExtractors;
 
+    /**
+     * Indicates if the extractors for a file should run concurrently
+     */
+    protected boolean parallelMetadataExtraction = false;
+
+    /**
+     * The number of threads used to run the extractors when {@link #parallelMetadataExtraction} is enabled
+     */
+    protected int metadataExtractionThreads = DEFAULT_METADATA_EXTRACTION_THREADS;
+
+    /**
+     * The time in milliseconds each extractor has to complete when {@link #parallelMetadataExtraction} is enabled,
+     * measured from the moment the extractor starts running so the time waiting for a free thread doesn't count.
+     * Extractors that take longer are skipped.
+     */
+    protected long metadataExtractionTimeout = DEFAULT_METADATA_EXTRACTION_TIMEOUT;
+
+    /**
+     * The executor for the extractors, created when first used
+     */
+    protected volatile ExecutorService metadataExecutor;
+
+    /**
+     * The item caches of the calls in progress, by the status of each call
+     */
+    protected final Map<UpdateStatus, ItemCache> itemCaches = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of items kept by the item cache of each call
+     */
+    protected int itemCacheMaxItems = ItemCache.DEFAULT_MAX_ITEMS;
+
     public void setMetadataExtractors(final List<MetadataExtractor> metadataExtractors) {
         this.metadataExtractors = metadataExtractors;
     }
 
+    public void setParallelMetadataExtraction(final boolean parallelMetadataExtraction) {
+        this.parallelMetadataExtraction = parallelMetadataExtraction;
+    }
+
+    public void setMetadataExtractionThreads(final int metadataExtractionThreads) {
+        this.metadataExtractionThreads = metadataExtractionThreads;
+    }
+
+    public void setMetadataExtractionTimeout(final long metadataExtractionTimeout) {
+        this.metadataExtractionTimeout = metadataExtractionTimeout;
+    }
+
+    public void setItemCacheMaxItems(final int itemCacheMaxItems) {
+        this.itemCacheMaxItems = itemCacheMaxItems;
+    }
+
+    /**
+     * Stops the threads used for parallel metadata extraction, if any
+     */
+    public void destroy() {
+        ExecutorService executor = metadataExecutor;
+        if (executor != null) {
+            metadataExecutor = null;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Notifies all metadata extractors that the given set is about to be processed
+     * @param updateSet the update set
+     */
+    protected void prepareMetadataExtractors(final UpdateSet updateSet) {
+        if (CollectionUtils.isNotEmpty(metadataExtractors)) {
+            metadataExtractors.forEach(metadataExtractor -> metadataExtractor.prepare(updateSet));
+        }
+    }
+
     /**
      * Executes all metadata extractors on the given file and returns an aggregation of all results
      * @param path the path of the file
@@ -52,12 +142,27 @@ public abstract class AbstractMetadataCollector {
      */
     protected Map<String, Object> collectMetadata(final String path, final ContentStoreService contentStoreService,
                                                   final Context context) {
+        return collectMetadata(path, contentStoreService, context, new ItemCache(contentStoreService, context));
+    }
+
+    /**
+     * Executes all metadata extractors on the given file and returns an aggregation of all results
+     * @param path the path of the file
+     * @param contentStoreService the content store service
+     * @param context the current context
+     * @param itemCache the cache for the current batch
+     * @return all extracted metadata
+     */
+    protected Map<String, Object> collectMetadata(final String path, final ContentStoreService contentStoreService,
+                                                  final Context context, final ItemCache itemCache) {
         if (CollectionUtils.isEmpty(metadataExtractors)) {
             return Collections.emptyMap();
+        } else if (parallelMetadataExtraction && metadataExtractors.size() > 1) {
+            return collectMetadataInParallel(path, contentStoreService, context, itemCache);
         } else {
             return metadataExtractors
                 .stream()
-                .map(metadataExtractor -> metadataExtractor.extract(path, contentStoreService, context))
+                .map(metadataExtractor -> metadataExtractor.extract(path, contentStoreService, context, itemCache))
                 .reduce(new HashMap<>(), (map1, map2) -> {
                     map1.putAll(map2);
                     return map1;
@@ -65,4 +170,120 @@ public abstract class AbstractMetadataCollector {
         }
     }
 
+    /**
+     * Executes all metadata extractors concurrently. Extractors that don't complete in
+     * {@link #metadataExtractionTimeout} from the moment they start are cancelled and skipped, the results of the
+     * rest are merged in the same order of {@link #metadataExtractors}, so later extractors override the values of
+     * previous ones just like in sequential mode.
+     */
+    protected Map<String, Object> collectMetadataInParallel(final String path,
+                                                            final ContentStoreService contentStoreService,
+                                                            final Context context, final ItemCache itemCache) {
+        ExecutorService executor = getMetadataExecutor();
+        int count = metadataExtractors.size();
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(count);
+        CountDownLatch[] started = new CountDownLatch[count];
+        long[] startTimes = new long[count];
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            MetadataExtractor metadataExtractor = metadataExtractors.get(i);
+            started[i] = new CountDownLatch(1);
+            futures.add(executor.submit(() -> {
+                startTimes[index] = System.nanoTime();
+                started[index].countDown();
+                return metadataExtractor.extract(path, contentStoreService, context, itemCache);
+            }));
+        }
+
+        long timeout = TimeUnit.MILLISECONDS.toNanos(metadataExtractionTimeout);
+        Map<String, Object> metadata = new HashMap<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                Future<Map<String, Object>> future = futures.get(i);
+                try {
+                    // The pool is shared by all callers, wait for a thread to pick up the extractor first
+                    while (!started[i].await(1, TimeUnit.SECONDS)) {
+                        if (executor.isShutdown()) {
+                            throw new BatchIndexingException("Metadata extraction was stopped for file " + path);
+                        }
+                    }
+                    long remaining = startTimes[i] + timeout - System.nanoTime();
+                    metadata.putAll(future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    logger.warn("Metadata extractor {} timed out after {} ms for file {}, skipping it",
+                                metadataExtractors.get(i).getClass().getSimpleName(), metadataExtractionTimeout,
+                                path);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new BatchIndexingException("Error extracting metadata for file " + path, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BatchIndexingException("Interrupted while extracting metadata for file " + path, e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        return metadata;
+    }
+
+    protected ExecutorService getMetadataExecutor() {
+        ExecutorService executor = metadataExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = metadataExecutor;
+                if (executor == null) {
+                    CustomizableThreadFactory threadFactory =
+                        new CustomizableThreadFactory(getClass().getSimpleName() + "-metadata-");
+                    threadFactory.setDaemon(true);
+                    executor = Executors.newFixedThreadPool(metadataExtractionThreads, threadFactory);
+                    metadataExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Creates the item cache for the call with the given status
+     */
+    protected ItemCache openItemCache(final UpdateStatus updateStatus, final ContentStoreService contentStoreService,
+                                      final Context context) {
+        ItemCache itemCache = new ItemCache(contentStoreService, context, itemCacheMaxItems);
+        itemCaches.put(updateStatus, itemCache);
+        return itemCache;
+    }
+
+    /**
+     * Returns the item cache for the call with the given status, if there is none a new one is returned that only
+     * lives for the current operation
+     */
+    protected ItemCache getItemCache(final UpdateStatus updateStatus, final ContentStoreService contentStoreService,
+                                     final Context context) {
+        ItemCache itemCache = itemCaches.get(updateStatus);
+        return itemCache != null? itemCache : new ItemCache(contentStoreService, context);
+    }
+
+    /**
+     * Removes the items of the given path from the item cache of the call with the given status, once the path has
+     * been processed
+     */
+    protected void evictFromItemCache(final UpdateStatus updateStatus, final String path) {
+        ItemCache itemCache = itemCaches.get(updateStatus);
+        if (itemCache != null) {
+            itemCache.evict(path);
+        }
+    }
+
+    /**
+     * Releases the item cache for the call with the given status
+     */
+    protected void closeItemCache(final UpdateStatus updateStatus) {
+        itemCaches.remove(updateStatus);
+    }
+
 }
@@ -23,6 +23,7 @@ import java.util.Map;
 import org.craftercms.commons.lang.RegexUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.metadata.MetadataExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,14 +54,23 @@ public abstract class AbstractMetadataExtractor implements MetadataExtractor {
     @Override
     public Map<String, Object> extract(final String path, final ContentStoreService contentStoreService,
                                   final Context context) {
+        return extract(path, contentStoreService, context, new ItemCache(contentStoreService, context));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> extract(final String path, final ContentStoreService contentStoreService,
+                                       final Context context, final ItemCache itemCache) {
         logger.debug("Start processing {}", path);
 
         Map<String, Object> metadata = Collections.emptyMap();
 
         if ((CollectionUtils.isEmpty(includePatterns) || RegexUtils.matchesAny(path, includePatterns))
-            && isCompatible(path, contentStoreService, context)) {
+            && isCompatible(path, contentStoreService, context, itemCache)) {
             logger.debug("Extracting metadata from {}", path);
-            metadata = doExtract(path, contentStoreService, context);
+            metadata = doExtract(path, contentStoreService, context, itemCache);
         }
 
         logger.debug("Completed processing {}", path);
@@ -73,18 +83,21 @@ public abstract class AbstractMetadataExtractor implements MetadataExtractor {
      * @param path the path of the file to check
      * @param contentStoreService the content store service
      * @param context the current context
+     * @param itemCache the cache for the current batch
      * @return true if the file should be processed
      */
-    protected abstract boolean isCompatible(String path, ContentStoreService contentStoreService, Context context);
+    protected abstract boolean isCompatible(String path, ContentStoreService contentStoreService, Context context,
+                                            ItemCache itemCache);
 
     /**
      * Performs the actual metadata extraction
      * @param path the path of the file
      * @param contentStoreService the content store service
      * @param context the current context
+     * @param itemCache the cache for the current batch
      * @return the extracted metadata
      */
     protected abstract Map<String, Object> doExtract(String path, ContentStoreService contentStoreService,
-                                                     Context context);
+                                                     Context context, ItemCache itemCache);
 
 }
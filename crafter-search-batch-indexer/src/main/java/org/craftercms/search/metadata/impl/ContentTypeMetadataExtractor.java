@@ -16,12 +16,21 @@
 
 package org.craftercms.search.metadata.impl;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
+import org.craftercms.search.batch.UpdateSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.craftercms.core.service.Item;
 
 /**
@@ -32,6 +41,8 @@ import org.craftercms.core.service.Item;
  */
 public class ContentTypeMetadataExtractor extends AbstractMetadataExtractor {
 
+    private static final Logger logger = LoggerFactory.getLogger(ContentTypeMetadataExtractor.class);
+
     public static final String NAME_PLACEHOLDER = "\\{name\\}";
     public static final String FILE_PLACEHOLDER = "\\{file\\}";
 
@@ -77,6 +88,26 @@ public class ContentTypeMetadataExtractor extends AbstractMetadataExtractor {
      */
     protected String propertyNameThumbnail = DEFAULT_PROPERTY_NAME_THUMBNAIL;
 
+    /**
+     * Indicates if the metadata of each content-type should be cached. Cached values are discarded when the
+     * configuration or form definition of the content-type is part of an update set
+     */
+    protected boolean cacheEnabled = true;
+
+    /**
+     * The cached metadata by content-type name and context id
+     */
+    protected final Map<String, Map<String, Map<String, Object>>> cache = new ConcurrentHashMap<>();
+
+    protected final AtomicLong cacheHits = new AtomicLong();
+
+    protected final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * The patterns used to find the content-type name in the paths of an update set, built when first used
+     */
+    protected volatile Pattern[] configPathPatterns;
+
     public ContentTypeMetadataExtractor(final String fieldXpath) {
         this.fieldXpath = fieldXpath;
     }
@@ -87,10 +118,14 @@ public class ContentTypeMetadataExtractor extends AbstractMetadataExtractor {
 
     public void setConfigTemplate(final String configTemplate) {
         this.configTemplate = configTemplate;
+        this.configPathPatterns = null;
+        cache.clear();
     }
 
     public void setDefinitionTemplate(final String definitionTemplate) {
         this.definitionTemplate = definitionTemplate;
+        this.configPathPatterns = null;
+        cache.clear();
     }
 
     public void setThumbnailTemplate(final String thumbnailTemplate) {
@@ -105,13 +140,77 @@ public class ContentTypeMetadataExtractor extends AbstractMetadataExtractor {
         this.propertyNameThumbnail = propertyNameThumbnail;
     }
 
+    public void setCacheEnabled(final boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of items that used the cached metadata of their content-type
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of items that required loading the configuration of their content-type
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Discards the cached metadata of the content-types whose configuration or form definition is in the given set
+     */
+    @Override
+    public void prepare(final UpdateSet updateSet) {
+        if (cache.isEmpty()) {
+            return;
+        }
+        invalidate(updateSet.getUpdatePaths());
+        invalidate(updateSet.getDeletePaths());
+    }
+
+    protected void invalidate(final Iterable<String> paths) {
+        Pattern[] patterns = getConfigPathPatterns();
+        for (String path : paths) {
+            for (Pattern pattern : patterns) {
+                Matcher matcher = pattern.matcher(path);
+                if (matcher.matches() && cache.remove(matcher.group(1)) != null) {
+                    logger.debug("Configuration for content-type {} changed, discarding cached metadata",
+                                 matcher.group(1));
+                }
+            }
+        }
+    }
+
+    protected Pattern[] getConfigPathPatterns() {
+        Pattern[] patterns = configPathPatterns;
+        if (patterns == null) {
+            patterns = new Pattern[] { toPattern(configTemplate), toPattern(definitionTemplate) };
+            configPathPatterns = patterns;
+        }
+        return patterns;
+    }
+
+    /**
+     * Converts a path template to a pattern that captures the content-type name
+     */
+    protected Pattern toPattern(final String template) {
+        String[] parts = template.split(NAME_PLACEHOLDER, 2);
+        if (parts.length < 2) {
+            return Pattern.compile(Pattern.quote(template) + "()");
+        }
+        return Pattern.compile(Pattern.quote(parts[0]) + "(.+)" + Pattern.quote(parts[1]));
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected boolean isCompatible(final String path, final ContentStoreService contentStoreService,
-                                   final Context context) {
-        Item item = contentStoreService.getItem(context, path);
+                                   final Context context, final ItemCache itemCache) {
+        Item item = itemCache.getItem(path);
         String value = item.queryDescriptorValue(fieldXpath);
         return StringUtils.isEmpty(fieldValue)? StringUtils.isNotEmpty(value) : StringUtils.equals(fieldValue, value);
     }
@@ -121,16 +220,35 @@ public class ContentTypeMetadataExtractor extends AbstractMetadataExtractor {
      */
     @Override
     protected Map<String, Object> doExtract(final String path, final ContentStoreService contentStoreService,
-                                            final Context context) {
+                                            final Context context, final ItemCache itemCache) {
         Map<String, Object> metadata = new HashMap<>();
 
-        Item item = contentStoreService.getItem(context, path);
+        Item item = itemCache.getItem(path);
         String contentTypeName = item.queryDescriptorValue(fieldXpath);
 
-        getConfigMetadata(contentTypeName, contentStoreService, context, metadata);
-        getDefinitionMetadata(contentTypeName, contentStoreService, context, metadata);
+        if (!cacheEnabled) {
+            getConfigMetadata(contentTypeName, contentStoreService, context, metadata);
+            getDefinitionMetadata(contentTypeName, contentStoreService, context, metadata);
+
+            return metadata;
+        }
+
+        Map<String, Map<String, Object>> metadataByContext =
+            cache.computeIfAbsent(contentTypeName, name -> new ConcurrentHashMap<>());
+        Map<String, Object> cachedMetadata = metadataByContext.get(context.getId());
+        if (cachedMetadata != null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+
+            getConfigMetadata(contentTypeName, contentStoreService, context, metadata);
+            getDefinitionMetadata(contentTypeName, contentStoreService, context, metadata);
+
+            cachedMetadata = Collections.unmodifiableMap(metadata);
+            metadataByContext.put(context.getId(), cachedMetadata);
+        }
 
-        return metadata;
+        return new HashMap<>(cachedMetadata);
     }
 
     /**
@@ -22,6 +22,7 @@ import java.util.Map;
 import org.craftercms.core.service.Content;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
 
 /**
  * Implementation of {@link org.craftercms.search.metadata.MetadataExtractor} for the file size field
@@ -47,8 +48,8 @@ public class FileSizeMetadataExtractor extends AbstractMetadataExtractor {
      */
     @Override
     protected boolean isCompatible(final String path, final ContentStoreService contentStoreService,
-                                   final Context context) {
-        return !contentStoreService.getItem(context, path).isFolder();
+                                   final Context context, final ItemCache itemCache) {
+        return !itemCache.getItem(path).isFolder();
     }
 
     /**
@@ -56,7 +57,7 @@ public class FileSizeMetadataExtractor extends AbstractMetadataExtractor {
      */
     @Override
     protected Map<String, Object> doExtract(final String path, final ContentStoreService contentStoreService,
-                                       final Context context) {
+                                       final Context context, final ItemCache itemCache) {
         Content content = contentStoreService.getContent(context, path);
         return Collections.singletonMap(propertyName, Long.toString(content.getLength()));
     }
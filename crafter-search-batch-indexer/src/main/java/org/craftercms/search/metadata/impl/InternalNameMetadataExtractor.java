@@ -23,6 +23,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.core.service.Item;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,8 +63,8 @@ public class InternalNameMetadataExtractor extends AbstractMetadataExtractor {
      */
     @Override
     protected boolean isCompatible(final String path, final ContentStoreService contentStoreService,
-                                   final Context context) {
-        return !contentStoreService.getItem(context, path).isFolder();
+                                   final Context context, final ItemCache itemCache) {
+        return !itemCache.getItem(path).isFolder();
     }
 
     /**
@@ -71,8 +72,8 @@ public class InternalNameMetadataExtractor extends AbstractMetadataExtractor {
      */
     @Override
     protected Map<String, Object> doExtract(final String path, final ContentStoreService contentStoreService,
-                                            final Context context) {
-        Item item = contentStoreService.getItem(context, path);
+                                            final Context context, final ItemCache itemCache) {
+        Item item = itemCache.getItem(path);
         String internalName = item.queryDescriptorValue(internalNameFieldXpath);
         if(StringUtils.isEmpty(internalName)) {
             logger.debug("Internal name not found in descriptor, using filename as fallback");
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.craftercms.search.commons.exception.DocumentBuildException;
+import org.dom4j.Document;
 
 /**
  * Transforms an XML document to te appropriate format for the search engine.
@@ -40,6 +41,21 @@ public interface DocumentBuilder<T> {
      */
     T build(String site, String id, String xml, boolean ignoreRootInFieldNames) throws DocumentBuildException;
 
+    /**
+     * Builds a document from an already parsed XML, avoiding the need to serialize it and parse it again.
+     *
+     * @param site                   the Crafter site name the content belongs to
+     * @param id                     value for the "localId" field in the document (final doc id is built as
+     *                               site:localId)
+     * @param document               the input XML, it can be modified while the document is built so callers
+     *                               should pass a copy if it's shared (like the descriptor of a cached item)
+     * @param ignoreRootInFieldNames ignore the root element of the input XML in field names
+     * @return the document
+     * @throws DocumentBuildException
+     *
+     */
+    T build(String site, String id, Document document, boolean ignoreRootInFieldNames) throws DocumentBuildException;
+
     /**
      * Builds a document from the provided multi value map of fields
      *
@@ -51,4 +67,16 @@ public interface DocumentBuilder<T> {
      */
     T build(String site, String id, Map<String, List<String>> fields) throws DocumentBuildException;
 
+    /**
+     * Builds a document from the provided map of fields, producing the same document as the XML generated from the
+     * map would (including copy fields, value converters and post processors) without going through the XML.
+     *
+     * @param site      the Crafter site name the content belongs to
+     * @param id        value for the "localId" field in the document (final doc id is built as site:localId)
+     * @param fields    fields to add to the document, values can be nested maps or collections
+     *
+     * @return the document
+     */
+    T buildFromMap(String site, String id, Map<String, Object> fields) throws DocumentBuildException;
+
 }
@@ -20,6 +20,7 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.Temporal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -115,22 +116,16 @@ public abstract class AbstractDocumentBuilder<T> implements DocumentBuilder<T> {
 
     protected abstract void addField(T doc, String fieldName, Object fieldValue);
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Creates the object used for the value of a field that contains other fields, by default the same type of
+     * object used for the documents.
+     */
+    protected T createNestedDoc() {
+        return createDoc();
+    }
+
     public T build(String site, String id, String xml, boolean ignoreRootInFieldNames) throws DocumentBuildException {
         SAXReader reader = createSAXReader();
-        T doc = createDoc();
-        String finalId = site + ":" + id;
-
-        logger.debug("Buildingdoc for {}", finalId);
-
-        String now = formatAsIso(Instant.now());
-
-        addField(doc, idFieldName, finalId);
-        addField(doc, rootIdFieldName, finalId);
-        addField(doc, siteFieldName, site);
-        addField(doc, localIdFieldName, id);
-        addField(doc, publishingDateFieldName, now);
-        addField(doc, publishingDateAltFieldName, now);
 
         Document document;
         try {
@@ -139,7 +134,20 @@ public abstract class AbstractDocumentBuilder<T> implements DocumentBuilder<T> {
             throw new DocumentBuildException("Unable to parse XML into Document object", e);
         }
 
-        Element rootElement = document.getRootElement();
+        return doBuild(site, id, document.getRootElement(), ignoreRootInFieldNames);
+    }
+
+    public T build(String site, String id, Document document, boolean ignoreRootInFieldNames)
+            throws DocumentBuildException {
+        // The caller hands over the document, so the element parsers work on it directly without another copy
+        return doBuild(site, id, document.getRootElement(), ignoreRootInFieldNames);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected T doBuild(String site, String id, Element rootElement, boolean ignoreRootInFieldNames) {
+        T doc = createDoc();
+
+        addCommonFields(doc, site, id);
 
         if(MapUtils.isNotEmpty(copyFields)) {
             addCopyFields(rootElement);
@@ -176,6 +184,41 @@ public abstract class AbstractDocumentBuilder<T> implements DocumentBuilder<T> {
 
     public T build(String site, String id, Map<String, List<String>> fields) {
         T doc = createDoc();
+
+        addCommonFields(doc, site, id);
+
+        if (MapUtils.isNotEmpty(fields)) {
+            for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+                String fieldName = field.getKey();
+                List<String> fieldValues = field.getValue();
+
+                for (String value : fieldValues) {
+                    addField(doc, fieldName, fieldValueConverter.convert(fieldName, value));
+                }
+            }
+        }
+
+        return doc;
+    }
+
+    public T buildFromMap(String site, String id, Map<String, Object> fields) {
+        T doc = createDoc();
+
+        addCommonFields(doc, site, id);
+
+        if (MapUtils.isNotEmpty(fields)) {
+            addFields(doc, fields);
+        }
+
+        postProcess(doc);
+
+        return doc;
+    }
+
+    /**
+     * Adds the id, site and publishing date fields that all documents have
+     */
+    protected void addCommonFields(T doc, String site, String id) {
         String finalId = site + ":" + id;
 
         logger.debug("Building doc for {}", finalId);
@@ -188,19 +231,53 @@ public abstract class AbstractDocumentBuilder<T> implements DocumentBuilder<T> {
         addField(doc, localIdFieldName, id);
         addField(doc, publishingDateFieldName, now);
         addField(doc, publishingDateAltFieldName, now);
+    }
 
-        if (MapUtils.isNotEmpty(fields)) {
-            for (Map.Entry<String, List<String>> field : fields.entrySet()) {
-                String fieldName = field.getKey();
-                List<String> fieldValues = field.getValue();
-
-                for (String value : fieldValues) {
-                    addField(doc, fieldName, fieldValueConverter.convert(fieldName, value));
+    /**
+     * Adds the given fields to the document the same way the elements of an XML with the same structure are parsed:
+     * empty values are ignored, collections become multi-valued fields, maps become nested fields and the copy
+     * fields and the {@link #fieldValueConverter} are applied to all other values.
+     */
+    @SuppressWarnings("unchecked")
+    protected void addFields(T doc, Map<String, Object> fields) {
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            String fieldName = field.getKey();
+            Object fieldValue = field.getValue();
+
+            if (fieldValue instanceof Collection) {
+                for (Object value : (Collection<Object>) fieldValue) {
+                    addFieldValue(doc, fieldName, value);
                 }
+            } else {
+                addFieldValue(doc, fieldName, fieldValue);
             }
         }
+    }
 
-        return doc;
+    @SuppressWarnings("unchecked")
+    protected void addFieldValue(T doc, String fieldName, Object fieldValue) {
+        if (fieldValue instanceof Map) {
+            Map<String, Object> nestedFields = (Map<String, Object>) fieldValue;
+            if (MapUtils.isNotEmpty(nestedFields)) {
+                T nestedDoc = createNestedDoc();
+                addFields(nestedDoc, nestedFields);
+                addField(doc, fieldName, nestedDoc);
+            }
+        } else if (fieldValue != null) {
+            String text = fieldValue.toString();
+            if (!text.isEmpty()) {
+                addField(doc, fieldName, fieldValueConverter.convert(fieldName, text));
+
+                if (MapUtils.isNotEmpty(copyFields)) {
+                    for (Map.Entry<String, String> entry : copyFields.entrySet()) {
+                        if (fieldName.matches(entry.getKey())) {
+                            String copyName = fieldName + entry.getValue();
+                            addField(doc, copyName, fieldValueConverter.convert(copyName, text));
+                        }
+                    }
+                }
+            }
+        }
     }
 
     protected void postProcess(T doc) {
@@ -35,4 +35,49 @@ public interface DocumentParser {
      */
     String parseToXml(String filename, Resource resource, Map<String, Object> additionalFields);
 
+    /**
+     * Parses the given document and generates an XML file, the fields that are too large to go through the XML
+     * (like the extracted text) can be returned separately to be added to the final document as they are
+     * @param filename the name of the file
+     * @param resource the document to parse
+     * @param additionalFields additional fields to add
+     * @param streamedFields the map where the fields not included in the XML will be added
+     * @return an XML ready to be indexed
+     */
+    default String parseToXml(String filename, Resource resource, Map<String, Object> additionalFields,
+                              Map<String, Object> streamedFields) {
+        return parseToXml(filename, resource, additionalFields);
+    }
+
+    /**
+     * Parses the given document and returns the fields that would be included in the XML, so the document can be
+     * built without serializing and parsing the XML again
+     * @param filename the name of the file
+     * @param resource the document to parse
+     * @param additionalFields additional fields to add
+     * @param streamedFields the map where the fields that should be added to the final document as they are will be
+     *                       added, can be null
+     * @return the fields of the document, or null if the parser only supports generating XML
+     */
+    default Map<String, Object> parseToMap(String filename, Resource resource, Map<String, Object> additionalFields,
+                                           Map<String, Object> streamedFields) {
+        return null;
+    }
+
+    /**
+     * Indicates if parsing a document can time out, in which case the document is generated without its content
+     */
+    default boolean isTimeoutEnabled() {
+        return false;
+    }
+
+    /**
+     * Indicates if the given document was generated without its content because parsing timed out
+     * @param doc the document built from the XML returned by {@link #parseToXml(String, Resource, Map)}
+     * @return true if the content of the document is missing
+     */
+    default boolean isTimedOut(Map<String, Object> doc) {
+        return false;
+    }
+
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch;
+
+import java.util.Map;
+
+import org.craftercms.core.service.Content;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.dom4j.Document;
+import org.springframework.core.io.Resource;
+
+/**
+ * Groups index and delete operations so they can be sent to OpenSearch using the bulk API. Operations are queued
+ * and sent when the configured number of operations or payload size is reached, when {@link #flush()} is called or
+ * when the session is closed. The result of each operation is reported to the {@link Listener} of the session.
+ *
+ * @since 4.2.0
+ */
+public interface OpenSearchBulkSession extends AutoCloseable {
+
+    /**
+     * Queues an index operation for the given document
+     * @param indexName the name of the index
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param doc the document
+     * @throws OpenSearchException if there is any error during the operation
+     */
+    void index(String indexName, String siteId, String docId, Map<String, Object> doc) throws OpenSearchException;
+
+    /**
+     * Queues an index operation for the given xml file
+     * @param indexName the name of the index
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param xml the content of the document
+     * @param additionalFields additional fields to index
+     * @throws OpenSearchException if there is any error building the document
+     */
+    void index(String indexName, String siteId, String docId, String xml, Map<String, Object> additionalFields)
+            throws OpenSearchException;
+
+    /**
+     * Queues an index operation for the given already parsed xml file
+     * @param indexName the name of the index
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param document the content of the document, it can be modified so callers should pass a copy if it's shared
+     * @param additionalFields additional fields to index
+     * @throws OpenSearchException if there is any error building the document
+     */
+    void index(String indexName, String siteId, String docId, Document document,
+               Map<String, Object> additionalFields) throws OpenSearchException;
+
+    /**
+     * Queues an index operation for the given binary file
+     * @param indexName the name of the index
+     * @param siteName the name of the site
+     * @param path the path of the document
+     * @param content the content of the document
+     * @param additionalFields the additional fields to index
+     * @throws OpenSearchException if there is any error parsing the document
+     */
+    void indexBinary(String indexName, String siteName, String path, Content content,
+                     Map<String, Object> additionalFields) throws OpenSearchException;
+
+    /**
+     * Queues an index operation for the given binary file
+     * @param indexName the name of the index
+     * @param siteName the name of the site
+     * @param path the path of the document
+     * @param resource the content of the document
+     * @param additionalFields the additional fields to index
+     * @throws OpenSearchException if there is any error parsing the document
+     */
+    void indexBinary(String indexName, String siteName, String path, Resource resource,
+                     Map<String, Object> additionalFields) throws OpenSearchException;
+
+    /**
+     * Queues a delete operation for the given document
+     * @param indexName the name of the index
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @throws OpenSearchException if there is any error during the operation
+     */
+    void delete(String indexName, String siteId, String docId) throws OpenSearchException;
+
+    /**
+     * Sends all queued operations to OpenSearch
+     * @throws OpenSearchException if there is any error during the operation
+     */
+    void flush() throws OpenSearchException;
+
+    /**
+     * Returns the number of operations that have been queued but not yet sent
+     */
+    int getPendingOperations();
+
+    /**
+     * Sends all queued operations and releases the session
+     * @throws OpenSearchException if there is any error during the operation
+     */
+    @Override
+    void close() throws OpenSearchException;
+
+    /**
+     * Receives the result of each operation sent by a session
+     */
+    interface Listener {
+
+        /**
+         * Called once for each operation after the bulk request that contained it completes
+         * @param result the result of the operation
+         */
+        void onItemResult(ItemResult result);
+
+    }
+
+    /**
+     * Holds the result of a single operation from a bulk request
+     */
+    class ItemResult {
+
+        protected final String indexName;
+        protected final String docId;
+        protected final boolean delete;
+        protected final int status;
+        protected final String errorType;
+        protected final String errorReason;
+        protected final boolean skipped;
+        protected final boolean contentTimedOut;
+
+        public ItemResult(String indexName, String docId, boolean delete, int status, String errorType,
+                          String errorReason) {
+            this(indexName, docId, delete, status, errorType, errorReason, false);
+        }
+
+        public ItemResult(String indexName, String docId, boolean delete, int status, String errorType,
+                          String errorReason, boolean skipped) {
+            this(indexName, docId, delete, status, errorType, errorReason, skipped, false);
+        }
+
+        public ItemResult(String indexName, String docId, boolean delete, int status, String errorType,
+                          String errorReason, boolean skipped, boolean contentTimedOut) {
+            this.indexName = indexName;
+            this.docId = docId;
+            this.delete = delete;
+            this.status = status;
+            this.errorType = errorType;
+            this.errorReason = errorReason;
+            this.skipped = skipped;
+            this.contentTimedOut = contentTimedOut;
+        }
+
+        public String getIndexName() {
+            return indexName;
+        }
+
+        /**
+         * Returns the id of the document as provided to the session (the path of the file)
+         */
+        public String getDocId() {
+            return docId;
+        }
+
+        public boolean isDelete() {
+            return delete;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getErrorType() {
+            return errorType;
+        }
+
+        public String getErrorReason() {
+            return errorReason;
+        }
+
+        public boolean isSuccessful() {
+            return errorType == null;
+        }
+
+        /**
+         * Indicates if the operation was not sent because the document didn't change
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Indicates if the document was indexed without its content because parsing it took too long
+         */
+        public boolean isContentTimedOut() {
+            return contentTimedOut;
+        }
+
+        @Override
+        public String toString() {
+            return "ItemResult{" + "indexName='" + indexName + '\'' + ", docId='" + docId + '\'' +
+                   ", delete=" + delete + ", status=" + status + ", errorType='" + errorType + '\'' +
+                   ", errorReason='" + errorReason + '\'' + ", skipped=" + skipped +
+                   ", contentTimedOut=" + contentTimedOut + '}';
+        }
+
+    }
+
+}
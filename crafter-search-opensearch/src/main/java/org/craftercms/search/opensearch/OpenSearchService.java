@@ -18,9 +18,12 @@ package org.craftercms.search.opensearch;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.craftercms.search.opensearch.impl.DirectOpenSearchBulkSession;
 import org.craftercms.core.service.Content;
+import org.dom4j.Document;
 import org.opensearch.client.opensearch._types.query_dsl.Query;
 import org.springframework.core.io.Resource;
 
@@ -40,8 +43,99 @@ public interface OpenSearchService extends AutoCloseable {
      */
     List<String> searchField(String indexName, String field, Query query) throws OpenSearchException;
 
+    /**
+     * Performs a search for several fields, using a single scroll for all the matching documents. The values of
+     * each field can't be matched to their documents using {@link #searchField(String, String, Query)}, so
+     * implementations that don't override this method don't support it.
+     * @param indexName the name of the index
+     * @param fields the names of the fields
+     * @param query the filters to apply
+     * @return the values of the fields for each document that matches the search
+     * @throws OpenSearchException if there is any error during the operation or if it's not supported
+     * @since 4.2.0
+     */
+    default List<Map<String, Object>> searchFields(String indexName, List<String> fields, Query query)
+            throws OpenSearchException {
+        throw new OpenSearchException(indexName, "Search for several fields is not supported by " +
+                                                 getClass().getName());
+    }
+
+    /**
+     * Performs a search for a specific field, loading the values lazily as the stream is consumed. The returned
+     * stream must be closed to release any resources held in the cluster, see
+     * {@link #streamFields(String, List, Query)}.
+     * @param indexName the name of the index
+     * @param field the name of the field
+     * @param query the filters to apply
+     * @return the stream of values that match the search
+     * @throws OpenSearchException if there is any error during the operation
+     * @since 4.2.0
+     */
+    default Stream<String> streamField(String indexName, String field, Query query) throws OpenSearchException {
+        return searchField(indexName, field, query).stream();
+    }
+
+    /**
+     * Performs a search for several fields, loading the documents lazily as the stream is consumed. The returned
+     * stream must be closed to release any resources held in the cluster: they are released automatically only
+     * when all the documents are read, so streams used with short-circuiting operations like
+     * {@link Stream#findFirst()} or {@link Stream#limit(long)} will keep them until they are closed. Callers should
+     * always use a try-with-resources block.
+     * @param indexName the name of the index
+     * @param fields the names of the fields
+     * @param query the filters to apply
+     * @return the stream with the values of the fields for each document that matches the search
+     * @throws OpenSearchException if there is any error during the operation
+     * @since 4.2.0
+     */
+    default Stream<Map<String, Object>> streamFields(String indexName, List<String> fields, Query query)
+            throws OpenSearchException {
+        return searchFields(indexName, fields, query).stream();
+    }
+
     Map<String, Object> searchId(String indexName, String docId);
 
+    /**
+     * Indicates if documents that didn't change since the last time they were indexed should be skipped. In that
+     * case callers need to build the documents and check them with {@link #isUnchanged(String, String, Map)} before
+     * indexing them.
+     * @return true if unchanged documents should be skipped
+     * @since 4.2.0
+     */
+    default boolean isSkipUnchanged() {
+        return false;
+    }
+
+    /**
+     * Indicates if the given document is identical to the last one indexed with the same id
+     * @param indexName the name of the index
+     * @param docId the id of the document
+     * @param doc the document
+     * @return true if the document doesn't need to be indexed again
+     * @since 4.2.0
+     */
+    default boolean isUnchanged(String indexName, String docId, Map<String, Object> doc) {
+        return false;
+    }
+
+    /**
+     * Indicates if binary documents can be indexed without their content because parsing them took too long, in
+     * which case callers need to build the documents and check them with {@link #isParseTimedOut(Map)} to report
+     * them
+     */
+    default boolean isParseTimeoutEnabled() {
+        return false;
+    }
+
+    /**
+     * Indicates if the given binary document was built without its content because parsing it took too long
+     * @param doc the document
+     * @return true if the content of the document is missing
+     */
+    default boolean isParseTimedOut(Map<String, Object> doc) {
+        return false;
+    }
+
     void index(String indexName, String siteId, String docId, Map<String, Object> doc);
 
     /**
@@ -68,6 +162,90 @@ public interface OpenSearchService extends AutoCloseable {
     void index(String indexName, String siteId, String docId, String xml, Map<String, Object> additionalFields)
             throws OpenSearchException;
 
+    /**
+     * Builds the document that would be indexed for the given xml file, without sending it. Implementations that
+     * don't override this method don't support it, so they can't be used to skip unchanged documents or to index
+     * xml files with the staged pipeline.
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param xml the content of the document
+     * @param additionalFields additional fields to include
+     * @return the document
+     * @throws OpenSearchException if there is any error building the document or if it's not supported
+     */
+    default Map<String, Object> buildDocument(String siteId, String docId, String xml,
+                                              Map<String, Object> additionalFields) throws OpenSearchException {
+        throw new OpenSearchException(null, "Building documents is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Performs an index for the given already parsed xml file, without serializing it again. By default the
+     * document is serialized and indexed with {@link #index(String, String, String, String, Map)}.
+     * @param indexName the name of the index
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param document the content of the document, it can be modified so callers should pass a copy if it's shared
+     * @param additionalFields additional fields to index
+     * @throws OpenSearchException if there is any error during the operation
+     * @since 4.2.0
+     */
+    default void index(String indexName, String siteId, String docId, Document document,
+                       Map<String, Object> additionalFields) throws OpenSearchException {
+        index(indexName, siteId, docId, document.asXML(), additionalFields);
+    }
+
+    /**
+     * Builds the document that would be indexed for the given already parsed xml file, without sending it. By
+     * default the document is serialized and built with {@link #buildDocument(String, String, String, Map)}.
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param document the content of the document, it can be modified so callers should pass a copy if it's shared
+     * @param additionalFields additional fields to include
+     * @return the document
+     * @throws OpenSearchException if there is any error building the document
+     * @since 4.2.0
+     */
+    default Map<String, Object> buildDocument(String siteId, String docId, Document document,
+                                              Map<String, Object> additionalFields) throws OpenSearchException {
+        return buildDocument(siteId, docId, document.asXML(), additionalFields);
+    }
+
+    /**
+     * Builds the document that would be indexed for the given binary file, without sending it. Implementations that
+     * don't override this method don't support it, so they can't be used to skip unchanged documents or to index
+     * binary files with the staged pipeline.
+     * @param siteName the name of the site
+     * @param path the path of the document
+     * @param resource the content of the document
+     * @param additionalFields additional fields to include
+     * @return the document
+     * @throws OpenSearchException if there is any error parsing the document or if it's not supported
+     */
+    default Map<String, Object> buildBinaryDocument(String siteName, String path, Resource resource,
+                                                    Map<String, Object> additionalFields)
+            throws OpenSearchException {
+        throw new OpenSearchException(null, "Building binary documents is not supported by " +
+                                            getClass().getName());
+    }
+
+    /**
+     * Updates only the metadata fields of an already indexed binary file, without parsing its content again. The
+     * fields added by the previous metadata are removed first, so fields deleted from the metadata don't remain in
+     * the index.
+     * @param indexName the name of the index
+     * @param siteName the name of the site
+     * @param path the path of the document
+     * @param metadata the new metadata fields
+     * @return true if the document was updated, false if it needs to be fully indexed instead (it doesn't exist or
+     *         it was indexed without the list of its metadata fields)
+     * @throws OpenSearchException if there is any error during the operation
+     * @since 4.2.0
+     */
+    default boolean updateBinaryMetadata(String indexName, String siteName, String path, Map<String, Object> metadata)
+            throws OpenSearchException {
+        return false;
+    }
+
     /**
      * Performs an index for the given binary file
      * @param indexName the name of the index
@@ -109,4 +287,15 @@ public interface OpenSearchService extends AutoCloseable {
      */
     void refresh(String indexName) throws OpenSearchException;
 
+    /**
+     * Opens a new session to send index and delete operations using the bulk API. By default the session doesn't
+     * group the operations, each one is sent right away using this service.
+     * @param listener the listener that will receive the result of each operation
+     * @return the bulk session, must be closed to send any pending operations
+     * @since 4.2.0
+     */
+    default OpenSearchBulkSession openBulkSession(OpenSearchBulkSession.Listener listener) {
+        return new DirectOpenSearchBulkSession(this, listener);
+    }
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.batch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
+import org.craftercms.search.opensearch.OpenSearchService;
+
+/**
+ * Keeps track of the bulk sessions opened by a batch indexer. Each call to
+ * {@link org.craftercms.search.batch.BatchIndexer#updateIndex} has its own {@link UpdateStatus}, so it's used as the
+ * key to find the session of the current call from any of the threads working on it.
+ *
+ * @since 4.2.0
+ */
+public class BulkSessionRegistry {
+
+    protected final Map<UpdateStatus, OpenSearchBulkSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a new session that reports the results of the operations to the given status
+     * @param searchService the service used to open the session
+     * @param updateStatus the status of the current call
+     * @return the new session
+     */
+    public OpenSearchBulkSession open(OpenSearchService searchService, UpdateStatus updateStatus) {
+        OpenSearchBulkSession session =
+            searchService.openBulkSession(OpenSearchIndexingUtils.createBulkListener(updateStatus));
+        sessions.put(updateStatus, session);
+        return session;
+    }
+
+    /**
+     * Returns the session for the given status, or null if bulk indexing is not being used
+     */
+    public OpenSearchBulkSession get(UpdateStatus updateStatus) {
+        return sessions.get(updateStatus);
+    }
+
+    /**
+     * Sends any pending operations and removes the session for the given status
+     */
+    public void close(UpdateStatus updateStatus) {
+        OpenSearchBulkSession session = sessions.remove(updateStatus);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+}
@@ -17,14 +17,25 @@
 package org.craftercms.search.opensearch.batch;
 
 import org.craftercms.core.service.Content;
+import org.craftercms.core.service.ContentStoreService;
+import org.craftercms.core.service.Context;
 import org.craftercms.search.batch.UpdateDetail;
+import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.exception.BatchIndexingException;
 import org.craftercms.search.batch.impl.AbstractBinaryFileBatchIndexer;
+import org.craftercms.search.batch.pipeline.IndexingTask;
+import org.craftercms.search.commons.utils.ContentResource;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
 import org.craftercms.search.opensearch.OpenSearchService;
 
 import java.beans.ConstructorProperties;
 import java.util.Map;
 
+import static org.apache.commons.io.FilenameUtils.getName;
+import static org.craftercms.search.batch.utils.IndexingUtils.getAdditionalFields;
+import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
+
 /**
  * Implementation of {@link AbstractBinaryFileBatchIndexer} for OpenSearch
  * @author joseross
@@ -36,22 +47,94 @@ public class OpenSearchBinaryFileBatchIndexer extends AbstractBinaryFileBatchInd
      */
     protected final OpenSearchService searchService;
 
+    /**
+     * Indicates if the operations should be sent using the bulk API
+     */
+    protected boolean bulkEnabled = false;
+
+    /**
+     * Tracks the bulk sessions of the current calls
+     */
+    protected final BulkSessionRegistry bulkSessions = new BulkSessionRegistry();
+
     @ConstructorProperties({"searchService"})
     public OpenSearchBinaryFileBatchIndexer(final OpenSearchService searchService) {
         this.searchService = searchService;
     }
 
+    public void setBulkEnabled(final boolean bulkEnabled) {
+        this.bulkEnabled = bulkEnabled;
+    }
+
+    @Override
+    protected void doUpdateIndex(final String indexId, final String siteName,
+                                 final ContentStoreService contentStoreService, final Context context,
+                                 final UpdateSet updateSet, final UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        if (!bulkEnabled) {
+            super.doUpdateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            return;
+        }
+
+        bulkSessions.open(searchService, updateStatus);
+        try {
+            super.doUpdateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+        } finally {
+            bulkSessions.close(updateStatus);
+        }
+    }
+
     @Override
     protected void doDelete(final String indexId, final String siteName, final String path, final UpdateStatus updateStatus) {
-        OpenSearchIndexingUtils.doDelete(searchService, indexId, siteName, path, updateStatus);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doDelete(bulkSession, indexId, siteName, path);
+        } else {
+            OpenSearchIndexingUtils.doDelete(searchService, indexId, siteName, path, updateStatus);
+        }
     }
 
     @Override
     protected void doUpdateContent(final String indexId, final String siteName, final String path,
                                    final Content binaryContent, final UpdateDetail updateDetail,
                                    final UpdateStatus updateStatus, Map<String, Object> metadata) {
-        OpenSearchIndexingUtils.doUpdateBinary(searchService, indexId, siteName, path, metadata,
-            binaryContent, updateDetail, updateStatus);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdateBinary(bulkSession, indexId, siteName, path, metadata,
+                binaryContent, updateDetail);
+        } else {
+            OpenSearchIndexingUtils.doUpdateBinary(searchService, indexId, siteName, path, metadata,
+                binaryContent, updateDetail, updateStatus);
+        }
+    }
+
+    @Override
+    protected boolean doBuild(IndexingTask task) {
+        if (!task.isDelete()) {
+            Content binaryContent = task.getSource();
+            task.setDocument(searchService.buildBinaryDocument(task.getSiteName(), task.getPath(),
+                new ContentResource(binaryContent, getName(task.getPath())),
+                mergeMaps(task.getMetadata(), getAdditionalFields(task.getUpdateDetail()))));
+        }
+        return true;
+    }
+
+    @Override
+    protected void doSend(ContentStoreService contentStoreService, Context context, IndexingTask task,
+                          UpdateStatus updateStatus) {
+        if (task.getDocument() == null) {
+            super.doSend(contentStoreService, context, task, updateStatus);
+            return;
+        }
+
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdate(bulkSession, task.getIndexId(), task.getSiteName(), task.getPath(),
+                task.getDocument());
+        } else {
+            OpenSearchIndexingUtils.doUpdate(searchService, task.getIndexId(), task.getSiteName(), task.getPath(),
+                task.getDocument(), updateStatus);
+        }
     }
 
 }
@@ -18,18 +18,36 @@ package org.craftercms.search.opensearch.batch;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.craftercms.core.service.Content;
+import org.craftercms.core.service.ContentStoreService;
+import org.craftercms.core.service.Context;
 import org.craftercms.search.batch.UpdateDetail;
+import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.exception.BatchIndexingException;
 import org.craftercms.search.batch.impl.AbstractBinaryFileWithMetadataBatchIndexer;
 import org.craftercms.search.commons.exception.SearchException;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
 import org.craftercms.search.opensearch.OpenSearchService;
 import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.opensearch.client.opensearch._types.FieldValue;
 import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 
 import java.beans.ConstructorProperties;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * Implementation of {@link AbstractBinaryFileWithMetadataBatchIndexer} for OpenSearch
@@ -37,20 +55,79 @@ import java.util.Map;
  */
 public class OpenSearchBinaryFileWithMetadataBatchIndexer extends AbstractBinaryFileWithMetadataBatchIndexer {
 
+    private static final Logger logger = LoggerFactory.getLogger(OpenSearchBinaryFileWithMetadataBatchIndexer.class);
+
+    public static final int DEFAULT_LOOKUP_BATCH_SIZE = 1000;
+
     /**
      * OpenSearch service
      */
     protected final OpenSearchService searchService;
 
+    /**
+     * Indicates if the operations should be sent using the bulk API
+     */
+    protected boolean bulkEnabled = false;
+
+    /**
+     * Tracks the bulk sessions of the current calls
+     */
+    protected final BulkSessionRegistry bulkSessions = new BulkSessionRegistry();
+
+    /**
+     * The maximum number of paths to resolve in a single search when looking up the relationships between metadata
+     * and binary files
+     */
+    protected int lookupBatchSize = DEFAULT_LOOKUP_BATCH_SIZE;
+
     @ConstructorProperties({"searchService"})
     public OpenSearchBinaryFileWithMetadataBatchIndexer(final OpenSearchService searchService) {
         this.searchService = searchService;
     }
 
+    public void setBulkEnabled(final boolean bulkEnabled) {
+        this.bulkEnabled = bulkEnabled;
+    }
+
+    public void setLookupBatchSize(final int lookupBatchSize) {
+        this.lookupBatchSize = lookupBatchSize;
+    }
+
+    @Override
+    public void updateIndex(final String indexId, final String siteName,
+                            final ContentStoreService contentStoreService, final Context context,
+                            final UpdateSet updateSet, final UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        if (!bulkEnabled) {
+            super.updateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            return;
+        }
+
+        bulkSessions.open(searchService, updateStatus);
+        try {
+            super.updateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+        } finally {
+            bulkSessions.close(updateStatus);
+        }
+    }
+
+    @Override
+    protected void flushUpdates(final String indexId, final UpdateStatus updateStatus) {
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            bulkSession.flush();
+        }
+    }
+
     @Override
     protected void doDelete(final String indexId, final String siteName, final String previousBinaryPath,
                             final UpdateStatus updateStatus) {
-        OpenSearchIndexingUtils.doDelete(searchService, indexId, siteName, previousBinaryPath, updateStatus);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doDelete(bulkSession, indexId, siteName, previousBinaryPath);
+        } else {
+            OpenSearchIndexingUtils.doDelete(searchService, indexId, siteName, previousBinaryPath, updateStatus);
+        }
     }
 
     @Override
@@ -97,20 +174,40 @@ public class OpenSearchBinaryFileWithMetadataBatchIndexer extends AbstractBinary
         }
     }
 
+    @Override
+    protected boolean doUpdateMetadata(final String indexId, final String siteName, final String binaryPath,
+                                       final Map<String, Object> metadata, final UpdateDetail updateDetail,
+                                       final UpdateStatus updateStatus) {
+        return OpenSearchIndexingUtils.doUpdateBinaryMetadata(searchService, indexId, siteName, binaryPath, metadata,
+                updateDetail, updateStatus);
+    }
+
     @Override
     protected void doUpdateContent(final String indexId, final String siteName, final String binaryPath,
                                    final Resource resource, final Map<String, Object> metadata,
                                    final UpdateDetail updateDetail, final UpdateStatus updateStatus) {
-        OpenSearchIndexingUtils.doUpdateBinary(searchService, indexId, siteName, binaryPath, metadata,
-                resource, updateDetail, updateStatus);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdateBinary(bulkSession, indexId, siteName, binaryPath, metadata,
+                    resource, updateDetail);
+        } else {
+            OpenSearchIndexingUtils.doUpdateBinary(searchService, indexId, siteName, binaryPath, metadata,
+                    resource, updateDetail, updateStatus);
+        }
     }
 
     @Override
     protected void doUpdateContent(final String indexId, final String siteName, final String binaryPath,
                                    final Content content, final Map<String, Object> metadata,
                                    final UpdateDetail updateDetail, final UpdateStatus updateStatus) {
-        OpenSearchIndexingUtils.doUpdateBinary(searchService, indexId, siteName, binaryPath, metadata,
-                content, updateDetail, updateStatus);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdateBinary(bulkSession, indexId, siteName, binaryPath, metadata,
+                    content, updateDetail);
+        } else {
+            OpenSearchIndexingUtils.doUpdateBinary(searchService, indexId, siteName, binaryPath, metadata,
+                    content, updateDetail, updateStatus);
+        }
     }
 
     @Override
@@ -120,6 +217,140 @@ public class OpenSearchBinaryFileWithMetadataBatchIndexer extends AbstractBinary
         doUpdateContent(indexId, siteName, binaryPath, resource, null, updateDetail, updateStatus);
     }
 
+    @Override
+    protected Map<String, List<String>> searchBinaryPathsFromMetadataPaths(final String indexId, final String siteName,
+                                                                           final Collection<String> metadataPaths) {
+        Map<String, List<String>> binaryPaths = new HashMap<>();
+        for (List<String> batch : partition(metadataPaths)) {
+            try {
+                List<Map<String, Object>> docs = searchService.searchFields(indexId,
+                    Arrays.asList(localIdFieldName, metadataPathFieldName), Query.of(q -> q
+                        .terms(t -> t
+                            .field(metadataPathFieldNameWithKeyword())
+                            .terms(v -> v.value(toFieldValues(batch)))
+                        )
+                    ));
+                Set<String> requestedPaths = new HashSet<>(batch);
+                for (Map<String, Object> doc : docs) {
+                    String binaryPath = (String) doc.get(localIdFieldName);
+                    for (String metadataPath : getValues(doc.get(metadataPathFieldName))) {
+                        if (requestedPaths.contains(metadataPath)) {
+                            binaryPaths.computeIfAbsent(metadataPath, key -> new ArrayList<>()).add(binaryPath);
+                        }
+                    }
+                }
+            } catch (OpenSearchException e) {
+                throw new SearchException(indexId, "Error executing search for " + batch, e);
+            }
+        }
+        return binaryPaths;
+    }
+
+    @Override
+    protected Map<String, String> searchMetadataPathsFromBinaryPaths(final String indexId, final String siteName,
+                                                                    final Collection<String> binaryPaths) {
+        Map<String, String> metadataPaths = new HashMap<>();
+        for (List<String> batch : partition(binaryPaths)) {
+            try {
+                List<Map<String, Object>> docs = searchService.searchFields(indexId,
+                    Arrays.asList(localIdFieldName, metadataPathFieldName), Query.of(q -> q
+                        .bool(b -> b
+                            .filter(m -> m
+                                .terms(t -> t
+                                    .field(localIdFieldName)
+                                    .terms(v -> v.value(toFieldValues(batch)))
+                                )
+                            )
+                            .filter(m -> m
+                                .exists(e -> e
+                                    .field(metadataPathFieldName)
+                                )
+                            )
+                        )
+                    ));
+                for (Map<String, Object> doc : docs) {
+                    List<String> values = getValues(doc.get(metadataPathFieldName));
+                    if (!values.isEmpty()) {
+                        metadataPaths.putIfAbsent((String) doc.get(localIdFieldName), values.get(0));
+                    }
+                }
+            } catch (OpenSearchException e) {
+                throw new SearchException(indexId, "Error executing search for " + batch, e);
+            }
+        }
+        return metadataPaths;
+    }
+
+    /**
+     * Rebuilds the {@link #relationshipStore} for the given index from the binary documents that have metadata
+     * @param indexId the id of the index
+     * @throws BatchIndexingException if there is no relationship store configured or the rebuild fails
+     */
+    public void rebuildRelationships(final String indexId) throws BatchIndexingException {
+        if (relationshipStore == null) {
+            throw new BatchIndexingException("No relationship store has been configured");
+        }
+
+        logger.info("Rebuilding relationships for index {}", indexId);
+        Map<String, List<String>> binaryPathsByMetadataPath = new HashMap<>();
+        try (Stream<Map<String, Object>> docs = searchService.streamFields(indexId,
+                Arrays.asList(localIdFieldName, metadataPathFieldName), Query.of(q -> q
+                    .exists(e -> e
+                        .field(metadataPathFieldName)
+                    )
+                ))) {
+            docs.forEach(doc -> {
+                String binaryPath = (String) doc.get(localIdFieldName);
+                for (String metadataPath : getValues(doc.get(metadataPathFieldName))) {
+                    binaryPathsByMetadataPath.computeIfAbsent(metadataPath, key -> new ArrayList<>()).add(binaryPath);
+                }
+            });
+        } catch (OpenSearchException e) {
+            throw new BatchIndexingException("Error loading relationships from index " + indexId, e);
+        }
+
+        relationshipStore.rebuild(indexId, binaryPathsByMetadataPath);
+        logger.info("Rebuilt relationships for {} metadata files in index {}", binaryPathsByMetadataPath.size(),
+            indexId);
+    }
+
+    /**
+     * Splits the given paths in lists of at most {@link #lookupBatchSize} elements
+     */
+    protected List<List<String>> partition(Collection<String> paths) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (String path : paths) {
+            if (lookupBatchSize > 0 && batch.size() >= lookupBatchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            batch.add(path);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    protected List<FieldValue> toFieldValues(List<String> values) {
+        return values.stream().map(FieldValue::of).collect(toList());
+    }
+
+    /**
+     * Returns the values of a field that can be single or multi-valued
+     */
+    @SuppressWarnings("unchecked")
+    protected List<String> getValues(Object value) {
+        if (value instanceof Collection) {
+            return new ArrayList<>((Collection<String>) value);
+        } else if (value != null) {
+            return Collections.singletonList(value.toString());
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * * Add `.keyword` to field name to search with keyword
      * @return metadataPath with `.keyword` ending
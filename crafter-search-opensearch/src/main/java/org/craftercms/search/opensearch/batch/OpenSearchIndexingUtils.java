@@ -18,13 +18,19 @@ package org.craftercms.search.opensearch.batch;
 
 import java.util.Map;
 
+import org.apache.commons.io.FilenameUtils;
 import org.craftercms.search.batch.utils.IndexingUtils;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
 import org.craftercms.search.opensearch.OpenSearchService;
 import org.craftercms.search.opensearch.exception.OpenSearchException;
 import org.craftercms.search.batch.UpdateDetail;
 import org.craftercms.search.batch.UpdateStatus;
 import org.craftercms.core.service.Content;
 import org.craftercms.search.commons.exception.SearchException;
+import org.craftercms.search.commons.utils.ContentResource;
+import org.dom4j.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 
 import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
@@ -35,6 +41,8 @@ import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
  */
 public abstract class OpenSearchIndexingUtils extends IndexingUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(OpenSearchIndexingUtils.class);
+
     public static Map<String, Object> doSearchById(final OpenSearchService openSearch, final String indexName,
                                                    final String path) {
         return openSearch.searchId(indexName, path);
@@ -55,12 +63,56 @@ public abstract class OpenSearchIndexingUtils extends IndexingUtils {
         openSearch.index(indexName, siteName, path, doc);
     }
 
+    public static void doUpdate(final OpenSearchService openSearch, final String indexName,
+                                final String siteName, final String path, final Map<String, Object> doc,
+                                final UpdateStatus updateStatus) {
+        try {
+            if (skipIfUnchanged(openSearch, indexName, path, doc, updateStatus)) {
+                return;
+            }
+            openSearch.index(indexName, siteName, path, doc);
+            updateStatus.addSuccessfulUpdate(path);
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing document " + path, e);
+        }
+    }
+
     public static void doUpdate(final OpenSearchService openSearch, final String indexName,
                                 final String siteName, final String path, final String xml,
                                 final UpdateDetail updateDetail, final UpdateStatus updateStatus,
                                 Map<String, Object> metadata) {
         try {
-            openSearch.index(indexName, siteName, path, xml, mergeMaps(metadata, getAdditionalFields(updateDetail)));
+            Map<String, Object> additionalFields = mergeMaps(metadata, getAdditionalFields(updateDetail));
+            if (openSearch.isSkipUnchanged()) {
+                Map<String, Object> doc = openSearch.buildDocument(siteName, path, xml, additionalFields);
+                if (skipIfUnchanged(openSearch, indexName, path, doc, updateStatus)) {
+                    return;
+                }
+                openSearch.index(indexName, siteName, path, doc);
+            } else {
+                openSearch.index(indexName, siteName, path, xml, additionalFields);
+            }
+            updateStatus.addSuccessfulUpdate(path);
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing document " + path, e);
+        }
+    }
+
+    public static void doUpdate(final OpenSearchService openSearch, final String indexName,
+                                final String siteName, final String path, final Document document,
+                                final UpdateDetail updateDetail, final UpdateStatus updateStatus,
+                                Map<String, Object> metadata) {
+        try {
+            Map<String, Object> additionalFields = mergeMaps(metadata, getAdditionalFields(updateDetail));
+            if (openSearch.isSkipUnchanged()) {
+                Map<String, Object> doc = openSearch.buildDocument(siteName, path, document, additionalFields);
+                if (skipIfUnchanged(openSearch, indexName, path, doc, updateStatus)) {
+                    return;
+                }
+                openSearch.index(indexName, siteName, path, doc);
+            } else {
+                openSearch.index(indexName, siteName, path, document, additionalFields);
+            }
             updateStatus.addSuccessfulUpdate(path);
         } catch (OpenSearchException e) {
             throw new SearchException(indexName, "Error indexing document " + path, e);
@@ -73,6 +125,11 @@ public abstract class OpenSearchIndexingUtils extends IndexingUtils {
                                       final Content content, final UpdateDetail updateDetail,
                                       final UpdateStatus updateStatus) {
         try {
+            if (openSearch.isSkipUnchanged() || openSearch.isParseTimeoutEnabled()) {
+                doUpdateBinary(openSearch, indexName, siteName, path, additionalFields,
+                        new ContentResource(content, FilenameUtils.getName(path)), updateDetail, updateStatus);
+                return;
+            }
             openSearch.indexBinary(indexName, siteName, path, content,
                     mergeMaps(additionalFields,  getAdditionalFields(updateDetail)));
             updateStatus.addSuccessfulUpdate(path);
@@ -88,8 +145,19 @@ public abstract class OpenSearchIndexingUtils extends IndexingUtils {
                                       final Resource resource, final UpdateDetail updateDetail,
                                       final UpdateStatus updateStatus) {
         try {
-            openSearch.indexBinary(indexName, siteName, path, resource,
-                    mergeMaps(additionalFields,  getAdditionalFields(updateDetail)));
+            Map<String, Object> fields = mergeMaps(additionalFields,  getAdditionalFields(updateDetail));
+            if (openSearch.isSkipUnchanged() || openSearch.isParseTimeoutEnabled()) {
+                Map<String, Object> doc = openSearch.buildBinaryDocument(siteName, path, resource, fields);
+                if (skipIfUnchanged(openSearch, indexName, path, doc, updateStatus)) {
+                    return;
+                }
+                openSearch.index(indexName, siteName, path, doc);
+                if (openSearch.isParseTimedOut(doc)) {
+                    updateStatus.addContentTimeout(path);
+                }
+            } else {
+                openSearch.indexBinary(indexName, siteName, path, resource, fields);
+            }
             updateStatus.addSuccessfulUpdate(path);
         } catch (OpenSearchException e) {
             throw new SearchException(indexName, "Error indexing binary document " + path, e);
@@ -97,4 +165,131 @@ public abstract class OpenSearchIndexingUtils extends IndexingUtils {
 
     }
 
+    /**
+     * Records the update as skipped if the document is identical to the last one indexed with the same id
+     * @return true if the document doesn't need to be indexed
+     */
+    public static boolean skipIfUnchanged(final OpenSearchService openSearch, final String indexName,
+                                          final String path, final Map<String, Object> doc,
+                                          final UpdateStatus updateStatus) {
+        if (openSearch.isUnchanged(indexName, path, doc)) {
+            logger.debug("[{}] Skipping index of unchanged document {}", indexName, path);
+            updateStatus.addSkippedUpdate(path);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates only the metadata fields of an already indexed binary document
+     * @return true if the document was updated, false if it needs to be fully indexed
+     */
+    public static boolean doUpdateBinaryMetadata(final OpenSearchService openSearch, final String indexName,
+                                                 final String siteName, final String path,
+                                                 final Map<String, Object> additionalFields,
+                                                 final UpdateDetail updateDetail, final UpdateStatus updateStatus) {
+        try {
+            boolean updated = openSearch.updateBinaryMetadata(indexName, siteName, path,
+                    mergeMaps(additionalFields, getAdditionalFields(updateDetail)));
+            if (updated) {
+                updateStatus.addSuccessfulUpdate(path);
+            }
+            return updated;
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error updating metadata for binary document " + path, e);
+        }
+    }
+
+    /**
+     * Creates a listener that records the result of each bulk operation in the given status
+     */
+    public static OpenSearchBulkSession.Listener createBulkListener(final UpdateStatus updateStatus) {
+        return result -> {
+            String path = result.getDocId();
+            if (result.isSkipped()) {
+                updateStatus.addSkippedUpdate(path);
+            } else if (result.isSuccessful()) {
+                if (result.isDelete()) {
+                    updateStatus.addSuccessfulDelete(path);
+                } else {
+                    if (result.isContentTimedOut()) {
+                        updateStatus.addContentTimeout(path);
+                    }
+                    updateStatus.addSuccessfulUpdate(path);
+                }
+            } else {
+                logger.error("[{}] Error {} document {}: {}", result.getIndexName(),
+                             result.isDelete()? "deleting" : "indexing", path, result.getErrorReason());
+                if (result.isDelete()) {
+                    updateStatus.addFailedDelete(path);
+                } else {
+                    updateStatus.addFailedUpdate(path);
+                }
+            }
+        };
+    }
+
+    public static void doDelete(final OpenSearchBulkSession bulkSession, final String indexName,
+                                final String siteName, final String path) {
+        try {
+            bulkSession.delete(indexName, siteName, path);
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error deleting document " + path, e);
+        }
+    }
+
+    public static void doUpdate(final OpenSearchBulkSession bulkSession, final String indexName,
+                                final String siteName, final String path, final Map<String, Object> doc) {
+        try {
+            bulkSession.index(indexName, siteName, path, doc);
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing document " + path, e);
+        }
+    }
+
+    public static void doUpdate(final OpenSearchBulkSession bulkSession, final String indexName,
+                                final String siteName, final String path, final String xml,
+                                final UpdateDetail updateDetail, Map<String, Object> metadata) {
+        try {
+            bulkSession.index(indexName, siteName, path, xml, mergeMaps(metadata, getAdditionalFields(updateDetail)));
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing document " + path, e);
+        }
+    }
+
+    public static void doUpdate(final OpenSearchBulkSession bulkSession, final String indexName,
+                                final String siteName, final String path, final Document document,
+                                final UpdateDetail updateDetail, Map<String, Object> metadata) {
+        try {
+            bulkSession.index(indexName, siteName, path, document,
+                              mergeMaps(metadata, getAdditionalFields(updateDetail)));
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing document " + path, e);
+        }
+    }
+
+    public static void doUpdateBinary(final OpenSearchBulkSession bulkSession, final String indexName,
+                                      final String siteName, final String path,
+                                      final Map<String, Object> additionalFields,
+                                      final Content content, final UpdateDetail updateDetail) {
+        try {
+            bulkSession.indexBinary(indexName, siteName, path, content,
+                    mergeMaps(additionalFields, getAdditionalFields(updateDetail)));
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing binary document " + path, e);
+        }
+    }
+
+    public static void doUpdateBinary(final OpenSearchBulkSession bulkSession, final String indexName,
+                                      final String siteName, final String path,
+                                      final Map<String, Object> additionalFields,
+                                      final Resource resource, final UpdateDetail updateDetail) {
+        try {
+            bulkSession.indexBinary(indexName, siteName, path, resource,
+                    mergeMaps(additionalFields, getAdditionalFields(updateDetail)));
+        } catch (OpenSearchException e) {
+            throw new SearchException(indexName, "Error indexing binary document " + path, e);
+        }
+    }
+
 }
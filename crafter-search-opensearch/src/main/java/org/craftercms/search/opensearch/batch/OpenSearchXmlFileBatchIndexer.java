@@ -24,11 +24,20 @@ import org.craftercms.commons.locale.LocaleUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
 import org.craftercms.search.opensearch.OpenSearchAdminService;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
 import org.craftercms.search.opensearch.OpenSearchService;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.batch.UpdateDetail;
+import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.exception.BatchIndexingException;
 import org.craftercms.search.batch.impl.AbstractXmlFileBatchIndexer;
+import org.craftercms.search.batch.pipeline.IndexingTask;
 import org.craftercms.search.locale.LocaleExtractor;
+import org.dom4j.Document;
+
+import static org.craftercms.search.batch.utils.IndexingUtils.getAdditionalFields;
+import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
 
 /**
  * Implementation of {@link AbstractXmlFileBatchIndexer} for OpenSearch
@@ -47,6 +56,16 @@ public class OpenSearchXmlFileBatchIndexer extends AbstractXmlFileBatchIndexer {
      */
     protected final OpenSearchService searchService;
 
+    /**
+     * Indicates if the operations should be sent using the bulk API
+     */
+    protected boolean bulkEnabled = false;
+
+    /**
+     * Tracks the bulk sessions of the current calls
+     */
+    protected final BulkSessionRegistry bulkSessions = new BulkSessionRegistry();
+
     @ConstructorProperties({"searchAdminService", "localeExtractor", "searchService",
             "enableTranslation"})
     public OpenSearchXmlFileBatchIndexer(final OpenSearchAdminService searchAdminService,
@@ -59,6 +78,28 @@ public class OpenSearchXmlFileBatchIndexer extends AbstractXmlFileBatchIndexer {
         this.enableTranslation = enableTranslation;
     }
 
+    public void setBulkEnabled(final boolean bulkEnabled) {
+        this.bulkEnabled = bulkEnabled;
+    }
+
+    @Override
+    protected void doUpdateIndex(final String indexId, final String siteName,
+                                 final ContentStoreService contentStoreService, final Context context,
+                                 final UpdateSet updateSet, final UpdateStatus updateStatus)
+            throws BatchIndexingException {
+        if (!bulkEnabled) {
+            super.doUpdateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+            return;
+        }
+
+        bulkSessions.open(searchService, updateStatus);
+        try {
+            super.doUpdateIndex(indexId, siteName, contentStoreService, context, updateSet, updateStatus);
+        } finally {
+            bulkSessions.close(updateStatus);
+        }
+    }
+
     @Override
     protected void doSingleFileUpdate(String indexId, String siteName, ContentStoreService contentStoreService,
                                       Context context, String path, boolean delete, UpdateDetail updateDetail,
@@ -66,33 +107,118 @@ public class OpenSearchXmlFileBatchIndexer extends AbstractXmlFileBatchIndexer {
         if (delete) {
             doDelete(indexId, siteName, path, updateStatus);
         } else {
-            String xml = processXml(siteName, contentStoreService, context, path);
-
-            if (enableTranslation) {
-                // get the locale for the item
-                Locale locale = localeExtractor.extract(context, path);
-                if (locale != null) {
-                    // check if locale specific index indexExists
-                    searchAdminService.createIndex(indexId, locale);
-                    // update the index name
-                    indexId += "-" + LocaleUtils.toString(locale);
-                }
+            ItemCache itemCache = getItemCache(updateStatus, contentStoreService, context);
+            if (indexDescriptorDom) {
+                Document document = processDom(siteName, contentStoreService, context, path, itemCache);
+
+                doUpdate(getIndexId(indexId, context, path, itemCache), siteName, path, document, updateDetail,
+                         updateStatus, metadata);
+            } else {
+                String xml = processXml(siteName, contentStoreService, context, path, itemCache);
+
+                doUpdate(getIndexId(indexId, context, path, itemCache), siteName, path, xml, updateDetail,
+                         updateStatus, metadata);
+            }
+        }
+    }
+
+    @Override
+    protected boolean doFetch(ContentStoreService contentStoreService, Context context, IndexingTask task)
+            throws Exception {
+        super.doFetch(contentStoreService, context, task);
+        if (!task.isDelete()) {
+            task.setIndexId(getIndexId(task.getIndexId(), context, task.getPath(), task.getItemCache()));
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean doBuild(IndexingTask task) {
+        if (!task.isDelete()) {
+            Map<String, Object> additionalFields = mergeMaps(task.getMetadata(),
+                                                             getAdditionalFields(task.getUpdateDetail()));
+            if (task.getSource() instanceof Document) {
+                task.setDocument(searchService.buildDocument(task.getSiteName(), task.getPath(),
+                                                             task.<Document>getSource(), additionalFields));
+            } else {
+                task.setDocument(searchService.buildDocument(task.getSiteName(), task.getPath(),
+                                                             task.<String>getSource(), additionalFields));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void doSend(ContentStoreService contentStoreService, Context context, IndexingTask task,
+                          UpdateStatus updateStatus) {
+        if (task.getDocument() == null) {
+            super.doSend(contentStoreService, context, task, updateStatus);
+            return;
+        }
+
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdate(bulkSession, task.getIndexId(), task.getSiteName(), task.getPath(),
+                task.getDocument());
+        } else {
+            OpenSearchIndexingUtils.doUpdate(searchService, task.getIndexId(), task.getSiteName(), task.getPath(),
+                task.getDocument(), updateStatus);
+        }
+    }
+
+    /**
+     * Returns the name of the index for the given item, if translation is enabled the locale specific index is
+     * created if needed
+     */
+    protected String getIndexId(String indexId, Context context, String path, ItemCache itemCache) {
+        if (enableTranslation) {
+            // get the locale for the item
+            Locale locale = localeExtractor.extract(context, path, itemCache);
+            if (locale != null) {
+                // check if locale specific index indexExists
+                searchAdminService.createIndex(indexId, locale);
+                // update the index name
+                indexId += "-" + LocaleUtils.toString(locale);
             }
-            doUpdate(indexId, siteName, path, xml, updateDetail, updateStatus, metadata);
         }
+        return indexId;
     }
 
     @Override
     protected void doDelete(final String indexId, final String siteName, final String path, final UpdateStatus updateStatus) {
-        OpenSearchIndexingUtils.doDelete(searchService, indexId, siteName, path, updateStatus);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doDelete(bulkSession, indexId, siteName, path);
+        } else {
+            OpenSearchIndexingUtils.doDelete(searchService, indexId, siteName, path, updateStatus);
+        }
     }
 
     @Override
     protected void doUpdate(final String indexId, final String siteName, final String path, final String xml,
                             final UpdateDetail updateDetail, final UpdateStatus updateStatus,
                             Map<String, Object> metadata) {
-        OpenSearchIndexingUtils.doUpdate(searchService, indexId, siteName, path, xml, updateDetail,
-            updateStatus, metadata);
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdate(bulkSession, indexId, siteName, path, xml, updateDetail, metadata);
+        } else {
+            OpenSearchIndexingUtils.doUpdate(searchService, indexId, siteName, path, xml, updateDetail,
+                updateStatus, metadata);
+        }
+    }
+
+    @Override
+    protected void doUpdate(final String indexId, final String siteName, final String path, final Document document,
+                            final UpdateDetail updateDetail, final UpdateStatus updateStatus,
+                            Map<String, Object> metadata) {
+        OpenSearchBulkSession bulkSession = bulkSessions.get(updateStatus);
+        if (bulkSession != null) {
+            OpenSearchIndexingUtils.doUpdate(bulkSession, indexId, siteName, path, document, updateDetail,
+                metadata);
+        } else {
+            OpenSearchIndexingUtils.doUpdate(searchService, indexId, siteName, path, document, updateDetail,
+                updateStatus, metadata);
+        }
     }
 
 }
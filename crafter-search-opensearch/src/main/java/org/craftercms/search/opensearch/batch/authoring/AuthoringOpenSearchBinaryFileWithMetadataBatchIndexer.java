@@ -19,10 +19,11 @@ package org.craftercms.search.opensearch.batch.authoring;
 import java.util.*;
 
 import org.apache.commons.lang3.StringUtils;
-import org.craftercms.commons.lang.RegexUtils;
 import org.craftercms.core.service.ContentStoreService;
 import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.ItemCache;
 import org.craftercms.search.batch.UpdateSet;
+import org.craftercms.search.batch.utils.PathClassifier;
 import org.craftercms.search.opensearch.OpenSearchService;
 import org.craftercms.search.opensearch.batch.OpenSearchBinaryFileWithMetadataBatchIndexer;
 import org.craftercms.search.batch.UpdateStatus;
@@ -31,7 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
-import static org.craftercms.search.batch.utils.IndexingUtils.isMimeTypeSupported;
+import static org.craftercms.search.batch.utils.PathClassifier.is;
 import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
 
 /**
@@ -44,6 +45,10 @@ import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
 public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenSearchBinaryFileWithMetadataBatchIndexer {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer.class);
+
+    protected static final int BINARY_PATH = 1 << 4;
+    protected static final int BINARY_SEARCHABLE_PATH = 1 << 5;
+
     protected List<String> binaryPathPatterns;
     protected List<String> binarySearchablePathPatterns;
 
@@ -58,24 +63,42 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
         Set<String> binaryUpdatePaths = new LinkedHashSet<>();
         Set<String> binarySearchablePaths = new LinkedHashSet<>();
 
-        buildUpdatePaths(updateSet, metadataUpdatePaths, binarySearchablePaths, binaryUpdatePaths);
+        ItemCache itemCache = getItemCache(updateStatus, contentStoreService, context);
+
+        buildUpdatePaths(updateSet, updateStatus, metadataUpdatePaths, binarySearchablePaths, binaryUpdatePaths);
 
         updateMetadataPaths(indexId, siteName, contentStoreService, context, updateSet, updateStatus,
-                metadataUpdatePaths, binaryUpdatePaths);
+                metadataUpdatePaths, binaryUpdatePaths, itemCache);
 
-        addBinariesFromSearchablePaths(siteName, contentStoreService, context, binarySearchablePaths, binaryUpdatePaths);
+        addBinariesFromSearchablePaths(siteName, contentStoreService, context, binarySearchablePaths, binaryUpdatePaths,
+                itemCache);
 
         updateBinaryPaths(indexId, siteName, contentStoreService, context, updateSet, updateStatus,
-                binaryUpdatePaths);
+                binaryUpdatePaths, itemCache);
     }
 
     @Override
     protected void doDeletes(String indexId, String siteName, ContentStoreService contentStoreService, Context context,
                              List<String> deletePaths, UpdateStatus updateStatus) {
+        List<String> metadataDeletePaths = new ArrayList<>();
         for (String path : deletePaths) {
-            if (isMetadata(path)) {
-                doDeleteMetadata(indexId, siteName, contentStoreService, context, path, updateStatus);
-            } else if (isBinary(path)) {
+            if (isMetadata(classify(path, updateStatus))) {
+                metadataDeletePaths.add(path);
+            } else {
+                removeBinaryRelationships(indexId, path);
+            }
+        }
+        Map<String, List<String>> binaryPathsByMetadataPath = metadataDeletePaths.isEmpty()?
+                Collections.emptyMap() : findBinaryPathsFromMetadataPaths(indexId, siteName, metadataDeletePaths);
+        prefetchBinariesOfDeletedMetadata(binaryPathsByMetadataPath, updateStatus);
+
+        for (String path : deletePaths) {
+            int classification = classify(path, updateStatus);
+            if (isMetadata(classification)) {
+                List<String> binaryPaths = binaryPathsByMetadataPath.getOrDefault(path, Collections.emptyList());
+                updateRelationships(indexId, path, binaryPaths, null, updateStatus);
+                doDeleteMetadata(indexId, siteName, contentStoreService, context, path, binaryPaths, updateStatus);
+            } else if (isBinary(classification)) {
                 doDelete(indexId, siteName, path, updateStatus);
             }
         }
@@ -84,19 +107,21 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
     /**
      * Build index paths by type of binary or metadata
      * @param updateSet indexing update set
+     * @param updateStatus update status
      * @param metadataUpdatePaths metadata paths set
      * @param binarySearchablePaths binary searchable paths set
      * @param binaryUpdatePaths binary paths set
      */
-    private void buildUpdatePaths(UpdateSet updateSet, Set<String> metadataUpdatePaths,
+    private void buildUpdatePaths(UpdateSet updateSet, UpdateStatus updateStatus, Set<String> metadataUpdatePaths,
                                         Set<String> binarySearchablePaths, Set<String> binaryUpdatePaths) {
         List<String> updatePaths = updateSet.getUpdatePaths();
         for (String path : updatePaths) {
-            if (isMetadata(path)) {
+            int classification = classify(path, updateStatus);
+            if (isMetadata(classification)) {
                 metadataUpdatePaths.add(path);
-            } else if (isBinary(path)) {
+            } else if (isBinary(classification)) {
                 binaryUpdatePaths.add(path);
-            } else if (isBinarySearchable(path)) {
+            } else if (is(classification, BINARY_SEARCHABLE_PATH)) {
                 binarySearchablePaths.add(path);
             }
         }
@@ -112,18 +137,39 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      * @param updateStatus update status
      * @param metadataUpdatePaths metadata paths to be indexed
      * @param binaryUpdatePaths binary paths to be updated
+     * @param itemCache the item cache for the current batch
      */
     private void updateMetadataPaths(String indexId, String siteName, ContentStoreService contentStoreService,
                                      Context context, UpdateSet updateSet, UpdateStatus updateStatus,
-                                     Set<String> metadataUpdatePaths, Set<String> binaryUpdatePaths) {
+                                     Set<String> metadataUpdatePaths, Set<String> binaryUpdatePaths,
+                                     ItemCache itemCache) {
+        Map<String, List<String>> binaryPathsByMetadataPath =
+                findBinaryPathsFromMetadataPaths(indexId, siteName, metadataUpdatePaths);
+
+        // Load all the metadata first so the remote binaries can be downloaded while the others are indexed
+        Map<String, Document> metadataDocs = new HashMap<>();
+        Map<String, Collection<String>> newBinaryPathsByMetadataPath = new HashMap<>();
+        List<String> remoteBinaryPaths = new ArrayList<>();
+        for (String metadataPath : metadataUpdatePaths) {
+            Document metadataDoc = loadMetadata(contentStoreService, context, siteName, metadataPath, itemCache);
+            Collection<String> newBinaryPaths = metadataDoc != null? getBinaryFilePaths(metadataDoc) : null;
+            metadataDocs.put(metadataPath, metadataDoc);
+            newBinaryPathsByMetadataPath.put(metadataPath, newBinaryPaths);
+
+            addBinariesToReindex(binaryPathsByMetadataPath.get(metadataPath), newBinaryPaths, binaryUpdatePaths,
+                                 remoteBinaryPaths, updateStatus);
+        }
+        prefetchRemoteBinaries(remoteBinaryPaths, updateStatus);
+
         for (String metadataPath : metadataUpdatePaths) {
             Collection<String> newBinaryPaths = Collections.emptyList();
-            List<String> previousBinaryPaths = searchBinaryPathsFromMetadataPath(indexId, siteName, metadataPath);
-            Document metadataDoc = loadMetadata(contentStoreService, context, siteName, metadataPath);
+            List<String> previousBinaryPaths = binaryPathsByMetadataPath.get(metadataPath);
+            Document metadataDoc = metadataDocs.get(metadataPath);
 
             if (metadataDoc != null) {
-                newBinaryPaths = getBinaryFilePaths(metadataDoc);
+                newBinaryPaths = newBinaryPathsByMetadataPath.get(metadataPath);
             }
+            updateRelationships(indexId, metadataPath, previousBinaryPaths, newBinaryPaths, updateStatus);
 
             // If there are previous binaries that are not associated to the metadata anymore, reindex them without
             // metadata or delete them if they're child binaries.
@@ -133,15 +179,20 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
             // Index the new associated binaries
             if (isNotEmpty(newBinaryPaths)) {
                 Map<String, Object> metadata = extractMetadata(metadataPath, metadataDoc);
+                Map<String, Object> additionalFields =
+                    collectMetadata(metadataPath, contentStoreService, context, itemCache);
 
                 for (String newBinaryPath : newBinaryPaths) {
-                    binaryUpdatePaths.remove(newBinaryPath);
-
-                    Map<String, Object> additionalFields = collectMetadata(metadataPath, contentStoreService, context);
                     Map<String, Object> mergedMetadata = mergeMaps(metadata, additionalFields);
 
-                    updateBinaryWithMetadata(indexId, siteName, contentStoreService, context, newBinaryPath,
-                            mergedMetadata, updateSet.getUpdateDetail(metadataPath), updateStatus);
+                    // Binaries that are also part of the update need to be parsed again
+                    if (binaryUpdatePaths.remove(newBinaryPath)) {
+                        updateBinaryWithMetadata(indexId, siteName, contentStoreService, context, newBinaryPath,
+                                mergedMetadata, updateSet.getUpdateDetail(metadataPath), updateStatus);
+                    } else {
+                        updateBinaryMetadata(indexId, siteName, contentStoreService, context, newBinaryPath,
+                                mergedMetadata, updateSet.getUpdateDetail(metadataPath), updateStatus);
+                    }
                 }
             }
         }
@@ -154,13 +205,15 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      * @param context the context
      * @param binarySearchablePaths paths to search for associated binaries
      * @param binaryUpdatePaths list of binaries paths to be updated
+     * @param itemCache the item cache for the current batch
      */
     private void addBinariesFromSearchablePaths(String siteName, ContentStoreService contentStoreService,
-                                                Context context, Set<String> binarySearchablePaths, Set<String> binaryUpdatePaths) {
+                                                Context context, Set<String> binarySearchablePaths, Set<String> binaryUpdatePaths,
+                                                ItemCache itemCache) {
         // add binary path from xml document which contains binaries references
         for (String binarySearchPath : binarySearchablePaths) {
             Collection<String> newBinaryPaths = Collections.emptyList();
-            Document metadataDoc = loadMetadata(contentStoreService, context, siteName, binarySearchPath);
+            Document metadataDoc = loadMetadata(contentStoreService, context, siteName, binarySearchPath, itemCache);
 
             if (metadataDoc != null) {
                 newBinaryPaths = getBinaryFilePaths(metadataDoc);
@@ -181,19 +234,25 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      * @param updateSet update set
      * @param updateStatus update status
      * @param binaryUpdatePaths set of binary paths to be indexed
+     * @param itemCache the item cache for the current batch
      */
     private void updateBinaryPaths(String indexId, String siteName, ContentStoreService contentStoreService,
                                             Context context, UpdateSet updateSet, UpdateStatus updateStatus,
-                                            Set<String> binaryUpdatePaths) {
+                                            Set<String> binaryUpdatePaths, ItemCache itemCache) {
+        Map<String, String> metadataPathsByBinaryPath =
+                findMetadataPathsFromBinaryPaths(indexId, siteName, binaryUpdatePaths);
+        prefetchRemoteBinaries(binaryUpdatePaths, updateStatus);
+
         for (String binaryPath : binaryUpdatePaths) {
-            String metadataPath = searchMetadataPathFromBinaryPath(indexId, siteName, binaryPath);
+            String metadataPath = metadataPathsByBinaryPath.get(binaryPath);
             if (StringUtils.isNotEmpty(metadataPath)) {
                 // If the binary file has an associated metadata, index the file with the metadata
-                Document metadataDoc = loadMetadata(contentStoreService, context, siteName, metadataPath);
+                Document metadataDoc = loadMetadata(contentStoreService, context, siteName, metadataPath, itemCache);
                 if (metadataDoc != null) {
                     Map<String, Object> metadata = extractMetadata(metadataPath, metadataDoc);
 
-                    Map<String, Object> additionalFields = collectMetadata(metadataPath, contentStoreService, context);
+                    Map<String, Object> additionalFields =
+                        collectMetadata(metadataPath, contentStoreService, context, itemCache);
                     Map<String, Object> mergedMetadata = mergeMaps(metadata, additionalFields);
 
                     updateBinaryWithMetadata(indexId, siteName, contentStoreService, context, binaryPath,
@@ -215,13 +274,13 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      * @param contentStoreService instance of content store service
      * @param context the context
      * @param path path to process delete indexing
+     * @param binaryPaths the binaries associated with the metadata
      * @param updateStatus update status
      */
     private void doDeleteMetadata(String indexId, String siteName, ContentStoreService contentStoreService, Context context,
-                             String path, UpdateStatus updateStatus) {
-        List<String> binaryPaths = searchBinaryPathsFromMetadataPath(indexId, siteName, path);
+                             String path, List<String> binaryPaths, UpdateStatus updateStatus) {
         for (String binaryPath : binaryPaths) {
-            if (isChildBinary(binaryPath)) {
+            if (isChildBinary(classify(binaryPath, updateStatus))) {
                 logger.debug("Parent of binary {} deleted. Deleting child binary too", binaryPath);
 
                 // If the binary is a child binary, when the metadata file is deleted, then delete it
@@ -242,8 +301,16 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      * @return true if matched binary pattern and is a supported mime-type, false otherwise
      */
     protected boolean isBinary(String path) {
-        return RegexUtils.matchesAny(path, binaryPathPatterns) &&
-                isMimeTypeSupported(mimeTypesMap, supportedMimeTypes, path);
+        return isBinary(getPathClassifier().classify(path));
+    }
+
+    /**
+     * Check if a path with the given classification is binary or not
+     * @param classification the classification of the path
+     * @return true if matched binary pattern and is a supported mime-type, false otherwise
+     */
+    protected boolean isBinary(int classification) {
+        return is(classification, BINARY_PATH) && is(classification, SUPPORTED_MIME_TYPE);
     }
 
     /**
@@ -252,7 +319,14 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      * @return true if matched the defined pattern, false otherwise
      */
     protected boolean isBinarySearchable(String path) {
-        return RegexUtils.matchesAny(path, binarySearchablePathPatterns);
+        return getPathClassifier().matches(path, BINARY_SEARCHABLE_PATH);
+    }
+
+    @Override
+    protected PathClassifier.Builder configurePathClassifier(PathClassifier.Builder builder) {
+        return super.configurePathClassifier(builder)
+            .addPatterns(BINARY_PATH, binaryPathPatterns)
+            .addPatterns(BINARY_SEARCHABLE_PATH, binarySearchablePathPatterns);
     }
 
     /**
@@ -261,6 +335,7 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      */
     public void setBinaryPathPatterns(List<String> binaryPathPatterns) {
         this.binaryPathPatterns = binaryPathPatterns;
+        this.pathClassifier = null;
     }
 
     /**
@@ -269,5 +344,6 @@ public class AuthoringOpenSearchBinaryFileWithMetadataBatchIndexer extends OpenS
      */
     public void setBinarySearchablePathPatterns(List<String> binarySearchablePathPatterns) {
         this.binarySearchablePathPatterns = binarySearchablePathPatterns;
+        this.pathClassifier = null;
     }
 }
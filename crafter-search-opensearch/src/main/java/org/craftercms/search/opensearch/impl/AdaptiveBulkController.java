@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the size and concurrency of bulk requests based on the feedback from the cluster, similar to TCP
+ * congestion control: the window (number of operations per request) grows by a fixed increment after every fast
+ * request, and it's reduced by a factor when a request is slow or when the cluster rejects operations (HTTP 429 or
+ * {@code rejected_execution_exception}). The number of concurrent requests grows independently of the window, by one
+ * after a number of consecutive fast requests, and it's halved when the cluster rejects operations.
+ *
+ * @since 4.2.0
+ */
+public class AdaptiveBulkController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBulkController.class);
+
+    public static final int DEFAULT_MIN_WINDOW = 50;
+    public static final int DEFAULT_MAX_WINDOW = 5000;
+    public static final int DEFAULT_INITIAL_WINDOW = 500;
+    public static final int DEFAULT_WINDOW_INCREMENT = 50;
+    public static final int DEFAULT_INITIAL_CONCURRENCY = 1;
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+    public static final int DEFAULT_CONCURRENCY_INCREASE_INTERVAL = 10;
+    public static final long DEFAULT_TARGET_LATENCY = 1000;
+    public static final double DEFAULT_REJECTION_FACTOR = 0.5;
+    public static final double DEFAULT_LATENCY_FACTOR = 0.8;
+
+    /**
+     * The minimum number of operations per request
+     */
+    protected int minWindow = DEFAULT_MIN_WINDOW;
+
+    /**
+     * The maximum number of operations per request
+     */
+    protected int maxWindow = DEFAULT_MAX_WINDOW;
+
+    /**
+     * The number of operations added to the window after each fast request
+     */
+    protected int windowIncrement = DEFAULT_WINDOW_INCREMENT;
+
+    /**
+     * The maximum number of concurrent requests
+     */
+    protected int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    /**
+     * The number of consecutive fast requests after which one more concurrent request is allowed
+     */
+    protected int concurrencyIncreaseInterval = DEFAULT_CONCURRENCY_INCREASE_INTERVAL;
+
+    /**
+     * The latency in milliseconds above which a request is considered slow
+     */
+    protected long targetLatency = DEFAULT_TARGET_LATENCY;
+
+    /**
+     * The factor applied to the window when operations are rejected
+     */
+    protected double rejectionFactor = DEFAULT_REJECTION_FACTOR;
+
+    /**
+     * The factor applied to the window when a request is slow
+     */
+    protected double latencyFactor = DEFAULT_LATENCY_FACTOR;
+
+    protected final Lock lock = new ReentrantLock();
+
+    protected final Condition permitReleased = lock.newCondition();
+
+    protected int window = DEFAULT_INITIAL_WINDOW;
+
+    protected int concurrency = DEFAULT_INITIAL_CONCURRENCY;
+
+    protected int inFlight;
+
+    /**
+     * The number of consecutive fast requests since the concurrency last changed
+     */
+    protected int fastRequests;
+
+    protected long rejectedRequests;
+
+    protected long slowRequests;
+
+    public void setMinWindow(int minWindow) {
+        this.minWindow = minWindow;
+    }
+
+    public void setMaxWindow(int maxWindow) {
+        this.maxWindow = maxWindow;
+    }
+
+    public void setInitialWindow(int initialWindow) {
+        this.window = initialWindow;
+    }
+
+    public void setWindowIncrement(int windowIncrement) {
+        this.windowIncrement = windowIncrement;
+    }
+
+    public void setInitialConcurrency(int initialConcurrency) {
+        this.concurrency = Math.max(1, initialConcurrency);
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public void setConcurrencyIncreaseInterval(int concurrencyIncreaseInterval) {
+        this.concurrencyIncreaseInterval = concurrencyIncreaseInterval;
+    }
+
+    public void setTargetLatency(long targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+
+    public void setRejectionFactor(double rejectionFactor) {
+        this.rejectionFactor = rejectionFactor;
+    }
+
+    public void setLatencyFactor(double latencyFactor) {
+        this.latencyFactor = latencyFactor;
+    }
+
+    /**
+     * Returns the current number of operations per request
+     */
+    public int getWindow() {
+        lock.lock();
+        try {
+            return Math.max(minWindow, Math.min(window, maxWindow));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current number of concurrent requests allowed
+     */
+    public int getConcurrency() {
+        lock.lock();
+        try {
+            return getMaxInFlight();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently being sent
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests that had rejected operations
+     */
+    public long getRejectedRequests() {
+        lock.lock();
+        try {
+            return rejectedRequests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests that took longer than the target latency
+     */
+    public long getSlowRequests() {
+        lock.lock();
+        try {
+            return slowRequests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a new request can be sent. Must be followed by a call to {@link #release(long, boolean)}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= getMaxInFlight()) {
+                permitReleased.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the result of a request and adjusts the window and concurrency
+     * @param latency the time in milliseconds that the request took
+     * @param rejected true if the cluster rejected the request or any of its operations
+     */
+    public void release(long latency, boolean rejected) {
+        lock.lock();
+        try {
+            inFlight--;
+
+            int previousWindow = window;
+            int previousConcurrency = concurrency;
+            if (rejected) {
+                rejectedRequests++;
+                fastRequests = 0;
+                window = Math.max(minWindow, (int) (window * rejectionFactor));
+                concurrency = Math.max(1, Math.min(concurrency, maxConcurrency) / 2);
+            } else if (latency > targetLatency) {
+                slowRequests++;
+                fastRequests = 0;
+                window = Math.max(minWindow, (int) (window * latencyFactor));
+            } else {
+                if (window < maxWindow) {
+                    window = Math.min(maxWindow, window + windowIncrement);
+                }
+                if (concurrency < maxConcurrency && ++fastRequests >= concurrencyIncreaseInterval) {
+                    fastRequests = 0;
+                    concurrency++;
+                }
+            }
+
+            if (window != previousWindow || concurrency != previousConcurrency) {
+                logger.debug("Bulk window changed from {} to {} and concurrency from {} to {} (latency {}ms, " +
+                             "rejected {})", previousWindow, window, previousConcurrency, concurrency, latency,
+                             rejected);
+            }
+
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of concurrent requests allowed, must be called while holding the lock
+     */
+    protected int getMaxInFlight() {
+        return Math.max(1, Math.min(concurrency, maxConcurrency));
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.craftercms.search.opensearch.OpenSearchService;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the bulk operations that failed permanently in a local file, one JSON object per line, including the full
+ * document for index operations so they can be replayed later without reading the original content.
+ *
+ * <p>The file is only appended to, so the order of the lines is the order of the operations. When a document that
+ * has a failed operation in the store is later indexed or deleted successfully a resolved entry is added, and when
+ * it fails again the new entry replaces the previous one, so replaying never sends an operation that was superseded
+ * by a later one for the same document.</p>
+ *
+ * @since 4.2.0
+ */
+public class BulkDeadLetterStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkDeadLetterStore.class);
+
+    public static final String FIELD_TIMESTAMP = "timestamp";
+    public static final String FIELD_INDEX = "index";
+    public static final String FIELD_SITE = "site";
+    public static final String FIELD_DOC_ID = "docId";
+    public static final String FIELD_DELETE = "delete";
+    public static final String FIELD_STATUS = "status";
+    public static final String FIELD_ERROR_TYPE = "errorType";
+    public static final String FIELD_ERROR_REASON = "errorReason";
+    public static final String FIELD_DOCUMENT = "document";
+    public static final String FIELD_RESOLVED = "resolved";
+
+    protected static final TypeReference<Map<String, Object>> ENTRY_TYPE = new TypeReference<>() { };
+
+    /**
+     * The file where the failed operations are stored
+     */
+    protected final File file;
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * The keys of the documents that have a pending operation in the file, loaded when first used
+     */
+    protected Set<String> pendingKeys;
+
+    public BulkDeadLetterStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Adds a failed operation to the store
+     * @param indexName the name of the index
+     * @param siteId the name of the site
+     * @param docId the id of the document
+     * @param delete true if the operation was a delete
+     * @param document the document for index operations
+     * @param status the status returned by the cluster
+     * @param errorType the type of the error
+     * @param errorReason the reason of the error
+     */
+    public synchronized void add(String indexName, String siteId, String docId, boolean delete,
+                                 Map<String, Object> document, int status, String errorType, String errorReason) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put(FIELD_TIMESTAMP, Instant.now().toString());
+        entry.put(FIELD_INDEX, indexName);
+        entry.put(FIELD_SITE, siteId);
+        entry.put(FIELD_DOC_ID, docId);
+        entry.put(FIELD_DELETE, delete);
+        entry.put(FIELD_STATUS, status);
+        entry.put(FIELD_ERROR_TYPE, errorType);
+        entry.put(FIELD_ERROR_REASON, errorReason);
+        if (!delete) {
+            entry.put(FIELD_DOCUMENT, document);
+        }
+
+        try {
+            append(entry);
+            getPendingKeys().add(getKey(indexName, docId));
+        } catch (IOException e) {
+            logger.error("[{}] Error adding document {} to dead letter store {}", indexName, docId, file, e);
+        }
+    }
+
+    /**
+     * Marks the failed operations for the given document as resolved, should be called after every successful
+     * operation so they are not replayed over newer versions of the document
+     * @param indexName the name of the index
+     * @param docId the id of the document
+     */
+    public synchronized void resolve(String indexName, String docId) {
+        try {
+            if (!getPendingKeys().remove(getKey(indexName, docId))) {
+                return;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put(FIELD_TIMESTAMP, Instant.now().toString());
+            entry.put(FIELD_INDEX, indexName);
+            entry.put(FIELD_DOC_ID, docId);
+            entry.put(FIELD_RESOLVED, true);
+            append(entry);
+        } catch (IOException e) {
+            logger.error("[{}] Error resolving document {} in dead letter store {}", indexName, docId, file, e);
+        }
+    }
+
+    /**
+     * Returns the keys of the documents with pending operations, reading the file if needed
+     */
+    protected Set<String> getPendingKeys() throws IOException {
+        if (pendingKeys == null) {
+            Set<String> keys = new HashSet<>();
+            for (Map<String, Object> entry : readPending().values()) {
+                keys.add(getKey((String) entry.get(FIELD_INDEX), (String) entry.get(FIELD_DOC_ID)));
+            }
+            pendingKeys = keys;
+        }
+        return pendingKeys;
+    }
+
+    /**
+     * Reads the file and returns the latest pending operation for each document, skipping the ones that were
+     * resolved or replaced by a later entry
+     */
+    protected Map<String, Map<String, Object>> readPending() throws IOException {
+        Map<String, Map<String, Object>> pending = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return pending;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> entry;
+                try {
+                    entry = objectMapper.readValue(line, ENTRY_TYPE);
+                } catch (IOException e) {
+                    logger.warn("Skipping invalid entry in dead letter store {}: {}", file, line);
+                    continue;
+                }
+                String key = getKey((String) entry.get(FIELD_INDEX), (String) entry.get(FIELD_DOC_ID));
+                // Remove first so the latest entry also takes the last position
+                pending.remove(key);
+                if (!Boolean.TRUE.equals(entry.get(FIELD_RESOLVED))) {
+                    pending.put(key, entry);
+                }
+            }
+        }
+        return pending;
+    }
+
+    protected void append(Map<String, Object> entry) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create folder " + parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                                                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(objectMapper.writeValueAsString(entry));
+            writer.write('\n');
+        }
+    }
+
+    protected String getKey(String indexName, String docId) {
+        return indexName + ":" + docId;
+    }
+
+    /**
+     * Sends again the latest pending operation of each document using the given service. Operations that were
+     * resolved or replaced by a later one are skipped, the ones that fail again are kept in the store and the rest
+     * are removed. Should be called when no other indexing is in progress for the same indexes.
+     * @param searchService the service used to send the operations
+     * @return the number of operations that were replayed successfully
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int replay(OpenSearchService searchService) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        Map<String, Map<String, Object>> entries;
+        try {
+            entries = readPending();
+        } catch (IOException e) {
+            throw new OpenSearchException(null, "Error reading dead letter store " + file, e);
+        }
+
+        // Successful operations will try to resolve their entries, the file is rewritten anyway
+        pendingKeys = new HashSet<>();
+
+        int replayed = 0;
+        List<String> pending = new ArrayList<>();
+        for (Map<String, Object> entry : entries.values()) {
+            String indexName = (String) entry.get(FIELD_INDEX);
+            String siteId = (String) entry.get(FIELD_SITE);
+            String docId = (String) entry.get(FIELD_DOC_ID);
+            try {
+                if (Boolean.TRUE.equals(entry.get(FIELD_DELETE))) {
+                    searchService.delete(indexName, siteId, docId);
+                } else {
+                    searchService.index(indexName, siteId, docId, (Map<String, Object>) entry.get(FIELD_DOCUMENT));
+                }
+                replayed++;
+            } catch (OpenSearchException e) {
+                logger.warn("[{}] Error replaying operation for document {}", indexName, docId, e);
+                try {
+                    pending.add(objectMapper.writeValueAsString(entry));
+                    pendingKeys.add(getKey(indexName, docId));
+                } catch (IOException ioe) {
+                    logger.error("[{}] Error keeping operation for document {}", indexName, docId, ioe);
+                }
+            }
+        }
+
+        try {
+            File tmp = new File(file.getAbsolutePath() + ".tmp");
+            Files.write(tmp.toPath(), pending, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            pendingKeys = null;
+            throw new OpenSearchException(null, "Error updating dead letter store " + file, e);
+        }
+
+        logger.info("Replayed {} operations from dead letter store {}, {} still pending", replayed, file,
+                    pending.size());
+
+        return replayed;
+    }
+
+}
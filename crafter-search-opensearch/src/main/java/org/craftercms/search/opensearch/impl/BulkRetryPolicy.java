@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opensearch.client.ResponseException;
+
+/**
+ * Decides which failed bulk operations should be retried and how long to wait before each attempt. Operations are
+ * retried when the cluster is overloaded, timed out or had unavailable shards, using an exponential backoff with
+ * jitter.
+ *
+ * @since 4.2.0
+ */
+public class BulkRetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_INITIAL_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 30000;
+
+    /**
+     * Status codes that indicate a temporary failure
+     */
+    public static final List<Integer> DEFAULT_RETRIABLE_STATUSES = Arrays.asList(408, 429, 502, 503, 504);
+
+    /**
+     * Error types (or their suffixes) that indicate a temporary failure
+     */
+    public static final List<String> DEFAULT_RETRIABLE_ERROR_TYPES = Arrays.asList(
+        "rejected_execution_exception",
+        "timeout_exception",
+        "unavailable_shards_exception",
+        "no_shard_available_action_exception",
+        "node_not_connected_exception",
+        "circuit_breaking_exception"
+    );
+
+    /**
+     * The maximum number of retries for each operation, 0 disables retries
+     */
+    protected int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * The delay in milliseconds before the first retry
+     */
+    protected long initialDelay = DEFAULT_INITIAL_DELAY;
+
+    /**
+     * The maximum delay in milliseconds between retries
+     */
+    protected long maxDelay = DEFAULT_MAX_DELAY;
+
+    protected List<Integer> retriableStatuses = DEFAULT_RETRIABLE_STATUSES;
+
+    protected List<String> retriableErrorTypes = DEFAULT_RETRIABLE_ERROR_TYPES;
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public void setInitialDelay(long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public void setRetriableStatuses(List<Integer> retriableStatuses) {
+        this.retriableStatuses = retriableStatuses;
+    }
+
+    public void setRetriableErrorTypes(List<String> retriableErrorTypes) {
+        this.retriableErrorTypes = retriableErrorTypes;
+    }
+
+    /**
+     * Returns the time in milliseconds to wait before the given retry (starting at 1)
+     */
+    public long getDelay(int retry) {
+        long delay = initialDelay << Math.min(retry - 1, 30);
+        if (delay <= 0 || delay > maxDelay) {
+            delay = maxDelay;
+        }
+        // Add up to 20% of jitter so concurrent sessions don't retry at the same time
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    /**
+     * Indicates if an operation that failed with the given status and error type should be retried
+     */
+    public boolean isRetriable(int status, String errorType) {
+        return retriableStatuses.contains(status) ||
+               (errorType != null && retriableErrorTypes.stream().anyMatch(type -> errorType.endsWith(type)));
+    }
+
+    /**
+     * Indicates if a request that failed with the given exception should be retried
+     */
+    public boolean isRetriable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.opensearch.client.opensearch._types.OpenSearchException) {
+                org.opensearch.client.opensearch._types.OpenSearchException error =
+                    (org.opensearch.client.opensearch._types.OpenSearchException) cause;
+                return isRetriable(error.status(), error.error() != null? error.error().type() : null);
+            }
+            if (cause instanceof ResponseException) {
+                return isRetriable(((ResponseException) cause).getResponse().getStatusLine().getStatusCode(), null);
+            }
+            if (cause instanceof IOException) {
+                // Connection errors and timeouts
+                return true;
+            }
+            if (retriableErrorTypes.stream().anyMatch(type -> StringUtils.contains(cause.getMessage(), type))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
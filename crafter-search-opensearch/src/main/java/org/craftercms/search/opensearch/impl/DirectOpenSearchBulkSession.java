@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import org.craftercms.core.service.Content;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
+import org.craftercms.search.opensearch.OpenSearchService;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.dom4j.Document;
+import org.springframework.core.io.Resource;
+
+import java.util.Map;
+
+/**
+ * Implementation of {@link OpenSearchBulkSession} that doesn't group operations, each one is sent right away using
+ * the given {@link OpenSearchService}. Errors are thrown to the caller and only successful operations are reported
+ * to the listener. Used as the default for services that don't support the bulk API.
+ *
+ * @since 4.2.0
+ */
+public class DirectOpenSearchBulkSession implements OpenSearchBulkSession {
+
+    /**
+     * Status reported to the listener for successful operations
+     */
+    public static final int STATUS_OK = 200;
+
+    /**
+     * The service used to send the operations
+     */
+    protected final OpenSearchService searchService;
+
+    /**
+     * The listener that will receive the result of each operation
+     */
+    protected final Listener listener;
+
+    public DirectOpenSearchBulkSession(final OpenSearchService searchService, final Listener listener) {
+        this.searchService = searchService;
+        this.listener = listener;
+    }
+
+    @Override
+    public void index(final String indexName, final String siteId, final String docId,
+                      final Map<String, Object> doc) throws OpenSearchException {
+        searchService.index(indexName, siteId, docId, doc);
+        notifySuccess(indexName, docId, false);
+    }
+
+    @Override
+    public void index(final String indexName, final String siteId, final String docId, final String xml,
+                      final Map<String, Object> additionalFields) throws OpenSearchException {
+        searchService.index(indexName, siteId, docId, xml, additionalFields);
+        notifySuccess(indexName, docId, false);
+    }
+
+    @Override
+    public void index(final String indexName, final String siteId, final String docId, final Document document,
+                      final Map<String, Object> additionalFields) throws OpenSearchException {
+        searchService.index(indexName, siteId, docId, document, additionalFields);
+        notifySuccess(indexName, docId, false);
+    }
+
+    @Override
+    public void indexBinary(final String indexName, final String siteName, final String path,
+                            final Content content, final Map<String, Object> additionalFields)
+            throws OpenSearchException {
+        searchService.indexBinary(indexName, siteName, path, content, additionalFields);
+        notifySuccess(indexName, path, false);
+    }
+
+    @Override
+    public void indexBinary(final String indexName, final String siteName, final String path,
+                            final Resource resource, final Map<String, Object> additionalFields)
+            throws OpenSearchException {
+        searchService.indexBinary(indexName, siteName, path, resource, additionalFields);
+        notifySuccess(indexName, path, false);
+    }
+
+    @Override
+    public void delete(final String indexName, final String siteId, final String docId)
+            throws OpenSearchException {
+        searchService.delete(indexName, siteId, docId);
+        notifySuccess(indexName, docId, true);
+    }
+
+    @Override
+    public void flush() {
+        // nothing to do, operations are never queued
+    }
+
+    @Override
+    public int getPendingOperations() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        // nothing to do, operations are never queued
+    }
+
+    protected void notifySuccess(String indexName, String docId, boolean delete) {
+        if (listener != null) {
+            listener.onItemResult(new ItemResult(indexName, docId, delete, STATUS_OK, null, null));
+        }
+    }
+
+}
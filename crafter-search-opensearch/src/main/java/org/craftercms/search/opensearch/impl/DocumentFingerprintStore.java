@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.craftercms.search.commons.service.impl.AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_ALT_FIELD_NAME;
+import static org.craftercms.search.commons.service.impl.AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_FIELD_NAME;
+
+/**
+ * Keeps a hash of the last document indexed for each id, so documents that haven't changed can be skipped. The
+ * hashes of each index are kept in memory, backed by an append-only file in the given folder ({@code P <id>\t<hash>}
+ * when a document is indexed, {@code D <id>} when it's deleted) that is compacted when it has too many superseded
+ * records. Fields that change on every publish, like the publishing date, are not included in the hash.
+ *
+ * <p>The hashes of an index must be cleared when the index is created or deleted, otherwise documents could be
+ * skipped for an empty index.</p>
+ *
+ * <p><b>Warning:</b> the store assumes it sees every change made to the index, so it must not be used when the
+ * index can be changed externally (other applications writing to it, a snapshot restore, a reindex into the same
+ * alias, etc.), in that case documents that are out of date in the index would be skipped as unchanged.</p>
+ *
+ * @since 4.2.0
+ */
+public class DocumentFingerprintStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentFingerprintStore.class);
+
+    public static final String STORE_EXTENSION = ".fingerprints";
+
+    public static final int DEFAULT_MIN_COMPACTION_RECORDS = 1000;
+
+    protected static final char PUT_MARKER = 'P';
+    protected static final char DELETE_MARKER = 'D';
+    protected static final char SEPARATOR = '\t';
+
+    /**
+     * The folder where the files are stored
+     */
+    protected final File directory;
+
+    /**
+     * The fields that are not included in the hash of the documents
+     */
+    protected Set<String> excludedFields = new LinkedHashSet<>(Arrays.asList(DEFAULT_PUBLISHING_DATE_FIELD_NAME,
+                                                                             DEFAULT_PUBLISHING_DATE_ALT_FIELD_NAME));
+
+    /**
+     * The minimum number of records before the file of an index is compacted
+     */
+    protected int minCompactionRecords = DEFAULT_MIN_COMPACTION_RECORDS;
+
+    /**
+     * Writes the documents with their keys sorted, so the hash doesn't depend on the order of the fields
+     */
+    protected final ObjectMapper objectMapper =
+        new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * The loaded hashes by index
+     */
+    protected final Map<String, IndexFingerprints> indexes = new ConcurrentHashMap<>();
+
+    public DocumentFingerprintStore(File directory) {
+        this.directory = directory;
+    }
+
+    public void setExcludedFields(Set<String> excludedFields) {
+        this.excludedFields = excludedFields;
+    }
+
+    public void setMinCompactionRecords(int minCompactionRecords) {
+        this.minCompactionRecords = minCompactionRecords;
+    }
+
+    /**
+     * Indicates if the given document is identical to the last one indexed with the same id
+     * @param indexName the name of the index
+     * @param docId the id of the document
+     * @param doc the document
+     * @return true if the document doesn't need to be indexed again
+     */
+    public boolean isUnchanged(String indexName, String docId, Map<String, Object> doc) {
+        String fingerprint = getIndex(indexName).get(docId);
+        return fingerprint != null && fingerprint.equals(getFingerprint(doc));
+    }
+
+    /**
+     * Records the document that has been indexed with the given id
+     * @param indexName the name of the index
+     * @param docId the id of the document
+     * @param doc the document
+     */
+    public void put(String indexName, String docId, Map<String, Object> doc) {
+        getIndex(indexName).put(docId, getFingerprint(doc));
+    }
+
+    /**
+     * Removes the hash for a deleted document
+     * @param indexName the name of the index
+     * @param docId the id of the document
+     */
+    public void remove(String indexName, String docId) {
+        getIndex(indexName).remove(docId);
+    }
+
+    /**
+     * Removes all the hashes for the given index
+     * @param indexName the name of the index
+     */
+    public void clear(String indexName) {
+        IndexFingerprints index = indexes.remove(indexName);
+        if (index != null) {
+            index.close();
+        }
+        try {
+            Files.deleteIfExists(getFile(indexName).toPath());
+            logger.info("Cleared document fingerprints for index {}", indexName);
+        } catch (IOException e) {
+            logger.error("Error deleting document fingerprints for index {}", indexName, e);
+        }
+    }
+
+    /**
+     * Returns the hash of the given document, ignoring the {@link #excludedFields}
+     */
+    public String getFingerprint(Map<String, Object> doc) {
+        Map<String, Object> fields = new TreeMap<>(doc);
+        fields.keySet().removeAll(excludedFields);
+        try {
+            return DigestUtils.sha256Hex(objectMapper.writeValueAsBytes(fields));
+        } catch (IOException e) {
+            throw new IllegalStateException("Error serializing document", e);
+        }
+    }
+
+    protected IndexFingerprints getIndex(String indexName) {
+        return indexes.computeIfAbsent(indexName, key -> new IndexFingerprints(key, getFile(key)));
+    }
+
+    protected File getFile(String indexName) {
+        return new File(directory, indexName + STORE_EXTENSION);
+    }
+
+    /**
+     * Hashes of a single index backed by a file
+     */
+    protected class IndexFingerprints {
+
+        protected final String indexName;
+        protected final File file;
+        protected final Map<String, String> fingerprints = new HashMap<>();
+        protected int records;
+        protected Writer writer;
+
+        public IndexFingerprints(String indexName, File file) {
+            this.indexName = indexName;
+            this.file = file;
+
+            if (file.exists()) {
+                try {
+                    if (load()) {
+                        // Drop the incomplete line so it doesn't get mixed with the new records
+                        compact();
+                    }
+                    logger.info("Loaded {} document fingerprints for index {}", fingerprints.size(), indexName);
+                } catch (IOException e) {
+                    // Without the hashes documents are just indexed again
+                    logger.error("Error loading document fingerprints for index {} from {}", indexName, file, e);
+                    fingerprints.clear();
+                    records = 0;
+                }
+            }
+        }
+
+        public synchronized String get(String docId) {
+            return fingerprints.get(docId);
+        }
+
+        public synchronized void put(String docId, String fingerprint) {
+            if (!fingerprint.equals(fingerprints.put(docId, fingerprint))) {
+                append(PUT_MARKER + " " + docId + SEPARATOR + fingerprint);
+            }
+        }
+
+        public synchronized void remove(String docId) {
+            if (fingerprints.remove(docId) != null) {
+                append(DELETE_MARKER + " " + docId);
+            }
+        }
+
+        public synchronized void close() {
+            closeWriter();
+        }
+
+        protected void append(String record) {
+            try {
+                if (writer == null) {
+                    if (!directory.exists() && !directory.mkdirs()) {
+                        throw new IOException("Unable to create folder " + directory);
+                    }
+                    writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                                                     StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                writer.write(record);
+                writer.write('\n');
+                writer.flush();
+                records++;
+            } catch (IOException e) {
+                // The hash can't be trusted anymore if the change is not recorded
+                fingerprints.remove(record.substring(2).split(String.valueOf(SEPARATOR))[0]);
+                logger.warn("Error recording document fingerprint for index {}", indexName, e);
+            }
+
+            if (records > minCompactionRecords && records > fingerprints.size() * 2) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.warn("Error compacting document fingerprints for index {}", indexName, e);
+                }
+            }
+        }
+
+        /**
+         * Rewrites the file with only the current hashes
+         */
+        protected void compact() throws IOException {
+            closeWriter();
+
+            File tmp = new File(file.getAbsolutePath() + ".tmp");
+            try (Writer tmpWriter = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+                    tmpWriter.write(PUT_MARKER);
+                    tmpWriter.write(' ');
+                    tmpWriter.write(entry.getKey());
+                    tmpWriter.write(SEPARATOR);
+                    tmpWriter.write(entry.getValue());
+                    tmpWriter.write('\n');
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            records = fingerprints.size();
+        }
+
+        protected void closeWriter() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing document fingerprints file {}", file, e);
+                }
+                writer = null;
+            }
+        }
+
+        /**
+         * Loads the records from the file
+         * @return true if the last line of the file is incomplete
+         */
+        protected boolean load() throws IOException {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int start = 0;
+            int end;
+            // Only complete lines are loaded
+            while ((end = content.indexOf('\n', start)) >= 0) {
+                String line = content.substring(start, end);
+                if (line.length() > 2 && line.charAt(1) == ' ') {
+                    String value = line.substring(2);
+                    switch (line.charAt(0)) {
+                        case PUT_MARKER:
+                            int separator = value.lastIndexOf(SEPARATOR);
+                            if (separator > 0) {
+                                fingerprints.put(value.substring(0, separator), value.substring(separator + 1));
+                            }
+                            break;
+                        case DELETE_MARKER:
+                            fingerprints.remove(value);
+                            break;
+                        default:
+                            break;
+                    }
+                    records++;
+                }
+                start = end + 1;
+            }
+            return start < content.length();
+        }
+
+    }
+
+}
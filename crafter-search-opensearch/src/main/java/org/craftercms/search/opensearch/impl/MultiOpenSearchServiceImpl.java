@@ -20,7 +20,12 @@ package org.craftercms.search.opensearch.impl;
 import org.craftercms.search.opensearch.DocumentParser;
 import org.craftercms.search.opensearch.exception.OpenSearchException;
 import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -52,6 +57,7 @@ public class MultiOpenSearchServiceImpl extends OpenSearchServiceImpl {
         for (OpenSearchClient client : writeClients) {
             doDelete(client, indexName, siteName, docId);
         }
+        recordDeleted(indexName, docId);
     }
 
     /**
@@ -63,6 +69,44 @@ public class MultiOpenSearchServiceImpl extends OpenSearchServiceImpl {
         for (OpenSearchClient client : writeClients) {
             doIndex(client, indexName, siteName, docId, doc);
         }
+        recordIndexed(indexName, docId, doc);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The update is only reported as successful if it succeeded in all clusters.</p>
+     */
+    @Override
+    public boolean updateBinaryMetadata(final String indexName, final String siteName, final String path,
+                                        final Map<String, Object> metadata) throws OpenSearchException {
+        Map<String, Object> doc = buildMetadataDocument(siteName, path, metadata);
+        boolean updated = true;
+        for (OpenSearchClient client : writeClients) {
+            updated &= doUpdateBinaryMetadata(client, indexName, path, doc);
+        }
+        return updated;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>An operation is only reported as successful if it succeeded in all clusters.</p>
+     */
+    @Override
+    protected List<BulkResponseItem> executeBulk(final List<BulkOperation> operations) throws OpenSearchException {
+        List<BulkResponseItem> items = null;
+        for (OpenSearchClient client : writeClients) {
+            List<BulkResponseItem> clientItems = doBulk(client, operations).items();
+            if (items == null) {
+                items = new ArrayList<>(clientItems);
+            } else {
+                for (int i = 0; i < clientItems.size() && i < items.size(); i++) {
+                    if (clientItems.get(i).error() != null) {
+                        items.set(i, clientItems.get(i));
+                    }
+                }
+            }
+        }
+        return items != null? items : Collections.emptyList();
     }
 
     @Override
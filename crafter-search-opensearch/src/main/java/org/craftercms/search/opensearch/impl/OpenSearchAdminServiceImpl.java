@@ -19,6 +19,7 @@ package org.craftercms.search.opensearch.impl;
 import org.apache.commons.collections4.IteratorUtils;
 import org.apache.commons.io.IOUtils;
 import org.craftercms.commons.locale.LocaleUtils;
+import org.craftercms.search.batch.relationship.RelationshipStore;
 import org.craftercms.search.commons.exception.IndexNotFoundException;
 import org.craftercms.search.commons.exception.SearchException;
 import org.craftercms.search.opensearch.OpenSearchAdminService;
@@ -118,6 +119,16 @@ public class OpenSearchAdminServiceImpl implements OpenSearchAdminService {
      */
     protected final Set<String> ignoredSettings;
 
+    /**
+     * The store of document fingerprints, cleared when indices are created or deleted (optional)
+     */
+    protected DocumentFingerprintStore fingerprintStore;
+
+    /**
+     * The store of metadata and binary file associations, cleared when indices are created or deleted (optional)
+     */
+    protected RelationshipStore relationshipStore;
+
     private int reindexSlices = AUTO_SLICES;
 
     private int reindexTimeoutSeconds = 5 * 60;
@@ -152,6 +163,16 @@ public class OpenSearchAdminServiceImpl implements OpenSearchAdminService {
         this.reindexTimeoutSeconds = reindexTimeoutSeconds;
     }
 
+    @SuppressWarnings("unused")
+    public void setFingerprintStore(final DocumentFingerprintStore fingerprintStore) {
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    @SuppressWarnings("unused")
+    public void setRelationshipStore(final RelationshipStore relationshipStore) {
+        this.relationshipStore = relationshipStore;
+    }
+
     @Override
     public boolean indexExists(String indexName) {
         return doIndexExist(openSearchClient, indexName);
@@ -237,6 +258,26 @@ public class OpenSearchAdminServiceImpl implements OpenSearchAdminService {
         } catch (Exception e) {
             throw new OpenSearchException(aliasName, "Error creating index " + indexName, e);
         }
+        clearFingerprints(aliasName);
+        clearRelationships(aliasName);
+    }
+
+    /**
+     * Removes the stored fingerprints for the given alias, the documents need to be indexed again
+     */
+    protected void clearFingerprints(String aliasName) {
+        if (fingerprintStore != null) {
+            fingerprintStore.clear(aliasName);
+        }
+    }
+
+    /**
+     * Removes the stored relationships for the given alias, they need to be rebuilt from the new index
+     */
+    protected void clearRelationships(String aliasName) {
+        if (relationshipStore != null) {
+            relationshipStore.clear(aliasName);
+        }
     }
 
     /**
@@ -263,6 +304,8 @@ public class OpenSearchAdminServiceImpl implements OpenSearchAdminService {
         } catch (IOException e) {
             throw new OpenSearchException(aliasName, "Error deleting index " + aliasName, e);
         }
+        clearFingerprints(aliasName);
+        clearRelationships(aliasName);
     }
 
     /**
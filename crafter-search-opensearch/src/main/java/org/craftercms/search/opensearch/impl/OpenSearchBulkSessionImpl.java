@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.core.service.Content;
+import org.craftercms.search.commons.utils.ContentResource;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.dom4j.Document;
+import org.opensearch.client.ResponseException;
+import org.opensearch.client.opensearch._types.ErrorCause;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Default implementation of {@link OpenSearchBulkSession}. Documents are built when the operation is queued, so
+ * parsing errors are still thrown to the caller, while errors returned by OpenSearch are reported to the listener.
+ *
+ * @since 4.2.0
+ */
+public class OpenSearchBulkSessionImpl implements OpenSearchBulkSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenSearchBulkSessionImpl.class);
+
+    /**
+     * Error type reported when the whole bulk request fails
+     */
+    public static final String ERROR_TYPE_REQUEST_FAILED = "bulk_request_failed";
+
+    /**
+     * Error type reported by the cluster when it can't accept more operations (older versions of the cluster prefix
+     * it with {@code es_})
+     */
+    public static final String ERROR_TYPE_REJECTED_EXECUTION = "rejected_execution_exception";
+
+    /**
+     * Status code returned by the cluster when it can't accept more operations
+     */
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Estimated size of the action line of each operation
+     */
+    protected static final int ACTION_SIZE = 100;
+
+    /**
+     * The service used to build the documents and send the requests
+     */
+    protected final OpenSearchServiceImpl searchService;
+
+    /**
+     * The listener for the result of each operation
+     */
+    protected final Listener listener;
+
+    /**
+     * The maximum number of operations to send in a single request
+     */
+    protected final int maxActions;
+
+    /**
+     * The (estimated) maximum size in bytes of a single request
+     */
+    protected final long maxBytes;
+
+    /**
+     * The controller that adjusts the number of operations per request and the concurrent requests, can be null
+     */
+    protected final AdaptiveBulkController controller;
+
+    protected final Lock lock = new ReentrantLock();
+
+    protected List<PendingOperation> pendingOperations = new ArrayList<>();
+
+    protected long pendingBytes;
+
+    protected boolean closed;
+
+    public OpenSearchBulkSessionImpl(final OpenSearchServiceImpl searchService, final Listener listener,
+                                     final int maxActions, final long maxBytes) {
+        this(searchService, listener, maxActions, maxBytes, null);
+    }
+
+    public OpenSearchBulkSessionImpl(final OpenSearchServiceImpl searchService, final Listener listener,
+                                     final int maxActions, final long maxBytes,
+                                     final AdaptiveBulkController controller) {
+        this.searchService = searchService;
+        this.listener = listener;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.controller = controller;
+    }
+
+    @Override
+    public void index(final String indexName, final String siteId, final String docId,
+                      final Map<String, Object> doc) throws OpenSearchException {
+        if (searchService.isUnchanged(indexName, docId, doc)) {
+            logger.debug("[{}] Skipping index of unchanged document {}", indexName, docId);
+            if (listener != null) {
+                listener.onItemResult(new ItemResult(indexName, docId, false, 0, null, null, true));
+            }
+            return;
+        }
+
+        logger.debug("[{}] Queueing index of document {}", indexName, docId);
+        String id = searchService.getId(docId);
+        PendingOperation indexOperation = new PendingOperation(indexName, siteId, docId, doc,
+                BulkOperation.of(b -> b
+                        .index(i -> i
+                                .index(indexName)
+                                .id(id)
+                                .document(doc)
+                        )
+                ), ACTION_SIZE + estimateSize(doc));
+
+        if (searchService.isDeleteBeforeIndex()) {
+            // The result of the delete is not reported, only the one for the index
+            PendingOperation deleteOperation = new PendingOperation(indexName, siteId, docId, null,
+                    BulkOperation.of(b -> b
+                            .delete(d -> d
+                                    .index(indexName)
+                                    .id(id)
+                            )
+                    ), ACTION_SIZE);
+            deleteOperation.reportResult = false;
+            indexOperation.previous = deleteOperation;
+
+            add(deleteOperation, indexOperation);
+        } else {
+            add(indexOperation);
+        }
+    }
+
+    @Override
+    public void index(final String indexName, final String siteId, final String docId, final String xml,
+                      final Map<String, Object> additionalFields) throws OpenSearchException {
+        index(indexName, siteId, docId, searchService.buildDocument(siteId, docId, xml, additionalFields));
+    }
+
+    @Override
+    public void index(final String indexName, final String siteId, final String docId, final Document document,
+                      final Map<String, Object> additionalFields) throws OpenSearchException {
+        index(indexName, siteId, docId, searchService.buildDocument(siteId, docId, document, additionalFields));
+    }
+
+    @Override
+    public void indexBinary(final String indexName, final String siteName, final String path, final Content content,
+                            final Map<String, Object> additionalFields) throws OpenSearchException {
+        indexBinary(indexName, siteName, path, new ContentResource(content, FilenameUtils.getName(path)),
+                    additionalFields);
+    }
+
+    @Override
+    public void indexBinary(final String indexName, final String siteName, final String path,
+                            final Resource resource, final Map<String, Object> additionalFields)
+            throws OpenSearchException {
+        Map<String, Object> doc;
+        try {
+            doc = searchService.buildBinaryDocument(siteName, path, resource, additionalFields);
+        } catch (Exception e) {
+            throw new OpenSearchException(indexName, "Error indexing binary document " + path, e);
+        }
+        index(indexName, siteName, path, doc);
+    }
+
+    @Override
+    public void delete(final String indexName, final String siteId, final String docId) throws OpenSearchException {
+        logger.debug("[{}] Queueing delete of document {}", indexName, docId);
+        // Forget the document right away so it's not skipped if it's indexed again before the delete is sent
+        searchService.recordDeleted(indexName, docId);
+        String id = searchService.getId(docId);
+        add(new PendingOperation(indexName, siteId, docId, null, BulkOperation.of(b -> b
+                .delete(d -> d
+                        .index(indexName)
+                        .id(id)
+                )
+        ), ACTION_SIZE));
+    }
+
+    @Override
+    public void flush() throws OpenSearchException {
+        List<PendingOperation> operations;
+        lock.lock();
+        try {
+            operations = drain();
+        } finally {
+            lock.unlock();
+        }
+        send(operations);
+    }
+
+    @Override
+    public int getPendingOperations() {
+        lock.lock();
+        try {
+            return pendingOperations.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws OpenSearchException {
+        List<PendingOperation> operations;
+        lock.lock();
+        try {
+            closed = true;
+            operations = drain();
+        } finally {
+            lock.unlock();
+        }
+        send(operations);
+    }
+
+    /**
+     * Queues the given operations, sending the pending operations if any of the limits has been reached. The
+     * operations are always added to the same request.
+     */
+    protected void add(PendingOperation... newOperations) {
+        List<PendingOperation> operations = null;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The bulk session has already been closed");
+            }
+
+            for (PendingOperation operation : newOperations) {
+                pendingOperations.add(operation);
+                pendingBytes += operation.size;
+            }
+
+            int actionsLimit = controller != null? controller.getWindow() : maxActions;
+            if ((actionsLimit > 0 && pendingOperations.size() >= actionsLimit) ||
+                (maxBytes > 0 && pendingBytes >= maxBytes)) {
+                operations = drain();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (operations != null) {
+            send(operations);
+        }
+    }
+
+    /**
+     * Removes all pending operations, must be called while holding the lock
+     */
+    protected List<PendingOperation> drain() {
+        List<PendingOperation> operations = pendingOperations;
+        pendingOperations = new ArrayList<>();
+        pendingBytes = 0;
+        return operations;
+    }
+
+    /**
+     * Sends the given operations and reports the result of each one to the listener. Operations that fail with a
+     * retriable error are sent again after a delay, the ones that still fail are added to the dead letter store.
+     */
+    protected void send(List<PendingOperation> operations) {
+        BulkRetryPolicy retryPolicy = searchService.getBulkRetryPolicy();
+        int maxRetries = retryPolicy != null? retryPolicy.getMaxRetries() : 0;
+
+        for (int retry = 0; !operations.isEmpty(); retry++) {
+            if (retry > 0) {
+                long delay = retryPolicy.getDelay(retry);
+                logger.info("Retrying {} failed bulk operations in {} ms (attempt {} of {})", operations.size(),
+                            delay, retry, maxRetries);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    operations.forEach(op -> fail(op, new ItemResult(op.indexName, op.docId, op.delete, 0,
+                            ERROR_TYPE_REQUEST_FAILED, "Interrupted while waiting to retry the operation")));
+                    return;
+                }
+            }
+            operations = attempt(operations, retry < maxRetries? retryPolicy : null);
+        }
+    }
+
+    /**
+     * Sends a single bulk request with the given operations
+     * @param operations the operations to send
+     * @param retryPolicy the policy to check if failed operations can be retried, null if they can't
+     * @return the operations that should be retried
+     */
+    protected List<PendingOperation> attempt(List<PendingOperation> operations, BulkRetryPolicy retryPolicy) {
+        List<PendingOperation> retries = new ArrayList<>();
+        List<BulkResponseItem> items;
+        boolean acquired = false;
+        long start = System.currentTimeMillis();
+        try {
+            if (controller != null) {
+                controller.acquire();
+                acquired = true;
+                start = System.currentTimeMillis();
+            }
+            items = searchService.executeBulk(operations.stream().map(op -> op.operation).collect(toList()));
+        } catch (Exception e) {
+            if (acquired) {
+                controller.release(System.currentTimeMillis() - start, isRejected(e));
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            } else if (retryPolicy != null && retryPolicy.isRetriable(e)) {
+                logger.warn("Error sending bulk request with {} operations, will retry", operations.size(), e);
+                return operations;
+            }
+
+            logger.error("Error sending bulk request with {} operations", operations.size(), e);
+
+            operations.forEach(op -> fail(op,
+                    new ItemResult(op.indexName, op.docId, op.delete, 0, ERROR_TYPE_REQUEST_FAILED, e.getMessage())));
+            return retries;
+        }
+
+        if (acquired) {
+            controller.release(System.currentTimeMillis() - start, items.stream().anyMatch(this::isRejected));
+        }
+
+        for (int i = 0; i < operations.size(); i++) {
+            PendingOperation op = operations.get(i);
+            if (i < items.size()) {
+                BulkResponseItem item = items.get(i);
+                ErrorCause error = item.error();
+                ItemResult result = new ItemResult(op.indexName, op.docId, op.delete, item.status(),
+                                                   error != null? error.type() : null,
+                                                   error != null? error.reason() : null, false,
+                                                   op.document != null && searchService.isParseTimedOut(op.document));
+                if (result.isSuccessful()) {
+                    notifyResult(op, result);
+                } else if (retryPolicy != null && op.reportResult &&
+                           retryPolicy.isRetriable(result.getStatus(), result.getErrorType())) {
+                    logger.debug("[{}] Bulk operation for document {} failed with {}, will retry",
+                                 op.indexName, op.docId, result.getErrorType());
+                    if (op.previous != null) {
+                        // The delete needs to be sent again to keep the same order of the operations
+                        retries.add(op.previous);
+                    }
+                    retries.add(op);
+                } else {
+                    fail(op, result);
+                }
+            } else {
+                fail(op, new ItemResult(op.indexName, op.docId, op.delete, 0, ERROR_TYPE_REQUEST_FAILED,
+                                        "No result returned for operation"));
+            }
+        }
+
+        return retries;
+    }
+
+    /**
+     * Reports an operation that failed permanently and adds it to the dead letter store
+     */
+    protected void fail(PendingOperation operation, ItemResult result) {
+        if (!operation.reportResult) {
+            return;
+        }
+        BulkDeadLetterStore deadLetterStore = searchService.getDeadLetterStore();
+        if (deadLetterStore != null) {
+            deadLetterStore.add(operation.indexName, operation.siteId, operation.docId, operation.delete,
+                                operation.document, result.getStatus(), result.getErrorType(),
+                                result.getErrorReason());
+        }
+        notifyResult(operation, result);
+    }
+
+    /**
+     * Indicates if the given operation was rejected because the cluster is overloaded
+     */
+    protected boolean isRejected(BulkResponseItem item) {
+        return item.status() == STATUS_TOO_MANY_REQUESTS ||
+               (item.error() != null && StringUtils.endsWith(item.error().type(), ERROR_TYPE_REJECTED_EXECUTION));
+    }
+
+    /**
+     * Indicates if the given request failure was caused by the cluster being overloaded
+     */
+    protected boolean isRejected(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.opensearch.client.opensearch._types.OpenSearchException &&
+                ((org.opensearch.client.opensearch._types.OpenSearchException) cause).status() ==
+                    STATUS_TOO_MANY_REQUESTS) {
+                return true;
+            }
+            if (cause instanceof ResponseException &&
+                ((ResponseException) cause).getResponse().getStatusLine().getStatusCode() ==
+                    STATUS_TOO_MANY_REQUESTS) {
+                return true;
+            }
+            if (StringUtils.contains(cause.getMessage(), ERROR_TYPE_REJECTED_EXECUTION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void notifyResult(PendingOperation operation, ItemResult result) {
+        if (!operation.reportResult) {
+            return;
+        }
+        if (!result.isSuccessful()) {
+            logger.error("[{}] Bulk operation for document {} failed: {}", result.getIndexName(), result.getDocId(),
+                         result.getErrorReason());
+        } else if (operation.delete) {
+            searchService.recordDeleted(operation.indexName, operation.docId);
+        } else {
+            searchService.recordIndexed(operation.indexName, operation.docId, operation.document);
+        }
+        if (listener != null) {
+            try {
+                listener.onItemResult(result);
+            } catch (Exception e) {
+                logger.error("Error notifying result {}", result, e);
+            }
+        }
+    }
+
+    /**
+     * Estimates the size in bytes of the given value once it's serialized as JSON
+     */
+    @SuppressWarnings("unchecked")
+    protected long estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 2;
+        } else if (value instanceof SpooledText) {
+            return ((SpooledText) value).length() + 2;
+        } else if (value instanceof Map) {
+            long size = 2;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                size += entry.getKey().length() + 4 + estimateSize(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            long size = 2;
+            for (Object item : (Collection<Object>) value) {
+                size += estimateSize(item) + 1;
+            }
+            return size;
+        } else {
+            return String.valueOf(value).length();
+        }
+    }
+
+    /**
+     * Holds a queued operation
+     */
+    protected static class PendingOperation {
+
+        protected final String indexName;
+        protected final String siteId;
+        protected final String docId;
+        protected final boolean delete;
+        protected final Map<String, Object> document;
+        protected final BulkOperation operation;
+        protected final long size;
+        protected boolean reportResult = true;
+
+        /**
+         * The operation that needs to be sent before this one when it's retried
+         */
+        protected PendingOperation previous;
+
+        /**
+         * Creates a new operation, if no document is provided it's considered a delete
+         */
+        public PendingOperation(String indexName, String siteId, String docId, Map<String, Object> document,
+                                BulkOperation operation, long size) {
+            this.indexName = indexName;
+            this.siteId = siteId;
+            this.docId = docId;
+            this.delete = document == null;
+            this.document = document;
+            this.operation = operation;
+            this.size = size;
+        }
+
+    }
+
+}
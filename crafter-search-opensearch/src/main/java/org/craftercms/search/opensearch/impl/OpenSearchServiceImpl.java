@@ -16,17 +16,27 @@
 
 package org.craftercms.search.opensearch.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.core.service.Content;
 import org.craftercms.search.commons.utils.ContentResource;
 import org.craftercms.search.opensearch.DocumentParser;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
 import org.craftercms.search.opensearch.OpenSearchService;
 import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.dom4j.Document;
+import org.opensearch.client.json.JsonData;
 import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.Result;
 import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch.core.BulkResponse;
 import org.opensearch.client.opensearch.core.SearchResponse;
+import org.opensearch.client.opensearch.core.UpdateResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
 import org.opensearch.client.opensearch.core.search.SourceFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,10 +44,17 @@ import org.springframework.core.io.Resource;
 
 import java.beans.ConstructorProperties;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
 
@@ -56,6 +73,27 @@ public class OpenSearchServiceImpl implements OpenSearchService {
 
     public static final String DEFAULT_SCROLL_TIMEOUT = "1m";
 
+    public static final String DEFAULT_PIT_KEEP_ALIVE = "1m";
+
+    public static final int DEFAULT_PIT_PAGE_SIZE = 1000;
+
+    public static final int DEFAULT_PIT_SLICES = 1;
+
+    public static final String DEFAULT_METADATA_FIELDS_FIELD_NAME = "metadataFields";
+
+    /**
+     * Removes the fields listed in the marker field, adds the new ones and updates the marker. Documents without the
+     * marker are left untouched, because there is no way to know which of their fields came from the metadata.
+     */
+    protected static final String UPDATE_METADATA_SCRIPT =
+            "if (ctx._source[params.marker] == null) { ctx.op = 'noop' } else { " +
+            "for (def field : ctx._source[params.marker]) { ctx._source.remove(field) } " +
+            "ctx._source.putAll(params.doc); ctx._source[params.marker] = params.fields }";
+
+    public static final int DEFAULT_BULK_MAX_ACTIONS = 500;
+
+    public static final long DEFAULT_BULK_MAX_BYTES = 5 * 1024 * 1024;
+
     /**
      * Document Builder
      */
@@ -86,6 +124,96 @@ public class OpenSearchServiceImpl implements OpenSearchService {
      */
     protected String scrollTimeout = DEFAULT_SCROLL_TIMEOUT;
 
+    /**
+     * The time to keep the point in time between requests when streaming results
+     */
+    protected String pitKeepAlive = DEFAULT_PIT_KEEP_ALIVE;
+
+    /**
+     * The number of results to return for each request when streaming results
+     */
+    protected int pitPageSize = DEFAULT_PIT_PAGE_SIZE;
+
+    /**
+     * The field used to sort the results when streaming, its values must be unique. If null the
+     * {@link #localIdFieldName} is used
+     */
+    protected String pitSortField;
+
+    /**
+     * The number of slices scanned in parallel when streaming results, 1 disables slicing
+     */
+    protected int pitSlices = DEFAULT_PIT_SLICES;
+
+    /**
+     * Keeps the hash of the indexed documents to skip the ones that haven't changed, if null all documents are sent
+     */
+    protected DocumentFingerprintStore fingerprintStore;
+
+    /**
+     * The name of the field that lists the fields of a binary document that came from its metadata
+     */
+    protected String metadataFieldsFieldName = DEFAULT_METADATA_FIELDS_FIELD_NAME;
+
+    /**
+     * Indicates if binary documents should list the fields that came from their metadata, this is required to
+     * update only the metadata of a binary with {@link #updateBinaryMetadata(String, String, String, Map)}
+     */
+    protected boolean trackMetadataFields = false;
+
+    /**
+     * Used to convert the metadata of binary files to XML, so it goes through the same document builder as the
+     * documents generated by the {@link #documentParser}. Only used if {@link #buildBinaryDocumentsFromMap} is false
+     */
+    protected ObjectMapper metadataMapper = new XmlMapper();
+
+    /**
+     * Indicates if the text extracted from binary files should be added to the documents directly instead of going
+     * through the XML, so large texts are not kept in memory several times. Disabled by default, see
+     * {@link #setStreamBinaryContent(boolean)} for its limitations.
+     */
+    protected boolean streamBinaryContent = false;
+
+    /**
+     * Indicates if the documents for binary files should be built directly from the fields returned by the
+     * {@link #documentParser} instead of serializing them to XML and parsing it again. Parsers that don't support it
+     * always go through the XML.
+     */
+    protected boolean buildBinaryDocumentsFromMap = true;
+
+    /**
+     * The maximum number of operations to send in a single bulk request
+     */
+    protected int bulkMaxActions = DEFAULT_BULK_MAX_ACTIONS;
+
+    /**
+     * The (estimated) maximum size in bytes of a single bulk request
+     */
+    protected long bulkMaxBytes = DEFAULT_BULK_MAX_BYTES;
+
+    /**
+     * Indicates if existing documents should be deleted before indexing them again. Index requests already replace
+     * the whole document, so this only adds an extra write for each update.
+     */
+    protected boolean deleteBeforeIndex = false;
+
+    /**
+     * Adjusts the size and concurrency of bulk requests based on the cluster feedback. If null, the sessions use
+     * {@link #bulkMaxActions} and send requests without limiting concurrency
+     */
+    protected AdaptiveBulkController bulkController;
+
+    /**
+     * Decides which failed operations are sent again, both in bulk sessions and for single documents. If null the
+     * operations are never retried
+     */
+    protected BulkRetryPolicy bulkRetryPolicy = new BulkRetryPolicy();
+
+    /**
+     * Stores the bulk operations that failed after all retries so they can be replayed later, can be null
+     */
+    protected BulkDeadLetterStore deadLetterStore;
+
     @ConstructorProperties({"documentBuilder", "documentParser", "OpenSearchClient"})
     public OpenSearchServiceImpl(final OpenSearchDocumentBuilder documentBuilder,
                                  final DocumentParser documentParser,
@@ -107,16 +235,161 @@ public class OpenSearchServiceImpl implements OpenSearchService {
         this.scrollTimeout = scrollTimeout;
     }
 
+    public void setPitKeepAlive(final String pitKeepAlive) {
+        this.pitKeepAlive = pitKeepAlive;
+    }
+
+    public void setPitPageSize(final int pitPageSize) {
+        this.pitPageSize = pitPageSize;
+    }
+
+    public void setPitSortField(final String pitSortField) {
+        this.pitSortField = pitSortField;
+    }
+
+    public void setPitSlices(final int pitSlices) {
+        this.pitSlices = pitSlices;
+    }
+
+    public DocumentFingerprintStore getFingerprintStore() {
+        return fingerprintStore;
+    }
+
+    public void setFingerprintStore(final DocumentFingerprintStore fingerprintStore) {
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    public void setMetadataFieldsFieldName(final String metadataFieldsFieldName) {
+        this.metadataFieldsFieldName = metadataFieldsFieldName;
+    }
+
+    public void setTrackMetadataFields(final boolean trackMetadataFields) {
+        this.trackMetadataFields = trackMetadataFields;
+    }
+
+    public void setMetadataMapper(final ObjectMapper metadataMapper) {
+        this.metadataMapper = metadataMapper;
+    }
+
+    /**
+     * Enables adding the text extracted from binary files to the documents as a {@link SpooledText} instead of going
+     * through the XML. This only reduces the copies of the text made while building the document:
+     * <ul>
+     *     <li>Copy fields and value converters are not applied to the streamed content field, so it should only be
+     *     enabled if none of them apply to it</li>
+     *     <li>The REST transport still buffers the whole serialized request body before sending it</li>
+     *     <li>When the parser uses a parse cache the text is loaded in memory as a single string</li>
+     * </ul>
+     */
+    public void setStreamBinaryContent(final boolean streamBinaryContent) {
+        this.streamBinaryContent = streamBinaryContent;
+    }
+
+    public void setBuildBinaryDocumentsFromMap(final boolean buildBinaryDocumentsFromMap) {
+        this.buildBinaryDocumentsFromMap = buildBinaryDocumentsFromMap;
+    }
+
+    public void setBulkMaxActions(final int bulkMaxActions) {
+        this.bulkMaxActions = bulkMaxActions;
+    }
+
+    public void setBulkMaxBytes(final long bulkMaxBytes) {
+        this.bulkMaxBytes = bulkMaxBytes;
+    }
+
+    public AdaptiveBulkController getBulkController() {
+        return bulkController;
+    }
+
+    public void setBulkController(final AdaptiveBulkController bulkController) {
+        this.bulkController = bulkController;
+    }
+
+    public BulkRetryPolicy getBulkRetryPolicy() {
+        return bulkRetryPolicy;
+    }
+
+    public void setBulkRetryPolicy(final BulkRetryPolicy bulkRetryPolicy) {
+        this.bulkRetryPolicy = bulkRetryPolicy;
+    }
+
+    public BulkDeadLetterStore getDeadLetterStore() {
+        return deadLetterStore;
+    }
+
+    public void setDeadLetterStore(final BulkDeadLetterStore deadLetterStore) {
+        this.deadLetterStore = deadLetterStore;
+    }
+
+    public boolean isDeleteBeforeIndex() {
+        return deleteBeforeIndex;
+    }
+
+    public void setDeleteBeforeIndex(final boolean deleteBeforeIndex) {
+        this.deleteBeforeIndex = deleteBeforeIndex;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("rawtypes")
     public List<String> searchField(final String aliasName, final String field, final Query query)
             throws OpenSearchException {
         logger.debug("[{}] Search values for field {} (query -> {})", aliasName, field, query);
 
         List<String> ids = new LinkedList<>();
+        scroll(aliasName, Collections.singletonList(field), query, source -> ids.add((String) source.get(field)));
+
+        return ids;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Object>> searchFields(final String aliasName, final List<String> fields,
+                                                  final Query query) throws OpenSearchException {
+        logger.debug("[{}] Search values for fields {} (query -> {})", aliasName, fields, query);
+
+        List<Map<String, Object>> values = new LinkedList<>();
+        scroll(aliasName, fields, query, values::add);
+
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<String> streamField(final String aliasName, final String field, final Query query)
+            throws OpenSearchException {
+        return streamFields(aliasName, Collections.singletonList(field), query)
+                .map(source -> (String) source.get(field));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<Map<String, Object>> streamFields(final String aliasName, final List<String> fields,
+                                                    final Query query) throws OpenSearchException {
+        logger.debug("[{}] Stream values for fields {} (query -> {})", aliasName, fields, query);
+
+        String sortField = StringUtils.defaultIfEmpty(pitSortField, localIdFieldName);
+        PointInTimeScan scan = new PointInTimeScan(openSearchClient, aliasName, fields, query, pitKeepAlive,
+                pitPageSize, sortField, pitSlices).open();
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan, Spliterator.NONNULL), false)
+                .onClose(scan::close);
+    }
+
+    /**
+     * Executes the given query using a scroll, passing the source of each hit (filtered by the given fields) to the
+     * consumer. The scroll is always cleared.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected void scroll(final String aliasName, final List<String> fields, final Query query,
+                          final Consumer<Map<String, Object>> consumer) throws OpenSearchException {
         String scrollId = null;
 
         try {
@@ -126,7 +399,7 @@ public class OpenSearchServiceImpl implements OpenSearchService {
                             .scroll(s -> s.time(scrollTimeout))
                             .from(0)
                             .size(scrollSize)
-                            .source(b -> b.filter(new SourceFilter.Builder().includes(field).build()))
+                            .source(b -> b.filter(new SourceFilter.Builder().includes(fields).build()))
                             .query(query),
                     Map.class
             );
@@ -134,7 +407,7 @@ public class OpenSearchServiceImpl implements OpenSearchService {
             scrollId = innerScrollId;
 
             while (response.hits().hits().size() > 0) {
-                response.hits().hits().forEach(hit -> ids.add((String) hit.source().get(field)));
+                response.hits().hits().forEach(hit -> consumer.accept(hit.source()));
 
                 logger.debug("[{}] Getting next batch for scroll with id {}", aliasName, innerScrollId);
                 response = openSearchClient.scroll(s -> s
@@ -156,8 +429,6 @@ public class OpenSearchServiceImpl implements OpenSearchService {
                 }
             }
         }
-
-        return ids;
     }
 
     @Override
@@ -184,27 +455,108 @@ public class OpenSearchServiceImpl implements OpenSearchService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSkipUnchanged() {
+        return fingerprintStore != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isUnchanged(final String indexName, final String docId, final Map<String, Object> doc) {
+        return fingerprintStore != null && fingerprintStore.isUnchanged(indexName, docId, doc);
+    }
+
+    @Override
+    public boolean isParseTimeoutEnabled() {
+        return documentParser.isTimeoutEnabled();
+    }
+
+    @Override
+    public boolean isParseTimedOut(final Map<String, Object> doc) {
+        return documentParser.isTimedOut(doc);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void index(final String indexName, final String siteName, final String docId, final Map<String, Object> doc) {
         doIndex(openSearchClient, indexName, siteName, docId, doc);
+        recordIndexed(indexName, docId, doc);
+    }
+
+    /**
+     * Updates the {@link #fingerprintStore} and {@link #deadLetterStore} after a document has been indexed
+     */
+    protected void recordIndexed(String indexName, String docId, Map<String, Object> doc) {
+        if (fingerprintStore != null) {
+            fingerprintStore.put(indexName, docId, doc);
+        }
+        if (deadLetterStore != null) {
+            deadLetterStore.resolve(indexName, docId);
+        }
+    }
+
+    /**
+     * Updates the {@link #fingerprintStore} and {@link #deadLetterStore} after a document has been deleted
+     */
+    protected void recordDeleted(String indexName, String docId) {
+        if (fingerprintStore != null) {
+            fingerprintStore.remove(indexName, docId);
+        }
+        if (deadLetterStore != null) {
+            deadLetterStore.resolve(indexName, docId);
+        }
+    }
+
+    /**
+     * Executes a request for a single document, retrying it with the {@link #bulkRetryPolicy} if it fails with a
+     * temporary error
+     */
+    protected void executeWithRetry(String indexName, String docId, RetriableRequest request) throws Exception {
+        int maxRetries = bulkRetryPolicy != null? bulkRetryPolicy.getMaxRetries() : 0;
+        for (int retry = 1; ; retry++) {
+            try {
+                request.execute();
+                return;
+            } catch (Exception e) {
+                if (retry > maxRetries || !bulkRetryPolicy.isRetriable(e)) {
+                    throw e;
+                }
+                long delay = bulkRetryPolicy.getDelay(retry);
+                logger.warn("[{}] Request for document {} failed, retrying in {} ms (attempt {} of {})", indexName,
+                            docId, delay, retry, maxRetries, e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
     }
 
     /**
-     * Performs the index operation using the given OpenSearch client
+     * Performs the index operation using the given OpenSearch client. Existing documents are replaced with a single
+     * request unless {@link #deleteBeforeIndex} is enabled.
      */
     protected void doIndex(OpenSearchClient client, String indexName, String siteName, String docId,
                            Map<String, Object> doc) {
-        try {
+        if (deleteBeforeIndex) {
             doDelete(client, indexName, siteName, docId);
-            logger.debug("[{}] Indexing document {}", indexName, docId);
-            client.index(r -> r
+        }
+        logger.debug("[{}] Indexing document {}", indexName, docId);
+        try {
+            executeWithRetry(indexName, docId, () -> client.index(r -> r
                     .index(indexName)
                     .id(getId(docId))
                     .document(doc)
-            );
+            ));
         } catch (Exception e) {
             throw new OpenSearchException(indexName, "Error indexing document " + docId, e);
         }
@@ -216,9 +568,132 @@ public class OpenSearchServiceImpl implements OpenSearchService {
     @Override
     public void index(final String indexName, final String siteName, final String docId, final String xml,
                       final Map<String, Object> additionalFields) throws OpenSearchException {
+        index(indexName, siteName, docId, buildDocument(siteName, docId, xml, additionalFields));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> buildDocument(final String siteName, final String docId, final String xml,
+                                             final Map<String, Object> additionalFields) {
         Map<String, Object> doc = documentBuilder.build(siteName, docId, xml, true);
-        Map<String, Object> mergedDoc = mergeMaps(doc, additionalFields);
-        index(indexName, siteName, docId, mergedDoc);
+        return mergeMaps(doc, additionalFields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void index(final String indexName, final String siteName, final String docId, final Document document,
+                      final Map<String, Object> additionalFields) throws OpenSearchException {
+        index(indexName, siteName, docId, buildDocument(siteName, docId, document, additionalFields));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> buildDocument(final String siteName, final String docId, final Document document,
+                                             final Map<String, Object> additionalFields) {
+        Map<String, Object> doc = documentBuilder.build(siteName, docId, document, true);
+        return mergeMaps(doc, additionalFields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> buildBinaryDocument(final String siteName, final String path,
+                                                   final Resource resource,
+                                                   final Map<String, Object> additionalFields) {
+        String filename = FilenameUtils.getName(path);
+        Map<String, Object> streamedFields = streamBinaryContent? new HashMap<>() : null;
+        Map<String, Object> doc = null;
+        if (buildBinaryDocumentsFromMap) {
+            Map<String, Object> fields = documentParser.parseToMap(filename, resource, additionalFields,
+                                                                   streamedFields);
+            if (fields != null) {
+                doc = documentBuilder.buildFromMap(siteName, path, fields);
+            }
+        }
+        if (doc == null) {
+            doc = buildDocument(siteName, path,
+                    documentParser.parseToXml(filename, resource, additionalFields, streamedFields), null);
+        }
+        if (streamedFields != null) {
+            doc.putAll(streamedFields);
+        }
+        if (trackMetadataFields) {
+            doc.put(metadataFieldsFieldName, new ArrayList<>(buildMetadataDocument(siteName, path, additionalFields)
+                    .keySet()));
+        }
+        return doc;
+    }
+
+    /**
+     * Builds the fields that the given metadata adds to a binary document
+     */
+    protected Map<String, Object> buildMetadataDocument(final String siteName, final String path,
+                                                        final Map<String, Object> metadata)
+            throws OpenSearchException {
+        if (buildBinaryDocumentsFromMap) {
+            return documentBuilder.buildFromMap(siteName, path, metadata);
+        }
+        try {
+            String xml = metadataMapper.writeValueAsString(metadata != null? new HashMap<>(metadata) :
+                    new HashMap<>());
+            return buildDocument(siteName, path, xml, null);
+        } catch (IOException e) {
+            throw new OpenSearchException(null, "Error building metadata document for " + path, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean updateBinaryMetadata(final String indexName, final String siteName, final String path,
+                                        final Map<String, Object> metadata) throws OpenSearchException {
+        return doUpdateBinaryMetadata(openSearchClient, indexName, path,
+                buildMetadataDocument(siteName, path, metadata));
+    }
+
+    /**
+     * Performs the partial update of the metadata fields using the given OpenSearch client
+     * @return true if the document was updated, false if it doesn't exist or it has no list of metadata fields
+     */
+    @SuppressWarnings("rawtypes")
+    protected boolean doUpdateBinaryMetadata(OpenSearchClient client, String indexName, String path,
+                                             Map<String, Object> doc) throws OpenSearchException {
+        logger.debug("[{}] Updating metadata for document {}", indexName, path);
+        Map<String, JsonData> params = new HashMap<>();
+        params.put("marker", JsonData.of(metadataFieldsFieldName));
+        params.put("doc", JsonData.of(doc));
+        params.put("fields", JsonData.of(new ArrayList<>(doc.keySet())));
+        try {
+            UpdateResponse<Map> response = client.update(r -> r
+                            .index(indexName)
+                            .id(getId(path))
+                            .script(s -> s
+                                    .inline(i -> i
+                                            .lang("painless")
+                                            .source(UPDATE_METADATA_SCRIPT)
+                                            .params(params)
+                                    )
+                            ),
+                    Map.class
+            );
+            return response.result() != Result.NoOp;
+        } catch (org.opensearch.client.opensearch._types.OpenSearchException e) {
+            if (e.status() == 404) {
+                logger.debug("[{}] Document {} not found, it can't be partially updated", indexName, path);
+                return false;
+            }
+            throw new OpenSearchException(indexName, "Error updating metadata for document " + path, e);
+        } catch (Exception e) {
+            throw new OpenSearchException(indexName, "Error updating metadata for document " + path, e);
+        }
     }
 
     /**
@@ -230,7 +705,7 @@ public class OpenSearchServiceImpl implements OpenSearchService {
             throws OpenSearchException {
         String filename = FilenameUtils.getName(path);
         try {
-            index(indexName, siteName, path, documentParser.parseToXml(filename, new ContentResource(content,
+            index(indexName, siteName, path, buildBinaryDocument(siteName, path, new ContentResource(content,
                     filename), additionalFields));
         } catch (Exception e) {
             throw new OpenSearchException(indexName, "Error indexing binary document " + path, e);
@@ -244,9 +719,8 @@ public class OpenSearchServiceImpl implements OpenSearchService {
     public void indexBinary(final String indexName, final String siteName, final String path,
                             final Resource resource, final Map<String, Object> additionalFields)
             throws OpenSearchException {
-        String filename = FilenameUtils.getName(path);
         try {
-            index(indexName, siteName, path, documentParser.parseToXml(filename, resource, additionalFields));
+            index(indexName, siteName, path, buildBinaryDocument(siteName, path, resource, additionalFields));
         } catch (Exception e) {
             throw new OpenSearchException(indexName, "Error indexing binary document " + path, e);
         }
@@ -259,6 +733,7 @@ public class OpenSearchServiceImpl implements OpenSearchService {
     public void delete(final String indexName, final String siteName, final String docId)
             throws OpenSearchException {
         doDelete(openSearchClient, indexName, siteName, docId);
+        recordDeleted(indexName, docId);
     }
 
     /**
@@ -267,10 +742,10 @@ public class OpenSearchServiceImpl implements OpenSearchService {
     protected void doDelete(OpenSearchClient client, String indexName, String siteName, String docId) {
         logger.debug("[{}] Deleting document {}", indexName, docId);
         try {
-            client.delete(r -> r
+            executeWithRetry(indexName, docId, () -> client.delete(r -> r
                     .index(indexName)
                     .id(getId(docId))
-            );
+            ));
         } catch (Exception e) {
             throw new OpenSearchException(indexName, "Error deleting document " + docId, e);
         }
@@ -298,6 +773,36 @@ public class OpenSearchServiceImpl implements OpenSearchService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OpenSearchBulkSession openBulkSession(final OpenSearchBulkSession.Listener listener) {
+        return new OpenSearchBulkSessionImpl(this, listener, bulkMaxActions, bulkMaxBytes, bulkController);
+    }
+
+    /**
+     * Sends the given operations in a single bulk request, returns the result for each operation in the same order
+     */
+    protected List<BulkResponseItem> executeBulk(List<BulkOperation> operations) throws OpenSearchException {
+        return doBulk(openSearchClient, operations).items();
+    }
+
+    /**
+     * Performs the bulk operation using the given OpenSearch client
+     */
+    protected BulkResponse doBulk(OpenSearchClient client, List<BulkOperation> operations)
+            throws OpenSearchException {
+        logger.debug("Sending bulk request with {} operations", operations.size());
+        try {
+            return client.bulk(r -> r
+                    .operations(operations)
+            );
+        } catch (Exception e) {
+            throw new OpenSearchException(null, "Error sending bulk request", e);
+        }
+    }
+
     /**
      * Hashes the full path to use as a unique id for OpenSearch
      *
@@ -313,4 +818,14 @@ public class OpenSearchServiceImpl implements OpenSearchService {
         openSearchClient._transport().close();
     }
 
+    /**
+     * A request for a single document that can be sent again if it fails
+     */
+    @FunctionalInterface
+    protected interface RetriableRequest {
+
+        void execute() throws Exception;
+
+    }
+
 }
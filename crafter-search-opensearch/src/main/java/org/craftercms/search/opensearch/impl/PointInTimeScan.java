@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.SortOrder;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch.core.SearchRequest;
+import org.opensearch.client.opensearch.core.SearchResponse;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.opensearch.client.opensearch.core.search.SourceFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Iterates over all the documents that match a query using a point in time and {@code search_after}, loading one
+ * page at a time. When more than one slice is requested, each slice is scanned by its own thread and the pages are
+ * returned in the order they arrive.
+ *
+ * <p>Documents are sorted by the given field and then by {@code _shard_doc}, so pages are consistent even if the
+ * values of the field are not unique.</p>
+ *
+ * <p>The point in time is released as soon as the last page has been loaded, when an error occurs or when the scan
+ * is closed, so callers that may stop early must always close it.</p>
+ *
+ * @since 4.2.0
+ */
+public class PointInTimeScan implements Iterator<Map<String, Object>>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointInTimeScan.class);
+
+    /**
+     * Marks the end of a slice in the page queue
+     */
+    private static final List<Map<String, Object>> END_OF_SLICE = Collections.emptyList();
+
+    /**
+     * The time in milliseconds to wait between checks for the scan being closed
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * The field used to break ties between documents with the same sort value
+     */
+    public static final String SHARD_DOC_FIELD = "_shard_doc";
+
+    protected final OpenSearchClient client;
+
+    protected final String aliasName;
+
+    protected final List<String> fields;
+
+    protected final Query query;
+
+    protected final String keepAlive;
+
+    protected final int pageSize;
+
+    protected final String sortField;
+
+    protected final int slices;
+
+    protected final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * The first error found by any of the slice threads
+     */
+    protected final AtomicReference<Exception> error = new AtomicReference<>();
+
+    /**
+     * The pages loaded by the slice threads, only used when there is more than one slice
+     */
+    protected BlockingQueue<List<Map<String, Object>>> pages;
+
+    protected ExecutorService executor;
+
+    protected String pitId;
+
+    protected Iterator<Map<String, Object>> currentPage = Collections.emptyIterator();
+
+    /**
+     * The sort values of the last hit, only used when there is a single slice
+     */
+    protected List<String> searchAfter;
+
+    protected boolean exhausted;
+
+    protected int finishedSlices;
+
+    /**
+     * @param client the OpenSearch client
+     * @param aliasName the name of the alias or index
+     * @param fields the fields to include in each document
+     * @param query the query to execute
+     * @param keepAlive the time to keep the point in time between requests
+     * @param pageSize the number of documents to load in each request
+     * @param sortField the field used to sort the documents
+     * @param slices the number of slices to scan in parallel
+     */
+    public PointInTimeScan(final OpenSearchClient client, final String aliasName, final List<String> fields,
+                           final Query query, final String keepAlive, final int pageSize, final String sortField,
+                           final int slices) {
+        this.client = client;
+        this.aliasName = aliasName;
+        this.fields = fields;
+        this.query = query;
+        this.keepAlive = keepAlive;
+        this.pageSize = pageSize;
+        this.sortField = sortField;
+        this.slices = Math.max(slices, 1);
+    }
+
+    /**
+     * Creates the point in time and, for sliced scans, starts the slice threads
+     * @return this scan
+     * @throws OpenSearchException if the point in time can't be created
+     */
+    public PointInTimeScan open() throws OpenSearchException {
+        logger.debug("[{}] Creating point in time with keep alive {}", aliasName, keepAlive);
+        try {
+            pitId = createPit();
+        } catch (Exception e) {
+            throw new OpenSearchException(aliasName, "Error creating point in time for query " + query, e);
+        }
+
+        if (slices > 1) {
+            pages = new ArrayBlockingQueue<>(slices * 2);
+            executor = Executors.newFixedThreadPool(slices,
+                new CustomizableThreadFactory(getClass().getSimpleName() + "-" + aliasName + "-"));
+            for (int i = 0; i < slices; i++) {
+                int sliceId = i;
+                executor.execute(() -> scanSlice(sliceId));
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext()) {
+            if (closed.get()) {
+                return false;
+            }
+            List<Map<String, Object>> page = slices > 1? nextSlicedPage() : nextPage();
+            if (page == null) {
+                close();
+                return false;
+            }
+            currentPage = page.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    /**
+     * Loads the next page for a scan without slices
+     * @return the documents in the page, null if there are no more documents
+     */
+    protected List<Map<String, Object>> nextPage() {
+        if (exhausted) {
+            return null;
+        }
+        try {
+            List<Hit<Map>> hits = search(null, searchAfter);
+            exhausted = hits.size() < pageSize;
+            if (hits.isEmpty()) {
+                return null;
+            }
+            if (exhausted) {
+                // This is the last page, there is no need to keep the point in time until it's consumed
+                close();
+            } else {
+                searchAfter = hits.get(hits.size() - 1).sort();
+            }
+            return getSources(hits);
+        } catch (Exception e) {
+            close();
+            throw new OpenSearchException(aliasName, "Error executing search for query " + query, e);
+        }
+    }
+
+    /**
+     * Waits for the next page loaded by any of the slice threads
+     * @return the documents in the page, null if all the slices have finished
+     */
+    protected List<Map<String, Object>> nextSlicedPage() {
+        try {
+            while (finishedSlices < slices) {
+                List<Map<String, Object>> page = pages.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (page == END_OF_SLICE) {
+                    finishedSlices++;
+                } else if (page != null) {
+                    return page;
+                }
+                if (error.get() != null) {
+                    close();
+                    throw new OpenSearchException(aliasName, "Error executing search for query " + query,
+                        error.get());
+                }
+                if (closed.get()) {
+                    return null;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new OpenSearchException(aliasName, "Interrupted while waiting for search results", e);
+        }
+    }
+
+    /**
+     * Loads all the pages for the given slice and adds them to the queue
+     */
+    protected void scanSlice(int sliceId) {
+        try {
+            List<String> sliceSearchAfter = null;
+            boolean sliceExhausted = false;
+            while (!sliceExhausted && !closed.get()) {
+                List<Hit<Map>> hits = search(sliceId, sliceSearchAfter);
+                sliceExhausted = hits.size() < pageSize;
+                if (!hits.isEmpty()) {
+                    sliceSearchAfter = hits.get(hits.size() - 1).sort();
+                    enqueue(getSources(hits));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("[{}] Error scanning slice {}", aliasName, sliceId, e);
+            error.compareAndSet(null, e);
+        } finally {
+            try {
+                enqueue(END_OF_SLICE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds a page to the queue, waiting while it's full unless the scan is closed
+     */
+    protected void enqueue(List<Map<String, Object>> page) throws InterruptedException {
+        while (!closed.get()) {
+            if (pages.offer(page, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates the point in time for the alias
+     * @return the id of the point in time
+     */
+    protected String createPit() throws Exception {
+        return client.createPit(r -> r
+            .targetIndexes(Collections.singletonList(aliasName + "*"))
+            .keepAlive(t -> t.time(keepAlive))
+        ).pitId();
+    }
+
+    /**
+     * Deletes the point in time with the given id
+     */
+    protected void deletePit(String id) throws Exception {
+        client.deletePit(r -> r.pitId(Collections.singletonList(id)));
+    }
+
+    @SuppressWarnings("rawtypes")
+    protected List<Hit<Map>> search(Integer sliceId, List<String> after) throws Exception {
+        logger.debug("[{}] Getting next page for point in time (slice {})", aliasName, sliceId);
+        SearchResponse<Map> response = client.search(buildSearchRequest(sliceId, after), Map.class);
+        return response.hits().hits();
+    }
+
+    /**
+     * Builds the request for the page of the given slice that follows the given sort values
+     * @param sliceId the id of the slice, null if the scan doesn't use slices
+     * @param after the sort values of the last hit of the previous page, null for the first page
+     * @return the search request
+     */
+    protected SearchRequest buildSearchRequest(Integer sliceId, List<String> after) {
+        SearchRequest.Builder builder = new SearchRequest.Builder()
+            .pit(p -> p.id(pitId).keepAlive(keepAlive))
+            .size(pageSize)
+            .source(b -> b.filter(new SourceFilter.Builder().includes(fields).build()))
+            .query(query)
+            .sort(s -> s.field(f -> f.field(sortField).order(SortOrder.Asc)))
+            .sort(s -> s.field(f -> f.field(SHARD_DOC_FIELD).order(SortOrder.Asc)));
+        if (sliceId != null) {
+            builder.slice(s -> s.id(sliceId).max(slices));
+        }
+        if (after != null) {
+            builder.searchAfter(after);
+        }
+        return builder.build();
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected List<Map<String, Object>> getSources(List<Hit<Map>> hits) {
+        List<Map<String, Object>> sources = new ArrayList<>(hits.size());
+        hits.forEach(hit -> sources.add(hit.source()));
+        return sources;
+    }
+
+    /**
+     * Stops the slice threads and releases the point in time, can be called multiple times
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (pitId != null) {
+            logger.debug("[{}] Deleting point in time", aliasName);
+            try {
+                deletePit(pitId);
+            } catch (Exception e) {
+                logger.error("[{}] Error deleting point in time {}", aliasName, pitId, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import org.apache.commons.io.IOUtils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Holds a large text value for a document, like the content extracted from a binary file. The text is kept in memory
+ * until it exceeds a threshold and then written to a temporary file, when the document is serialized with Jackson
+ * the text is copied from the file to the output in chunks. The temporary file is removed once the instance is no
+ * longer reachable.
+ *
+ * <p>Note that the OpenSearch REST transport serializes the whole request in memory before sending it, so this only
+ * avoids keeping the text in the document and its intermediate representations.</p>
+ *
+ * @since 4.2.0
+ */
+public class SpooledText extends Writer implements JsonSerializable {
+
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /**
+     * The maximum number of characters to keep in memory
+     */
+    protected final int threshold;
+
+    protected StringBuilder buffer = new StringBuilder();
+
+    protected File file;
+
+    protected Writer fileWriter;
+
+    protected Cleaner.Cleanable cleanable;
+
+    protected int length;
+
+    public SpooledText() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public SpooledText(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int count) throws IOException {
+        if (fileWriter == null && buffer.length() + count > threshold) {
+            spool();
+        }
+        if (fileWriter != null) {
+            fileWriter.write(chars, offset, count);
+        } else {
+            buffer.append(chars, offset, count);
+        }
+        length += count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.close();
+        }
+    }
+
+    /**
+     * Returns the number of characters written
+     */
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Indicates if the text has been written to a temporary file
+     */
+    public boolean isSpooled() {
+        return file != null;
+    }
+
+    /**
+     * Opens a new reader for the text, it should only be called after the instance has been closed
+     */
+    public Reader getReader() throws IOException {
+        if (file == null) {
+            return new StringReader(buffer.toString());
+        }
+        return Files.newBufferedReader(file.toPath(), UTF_8);
+    }
+
+    /**
+     * Removes the temporary file, if any
+     */
+    public void delete() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        try (Reader reader = getReader()) {
+            generator.writeString(reader, length);
+        } catch (UnsupportedOperationException e) {
+            // Not all generators support streaming
+            generator.writeString(toString());
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+            throws IOException {
+        serialize(generator, provider);
+    }
+
+    /**
+     * Returns the whole text, loading it in memory if it was written to a file
+     */
+    @Override
+    public String toString() {
+        if (file == null) {
+            return buffer.toString();
+        }
+        try (Reader reader = getReader()) {
+            return IOUtils.toString(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading spooled text from " + file, e);
+        }
+    }
+
+    protected void spool() throws IOException {
+        file = Files.createTempFile("text-", ".tmp").toFile();
+        cleanable = cleaner.register(this, new FileRemover(file.toPath()));
+        fileWriter = Files.newBufferedWriter(file.toPath(), UTF_8);
+        fileWriter.append(buffer);
+        buffer = null;
+    }
+
+    /**
+     * Removes the temporary file, it must not reference the {@link SpooledText} instance
+     */
+    private static class FileRemover implements Runnable {
+
+        private final Path path;
+
+        private FileRemover(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Nothing else can be done, the file will be removed with the temporary folder
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.collections4.MapUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.search.commons.exception.DocumentBuildException;
+import org.craftercms.search.commons.service.ElementParserService;
+import org.craftercms.search.commons.service.FieldValueConverter;
+import org.craftercms.search.commons.service.impl.ElementParserServiceImpl;
+import org.craftercms.search.commons.service.impl.TokenizedElementParser;
+import org.craftercms.search.commons.utils.BooleanUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Implementation of {@link OpenSearchDocumentBuilder} that builds the documents from XML strings reading a stream of
+ * StAX events instead of creating a DOM tree first. Only the state of the elements being read is kept in memory,
+ * so large descriptors generate a lot less garbage.
+ * <p>The elements are handled the same way the {@link ItemListElementParser}, {@link TokenizedElementParser} and
+ * {@link OpenSearchElementParserImpl} (in that order) handle them, including the "indexable" attribute of the
+ * {@link ElementParserServiceImpl} and the copy fields. The attribute names and suffix mappings need to be configured
+ * in this class if the defaults of those parsers are changed. Documents built from an already parsed
+ * {@link org.dom4j.Document} still use the element parsers.</p>
+ *
+ * @since 4.2.0
+ */
+public class StreamingOpenSearchDocumentBuilder extends OpenSearchDocumentBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingOpenSearchDocumentBuilder.class);
+
+    /**
+     * The separator used between the name of the root element and its children
+     */
+    protected String fieldNameSeparator = ElementParserServiceImpl.DEFAULT_FIELD_NAME_SEPARATOR;
+
+    /**
+     * The name of the attribute used to exclude elements from the documents
+     */
+    protected String indexableAttributeName = ElementParserServiceImpl.DEFAULT_INDEXABLE_ATTRIBUTE_NAME;
+
+    /**
+     * The name of the attribute used to add a tokenized copy of the elements
+     */
+    protected String tokenizedAttributeName = TokenizedElementParser.DEFAULT_TOKENIZED_ATTRIBUTE_NAME;
+
+    /**
+     * The suffixes used to name the tokenized copy of the elements
+     */
+    protected Map<String, String> fieldSuffixMappings;
+
+    /**
+     * The name of the attribute used to indicate that an element with a single child is a list
+     */
+    protected String itemListAttributeName = ItemListElementParser.DEFAULT_ITEM_LIST_ATTRIBUTE;
+
+    /**
+     * The compiled patterns of the copy fields
+     */
+    protected Map<Pattern, String> copyFieldPatterns;
+
+    protected final XMLInputFactory inputFactory;
+
+    public StreamingOpenSearchDocumentBuilder(ElementParserService<Map<String, Object>> parserService,
+                                              FieldValueConverter fieldValueConverter) {
+        super(parserService, fieldValueConverter);
+
+        fieldSuffixMappings = new HashMap<>(2);
+        fieldSuffixMappings.put("_s", "_t");
+        fieldSuffixMappings.put("_smv", "_tmv");
+
+        inputFactory = createInputFactory();
+    }
+
+    public void setFieldNameSeparator(String fieldNameSeparator) {
+        this.fieldNameSeparator = fieldNameSeparator;
+    }
+
+    public void setIndexableAttributeName(String indexableAttributeName) {
+        this.indexableAttributeName = indexableAttributeName;
+    }
+
+    public void setTokenizedAttributeName(String tokenizedAttributeName) {
+        this.tokenizedAttributeName = tokenizedAttributeName;
+    }
+
+    public void setFieldSuffixMappings(Map<String, String> fieldSuffixMappings) {
+        this.fieldSuffixMappings = fieldSuffixMappings;
+    }
+
+    public void setItemListAttributeName(String itemListAttributeName) {
+        this.itemListAttributeName = itemListAttributeName;
+    }
+
+    @Override
+    public void setCopyFields(Map<String, String> copyFields) {
+        super.setCopyFields(copyFields);
+
+        if (MapUtils.isNotEmpty(copyFields)) {
+            copyFieldPatterns = new LinkedHashMap<>(copyFields.size());
+            copyFields.forEach((regex, suffix) -> copyFieldPatterns.put(Pattern.compile(regex), suffix));
+        } else {
+            copyFieldPatterns = null;
+        }
+    }
+
+    @Override
+    public Map<String, Object> build(String site, String id, String xml, boolean ignoreRootInFieldNames)
+            throws DocumentBuildException {
+        Map<String, Object> doc = createDoc();
+
+        addCommonFields(doc, site, id);
+
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+            readElements(reader, doc, ignoreRootInFieldNames);
+        } catch (XMLStreamException e) {
+            throw new DocumentBuildException("Unable to parse XML", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("Error closing XML reader", e);
+                }
+            }
+        }
+
+        postProcess(doc);
+
+        return doc;
+    }
+
+    protected XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Reads all events of the XML adding the fields of the elements to the document as each one is closed
+     */
+    protected void readElements(XMLStreamReader reader, Map<String, Object> doc, boolean ignoreRootInFieldNames)
+            throws XMLStreamException {
+        Deque<ElementState> stack = new ArrayDeque<>();
+        // Number of open elements inside an element that is not indexable
+        int skippedDepth = 0;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.DTD:
+                    throw new DocumentBuildException("DOCTYPE declarations are not allowed");
+                case XMLStreamConstants.START_ELEMENT:
+                    if (skippedDepth > 0) {
+                        skippedDepth++;
+                    } else if (stack.isEmpty()) {
+                        ElementState root = new ElementState(reader.getLocalName(), null, null);
+                        root.children = doc;
+                        root.childrenParentFieldName = ignoreRootInFieldNames? null : root.name;
+                        stack.push(root);
+                    } else {
+                        ElementState parent = stack.peek();
+                        parent.addChild(reader.getLocalName());
+                        if (parent.skipped) {
+                            skippedDepth = 1;
+                        } else {
+                            if (parent.children == null) {
+                                parent.children = createNestedDoc();
+                            }
+                            stack.push(startElement(reader, parent));
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (skippedDepth == 0 && stack.size() > 1 && reader.getTextLength() > 0) {
+                        stack.peek().addText(reader);
+                    }
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    if (skippedDepth == 0 && stack.size() > 1) {
+                        stack.peek().hasContent = true;
+                    }
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    if (skippedDepth == 0 && stack.size() > 1) {
+                        stack.peek().hasContent = true;
+                        stack.peek().textOnly = false;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (skippedDepth > 0) {
+                        skippedDepth--;
+                    } else {
+                        ElementState element = stack.pop();
+                        endElement(element, stack.peek());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    protected ElementState startElement(XMLStreamReader reader, ElementState parent) {
+        ElementState element = new ElementState(reader.getLocalName(), parent.childrenParentFieldName,
+                                                fieldNameSeparator);
+        // Same checks done by each element parser
+        element.skipped = !BooleanUtils.toBoolean(reader.getAttributeValue(null, indexableAttributeName), true);
+        element.tokenized = BooleanUtils.toBoolean(reader.getAttributeValue(null, tokenizedAttributeName));
+        element.itemList = Boolean.parseBoolean(reader.getAttributeValue(null, itemListAttributeName));
+
+        if (element.skipped) {
+            logger.debug("Element '{}' is tagged as not indexable: it won't be added to the doc",
+                         element.fieldName);
+        }
+
+        return element;
+    }
+
+    /**
+     * Adds the fields of the given element to its parent, after the fields of the copies of its own children
+     */
+    protected void endElement(ElementState element, ElementState parent) {
+        if (element.copies != null) {
+            for (ElementState copy : element.copies) {
+                addFields(copy, element.children);
+            }
+        }
+
+        if (parent == null) {
+            return;
+        }
+
+        // Copies are added at the end of the parent, so they also count as children for the item lists
+        if (copyFieldPatterns != null && element.hasContent && element.textOnly) {
+            for (Map.Entry<Pattern, String> entry : copyFieldPatterns.entrySet()) {
+                if (entry.getKey().matcher(element.name).matches()) {
+                    parent.addCopy(element.copy(element.name + entry.getValue(), fieldNameSeparator));
+                }
+            }
+        }
+
+        addFields(element, parent.children);
+    }
+
+    protected void addFields(ElementState element, Map<String, Object> doc) {
+        if (element.skipped) {
+            return;
+        }
+
+        logger.debug("Parsing element '{}'", element.fieldName);
+
+        if (element.itemList && element.childCount == 1) {
+            // The item is looked up by the element name, so just like in the parser it's only found when the list
+            // doesn't have a parent field name
+            Object item = element.children != null && StringUtils.isEmpty(element.parentFieldName)?
+                    element.children.get(element.firstChildName) : null;
+            doc.put(element.fieldName, singletonMap(element.firstChildName, singletonList(item)));
+            return;
+        }
+
+        if (element.tokenized) {
+            logger.debug("Parsing element '{}' marked to tokenize", element.fieldName);
+
+            for (Map.Entry<String, String> mapping : fieldSuffixMappings.entrySet()) {
+                if (element.name.endsWith(mapping.getKey())) {
+                    String tokenizedName = StringUtils.substringBefore(element.name, mapping.getKey()) +
+                                           mapping.getValue();
+                    addValue(element, element.getFieldName(tokenizedName, fieldNameSeparator), doc, true);
+                    break;
+                }
+            }
+        }
+
+        addValue(element, element.fieldName, doc, false);
+    }
+
+    protected void addValue(ElementState element, String fieldName, Map<String, Object> doc, boolean copy) {
+        if (!element.hasContent) {
+            logger.debug("Element '{}' has no content. Ignoring it.", fieldName);
+        } else if (element.textOnly) {
+            logger.debug("Adding field '{}'", fieldName);
+
+            String text = element.text != null? element.text.toString() : StringUtils.EMPTY;
+            doc.put(fieldName, fieldValueConverter.convert(fieldName, text));
+        } else {
+            Map<String, Object> children = createNestedDoc();
+            if (element.children != null) {
+                if (copy) {
+                    children.putAll(element.children);
+                } else {
+                    children = element.children;
+                }
+            }
+            doc.put(fieldName, children);
+        }
+    }
+
+    /**
+     * Holds what is needed from an element while it is being read
+     */
+    protected static class ElementState {
+
+        protected final String name;
+
+        protected final String parentFieldName;
+
+        protected final String fieldName;
+
+        protected boolean skipped;
+
+        protected boolean tokenized;
+
+        protected boolean itemList;
+
+        protected boolean hasContent;
+
+        protected boolean textOnly = true;
+
+        protected StringBuilder text;
+
+        protected int childCount;
+
+        protected String firstChildName;
+
+        protected Map<String, Object> children;
+
+        protected String childrenParentFieldName = StringUtils.EMPTY;
+
+        protected List<ElementState> copies;
+
+        protected ElementState(String name, String parentFieldName, String fieldNameSeparator) {
+            this.name = name;
+            this.parentFieldName = parentFieldName;
+            this.fieldName = getFieldName(name, fieldNameSeparator);
+        }
+
+        protected String getFieldName(String elementName, String fieldNameSeparator) {
+            return StringUtils.isNotEmpty(parentFieldName)? parentFieldName + fieldNameSeparator + elementName :
+                    elementName;
+        }
+
+        protected void addChild(String childName) {
+            if (childCount++ == 0) {
+                firstChildName = childName;
+            }
+            hasContent = true;
+            textOnly = false;
+            text = null;
+        }
+
+        protected void addText(XMLStreamReader reader) {
+            hasContent = true;
+            if (textOnly && !skipped) {
+                if (text == null) {
+                    text = new StringBuilder(reader.getTextLength());
+                }
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+
+        protected void addCopy(ElementState copy) {
+            childCount++;
+            if (!copy.skipped) {
+                if (copies == null) {
+                    copies = new ArrayList<>(1);
+                }
+                copies.add(copy);
+            }
+        }
+
+        protected ElementState copy(String copyName, String fieldNameSeparator) {
+            ElementState copy = new ElementState(copyName, parentFieldName, fieldNameSeparator);
+            copy.skipped = skipped;
+            copy.tokenized = tokenized;
+            copy.itemList = itemList;
+            copy.hasContent = hasContent;
+            copy.text = text;
+            return copy;
+        }
+
+    }
+
+}
@@ -19,36 +19,79 @@ package org.craftercms.search.opensearch.impl.tika;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tika.Tika;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.fork.ForkParser;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 import org.craftercms.search.commons.exception.SearchException;
 import org.craftercms.search.opensearch.DocumentParser;
 import org.craftercms.search.opensearch.MetadataExtractor;
 import org.craftercms.search.opensearch.impl.AbstractDocumentParser;
+import org.craftercms.search.opensearch.impl.SpooledText;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.xml.sax.SAXException;
 
 import jakarta.activation.FileTypeMap;
 import jakarta.activation.MimetypesFileTypeMap;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.craftercms.search.commons.utils.MapUtils.mergeMaps;
 
 /**
  * Implementation of {@link DocumentParser} that uses Apache Tika
+ * <p>When {@link #parseTimeout} or {@link #forkParsing} are enabled the parser starts its own threads or JVMs, they
+ * are stopped by {@link #destroy()} which is called automatically when the bean is defined in a Spring context.</p>
  * @author joseross
  */
-public class TikaDocumentParser extends AbstractDocumentParser {
+public class TikaDocumentParser extends AbstractDocumentParser implements DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(TikaDocumentParser.class);
 
+    public static final int DEFAULT_PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    public static final long DEFAULT_PARSE_TIMEOUT = 0;
+
+    public static final List<String> DEFAULT_FORK_JAVA_COMMAND = Arrays.asList("java", "-Xmx512m");
+
+    public static final String DEFAULT_FIELD_NAME_CONTENT_TIMED_OUT = "contentTimedOut";
+
+    public static final long DEFAULT_STUCK_WORKER_GRACE_PERIOD = 1000;
+
     /**
      * The maximum number of characters to parse from the document.
      * Defaults to 0 to parse only metadata.
@@ -72,7 +115,61 @@ public class TikaDocumentParser extends AbstractDocumentParser {
 
     protected final FileTypeMap fileTypeMap = new MimetypesFileTypeMap();
 
+    /**
+     * Cache for the results of parsing files, if null all files are parsed
+     */
+    protected TikaParseCache parseCache;
+
+    /**
+     * The number of threads (or forked JVMs) used to parse documents
+     */
+    protected int parseThreads = DEFAULT_PARSE_THREADS;
+
+    /**
+     * The maximum time in milliseconds to parse a single document, measured from the moment a worker starts parsing
+     * it. Documents that take longer are indexed with their metadata but without content. Defaults to 0, the
+     * documents are parsed in the calling thread without a limit.
+     * <p>Some parsers ignore interruptions, so when a timeout is used it's recommended to also enable
+     * {@link #forkParsing} to be able to actually stop them.</p>
+     */
+    protected long parseTimeout = DEFAULT_PARSE_TIMEOUT;
+
+    /**
+     * Indicates if the documents should be parsed in separate JVMs, so a document that hangs the parser or uses all
+     * the memory doesn't affect the application
+     */
+    protected boolean forkParsing = false;
+
+    /**
+     * The command used to start the forked JVMs, including the options to limit their heap
+     */
+    protected List<String> forkJavaCommand = DEFAULT_FORK_JAVA_COMMAND;
+
+    /**
+     * The name of the field added to the documents that were generated without content because of the timeout
+     */
+    protected String fieldNameContentTimedOut = DEFAULT_FIELD_NAME_CONTENT_TIMED_OUT;
+
+    /**
+     * The maximum number of characters of extracted text to keep in memory when the text is returned separately
+     * from the XML, larger texts are written to a temporary file
+     */
+    protected int contentBufferSize = SpooledText.DEFAULT_THRESHOLD;
+
+    /**
+     * The time in milliseconds to wait for a worker to stop after cancelling a parse that timed out, after that the
+     * worker is considered stuck and a new one is added to the pool to replace it
+     */
+    protected long stuckWorkerGracePeriod = DEFAULT_STUCK_WORKER_GRACE_PERIOD;
+
+    protected volatile ThreadPoolExecutor parseExecutor;
+
+    /**
+     * The number of workers that are still running a parse that timed out
+     */
+    protected int stuckWorkers;
 
+    protected volatile ForkParser forkParser;
 
     public void setCharLimit(final int charLimit) {
         this.charLimit = charLimit;
@@ -90,24 +187,381 @@ public class TikaDocumentParser extends AbstractDocumentParser {
         this.tika = tika;
     }
 
+    public void setParseCache(final TikaParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    public void setParseThreads(final int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    public void setParseTimeout(final long parseTimeout) {
+        this.parseTimeout = parseTimeout;
+    }
+
+    public void setForkParsing(final boolean forkParsing) {
+        this.forkParsing = forkParsing;
+    }
+
+    public void setForkJavaCommand(final List<String> forkJavaCommand) {
+        this.forkJavaCommand = forkJavaCommand;
+    }
+
+    public void setFieldNameContentTimedOut(final String fieldNameContentTimedOut) {
+        this.fieldNameContentTimedOut = fieldNameContentTimedOut;
+    }
+
+    public void setContentBufferSize(final int contentBufferSize) {
+        this.contentBufferSize = contentBufferSize;
+    }
+
+    public void setStuckWorkerGracePeriod(final long stuckWorkerGracePeriod) {
+        this.stuckWorkerGracePeriod = stuckWorkerGracePeriod;
+    }
+
+    public synchronized int getStuckWorkers() {
+        return stuckWorkers;
+    }
+
+    /**
+     * Stops the threads and forked JVMs used for parsing, if any
+     */
+    @Override
+    public void destroy() {
+        ThreadPoolExecutor executor = parseExecutor;
+        if (executor != null) {
+            parseExecutor = null;
+            executor.shutdownNow();
+        }
+        ForkParser parser = forkParser;
+        if (parser != null) {
+            forkParser = null;
+            parser.close();
+        }
+    }
+
+    @Override
+    public boolean isTimeoutEnabled() {
+        return parseTimeout > 0;
+    }
+
+    @Override
+    public boolean isTimedOut(final Map<String, Object> doc) {
+        Object value = doc.get(fieldNameContentTimedOut);
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public String parseToXml(final String filename, final Resource resource,
                              final Map<String, Object> additionalFields) {
+        return parseToXml(filename, resource, additionalFields, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The extracted text is returned in the streamed fields, written to a {@link SpooledText} as Tika generates it
+     * so only {@link #contentBufferSize} characters are kept in memory (unless the {@link #parseCache} is used)</p>
+     */
+    @Override
+    public String parseToXml(final String filename, final Resource resource,
+                             final Map<String, Object> additionalFields, final Map<String, Object> streamedFields) {
+        return writeAsXml(parseToMap(filename, resource, additionalFields, streamedFields));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The extracted text is returned in the streamed fields, written to a {@link SpooledText} as Tika generates it
+     * so only {@link #contentBufferSize} characters are kept in memory (unless the {@link #parseCache} is used)</p>
+     */
+    @Override
+    public Map<String, Object> parseToMap(final String filename, final Resource resource,
+                                          final Map<String, Object> additionalFields,
+                                          final Map<String, Object> streamedFields) {
         Metadata metadata = new Metadata();
         try {
-            // Tika will close the stream, so it can't be used for anything after this, can't use auto close ...
-            InputStream in = resource.getInputStream();
-            String parsedContent = tika.parseToString(in, metadata, charLimit);
-            return extractMetadata(filename, resource, parsedContent, metadata, additionalFields);
+            String parsedContent = null;
+            if (parseCache != null) {
+                parsedContent = parseWithCache(resource, metadata);
+                if (streamedFields != null && StringUtils.isNotEmpty(parsedContent)) {
+                    streamedFields.put(fieldNameContent, parsedContent);
+                    parsedContent = null;
+                }
+            } else if (streamedFields != null) {
+                SpooledText text = new SpooledText(contentBufferSize);
+                try (text) {
+                    parse(resource, metadata, text);
+                }
+                if (!text.isEmpty()) {
+                    streamedFields.put(fieldNameContent, text);
+                }
+            } else {
+                parsedContent = parse(resource, metadata);
+            }
+            return extractFields(filename, resource, parsedContent, metadata, additionalFields);
+        } catch (TimeoutException e) {
+            logger.warn("Parsing of file {} timed out after {} ms, it will be indexed without content", filename,
+                        parseTimeout);
+            if (metadata.get(Metadata.CONTENT_TYPE) == null) {
+                metadata.set(Metadata.CONTENT_TYPE, tika.detect(filename));
+            }
+            Map<String, Object> fields = additionalFields != null? new HashMap<>(additionalFields) : new HashMap<>();
+            fields.put(fieldNameContentTimedOut, true);
+            return extractFields(filename, resource, null, metadata, fields);
         } catch (IOException | TikaException e) {
             logger.error("Error parsing file", e);
             throw new SearchException("Error parsing file", e);
         }
     }
 
+    /**
+     * Parses the given resource in the worker pool, waiting at most {@link #parseTimeout} for the result
+     */
+    protected String parse(Resource resource, Metadata metadata) throws IOException, TikaException,
+            TimeoutException {
+        StringWriter writer = new StringWriter();
+        parse(resource, metadata, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Parses the given resource in the worker pool, waiting at most {@link #parseTimeout} from the moment a worker
+     * picks it up for the text to be written. If the parsing times out the metadata extracted so far is copied and
+     * the worker is replaced if it doesn't stop in the {@link #stuckWorkerGracePeriod}.
+     */
+    protected void parse(Resource resource, Metadata metadata, Writer writer) throws IOException, TikaException,
+            TimeoutException {
+        if (parseTimeout <= 0) {
+            doParse(resource, metadata, writer);
+            return;
+        }
+
+        // The worker gets its own metadata so nothing is modified after a timeout
+        Metadata parsedMetadata = new Metadata();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        // Set by either the worker when it stops or the caller when it gives up on it, whichever happens first
+        AtomicBoolean settled = new AtomicBoolean();
+        ExecutorService executor = getParseExecutor();
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                started.countDown();
+                try {
+                    doParse(resource, parsedMetadata, writer);
+                    return null;
+                } finally {
+                    stopped.countDown();
+                    if (!settled.compareAndSet(false, true)) {
+                        releaseStuckWorker();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new TikaException("Parsing was stopped before the file was submitted", e);
+        }
+        try {
+            // The time spent in the queue doesn't count for the timeout, other parses will finish or time out
+            while (!started.await(1, TimeUnit.SECONDS)) {
+                if (executor.isShutdown()) {
+                    throw new TikaException("Parsing was stopped before the file was picked up");
+                }
+            }
+            future.get(parseTimeout, TimeUnit.MILLISECONDS);
+            copyMetadata(parsedMetadata, metadata);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaException("Interrupted while parsing file", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof TikaException) {
+                throw (TikaException) cause;
+            }
+            throw new TikaException("Error parsing file", cause);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            waitForWorker(stopped, settled);
+            copyMetadata(parsedMetadata, metadata);
+            throw e;
+        } finally {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Waits for the worker of a cancelled parse to stop, if it doesn't stop in time it's counted as stuck and the
+     * pool grows to replace it until it finishes
+     */
+    protected void waitForWorker(CountDownLatch stopped, AtomicBoolean settled) {
+        try {
+            if (stopped.await(stuckWorkerGracePeriod, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (settled.compareAndSet(false, true)) {
+            addStuckWorker();
+        }
+    }
+
+    protected synchronized void addStuckWorker() {
+        stuckWorkers++;
+        ThreadPoolExecutor executor = parseExecutor;
+        if (executor != null) {
+            executor.setMaximumPoolSize(parseThreads + stuckWorkers);
+            executor.setCorePoolSize(parseThreads + stuckWorkers);
+        }
+        if (forkParsing) {
+            logger.warn("A parsing thread didn't stop after the timeout, {} threads are stuck", stuckWorkers);
+        } else {
+            logger.warn("A parsing thread didn't stop after the timeout, {} threads are stuck. Enable forkParsing " +
+                        "to run the parsers in separate JVMs that can be stopped", stuckWorkers);
+        }
+    }
+
+    protected synchronized void releaseStuckWorker() {
+        stuckWorkers--;
+        ThreadPoolExecutor executor = parseExecutor;
+        if (executor != null) {
+            executor.setCorePoolSize(parseThreads + stuckWorkers);
+            executor.setMaximumPoolSize(parseThreads + stuckWorkers);
+        }
+        logger.info("A stuck parsing thread has finished, {} threads are still stuck", stuckWorkers);
+    }
+
+    /**
+     * Copies the metadata extracted by a worker, if the parsing timed out the worker could still be adding values
+     * so only the ones available at this point are copied
+     */
+    protected void copyMetadata(Metadata source, Metadata target) {
+        try {
+            for (String name : source.names()) {
+                String[] values = source.getValues(name);
+                for (String value : values) {
+                    if (value != null) {
+                        target.add(name, value);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Error copying the metadata of a parse that timed out", e);
+        }
+    }
+
+    /**
+     * Parses the given resource (in one of the forked JVMs if enabled) the same way {@link Tika#parseToString} does,
+     * but writing the text as it's extracted. Once {@link #charLimit} characters have been written the parsing stops.
+     */
+    protected void doParse(Resource resource, Metadata metadata, Writer writer) throws IOException, TikaException {
+        Parser parser = forkParsing? getForkParser() : tika.getParser();
+        WriteOutContentHandler handler = new WriteOutContentHandler(writer, charLimit);
+        ParseContext context = new ParseContext();
+        if (!forkParsing) {
+            context.set(Parser.class, parser);
+        }
+        try (InputStream in = resource.getInputStream()) {
+            parser.parse(in, new BodyContentHandler(handler), metadata, context);
+        } catch (SAXException e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw new TikaException("Unexpected SAX processing failure", e);
+            }
+        }
+    }
+
+    protected ExecutorService getParseExecutor() {
+        ThreadPoolExecutor executor = parseExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = parseExecutor;
+                if (executor == null) {
+                    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("tika-parser-");
+                    threadFactory.setDaemon(true);
+                    int poolSize = parseThreads + stuckWorkers;
+                    executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                                                      new LinkedBlockingQueue<>(), threadFactory);
+                    if (!forkParsing) {
+                        logger.info("Parsing files in process with a timeout of {} ms, parsers that ignore " +
+                                    "interruptions can't be stopped unless forkParsing is enabled", parseTimeout);
+                    }
+                    parseExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    protected ForkParser getForkParser() {
+        ForkParser parser = forkParser;
+        if (parser == null) {
+            synchronized (this) {
+                parser = forkParser;
+                if (parser == null) {
+                    parser = new ForkParser(TikaDocumentParser.class.getClassLoader(), tika.getParser());
+                    parser.setJavaCommand(forkJavaCommand);
+                    parser.setPoolSize(parseThreads);
+                    if (parseTimeout > 0) {
+                        parser.setServerParseTimeoutMillis(parseTimeout);
+                    }
+                    forkParser = parser;
+                }
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Looks for the result in the {@link #parseCache} using the digest of the content, parsing the file only if
+     * there is no entry. Resources that can only be read once are copied to a temporary file first.
+     */
+    protected String parseWithCache(Resource resource, Metadata metadata) throws IOException, TikaException,
+            TimeoutException {
+        File tempFile = null;
+        try {
+            MessageDigest digest = DigestUtils.getSha256Digest();
+            if (resource.isOpen()) {
+                tempFile = Files.createTempFile("tika-", ".tmp").toFile();
+                try (InputStream in = new DigestInputStream(resource.getInputStream(), digest);
+                     OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+                    in.transferTo(out);
+                }
+                resource = new FileSystemResource(tempFile);
+            } else {
+                try (InputStream in = new DigestInputStream(resource.getInputStream(), digest)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+
+            String key = getCacheKey(digest.digest());
+            String parsedContent = parseCache.get(key, metadata);
+            if (parsedContent != null) {
+                logger.debug("Using cached parse result for {}", resource);
+                return parsedContent;
+            }
+
+            parsedContent = parse(resource, metadata);
+            parseCache.put(key, parsedContent, metadata);
+
+            return parsedContent;
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * Builds the cache key from the digest of the content and the parser settings that change the result. The
+     * metadata extractors are applied after the cache so they are not included.
+     */
+    protected String getCacheKey(byte[] contentDigest) {
+        return DigestUtils.sha256Hex(Hex.encodeHexString(contentDigest) + ":" + charLimit + ":" + tika);
+    }
+
     /**
      * Prepares the document to be indexed
      * @param resource the content of the parsed file
@@ -117,6 +571,18 @@ public class TikaDocumentParser extends AbstractDocumentParser {
      */
     protected String extractMetadata(String filename, Resource resource, String parsedContent, Metadata metadata,
                                      Map<String, Object> additionalFields) {
+        return writeAsXml(extractFields(filename, resource, parsedContent, metadata, additionalFields));
+    }
+
+    /**
+     * Builds the fields of the document to be indexed
+     * @param resource the content of the parsed file
+     * @param metadata the metadata of the parsed file
+     * @param additionalFields additional fields to be added
+     * @return the fields ready to be indexed
+     */
+    protected Map<String, Object> extractFields(String filename, Resource resource, String parsedContent,
+                                                Metadata metadata, Map<String, Object> additionalFields) {
         Map<String, Object> map = new HashMap<>();
 
         if (StringUtils.isNotEmpty(parsedContent)) {
@@ -135,10 +601,12 @@ public class TikaDocumentParser extends AbstractDocumentParser {
         }
         metadataExtractors.forEach(extractor -> extractor.extract(resource, metadata, map));
 
-        Map<String, Object> mergedMap = mergeMaps(map, additionalFields);
+        return mergeMaps(map, additionalFields);
+    }
 
+    protected String writeAsXml(Map<String, Object> fields) {
         try {
-            return objectMapper.writeValueAsString(mergedMap);
+            return objectMapper.writeValueAsString(fields);
         } catch (JsonProcessingException e) {
             logger.error("Error writing parsed document as XML");
             throw new SearchException("Error writing parsed document as XML", e);
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl.tika;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the results of parsing binary files with Apache Tika in a local folder, so files with the same content are
+ * only parsed once. Each entry is stored in its own file that starts with a checksum of the rest of the file,
+ * entries that don't match their checksum are discarded. Once the size of all entries exceeds {@link #maxSize} the
+ * least recently used ones are removed.
+ *
+ * @since 4.2.0
+ */
+public class TikaParseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TikaParseCache.class);
+
+    public static final long DEFAULT_MAX_SIZE = 512 * 1024 * 1024;
+
+    public static final String FILE_EXTENSION = ".tika";
+
+    protected static final String FIELD_CONTENT = "content";
+    protected static final String FIELD_METADATA = "metadata";
+
+    protected static final TypeReference<Map<String, Object>> ENTRY_TYPE = new TypeReference<>() { };
+
+    /**
+     * The folder where the entries are stored
+     */
+    protected final File directory;
+
+    /**
+     * The maximum size in bytes of all the entries
+     */
+    protected long maxSize = DEFAULT_MAX_SIZE;
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * The size of each entry, in access order
+     */
+    protected Map<String, Long> entries;
+
+    protected long totalSize;
+
+    public TikaParseCache(File directory) {
+        this.directory = directory;
+    }
+
+    public void setMaxSize(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Returns the parsed content for the given key
+     * @param key the key of the entry
+     * @param metadata the Tika metadata where the stored values will be added
+     * @return the parsed content, null if there is no valid entry for the key
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized String get(String key, Metadata metadata) {
+        loadEntries();
+        // Uses get instead of containsKey so the entry becomes the most recently used
+        if (entries.get(key) == null) {
+            return null;
+        }
+
+        File file = getFile(key);
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int separator = indexOf(bytes, (byte) '\n');
+            if (separator < 0) {
+                throw new IOException("Missing checksum");
+            }
+            byte[] payload = Arrays.copyOfRange(bytes, separator + 1, bytes.length);
+            String checksum = new String(bytes, 0, separator, StandardCharsets.UTF_8);
+            if (!checksum.equals(DigestUtils.sha256Hex(payload))) {
+                throw new IOException("Checksum doesn't match");
+            }
+
+            Map<String, Object> entry = objectMapper.readValue(payload, ENTRY_TYPE);
+            Map<String, List<String>> values = (Map<String, List<String>>) entry.get(FIELD_METADATA);
+            if (values != null) {
+                values.forEach((name, list) -> list.forEach(value -> metadata.add(name, value)));
+            }
+
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                logger.debug("Unable to update last modified date of {}", file);
+            }
+            return (String) entry.get(FIELD_CONTENT);
+        } catch (Exception e) {
+            logger.warn("Discarding invalid cache entry {}", file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the parsed content for the given key
+     * @param key the key of the entry
+     * @param content the parsed content
+     * @param metadata the Tika metadata from the parse
+     */
+    public synchronized void put(String key, String content, Metadata metadata) {
+        loadEntries();
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String name : metadata.names()) {
+            values.put(name, Arrays.asList(metadata.getValues(name)));
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put(FIELD_CONTENT, content);
+        entry.put(FIELD_METADATA, values);
+
+        File file = getFile(key);
+        try {
+            byte[] payload = objectMapper.writeValueAsBytes(entry);
+            byte[] checksum = (DigestUtils.sha256Hex(payload) + '\n').getBytes(StandardCharsets.UTF_8);
+
+            File tempFile = new File(directory, key + ".tmp");
+            try {
+                Files.write(tempFile.toPath(), checksum);
+                Files.write(tempFile.toPath(), payload, StandardOpenOption.APPEND);
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+
+            Long previousSize = entries.put(key, file.length());
+            totalSize += file.length() - (previousSize != null? previousSize : 0);
+            evict();
+        } catch (IOException e) {
+            logger.error("Error storing cache entry {}", file, e);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the total size is under the limit
+     */
+    protected void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.getValue();
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    protected void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size;
+        }
+        deleteFile(key);
+    }
+
+    protected void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(getFile(key).toPath());
+        } catch (IOException e) {
+            logger.warn("Unable to delete cache entry {}", getFile(key), e);
+        }
+    }
+
+    /**
+     * Loads the existing entries from the folder, using their last modified date as the access order
+     */
+    protected void loadEntries() {
+        if (entries != null) {
+            return;
+        }
+
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        totalSize = 0;
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.error("Unable to create cache folder {}", directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                String name = file.getName();
+                entries.put(name.substring(0, name.length() - FILE_EXTENSION.length()), file.length());
+                totalSize += file.length();
+            }
+        }
+        logger.info("Loaded {} entries ({} bytes) from cache folder {}", entries.size(), totalSize, directory);
+
+        evict();
+    }
+
+    protected File getFile(String key) {
+        return new File(directory, key + FILE_EXTENSION);
+    }
+
+    protected int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
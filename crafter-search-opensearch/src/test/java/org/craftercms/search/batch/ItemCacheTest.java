@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch;
+
+import org.craftercms.core.processors.ItemProcessor;
+import org.craftercms.core.service.ContentStoreService;
+import org.craftercms.core.service.Context;
+import org.craftercms.core.service.Item;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ItemCache}.
+ */
+public class ItemCacheTest {
+
+    private ContentStoreService contentStoreService;
+    private Context context;
+    private ItemProcessor processor;
+
+    @Before
+    public void setUp() {
+        contentStoreService = mock(ContentStoreService.class);
+        context = mock(Context.class);
+        processor = mock(ItemProcessor.class);
+        when(contentStoreService.getItem(any(Context.class), anyString())).thenAnswer(invocation -> new Item());
+        when(contentStoreService.getItem(any(Context.class), isNull(), anyString(), any(ItemProcessor.class)))
+            .thenAnswer(invocation -> new Item());
+    }
+
+    @Test
+    public void testItemsAreLoadedOnce() {
+        ItemCache itemCache = new ItemCache(contentStoreService, context);
+
+        Item item = itemCache.getItem("/site/website/index.xml");
+        Item processedItem = itemCache.getItem("/site/website/index.xml", processor);
+
+        assertSame(item, itemCache.getItem("/site/website/index.xml"));
+        assertSame(item, itemCache.getItem("/site/website/index.xml", null));
+        assertSame(processedItem, itemCache.getItem("/site/website/index.xml", processor));
+        assertNotSame(item, processedItem);
+        assertEquals(2, itemCache.size());
+        verify(contentStoreService, times(1)).getItem(context, "/site/website/index.xml");
+        verify(contentStoreService, times(1)).getItem(context, null, "/site/website/index.xml", processor);
+    }
+
+    @Test
+    public void testEvictRemovesAllItemsOfPath() {
+        ItemCache itemCache = new ItemCache(contentStoreService, context);
+        itemCache.getItem("/site/website/index.xml");
+        itemCache.getItem("/site/website/index.xml", processor);
+        itemCache.getItem("/site/website/about/index.xml");
+
+        itemCache.evict("/site/website/index.xml");
+
+        assertEquals(1, itemCache.size());
+        itemCache.getItem("/site/website/index.xml");
+        verify(contentStoreService, times(2)).getItem(context, "/site/website/index.xml");
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ItemCache itemCache = new ItemCache(contentStoreService, context, 10);
+
+        for (int i = 0; i < 100; i++) {
+            itemCache.getItem("/site/website/page" + i + "/index.xml");
+            itemCache.getItem("/site/website/page" + i + "/index.xml", processor);
+            assertEquals(Math.min(2 * (i + 1), 10), itemCache.size());
+        }
+
+        // The oldest items are removed first
+        itemCache.getItem("/site/website/page99/index.xml");
+        itemCache.getItem("/site/website/page0/index.xml");
+        verify(contentStoreService, times(1)).getItem(context, "/site/website/page99/index.xml");
+        verify(contentStoreService, times(2)).getItem(context, "/site/website/page0/index.xml");
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.relationship.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FileRelationshipStore}.
+ */
+public class FileRelationshipStoreTest {
+
+    private static final String INDEX_ID = "test";
+    private static final String METADATA_PATH1 = "/site/components/metadata1.xml";
+    private static final String METADATA_PATH2 = "/site/components/metadata2.xml";
+    private static final String BINARY_PATH1 = "/static-assets/file1.pdf";
+    private static final String BINARY_PATH2 = "/static-assets/file2.pdf";
+    private static final String BINARY_PATH3 = "/static-assets/file3.pdf";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileRelationshipStore store;
+
+    @Before
+    public void setUp() {
+        store = new FileRelationshipStore(folder.getRoot());
+    }
+
+    @Test
+    public void testNotInitializedUntilRebuild() {
+        assertFalse(store.isInitialized(INDEX_ID));
+
+        // Changes are ignored until the store has been rebuilt from the index
+        store.setBinaryPaths(INDEX_ID, METADATA_PATH1, Collections.singletonList(BINARY_PATH1));
+        assertTrue(store.getBinaryPaths(INDEX_ID, METADATA_PATH1).isEmpty());
+        assertFalse(store.getFile(INDEX_ID).exists());
+    }
+
+    @Test
+    public void testRebuild() {
+        store.rebuild(INDEX_ID, getAssociations());
+
+        assertTrue(store.isInitialized(INDEX_ID));
+        assertEquals(Arrays.asList(BINARY_PATH1, BINARY_PATH2), store.getBinaryPaths(INDEX_ID, METADATA_PATH1));
+        assertEquals(Collections.singletonList(BINARY_PATH3), store.getBinaryPaths(INDEX_ID, METADATA_PATH2));
+        assertEquals(METADATA_PATH1, store.getMetadataPath(INDEX_ID, BINARY_PATH2));
+        assertEquals(METADATA_PATH2, store.getMetadataPath(INDEX_ID, BINARY_PATH3));
+
+        // A new rebuild replaces all previous associations
+        store.rebuild(INDEX_ID, Collections.singletonMap(METADATA_PATH2, Collections.singletonList(BINARY_PATH1)));
+
+        assertTrue(store.getBinaryPaths(INDEX_ID, METADATA_PATH1).isEmpty());
+        assertEquals(METADATA_PATH2, store.getMetadataPath(INDEX_ID, BINARY_PATH1));
+        assertNull(store.getMetadataPath(INDEX_ID, BINARY_PATH3));
+    }
+
+    @Test
+    public void testChangesAreLoaded() {
+        store.rebuild(INDEX_ID, getAssociations());
+        store.setBinaryPaths(INDEX_ID, METADATA_PATH1, Arrays.asList(BINARY_PATH1, BINARY_PATH3));
+        store.removeBinaryPath(INDEX_ID, BINARY_PATH1);
+        store.removeMetadataPath(INDEX_ID, METADATA_PATH2);
+
+        FileRelationshipStore loaded = new FileRelationshipStore(folder.getRoot());
+
+        assertTrue(loaded.isInitialized(INDEX_ID));
+        assertEquals(Collections.singletonList(BINARY_PATH3), loaded.getBinaryPaths(INDEX_ID, METADATA_PATH1));
+        assertTrue(loaded.getBinaryPaths(INDEX_ID, METADATA_PATH2).isEmpty());
+        assertNull(loaded.getMetadataPath(INDEX_ID, BINARY_PATH1));
+        assertNull(loaded.getMetadataPath(INDEX_ID, BINARY_PATH2));
+        assertEquals(METADATA_PATH1, loaded.getMetadataPath(INDEX_ID, BINARY_PATH3));
+    }
+
+    @Test
+    public void testIncompleteLastLineIsIgnored() throws Exception {
+        store.rebuild(INDEX_ID, getAssociations());
+
+        // Simulates a write interrupted by a crash
+        File file = store.getFile(INDEX_ID);
+        Files.write(file.toPath(), ("S " + METADATA_PATH2 + "\t/static-assets/fi").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        FileRelationshipStore loaded = new FileRelationshipStore(folder.getRoot());
+
+        assertEquals(Collections.singletonList(BINARY_PATH3), loaded.getBinaryPaths(INDEX_ID, METADATA_PATH2));
+
+        // New records should not be mixed with the incomplete line
+        loaded.setBinaryPaths(INDEX_ID, METADATA_PATH2, Collections.singletonList(BINARY_PATH1));
+
+        FileRelationshipStore reloaded = new FileRelationshipStore(folder.getRoot());
+
+        assertEquals(Collections.singletonList(BINARY_PATH1), reloaded.getBinaryPaths(INDEX_ID, METADATA_PATH2));
+        assertEquals(Arrays.asList(BINARY_PATH1, BINARY_PATH2), reloaded.getBinaryPaths(INDEX_ID, METADATA_PATH1));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        store.setMinCompactionRecords(5);
+        store.rebuild(INDEX_ID, getAssociations());
+
+        for (int i = 0; i < 20; i++) {
+            store.setBinaryPaths(INDEX_ID, METADATA_PATH1,
+                                 Collections.singletonList(i % 2 == 0? BINARY_PATH1 : BINARY_PATH2));
+        }
+
+        List<String> lines = Files.readAllLines(store.getFile(INDEX_ID).toPath(), StandardCharsets.UTF_8);
+        assertTrue(lines.size() <= 6);
+
+        FileRelationshipStore loaded = new FileRelationshipStore(folder.getRoot());
+
+        assertEquals(Collections.singletonList(BINARY_PATH2), loaded.getBinaryPaths(INDEX_ID, METADATA_PATH1));
+        assertEquals(Collections.singletonList(BINARY_PATH3), loaded.getBinaryPaths(INDEX_ID, METADATA_PATH2));
+    }
+
+    @Test
+    public void testClear() {
+        store.rebuild(INDEX_ID, getAssociations());
+        assertTrue(store.getFile(INDEX_ID).exists());
+
+        store.clear(INDEX_ID);
+
+        assertFalse(store.isInitialized(INDEX_ID));
+        assertTrue(store.getBinaryPaths(INDEX_ID, METADATA_PATH1).isEmpty());
+        assertFalse(store.getFile(INDEX_ID).exists());
+        assertFalse(new FileRelationshipStore(folder.getRoot()).isInitialized(INDEX_ID));
+    }
+
+    private static Map<String, List<String>> getAssociations() {
+        Map<String, List<String>> associations = new HashMap<>();
+        associations.put(METADATA_PATH1, Arrays.asList(BINARY_PATH1, BINARY_PATH2));
+        associations.put(METADATA_PATH2, Collections.singletonList(BINARY_PATH3));
+        return associations;
+    }
+
+}
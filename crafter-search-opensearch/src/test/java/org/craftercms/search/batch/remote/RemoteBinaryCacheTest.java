@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.craftercms.commons.file.stores.RemoteFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RemoteBinaryCache}.
+ */
+public class RemoteBinaryCacheTest {
+
+    private static final String PATH = "/remote-assets/S3/docs/test.pdf";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private RemoteBinaryCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("remote");
+        cache = new RemoteBinaryCache(directory);
+    }
+
+    @Test
+    public void testFileIsDownloadedOnce() throws Exception {
+        TestResource resource = new TestResource("first", 1000);
+
+        Resource first = cache.get(PATH, remoteFile(resource));
+        Resource second = cache.get(PATH, remoteFile(resource));
+
+        assertTrue(first instanceof FileSystemResource);
+        assertEquals("first", read(first));
+        assertEquals("first", read(second));
+        assertEquals(1, resource.reads.get());
+        assertEquals(5, cache.getTotalSize());
+    }
+
+    @Test
+    public void testNewVersionIsDownloaded() throws Exception {
+        cache.get(PATH, remoteFile(new TestResource("first", 1000)));
+        TestResource updated = new TestResource("second", 2000);
+
+        assertEquals("second", read(cache.get(PATH, remoteFile(updated))));
+        assertEquals(1, updated.reads.get());
+    }
+
+    @Test
+    public void testFileWithoutVersionIsNotCached() throws Exception {
+        TestResource resource = new TestResource("first", 0);
+
+        assertSame(resource, cache.get(PATH, remoteFile(resource)));
+        assertEquals(0, cache.getTotalSize());
+        assertEquals(0, directory.listFiles((dir, name) -> name.endsWith(RemoteBinaryCache.FILE_EXTENSION)).length);
+    }
+
+    @Test
+    public void testEntriesAreLoadedFromFolder() throws Exception {
+        cache.get(PATH, remoteFile(new TestResource("first", 1000)));
+        TestResource resource = new TestResource("first", 1000);
+
+        RemoteBinaryCache loaded = new RemoteBinaryCache(directory);
+
+        assertEquals("first", read(loaded.get(PATH, remoteFile(resource))));
+        assertEquals(0, resource.reads.get());
+        assertEquals(5, loaded.getTotalSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        cache.setMaxSize(10);
+        TestResource a = new TestResource("aaaaa", 1000);
+        TestResource b = new TestResource("bbbbb", 1000);
+        TestResource c = new TestResource("ccccc", 1000);
+
+        cache.get("/a.pdf", remoteFile(a));
+        cache.get("/b.pdf", remoteFile(b));
+        // Reading the first file makes the second one the least recently used
+        cache.get("/a.pdf", remoteFile(a));
+        cache.get("/c.pdf", remoteFile(c));
+
+        assertEquals(10, cache.getTotalSize());
+        cache.get("/a.pdf", remoteFile(a));
+        cache.get("/c.pdf", remoteFile(c));
+        assertEquals(1, a.reads.get());
+        assertEquals(1, c.reads.get());
+        assertFalse(cache.entries.containsKey(getKey("/b.pdf", b)));
+        assertFalse(cache.getFile(getKey("/b.pdf", b)).exists());
+    }
+
+    private String getKey(String path, TestResource resource) {
+        return DigestUtils.sha256Hex(path + '\n' + resource.lastModified);
+    }
+
+    private static RemoteFile remoteFile(Resource resource) throws IOException {
+        RemoteFile remoteFile = mock(RemoteFile.class);
+        when(remoteFile.toResource()).thenReturn(resource);
+        return remoteFile;
+    }
+
+    private static String read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Remote resource that counts how many times it's downloaded
+     */
+    static class TestResource extends ByteArrayResource {
+
+        final long lastModified;
+        final AtomicInteger reads = new AtomicInteger();
+
+        TestResource(String content, long lastModified) {
+            super(content.getBytes(StandardCharsets.UTF_8));
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            reads.incrementAndGet();
+            return super.getInputStream();
+        }
+
+    }
+
+}
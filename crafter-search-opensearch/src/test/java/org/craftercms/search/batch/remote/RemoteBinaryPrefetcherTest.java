@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.craftercms.commons.file.stores.RemoteFile;
+import org.craftercms.commons.file.stores.RemoteFileResolver;
+import org.craftercms.search.batch.remote.RemoteBinaryCacheTest.TestResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RemoteBinaryPrefetcher}.
+ */
+public class RemoteBinaryPrefetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, RemoteFile> remoteFiles = new HashMap<>();
+    private final Map<String, TestResource> resources = new HashMap<>();
+    private RemoteFileResolver remoteFileResolver;
+    private RemoteBinaryPrefetcher prefetcher;
+
+    @Before
+    public void setUp() throws Exception {
+        for (String name : Arrays.asList("a", "b", "c", "d")) {
+            TestResource resource = new TestResource(name + name + name, 1000);
+            RemoteFile remoteFile = mock(RemoteFile.class);
+            when(remoteFile.toResource()).thenReturn(resource);
+            resources.put("/" + name + ".pdf", resource);
+            remoteFiles.put("/" + name + ".pdf", remoteFile);
+        }
+        RemoteFile brokenFile = mock(RemoteFile.class);
+        when(brokenFile.toResource()).thenReturn(new TestResource("", 1000) {
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+        });
+        remoteFiles.put("/broken.pdf", brokenFile);
+
+        remoteFileResolver = mock(RemoteFileResolver.class);
+        when(remoteFileResolver.resolve(anyString()))
+            .thenAnswer(invocation -> remoteFiles.get(invocation.<String>getArgument(0)));
+    }
+
+    @After
+    public void tearDown() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void testDownloadsAreLimited() throws Exception {
+        prefetcher = new RemoteBinaryPrefetcher(remoteFileResolver, null, 2, 2);
+
+        prefetcher.prefetch(Arrays.asList("/a.pdf", "/b.pdf", "/c.pdf", "/d.pdf", "/a.pdf"));
+        assertEquals(2, prefetcher.downloads.size());
+        assertEquals(2, prefetcher.pendingPaths.size());
+
+        assertEquals("aaa", read(prefetcher.get("/a.pdf")));
+        // Taking a download starts the next one
+        assertTrue(prefetcher.downloads.containsKey("/c.pdf"));
+        assertEquals(1, prefetcher.pendingPaths.size());
+
+        for (String path : Arrays.asList("/b.pdf", "/c.pdf", "/d.pdf")) {
+            assertEquals(path.substring(1, 2) + path.substring(1, 2) + path.substring(1, 2),
+                         read(prefetcher.get(path)));
+        }
+        for (TestResource resource : resources.values()) {
+            assertEquals(1, resource.reads.get());
+        }
+        assertTrue(prefetcher.downloads.isEmpty());
+        assertTrue(prefetcher.pendingPaths.isEmpty());
+    }
+
+    @Test
+    public void testFileNotPrefetchedIsDownloaded() throws Exception {
+        prefetcher = new RemoteBinaryPrefetcher(remoteFileResolver, null, 1, 1);
+
+        assertEquals("ddd", read(prefetcher.get("/d.pdf")));
+        assertEquals(1, resources.get("/d.pdf").reads.get());
+    }
+
+    @Test
+    public void testDownloadErrorIsThrown() {
+        prefetcher = new RemoteBinaryPrefetcher(remoteFileResolver, null, 1, 1);
+        prefetcher.prefetch(Arrays.asList("/broken.pdf", "/a.pdf"));
+
+        try {
+            prefetcher.get("/broken.pdf");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSpooledFilesAreRemoved() throws Exception {
+        prefetcher = new RemoteBinaryPrefetcher(remoteFileResolver, null, 1, 2);
+        prefetcher.prefetch(Arrays.asList("/a.pdf", "/b.pdf"));
+
+        File first = ((FileSystemResource) prefetcher.get("/a.pdf")).getFile();
+        File second = ((FileSystemResource) prefetcher.get("/b.pdf")).getFile();
+        File spoolDirectory = first.getParentFile();
+        assertTrue(first.exists());
+
+        prefetcher.release(new FileSystemResource(first));
+        assertFalse(first.exists());
+        assertTrue(second.exists());
+
+        prefetcher.close();
+        assertFalse(second.exists());
+        assertFalse(spoolDirectory.exists());
+    }
+
+    @Test
+    public void testCachedFilesAreKept() throws Exception {
+        RemoteBinaryCache cache = new RemoteBinaryCache(folder.newFolder("remote"));
+        prefetcher = new RemoteBinaryPrefetcher(remoteFileResolver, cache, 1, 2);
+        prefetcher.prefetch(Arrays.asList("/a.pdf", "/b.pdf"));
+
+        Resource resource = prefetcher.get("/a.pdf");
+        prefetcher.release(resource);
+        prefetcher.close();
+
+        assertTrue(resource.getFile().exists());
+        assertEquals("aaa", read(resource));
+    }
+
+    private static String read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.batch.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.craftercms.commons.lang.RegexUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link PathClassifier}.
+ */
+public class PathClassifierTest {
+
+    private static final int FLAG = 1;
+    private static final int OTHER_FLAG = 1 << 1;
+
+    private static final List<String> PATHS = Arrays.asList(
+        "",
+        "/",
+        "/static-assets",
+        "/static-assets/",
+        "/static-assets/images/logo.png",
+        "/static-assets/docs/manual.pdf",
+        "/static-assets/docs/manual.PDF",
+        "/static-assets/docs/manual.pdf.bak",
+        "/static-assets/docs.pdf/readme",
+        "/static-assets/docs/.pdf",
+        "/static-assets/docs/archive.tar.gz",
+        "/static-assets/docs/manual.pdf\n",
+        "/static-assets/docs\n/manual.pdf",
+        "/static-assetsX/file.pdf",
+        "/site/components/metadata.xml",
+        "/site/components/metadata.xml/other",
+        "/site/website/index.xml",
+        "/site/website/index.xmlx",
+        "/remote-assets/s3/video.mp4",
+        "/remote-assets/s3",
+        "/config/site.xml",
+        "/config/site-xml",
+        "/a.b/c"
+    );
+
+    @Test
+    public void testExtensionPatterns() {
+        List<String> patterns = Arrays.asList("^.*\\.pdf$", ".*\\.xml", "^.*\\.gz$");
+        PathClassifier classifier = build(patterns);
+
+        assertTrue(classifier.regexRules.isEmpty());
+        assertEquals(3, classifier.extensionFlags.size());
+        assertSameAsRegex(classifier, patterns);
+    }
+
+    @Test
+    public void testPrefixPatterns() {
+        List<String> patterns = Arrays.asList("^/static-assets/.*$", "/remote-assets/.*", "^/site/website/index\\..*$");
+        PathClassifier classifier = build(patterns);
+
+        assertTrue(classifier.regexRules.isEmpty());
+        assertEquals(3, classifier.prefixFlags.size());
+        assertSameAsRegex(classifier, patterns);
+    }
+
+    @Test
+    public void testLiteralPatterns() {
+        List<String> patterns = Arrays.asList("^/config/site\\.xml$", "/remote-assets/s3", "^/static-assets$", "^$");
+        PathClassifier classifier = build(patterns);
+
+        assertTrue(classifier.regexRules.isEmpty());
+        assertEquals(4, classifier.exactFlags.size());
+        assertSameAsRegex(classifier, patterns);
+    }
+
+    @Test
+    public void testRegexPatterns() {
+        List<String> patterns = Arrays.asList("^/site/.*\\.xml$", "^/config/site.xml$", "^/static-assets/(docs|images)/.*$",
+                                              "^(/a)\\.b/c$", "^.*\\.tar\\.gz$", "^/(site)/\\1.*$");
+        PathClassifier classifier = build(patterns);
+
+        assertTrue(classifier.extensionFlags.isEmpty());
+        assertTrue(classifier.prefixFlags.isEmpty());
+        assertTrue(classifier.exactFlags.isEmpty());
+        // The back reference can't be combined with the other expressions
+        assertEquals(2, classifier.regexRules.get(FLAG).size());
+        assertSameAsRegex(classifier, patterns);
+    }
+
+    @Test
+    public void testMixedPatterns() {
+        List<String> patterns = Arrays.asList("^.*\\.pdf$", "^/remote-assets/.*$", "^/config/site\\.xml$",
+                                              "^/site/website/.*\\.xml$");
+        assertSameAsRegex(build(patterns), patterns);
+
+        for (String pattern : patterns) {
+            List<String> single = Collections.singletonList(pattern);
+            assertSameAsRegex(build(single), single);
+        }
+    }
+
+    @Test
+    public void testMultipleFlags() {
+        List<String> patterns = Arrays.asList("^/static-assets/.*$", "^.*\\.xml$");
+        List<String> otherPatterns = Arrays.asList("^/static-assets/docs/.*$", "^.*\\.pdf$");
+        PathClassifier classifier = new PathClassifier.Builder()
+            .addPatterns(FLAG, patterns)
+            .addPatterns(OTHER_FLAG, otherPatterns)
+            .build();
+
+        for (String path : PATHS) {
+            int classification = classifier.classify(path);
+            assertEquals(path, RegexUtils.matchesAny(path, patterns), PathClassifier.is(classification, FLAG));
+            assertEquals(path, RegexUtils.matchesAny(path, otherPatterns),
+                         PathClassifier.is(classification, OTHER_FLAG));
+        }
+    }
+
+    @Test
+    public void testEmptyPatterns() {
+        PathClassifier classifier = new PathClassifier.Builder()
+            .addPatterns(FLAG, Collections.emptyList())
+            .addPatterns(OTHER_FLAG, null, true)
+            .build();
+
+        for (String path : PATHS) {
+            assertFalse(classifier.matches(path, FLAG));
+            assertTrue(classifier.matches(path, OTHER_FLAG));
+        }
+    }
+
+    private static PathClassifier build(List<String> patterns) {
+        return new PathClassifier.Builder().addPatterns(FLAG, patterns).build();
+    }
+
+    private static void assertSameAsRegex(PathClassifier classifier, List<String> patterns) {
+        for (String path : PATHS) {
+            assertEquals("Unexpected result for '" + path + "'", RegexUtils.matchesAny(path, patterns),
+                         classifier.matches(path, FLAG));
+        }
+    }
+
+}
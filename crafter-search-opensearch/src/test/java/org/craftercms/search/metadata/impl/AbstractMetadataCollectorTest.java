@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.metadata.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.craftercms.core.service.ContentStoreService;
+import org.craftercms.core.service.Context;
+import org.craftercms.search.metadata.MetadataExtractor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for the parallel mode of {@link AbstractMetadataCollector}.
+ */
+public class AbstractMetadataCollectorTest {
+
+    private static final String PATH = "/static-assets/test.pdf";
+
+    private AbstractMetadataCollector collector;
+    private ContentStoreService contentStoreService;
+    private Context context;
+
+    @Before
+    public void setUp() {
+        collector = new AbstractMetadataCollector() {};
+        collector.setParallelMetadataExtraction(true);
+        contentStoreService = mock(ContentStoreService.class);
+        context = mock(Context.class);
+    }
+
+    @After
+    public void tearDown() {
+        collector.destroy();
+    }
+
+    @Test
+    public void testResultsAreMergedInOrder() {
+        collector.setMetadataExtractionThreads(2);
+        collector.setMetadataExtractors(Arrays.asList(
+            extractor(100, map("first", "1", "shared", "first")),
+            extractor(0, map("second", "2", "shared", "second"))));
+
+        Map<String, Object> metadata = collector.collectMetadata(PATH, contentStoreService, context);
+
+        assertEquals("1", metadata.get("first"));
+        assertEquals("2", metadata.get("second"));
+        assertEquals("second", metadata.get("shared"));
+    }
+
+    @Test
+    public void testSlowExtractorsAreSkipped() {
+        collector.setMetadataExtractionThreads(2);
+        collector.setMetadataExtractionTimeout(200);
+        collector.setMetadataExtractors(Arrays.asList(
+            extractor(10000, map("slow", "true")),
+            extractor(0, map("fast", "true"))));
+
+        Map<String, Object> metadata = collector.collectMetadata(PATH, contentStoreService, context);
+
+        assertFalse(metadata.containsKey("slow"));
+        assertEquals("true", metadata.get("fast"));
+    }
+
+    @Test
+    public void testQueueTimeIsNotCountedForTimeout() {
+        // With a single thread each extractor waits for the previous ones, more than the timeout in total
+        collector.setMetadataExtractionThreads(1);
+        collector.setMetadataExtractionTimeout(500);
+        collector.setMetadataExtractors(Arrays.asList(
+            extractor(300, map("first", "1")),
+            extractor(300, map("second", "2")),
+            extractor(300, map("third", "3"))));
+
+        Map<String, Object> metadata = collector.collectMetadata(PATH, contentStoreService, context);
+
+        assertEquals("1", metadata.get("first"));
+        assertEquals("2", metadata.get("second"));
+        assertEquals("3", metadata.get("third"));
+    }
+
+    private static MetadataExtractor extractor(long delay, Map<String, Object> result) {
+        return (path, contentStoreService, context) -> {
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Collections.emptyMap();
+                }
+            }
+            return result;
+        };
+    }
+
+    private static Map<String, Object> map(String... keysAndValues) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+}
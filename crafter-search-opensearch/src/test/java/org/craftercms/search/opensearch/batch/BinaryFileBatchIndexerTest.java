@@ -19,8 +19,10 @@ package org.craftercms.search.opensearch.batch;
 import org.craftercms.core.service.Content;
 import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.Collections;
 
@@ -71,6 +73,36 @@ public class BinaryFileBatchIndexerTest extends BatchIndexerTestBase {
         verify(searchService, never()).delete(indexId, SITE_NAME, NON_SUPPORTED_FILENAME);
     }
 
+    @Test
+    public void testProcessWithBulk() {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(SUPPORTED_FILENAME), Collections.singletonList(NON_SUPPORTED_FILENAME));
+        UpdateStatus updateStatus = new UpdateStatus();
+        OpenSearchBulkSession bulkSession = mock(OpenSearchBulkSession.class);
+        ArgumentCaptor<OpenSearchBulkSession.Listener> listener =
+                ArgumentCaptor.forClass(OpenSearchBulkSession.Listener.class);
+
+        when(searchService.openBulkSession(listener.capture())).thenReturn(bulkSession);
+
+        batchIndexer.setBulkEnabled(true);
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        verify(bulkSession)
+                .indexBinary(eq(indexId), eq(SITE_NAME), eq(SUPPORTED_FILENAME), any(Content.class), eq(null));
+        verify(bulkSession).close();
+        verify(searchService, never())
+                .indexBinary(anyString(), anyString(), anyString(), any(Content.class), any());
+
+        // Results are only recorded once the bulk request completes
+        assertEquals(0, updateStatus.getAttemptedUpdatesAndDeletes());
+
+        listener.getValue().onItemResult(
+                new OpenSearchBulkSession.ItemResult(indexId, SUPPORTED_FILENAME, false, 201, null, null));
+
+        assertEquals(1, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(SUPPORTED_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+    }
+
     protected OpenSearchBinaryFileBatchIndexer getBatchIndexer() {
         OpenSearchBinaryFileBatchIndexer batchIndexer = new OpenSearchBinaryFileBatchIndexer(searchService);
         batchIndexer.setSupportedMimeTypes(Collections.singletonList("application/pdf"));
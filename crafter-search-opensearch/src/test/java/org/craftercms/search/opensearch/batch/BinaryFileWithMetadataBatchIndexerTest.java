@@ -21,9 +21,15 @@ import org.craftercms.core.service.Content;
 import org.craftercms.core.service.Context;
 import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.relationship.RelationshipStore;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.opensearch.client.opensearch._types.FieldValue;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -89,6 +95,45 @@ public class BinaryFileWithMetadataBatchIndexerTest extends BatchIndexerTestBase
             eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME3), any(Content.class), eq(getExpectedMetadata()));
     }
 
+    @Test
+    public void testUpdateMetadataOnlyForIndexedBinaries() {
+        // Only the first binary has already been indexed with its list of metadata fields
+        when(searchService.updateBinaryMetadata(eq(INDEX_ID), eq(SITE_NAME), anyString(), any())).thenAnswer(
+                invocation -> BINARY_FILENAME1.equals(invocation.getArgument(2)));
+
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(METADATA_XML_FILENAME), Collections.emptyList());
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.setPartialMetadataUpdates(true);
+        batchIndexer.updateIndex(INDEX_ID, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(3, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertTrue(updateStatus.getSuccessfulUpdates().contains(BINARY_FILENAME1));
+        assertTrue(updateStatus.getSuccessfulUpdates().contains(BINARY_FILENAME2));
+        assertTrue(updateStatus.getSuccessfulUpdates().contains(BINARY_FILENAME3));
+        verify(searchService).updateBinaryMetadata(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME1), eq(getExpectedMetadata()));
+        verify(searchService, never()).indexBinary(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME1), any(Content.class), any());
+        verify(searchService).indexBinary(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME2), any(Content.class), eq(getExpectedMetadata()));
+        verify(searchService).indexBinary(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME3), any(Content.class), eq(getExpectedMetadata()));
+    }
+
+    @Test
+    public void testUpdateMetadataReindexesBinariesByDefault() {
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(METADATA_XML_FILENAME), Collections.emptyList());
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.updateIndex(INDEX_ID, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(3, updateStatus.getAttemptedUpdatesAndDeletes());
+        verify(searchService, never()).updateBinaryMetadata(anyString(), anyString(), anyString(), any());
+        verify(searchService).indexBinary(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME1), any(Content.class), eq(getExpectedMetadata()));
+    }
+
     @Test
     public void testUpdateMetadataWithRemovedBinaries() {
         setupBinariesSearchResults();
@@ -109,6 +154,44 @@ public class BinaryFileWithMetadataBatchIndexerTest extends BatchIndexerTestBase
     }
 
 
+    @Test
+    public void testRelationshipsAreUpdatedAfterIndexing() {
+        RelationshipStore relationshipStore = getRelationshipStore();
+        batchIndexer.setRelationshipStore(relationshipStore);
+
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(METADATA_WITH_REMOVED_BINARIES_XML_FILENAME),
+                                            Collections.emptyList());
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.updateIndex(INDEX_ID, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        InOrder inOrder = inOrder(searchService, relationshipStore);
+        inOrder.verify(searchService).indexBinary(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME3), any(Content.class), any());
+        inOrder.verify(relationshipStore).setBinaryPaths(eq(INDEX_ID), eq(METADATA_WITH_REMOVED_BINARIES_XML_FILENAME),
+            argThat(paths -> paths.size() == 2 && paths.containsAll(List.of(BINARY_FILENAME1, BINARY_FILENAME3))));
+    }
+
+    @Test
+    public void testRelationshipsKeepPreviousBinariesOnFailure() {
+        RelationshipStore relationshipStore = getRelationshipStore();
+        batchIndexer.setRelationshipStore(relationshipStore);
+        doThrow(new OpenSearchException(INDEX_ID, "Error indexing binary")).when(searchService).indexBinary(
+            eq(INDEX_ID), eq(SITE_NAME), eq(BINARY_FILENAME1), any(Content.class), any());
+
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(METADATA_WITH_REMOVED_BINARIES_XML_FILENAME),
+                                            Collections.emptyList());
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.updateIndex(INDEX_ID, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertTrue(updateStatus.getFailedUpdates().contains(BINARY_FILENAME1));
+        // The removed binary is kept so it's processed again the next time the metadata changes
+        verify(relationshipStore).setBinaryPaths(eq(INDEX_ID), eq(METADATA_WITH_REMOVED_BINARIES_XML_FILENAME),
+            argThat(paths -> paths.size() == 3 &&
+                             paths.containsAll(List.of(BINARY_FILENAME1, BINARY_FILENAME2, BINARY_FILENAME3))));
+    }
+
     // TODO: JM: Revisit test case
     @Test
     public void testUpdateBinary() {
@@ -158,13 +241,38 @@ public class BinaryFileWithMetadataBatchIndexerTest extends BatchIndexerTestBase
     }
 
     protected void setupBinariesSearchResults() {
-        when(searchService.searchField(eq(INDEX_ID), eq("localId"), any()))
-                .thenReturn(List.of(BINARY_FILENAME1, BINARY_FILENAME2, BINARY_FILENAME3));
+        // Every requested metadata file references the same binaries
+        when(searchService.searchFields(eq(INDEX_ID), any(), argThat(Query::isTerms))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(2);
+            List<Map<String, Object>> docs = new ArrayList<>();
+            for (FieldValue metadataPath : query.terms().terms().value()) {
+                for (String binaryPath : List.of(BINARY_FILENAME1, BINARY_FILENAME2, BINARY_FILENAME3)) {
+                    docs.add(Map.of("localId", binaryPath, "metadataPath", metadataPath.stringValue()));
+                }
+            }
+            return docs;
+        });
     }
 
     protected void setupMetadataSearchResult() {
-        lenient().when(searchService.searchField(eq(INDEX_ID), eq("metadataPath"), any()))
-                .thenReturn(List.of(getExpectedMetadata().get("metadataPath").toString()));
+        lenient().when(searchService.searchFields(eq(INDEX_ID), any(), argThat(Query::isBool))).thenAnswer(
+                invocation -> {
+                    Query query = invocation.getArgument(2);
+                    List<Map<String, Object>> docs = new ArrayList<>();
+                    for (FieldValue binaryPath : query.bool().filter().get(0).terms().terms().value()) {
+                        docs.add(Map.of("localId", binaryPath.stringValue(),
+                                        "metadataPath", getExpectedMetadata().get("metadataPath").toString()));
+                    }
+                    return docs;
+                });
+    }
+
+    protected RelationshipStore getRelationshipStore() {
+        RelationshipStore relationshipStore = mock(RelationshipStore.class);
+        when(relationshipStore.isInitialized(INDEX_ID)).thenReturn(true);
+        when(relationshipStore.getBinaryPaths(INDEX_ID, METADATA_WITH_REMOVED_BINARIES_XML_FILENAME))
+            .thenReturn(List.of(BINARY_FILENAME1, BINARY_FILENAME2, BINARY_FILENAME3));
+        return relationshipStore;
     }
 
     protected OpenSearchBinaryFileWithMetadataBatchIndexer getBatchIndexer() {
@@ -20,18 +20,54 @@ import org.craftercms.core.processors.ItemProcessor;
 import org.craftercms.core.processors.impl.AttributeAddingProcessor;
 import org.craftercms.core.processors.impl.FieldRenamingProcessor;
 import org.craftercms.core.processors.impl.PageAwareIncludeDescriptorsProcessor;
+import org.craftercms.core.service.ContentStoreService;
+import org.craftercms.core.service.Context;
+import org.craftercms.search.batch.UpdateDetail;
 import org.craftercms.search.batch.UpdateSet;
 import org.craftercms.search.batch.UpdateStatus;
+import org.craftercms.search.batch.journal.impl.FileIndexingJournal;
+import org.craftercms.search.commons.service.ElementParser;
+import org.craftercms.search.commons.service.FieldValueConverter;
+import org.craftercms.search.commons.service.impl.AbstractDocumentBuilder;
+import org.craftercms.search.commons.service.impl.ElementParserServiceImpl;
+import org.craftercms.search.commons.service.impl.TokenizedElementParser;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.craftercms.search.opensearch.impl.ItemListElementParser;
+import org.craftercms.search.opensearch.impl.OpenSearchDocumentBuilder;
+import org.craftercms.search.opensearch.impl.OpenSearchElementParserImpl;
+import org.dom4j.Document;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.SAXReader;
+import org.dom4j.io.XMLWriter;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link OpenSearchXmlFileBatchIndexer}.
@@ -43,6 +79,9 @@ public class XmlFileBatchIndexerTest extends BatchIndexerTestBase {
     private static final String SITE_NAME = "test";
     private static final String UPDATE_FILENAME = "test2.xml";
     private static final String DELETE_FILENAME = "deleteme.xml";
+    private static final String WHITESPACE_FILENAME = "whitespace.xml";
+    private static final String MIXED_FILENAME = "mixed.xml";
+    private static final String PRESERVE_FILENAME = "preserve.xml";
     private static final String EXPECTED_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
             "<!--\n" +
             "  ~ Copyright (C) 2007-2023 Crafter Software Corporation. All Rights Reserved.\n" +
@@ -72,6 +111,9 @@ public class XmlFileBatchIndexerTest extends BatchIndexerTestBase {
             "<include>test.xml</include>" +
             "</page>";
 
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
+
     private OpenSearchXmlFileBatchIndexer batchIndexer;
 
     @Before
@@ -96,6 +138,297 @@ public class XmlFileBatchIndexerTest extends BatchIndexerTestBase {
         verify(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
     }
 
+    @Test
+    public void testUpdateIndexInParallel() {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME),
+                                            Arrays.asList(DELETE_FILENAME, UPDATE_FILENAME));
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.setNormalizeUpdateSet(false);
+        batchIndexer.setThreadPoolSize(4);
+        batchIndexer.setMaxInFlight(1);
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(3, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(UPDATE_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+        assertEquals(2, updateStatus.getSuccessfulDeletes().size());
+        verify(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
+
+        // Operations for the same path are executed in order
+        InOrder inOrder = inOrder(searchService);
+        inOrder.verify(searchService).index(indexId, SITE_NAME, UPDATE_FILENAME, EXPECTED_XML, null);
+        inOrder.verify(searchService).delete(indexId, SITE_NAME, UPDATE_FILENAME);
+    }
+
+    @Test
+    public void testItemCacheIsBoundedDuringBatch() {
+        List<String> paths = Arrays.asList(UPDATE_FILENAME, "test.xml", "component.xml", WHITESPACE_FILENAME,
+                                           "disabled.xml", "expired.xml");
+        List<Integer> cacheSizes = Collections.synchronizedList(new ArrayList<>());
+        OpenSearchXmlFileBatchIndexer indexer =
+            new OpenSearchXmlFileBatchIndexer(adminService, localeExtractor, searchService, false) {
+
+                @Override
+                protected void doSingleFileUpdate(String indexId, String siteName,
+                                                  ContentStoreService contentStoreService, Context context,
+                                                  String path, boolean delete, UpdateDetail updateDetail,
+                                                  UpdateStatus updateStatus, Map<String, Object> metadata) {
+                    super.doSingleFileUpdate(indexId, siteName, contentStoreService, context, path, delete,
+                                             updateDetail, updateStatus, metadata);
+                    cacheSizes.add(itemCaches.get(updateStatus).size());
+                }
+
+            };
+        indexer.setItemProcessors(getDocumentProcessors());
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        indexer.updateIndex(SITE_NAME, SITE_NAME, contentStoreService, context,
+                                 new UpdateSet(paths, Collections.emptyList()), updateStatus);
+
+        assertEquals(paths.size(), cacheSizes.size());
+        // Only the items of the path being indexed are kept, previous paths have been evicted
+        cacheSizes.forEach(size -> assertTrue("Item cache size " + size, size <= 1));
+    }
+
+    @Test
+    public void testUpdateIndexNormalizesUpdateSet() {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Arrays.asList(UPDATE_FILENAME, DELETE_FILENAME, UPDATE_FILENAME),
+                                            Arrays.asList(DELETE_FILENAME, DELETE_FILENAME));
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(2, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(UPDATE_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+        assertEquals(DELETE_FILENAME, updateStatus.getSuccessfulDeletes().get(0));
+        verify(searchService).index(indexId, SITE_NAME, UPDATE_FILENAME, EXPECTED_XML, null);
+        verify(searchService, never()).index(eq(indexId), eq(SITE_NAME), eq(DELETE_FILENAME), anyString(), any());
+        verify(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
+    }
+
+    @Test
+    public void testUpdateIndexStaged() {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME),
+                                            Collections.singletonList(DELETE_FILENAME));
+        UpdateStatus updateStatus = new UpdateStatus();
+        Map<String, Object> doc = Collections.singletonMap("title", "Test");
+
+        when(searchService.buildDocument(eq(SITE_NAME), eq(UPDATE_FILENAME), eq(EXPECTED_XML), any()))
+            .thenReturn(doc);
+
+        batchIndexer.setStagedProcessing(true);
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(2, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(UPDATE_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+        assertEquals(DELETE_FILENAME, updateStatus.getSuccessfulDeletes().get(0));
+        verify(searchService).index(indexId, SITE_NAME, UPDATE_FILENAME, doc);
+        verify(searchService, never()).index(anyString(), anyString(), anyString(), anyString(), any());
+        verify(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
+
+        assertEquals(3, batchIndexer.getStageMetrics().size());
+        assertEquals(2, batchIndexer.getStageMetrics().get(0).getProcessed());
+        assertEquals(2, batchIndexer.getStageMetrics().get(2).getProcessed());
+    }
+
+    @Test
+    public void testUpdateIndexWithDescriptorDom() {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME),
+                                            Collections.singletonList(DELETE_FILENAME));
+        UpdateStatus updateStatus = new UpdateStatus();
+
+        batchIndexer.setIndexDescriptorDom(true);
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(2, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(UPDATE_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+        verify(searchService).index(eq(indexId), eq(SITE_NAME), eq(UPDATE_FILENAME), any(Document.class), isNull());
+        verify(searchService, never()).index(anyString(), anyString(), anyString(), anyString(), any());
+        verify(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
+    }
+
+    @Test
+    public void testDescriptorDomMatchesSerializedDescriptor() throws Exception {
+        Map<String, Object> actual = assertDescriptorDomMatchesSerializedDescriptor(WHITESPACE_FILENAME);
+
+        assertEquals("Some title with tabs and new lines", actual.get("title_s"));
+        assertEquals("Before  <b>CDATA</b>  after", actual.get("summary_t"));
+        assertEquals("\u00A0non\u00A0breaking\u00A0", actual.get("nbsp_s"));
+    }
+
+    @Test
+    public void testMixedContentDescriptorDomMatchesSerializedDescriptor() throws Exception {
+        Map<String, Object> actual = assertDescriptorDomMatchesSerializedDescriptor(MIXED_FILENAME);
+
+        assertEquals("<tag> &amp; \"quoted\"", actual.get("entities_s"));
+        assertEquals("one two three four", actual.get("refs_t"));
+    }
+
+    @Test
+    public void testPreservedSpaceDescriptorDomMatchesSerializedDescriptor() throws Exception {
+        Map<String, Object> actual = assertDescriptorDomMatchesSerializedDescriptor(PRESERVE_FILENAME);
+
+        assertEquals("  Preserved   title  ", actual.get("title_s"));
+    }
+
+    @Test
+    public void testPageDescriptorDomMatchesSerializedDescriptor() throws Exception {
+        assertDescriptorDomMatchesSerializedDescriptor(UPDATE_FILENAME);
+    }
+
+    /**
+     * Indexes the given file as a string and as a DOM, checking that both produce the same document
+     * @return the document built from the DOM, without the publishing dates
+     */
+    private Map<String, Object> assertDescriptorDomMatchesSerializedDescriptor(String filename) throws Exception {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(filename), Collections.emptyList());
+
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, new UpdateStatus());
+        batchIndexer.setIndexDescriptorDom(true);
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, new UpdateStatus());
+
+        ArgumentCaptor<String> xml = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Document> dom = ArgumentCaptor.forClass(Document.class);
+        verify(searchService).index(eq(indexId), eq(SITE_NAME), eq(filename), xml.capture(), isNull());
+        verify(searchService).index(eq(indexId), eq(SITE_NAME), eq(filename), dom.capture(), isNull());
+
+        // The trimmed descriptor must be the same one that is parsed from the string
+        Document parsed = new SAXReader().read(new StringReader(xml.getValue()));
+        assertEquals(toCompactString(parsed), toCompactString(dom.getValue()));
+
+        FieldValueConverter converter = (name, value) -> value;
+        List<ElementParser<Map<String, Object>>> parsers = Arrays.asList(new ItemListElementParser(),
+                                                                         new TokenizedElementParser<>(),
+                                                                         new OpenSearchElementParserImpl(converter));
+        OpenSearchDocumentBuilder documentBuilder =
+                new OpenSearchDocumentBuilder(new ElementParserServiceImpl<>(parsers), converter);
+
+        Map<String, Object> expected =
+                withoutDates(documentBuilder.build(SITE_NAME, filename, xml.getValue(), true));
+        Map<String, Object> actual =
+                withoutDates(documentBuilder.build(SITE_NAME, filename, dom.getValue(), true));
+
+        assertEquals(expected, actual);
+        return actual;
+    }
+
+    @Test
+    public void testUpdateIndexSkipsUnchangedDocuments() {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME), Collections.emptyList());
+        UpdateStatus updateStatus = new UpdateStatus();
+        Map<String, Object> doc = Collections.singletonMap("title", "Test");
+
+        when(searchService.isSkipUnchanged()).thenReturn(true);
+        when(searchService.buildDocument(eq(SITE_NAME), eq(UPDATE_FILENAME), eq(EXPECTED_XML), any()))
+            .thenReturn(doc);
+        when(searchService.isUnchanged(indexId, UPDATE_FILENAME, doc)).thenReturn(true);
+
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(0, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(UPDATE_FILENAME, updateStatus.getSkippedUpdates().get(0));
+        verify(searchService, never()).index(anyString(), anyString(), anyString(), any(Map.class));
+        verify(searchService, never()).index(anyString(), anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    public void testUpdateIndexResumesFromJournal() throws Exception {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME),
+                                            Collections.singletonList(DELETE_FILENAME));
+        updateSet.setRunId("publish-1");
+
+        doThrow(new OpenSearchException(indexId, "Connection refused"))
+            .doNothing()
+            .when(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
+
+        batchIndexer.setJournal(new FileIndexingJournal(journalFolder.getRoot()));
+
+        UpdateStatus updateStatus = new UpdateStatus();
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(UPDATE_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+        assertEquals(DELETE_FILENAME, updateStatus.getFailedDeletes().get(0));
+        assertEquals(1, journalFolder.getRoot().list().length);
+
+        // The second attempt only performs the failed delete
+        updateStatus = new UpdateStatus();
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(1, updateStatus.getAttemptedUpdatesAndDeletes());
+        assertEquals(DELETE_FILENAME, updateStatus.getSuccessfulDeletes().get(0));
+        verify(searchService, times(1)).index(indexId, SITE_NAME, UPDATE_FILENAME, EXPECTED_XML, null);
+        verify(searchService, times(2)).delete(indexId, SITE_NAME, DELETE_FILENAME);
+
+        // The journal is removed once the run is completed
+        assertEquals(0, journalFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testUpdateIndexDoesNotResumeOtherRuns() throws Exception {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME),
+                                            Collections.singletonList(DELETE_FILENAME));
+
+        doThrow(new OpenSearchException(indexId, "Connection refused"))
+            .doNothing()
+            .when(searchService).delete(indexId, SITE_NAME, DELETE_FILENAME);
+
+        batchIndexer.setJournal(new FileIndexingJournal(journalFolder.getRoot()));
+
+        // Without a run id nothing is recorded
+        UpdateStatus updateStatus = new UpdateStatus();
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(DELETE_FILENAME, updateStatus.getFailedDeletes().get(0));
+        assertEquals(0, journalFolder.getRoot().list().length);
+
+        // A different run processes all the paths again
+        updateSet.setRunId("publish-2");
+        updateStatus = new UpdateStatus();
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(2, updateStatus.getAttemptedUpdatesAndDeletes());
+        verify(searchService, times(2)).index(indexId, SITE_NAME, UPDATE_FILENAME, EXPECTED_XML, null);
+        assertEquals(0, journalFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testUpdateIndexIgnoresFailuresOfOtherIndexers() throws Exception {
+        String indexId = SITE_NAME;
+        UpdateSet updateSet = new UpdateSet(Collections.singletonList(UPDATE_FILENAME),
+                                            Collections.singletonList(DELETE_FILENAME));
+        updateSet.setRunId("publish-1");
+
+        batchIndexer.setJournal(new FileIndexingJournal(journalFolder.getRoot()));
+
+        // A failure reported by another indexer for the same status doesn't keep the journal
+        UpdateStatus updateStatus = new UpdateStatus();
+        updateStatus.addFailedUpdate("/static-assets/other.pdf");
+        batchIndexer.updateIndex(indexId, SITE_NAME, contentStoreService, context, updateSet, updateStatus);
+
+        assertEquals(UPDATE_FILENAME, updateStatus.getSuccessfulUpdates().get(0));
+        assertEquals(0, journalFolder.getRoot().list().length);
+    }
+
+    private static String toCompactString(Document document) throws IOException {
+        StringWriter writer = new StringWriter();
+        new XMLWriter(writer, OutputFormat.createCompactFormat()).write(document);
+        return writer.toString();
+    }
+
+    private static Map<String, Object> withoutDates(Map<String, Object> doc) {
+        doc.remove(AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_FIELD_NAME);
+        doc.remove(AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_ALT_FIELD_NAME);
+        return doc;
+    }
+
     protected List<ItemProcessor> getDocumentProcessors() {
         PageAwareIncludeDescriptorsProcessor proc1 = new PageAwareIncludeDescriptorsProcessor("//include", "@disabled");
         proc1.setPagesPathPattern("test\\.xml|test2\\.xml");
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link AdaptiveBulkController}.
+ */
+public class AdaptiveBulkControllerTest {
+
+    private static final long FAST = 10;
+    private static final long SLOW = 5000;
+
+    private AdaptiveBulkController controller;
+
+    @Before
+    public void setUp() {
+        controller = new AdaptiveBulkController();
+        controller.setMinWindow(100);
+        controller.setMaxWindow(1000);
+        controller.setInitialWindow(500);
+        controller.setWindowIncrement(100);
+        controller.setMaxConcurrency(4);
+        controller.setConcurrencyIncreaseInterval(3);
+        controller.setTargetLatency(1000);
+    }
+
+    @Test
+    public void testWindowIncrease() throws Exception {
+        release(FAST);
+        assertEquals(600, controller.getWindow());
+
+        release(FAST);
+        assertEquals(700, controller.getWindow());
+    }
+
+    @Test
+    public void testConcurrencyIncreasesBeforeMaxWindow() throws Exception {
+        release(FAST, 2);
+        assertEquals(1, controller.getConcurrency());
+
+        release(FAST);
+        assertEquals(2, controller.getConcurrency());
+        assertTrue(controller.getWindow() < 1000);
+
+        release(FAST, 3);
+        assertEquals(3, controller.getConcurrency());
+    }
+
+    @Test
+    public void testSlowRequestsReduceWindow() throws Exception {
+        release(FAST, 2);
+        release(SLOW);
+
+        assertEquals(560, controller.getWindow());
+        assertEquals(1, controller.getSlowRequests());
+
+        // Slow requests restart the count of fast requests
+        release(FAST, 2);
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void testRejectionHalvesWindowAndConcurrency() throws Exception {
+        controller.setInitialConcurrency(4);
+
+        releaseRejected();
+
+        assertEquals(250, controller.getWindow());
+        assertEquals(2, controller.getConcurrency());
+        assertEquals(1, controller.getRejectedRequests());
+
+        releaseRejected();
+
+        assertEquals(125, controller.getWindow());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        release(FAST, 50);
+
+        assertEquals(1000, controller.getWindow());
+        assertEquals(4, controller.getConcurrency());
+
+        for (int i = 0; i < 10; i++) {
+            releaseRejected();
+        }
+
+        assertEquals(100, controller.getWindow());
+        assertEquals(1, controller.getConcurrency());
+
+        release(SLOW, 5);
+        assertEquals(100, controller.getWindow());
+
+        controller.setInitialConcurrency(10);
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void testAcquireWaitsForPermit() throws Exception {
+        controller.acquire();
+        assertEquals(1, controller.getInFlight());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                controller.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        try {
+            assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+            controller.release(FAST, false);
+
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+            assertEquals(1, controller.getInFlight());
+        } finally {
+            thread.interrupt();
+        }
+    }
+
+    private void release(long latency) throws InterruptedException {
+        release(latency, 1);
+    }
+
+    private void release(long latency, int times) throws InterruptedException {
+        for (int i = 0; i < times; i++) {
+            controller.acquire();
+            controller.release(latency, false);
+        }
+    }
+
+    private void releaseRejected() throws InterruptedException {
+        controller.acquire();
+        controller.release(FAST, true);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import org.craftercms.search.opensearch.OpenSearchService;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link BulkDeadLetterStore}.
+ */
+public class BulkDeadLetterStoreTest {
+
+    private static final String INDEX = "test-authoring";
+    private static final String SITE = "test";
+    private static final String DOC1 = "/site/website/index.xml";
+    private static final String DOC2 = "/site/website/about/index.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private BulkDeadLetterStore store;
+    private OpenSearchService searchService;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "dead-letters/failed.jsonl");
+        store = new BulkDeadLetterStore(file);
+        searchService = mock(OpenSearchService.class);
+    }
+
+    @Test
+    public void testReplaySendsAndRemovesOperations() throws Exception {
+        store.add(INDEX, SITE, DOC1, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+        store.add(INDEX, SITE, DOC2, true, null, 503, "unavailable_shards_exception", "No shards");
+
+        assertEquals(2, store.replay(searchService));
+
+        verify(searchService).index(INDEX, SITE, DOC1, doc("v1"));
+        verify(searchService).delete(INDEX, SITE, DOC2);
+        assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).isEmpty());
+        assertEquals(0, store.replay(searchService));
+    }
+
+    @Test
+    public void testReplaySkipsResolvedOperations() {
+        store.add(INDEX, SITE, DOC1, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+        store.resolve(INDEX, DOC1);
+
+        assertEquals(0, store.replay(searchService));
+
+        verify(searchService, never()).index(anyString(), anyString(), anyString(), any(Map.class));
+    }
+
+    @Test
+    public void testReplaySendsOnlyLatestOperation() {
+        store.add(INDEX, SITE, DOC1, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+        store.add(INDEX, SITE, DOC1, false, doc("v2"), 429, "rejected_execution_exception", "Queue full");
+        store.add(INDEX, SITE, DOC2, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+        store.add(INDEX, SITE, DOC2, true, null, 429, "rejected_execution_exception", "Queue full");
+
+        assertEquals(2, store.replay(searchService));
+
+        verify(searchService).index(INDEX, SITE, DOC1, doc("v2"));
+        verify(searchService, never()).index(INDEX, SITE, DOC1, doc("v1"));
+        verify(searchService, never()).index(INDEX, SITE, DOC2, doc("v1"));
+        verify(searchService).delete(INDEX, SITE, DOC2);
+    }
+
+    @Test
+    public void testResolveAfterRestart() {
+        store.add(INDEX, SITE, DOC1, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+
+        BulkDeadLetterStore reopened = new BulkDeadLetterStore(file);
+        reopened.resolve(INDEX, DOC1);
+
+        assertEquals(0, reopened.replay(searchService));
+        verify(searchService, never()).index(anyString(), anyString(), anyString(), any(Map.class));
+    }
+
+    @Test
+    public void testFailedReplayIsKept() {
+        store.add(INDEX, SITE, DOC1, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+        doThrow(new OpenSearchException(INDEX, "Still failing"))
+            .when(searchService).index(eq(INDEX), eq(SITE), eq(DOC1), any(Map.class));
+
+        assertEquals(0, store.replay(searchService));
+        assertEquals(0, store.replay(searchService));
+        verify(searchService, times(2)).index(INDEX, SITE, DOC1, doc("v1"));
+
+        // A later success drops the kept operation
+        store.resolve(INDEX, DOC1);
+        assertEquals(0, store.replay(searchService));
+        verify(searchService, times(2)).index(INDEX, SITE, DOC1, doc("v1"));
+    }
+
+    @Test
+    public void testInvalidLinesAreSkipped() throws Exception {
+        store.add(INDEX, SITE, DOC1, false, doc("v1"), 429, "rejected_execution_exception", "Queue full");
+        Files.write(file.toPath(), Collections.singletonList("{\"index\":\"test"), StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+
+        assertEquals(1, store.replay(searchService));
+        verify(searchService).index(INDEX, SITE, DOC1, doc("v1"));
+    }
+
+    private static Map<String, Object> doc(String version) {
+        return Collections.singletonMap("version", version);
+    }
+
+}
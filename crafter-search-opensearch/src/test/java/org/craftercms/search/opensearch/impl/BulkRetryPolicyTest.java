@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensearch.client.opensearch._types.ErrorResponse;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link BulkRetryPolicy}.
+ */
+public class BulkRetryPolicyTest {
+
+    private BulkRetryPolicy retryPolicy;
+
+    @Before
+    public void setUp() {
+        retryPolicy = new BulkRetryPolicy();
+        retryPolicy.setInitialDelay(100);
+        retryPolicy.setMaxDelay(1000);
+    }
+
+    @Test
+    public void testRetriableStatuses() {
+        assertTrue(retryPolicy.isRetriable(429, null));
+        assertTrue(retryPolicy.isRetriable(503, null));
+        assertFalse(retryPolicy.isRetriable(400, null));
+        assertFalse(retryPolicy.isRetriable(404, null));
+    }
+
+    @Test
+    public void testRetriableErrorTypes() {
+        assertTrue(retryPolicy.isRetriable(500, "es_rejected_execution_exception"));
+        assertTrue(retryPolicy.isRetriable(500, "unavailable_shards_exception"));
+        assertFalse(retryPolicy.isRetriable(400, "mapper_parsing_exception"));
+        assertFalse(retryPolicy.isRetriable(500, null));
+    }
+
+    @Test
+    public void testRetriableExceptions() {
+        assertTrue(retryPolicy.isRetriable(new ConnectException("Connection refused")));
+        assertTrue(retryPolicy.isRetriable(new OpenSearchException("test", "Error indexing",
+                                                                   new IOException("Read timed out"))));
+        assertTrue(retryPolicy.isRetriable(new IllegalStateException("rejected_execution_exception: queue full")));
+        assertTrue(retryPolicy.isRetriable(openSearchError(429, "too_many_requests")));
+        assertFalse(retryPolicy.isRetriable(openSearchError(400, "mapper_parsing_exception")));
+        assertFalse(retryPolicy.isRetriable(new IllegalArgumentException("Invalid document")));
+    }
+
+    @Test
+    public void testDelayGrowsExponentially() {
+        assertBetween(retryPolicy.getDelay(1), 100, 120);
+        assertBetween(retryPolicy.getDelay(2), 200, 240);
+        assertBetween(retryPolicy.getDelay(3), 400, 480);
+    }
+
+    @Test
+    public void testDelayIsCapped() {
+        assertBetween(retryPolicy.getDelay(5), 1000, 1200);
+        assertBetween(retryPolicy.getDelay(100), 1000, 1200);
+    }
+
+    private static org.opensearch.client.opensearch._types.OpenSearchException openSearchError(int status,
+                                                                                            String type) {
+        return new org.opensearch.client.opensearch._types.OpenSearchException(ErrorResponse.of(r -> r
+                .status(status)
+                .error(e -> e
+                        .type(type)
+                        .reason("Test error")
+                )
+        ));
+    }
+
+    private static void assertBetween(long value, long min, long max) {
+        assertTrue(value + " should be at least " + min, value >= min);
+        assertTrue(value + " should be at most " + max, value <= max);
+    }
+
+}
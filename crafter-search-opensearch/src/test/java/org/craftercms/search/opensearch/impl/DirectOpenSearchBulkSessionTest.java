@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.craftercms.search.opensearch.OpenSearchBulkSession;
+import org.craftercms.search.opensearch.OpenSearchBulkSession.ItemResult;
+import org.craftercms.search.opensearch.OpenSearchService;
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link DirectOpenSearchBulkSession}.
+ */
+public class DirectOpenSearchBulkSessionTest {
+
+    private static final String INDEX_NAME = "test";
+    private static final String SITE_NAME = "test";
+
+    private OpenSearchService searchService;
+    private List<ItemResult> results;
+    private OpenSearchBulkSession session;
+
+    @Before
+    public void setUp() {
+        searchService = mock(OpenSearchService.class, CALLS_REAL_METHODS);
+        results = new ArrayList<>();
+        session = searchService.openBulkSession(results::add);
+    }
+
+    @Test
+    public void testDefaultSessionSendsOperationsRightAway() throws Exception {
+        assertTrue(session instanceof DirectOpenSearchBulkSession);
+
+        session.index(INDEX_NAME, SITE_NAME, "/site/website/index.xml", "<page/>", null);
+        session.delete(INDEX_NAME, SITE_NAME, "/site/website/old.xml");
+
+        verify(searchService).index(INDEX_NAME, SITE_NAME, "/site/website/index.xml", "<page/>", null);
+        verify(searchService).delete(INDEX_NAME, SITE_NAME, "/site/website/old.xml");
+        assertEquals(0, session.getPendingOperations());
+
+        assertEquals(2, results.size());
+        assertEquals("/site/website/index.xml", results.get(0).getDocId());
+        assertFalse(results.get(0).isDelete());
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals("/site/website/old.xml", results.get(1).getDocId());
+        assertTrue(results.get(1).isDelete());
+        assertTrue(results.get(1).isSuccessful());
+
+        session.close();
+    }
+
+    @Test
+    public void testErrorsAreThrown() {
+        doThrow(new OpenSearchException(INDEX_NAME, "Connection refused"))
+                .when(searchService).delete(INDEX_NAME, SITE_NAME, "/site/website/index.xml");
+
+        try {
+            session.delete(INDEX_NAME, SITE_NAME, "/site/website/index.xml");
+            fail("Expected OpenSearchException");
+        } catch (OpenSearchException e) {
+            // expected
+        }
+
+        assertTrue(results.isEmpty());
+    }
+
+}
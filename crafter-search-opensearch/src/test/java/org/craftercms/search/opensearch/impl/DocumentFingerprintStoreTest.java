@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link DocumentFingerprintStore}.
+ */
+public class DocumentFingerprintStoreTest {
+
+    private static final String INDEX_NAME = "test-authoring";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private DocumentFingerprintStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("fingerprints");
+        store = new DocumentFingerprintStore(directory);
+    }
+
+    @Test
+    public void testPublishingDatesAreExcluded() {
+        Map<String, Object> doc = doc("title", "Home", "publishingDate", "2022-01-01T00:00:00Z",
+                                      "publishingDate_dt", "2022-01-01T00:00:00Z");
+        Map<String, Object> republished = doc("title", "Home", "publishingDate", "2022-02-01T00:00:00Z",
+                                              "publishingDate_dt", "2022-02-01T00:00:00Z");
+
+        assertEquals(store.getFingerprint(doc), store.getFingerprint(republished));
+        assertNotEquals(store.getFingerprint(doc), store.getFingerprint(doc("title", "About")));
+    }
+
+    @Test
+    public void testCustomExcludedFields() {
+        store.setExcludedFields(Collections.singleton("lastEdited"));
+
+        assertEquals(store.getFingerprint(doc("title", "Home", "lastEdited", "1")),
+                     store.getFingerprint(doc("title", "Home", "lastEdited", "2")));
+        // The default exclusions are replaced
+        assertNotEquals(store.getFingerprint(doc("title", "Home", "publishingDate", "1")),
+                        store.getFingerprint(doc("title", "Home", "publishingDate", "2")));
+    }
+
+    @Test
+    public void testFieldOrderDoesNotMatter() {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("a", "1");
+        doc.put("b", Collections.singletonMap("c", "2"));
+        Map<String, Object> reversed = new LinkedHashMap<>();
+        reversed.put("b", Collections.singletonMap("c", "2"));
+        reversed.put("a", "1");
+
+        assertEquals(store.getFingerprint(doc), store.getFingerprint(reversed));
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        Map<String, Object> doc = doc("title", "Home");
+
+        assertFalse(store.isUnchanged(INDEX_NAME, "/site/website/index.xml", doc));
+
+        store.put(INDEX_NAME, "/site/website/index.xml", doc);
+        assertTrue(store.isUnchanged(INDEX_NAME, "/site/website/index.xml", doc));
+        assertFalse(store.isUnchanged(INDEX_NAME, "/site/website/index.xml", doc("title", "About")));
+        assertFalse(store.isUnchanged("other-authoring", "/site/website/index.xml", doc));
+
+        store.remove(INDEX_NAME, "/site/website/index.xml");
+        assertFalse(store.isUnchanged(INDEX_NAME, "/site/website/index.xml", doc));
+    }
+
+    @Test
+    public void testFingerprintsAreLoadedFromFile() {
+        store.put(INDEX_NAME, "/a.xml", doc("title", "A"));
+        store.put(INDEX_NAME, "/b.xml", doc("title", "B"));
+        store.put(INDEX_NAME, "/b.xml", doc("title", "B2"));
+        store.remove(INDEX_NAME, "/a.xml");
+
+        DocumentFingerprintStore loaded = new DocumentFingerprintStore(directory);
+
+        assertFalse(loaded.isUnchanged(INDEX_NAME, "/a.xml", doc("title", "A")));
+        assertFalse(loaded.isUnchanged(INDEX_NAME, "/b.xml", doc("title", "B")));
+        assertTrue(loaded.isUnchanged(INDEX_NAME, "/b.xml", doc("title", "B2")));
+    }
+
+    @Test
+    public void testTruncatedLastLineIsIgnored() throws Exception {
+        String fingerprintA = store.getFingerprint(doc("title", "A"));
+        String fingerprintB = store.getFingerprint(doc("title", "B"));
+        File file = new File(directory, INDEX_NAME + DocumentFingerprintStore.STORE_EXTENSION);
+        // Simulates a crash while the last record was being written
+        Files.write(file.toPath(), ("P /a.xml\t" + fingerprintA + "\n" +
+                                    "P /b.xml\t" + fingerprintB.substring(0, 10)).getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(store.isUnchanged(INDEX_NAME, "/a.xml", doc("title", "A")));
+        assertFalse(store.isUnchanged(INDEX_NAME, "/b.xml", doc("title", "B")));
+
+        // New records must not be appended to the incomplete line
+        store.put(INDEX_NAME, "/c.xml", doc("title", "C"));
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+
+        DocumentFingerprintStore loaded = new DocumentFingerprintStore(directory);
+        assertTrue(loaded.isUnchanged(INDEX_NAME, "/a.xml", doc("title", "A")));
+        assertFalse(loaded.isUnchanged(INDEX_NAME, "/b.xml", doc("title", "B")));
+        assertTrue(loaded.isUnchanged(INDEX_NAME, "/c.xml", doc("title", "C")));
+    }
+
+    @Test
+    public void testFileIsCompacted() throws Exception {
+        store.setMinCompactionRecords(4);
+        for (int i = 0; i < 20; i++) {
+            store.put(INDEX_NAME, "/a.xml", doc("title", "A" + i));
+        }
+        store.put(INDEX_NAME, "/b.xml", doc("title", "B"));
+
+        File file = new File(directory, INDEX_NAME + DocumentFingerprintStore.STORE_EXTENSION);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertTrue("File was not compacted: " + lines.size() + " records", lines.size() <= 5);
+
+        DocumentFingerprintStore loaded = new DocumentFingerprintStore(directory);
+        assertTrue(loaded.isUnchanged(INDEX_NAME, "/a.xml", doc("title", "A19")));
+        assertTrue(loaded.isUnchanged(INDEX_NAME, "/b.xml", doc("title", "B")));
+    }
+
+    @Test
+    public void testUnchangedDocumentsAreNotRecordedAgain() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            store.put(INDEX_NAME, "/a.xml", doc("title", "A", "publishingDate", String.valueOf(i)));
+        }
+
+        File file = new File(directory, INDEX_NAME + DocumentFingerprintStore.STORE_EXTENSION);
+        assertEquals(1, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testClear() {
+        store.put(INDEX_NAME, "/a.xml", doc("title", "A"));
+        store.put("other-authoring", "/a.xml", doc("title", "A"));
+
+        store.clear(INDEX_NAME);
+
+        assertFalse(store.isUnchanged(INDEX_NAME, "/a.xml", doc("title", "A")));
+        assertFalse(new File(directory, INDEX_NAME + DocumentFingerprintStore.STORE_EXTENSION).exists());
+        assertTrue(store.isUnchanged("other-authoring", "/a.xml", doc("title", "A")));
+        assertFalse(new DocumentFingerprintStore(directory).isUnchanged(INDEX_NAME, "/a.xml", doc("title", "A")));
+    }
+
+    private static Map<String, Object> doc(String... keysAndValues) {
+        Map<String, Object> doc = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            doc.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return doc;
+    }
+
+}
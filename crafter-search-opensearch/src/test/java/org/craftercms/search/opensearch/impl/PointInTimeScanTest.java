@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.craftercms.search.opensearch.exception.OpenSearchException;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch.core.SearchRequest;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for {@link PointInTimeScan}.
+ */
+public class PointInTimeScanTest {
+
+    private static final String ALIAS_NAME = "test";
+    private static final String PIT_ID = "pit";
+    private static final String SORT_FIELD = "localId";
+
+    @Test
+    public void testAllPagesAreLoaded() {
+        TestScan scan = new TestScan(5, 2, 1);
+        scan.open();
+
+        List<String> ids = new ArrayList<>();
+        scan.forEachRemaining(doc -> ids.add((String) doc.get(SORT_FIELD)));
+
+        assertEquals(getIds(5), ids);
+        assertEquals(3, scan.searches.get());
+        // The point in time is released without closing the scan
+        assertEquals(1, scan.deletedPits.get());
+
+        scan.close();
+        assertEquals(1, scan.deletedPits.get());
+    }
+
+    @Test
+    public void testStreamExhaustionReleasesPit() {
+        TestScan scan = new TestScan(4, 2, 1);
+        scan.open();
+
+        List<Map<String, Object>> docs =
+            StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan, Spliterator.NONNULL), false)
+                         .collect(Collectors.toList());
+
+        assertEquals(4, docs.size());
+        assertEquals(1, scan.deletedPits.get());
+    }
+
+    @Test
+    public void testCloseReleasesPit() {
+        TestScan scan = new TestScan(5, 2, 1);
+        scan.open();
+
+        assertEquals("0", scan.next().get(SORT_FIELD));
+        assertEquals(0, scan.deletedPits.get());
+
+        scan.close();
+        scan.close();
+
+        assertEquals(1, scan.deletedPits.get());
+        assertFalse(scan.hasNext());
+    }
+
+    @Test
+    public void testErrorReleasesPit() {
+        TestScan scan = new TestScan(5, 2, 1);
+        scan.failAfter = 1;
+        scan.open();
+
+        try {
+            scan.forEachRemaining(doc -> {});
+            fail("Expected " + OpenSearchException.class.getSimpleName());
+        } catch (OpenSearchException e) {
+            assertEquals(1, scan.deletedPits.get());
+        }
+    }
+
+    @Test
+    public void testSlices() {
+        TestScan scan = new TestScan(11, 2, 3);
+        scan.open();
+
+        List<String> ids = new ArrayList<>();
+        scan.forEachRemaining(doc -> ids.add((String) doc.get(SORT_FIELD)));
+
+        assertEquals(11, ids.size());
+        assertEquals(new HashSet<>(getIds(11)), new HashSet<>(ids));
+        assertEquals(1, scan.deletedPits.get());
+    }
+
+    @Test
+    public void testSearchRequest() {
+        TestScan scan = new TestScan(0, 10, 2);
+        scan.pitId = PIT_ID;
+
+        SearchRequest request = scan.buildSearchRequest(null, null);
+
+        assertEquals(PIT_ID, request.pit().id());
+        assertEquals(Integer.valueOf(10), request.size());
+        assertEquals(2, request.sort().size());
+        assertEquals(SORT_FIELD, request.sort().get(0).field().field());
+        assertEquals(PointInTimeScan.SHARD_DOC_FIELD, request.sort().get(1).field().field());
+        assertNull(request.slice());
+        assertTrue(request.searchAfter().isEmpty());
+
+        request = scan.buildSearchRequest(1, List.of("5", "12"));
+
+        assertEquals(Integer.valueOf(1), request.slice().id());
+        assertEquals(Integer.valueOf(2), request.slice().max());
+        assertEquals(List.of("5", "12"), request.searchAfter());
+    }
+
+    private static List<String> getIds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(String.valueOf(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Scan over a list of generated documents, each slice gets the documents whose id modulo the number of slices
+     * is the slice id
+     */
+    private static class TestScan extends PointInTimeScan {
+
+        private final int count;
+        private final AtomicInteger searches = new AtomicInteger();
+        private final AtomicInteger deletedPits = new AtomicInteger();
+        private volatile int failAfter = -1;
+
+        public TestScan(int count, int pageSize, int slices) {
+            super(mock(OpenSearchClient.class), ALIAS_NAME, Collections.singletonList(SORT_FIELD),
+                  Query.of(q -> q.matchAll(m -> m)), "1m", pageSize, SORT_FIELD, slices);
+            this.count = count;
+        }
+
+        @Override
+        protected String createPit() {
+            return PIT_ID;
+        }
+
+        @Override
+        protected void deletePit(String id) {
+            assertEquals(PIT_ID, id);
+            deletedPits.incrementAndGet();
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        protected List<Hit<Map>> search(Integer sliceId, List<String> after) {
+            if (failAfter >= 0 && searches.get() >= failAfter) {
+                throw new IllegalStateException("Search failed");
+            }
+            searches.incrementAndGet();
+
+            int start = after != null? Integer.parseInt(after.get(0)) + 1 : 0;
+            List<Hit<Map>> hits = new ArrayList<>();
+            for (int i = start; i < count && hits.size() < pageSize; i++) {
+                if (sliceId == null || i % slices == sliceId) {
+                    String id = String.valueOf(i);
+                    hits.add(new Hit.Builder<Map>()
+                                 .index(ALIAS_NAME)
+                                 .id(id)
+                                 .source(Collections.singletonMap(SORT_FIELD, id))
+                                 .sort(List.of(id, "0"))
+                                 .build());
+                }
+            }
+            return hits;
+        }
+
+    }
+
+}
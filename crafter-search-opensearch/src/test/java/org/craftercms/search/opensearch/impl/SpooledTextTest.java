@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.io.File;
+import java.util.Collections;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SpooledText}.
+ */
+public class SpooledTextTest {
+
+    private static final String SHORT_TEXT = "Short \"quoted\" text";
+    private static final String LONG_TEXT = "A longer text with\nlines, \"quotes\" and unicode: áéíóú";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testTextIsKeptInMemoryUnderThreshold() throws Exception {
+        SpooledText text = new SpooledText(100);
+        try (text) {
+            text.write(SHORT_TEXT);
+        }
+
+        assertFalse(text.isSpooled());
+        assertEquals(SHORT_TEXT.length(), text.length());
+        assertEquals(SHORT_TEXT, text.toString());
+    }
+
+    @Test
+    public void testTextIsSpooledOverThreshold() throws Exception {
+        SpooledText text = new SpooledText(10);
+        try (text) {
+            text.write(LONG_TEXT.substring(0, 5));
+            assertFalse(text.isSpooled());
+            text.write(LONG_TEXT.substring(5));
+        }
+
+        assertTrue(text.isSpooled());
+        assertTrue(text.file.exists());
+        assertEquals(LONG_TEXT.length(), text.length());
+        assertEquals(LONG_TEXT, text.toString());
+    }
+
+    @Test
+    public void testDeleteRemovesFile() throws Exception {
+        SpooledText text = new SpooledText(10);
+        try (text) {
+            text.write(LONG_TEXT);
+        }
+        File file = text.file;
+        assertTrue(file.exists());
+
+        text.delete();
+
+        assertFalse(file.exists());
+        // Deleting again should do nothing
+        text.delete();
+    }
+
+    @Test
+    public void testJsonSerialization() throws Exception {
+        SpooledText inMemory = new SpooledText(100);
+        try (inMemory) {
+            inMemory.write(SHORT_TEXT);
+        }
+        SpooledText spooled = new SpooledText(10);
+        try (spooled) {
+            spooled.write(LONG_TEXT);
+        }
+
+        assertEquals(objectMapper.writeValueAsString(Collections.singletonMap("content", SHORT_TEXT)),
+                     objectMapper.writeValueAsString(Collections.singletonMap("content", inMemory)));
+        assertEquals(objectMapper.writeValueAsString(Collections.singletonMap("content", LONG_TEXT)),
+                     objectMapper.writeValueAsString(Collections.singletonMap("content", spooled)));
+        // The text can be serialized more than once, for example when a bulk request is retried
+        assertEquals(objectMapper.writeValueAsString(LONG_TEXT), objectMapper.writeValueAsString(spooled));
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.craftercms.search.commons.service.ElementParser;
+import org.craftercms.search.commons.service.FieldValueConverter;
+import org.craftercms.search.commons.service.impl.AbstractDocumentBuilder;
+import org.craftercms.search.commons.service.impl.ElementParserServiceImpl;
+import org.craftercms.search.commons.service.impl.TokenizedElementParser;
+import org.craftercms.search.opensearch.jackson.MixedMultivaluedMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link StreamingOpenSearchDocumentBuilder}.
+ */
+public class StreamingOpenSearchDocumentBuilderTest {
+
+    private static final String SITE_NAME = "test";
+    private static final String PATH = "/site/website/index.xml";
+    private static final String XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<page>\n" +
+            "  <title_s tokenized=\"true\">Home</title_s>\n" +
+            "  <secret_s indexable=\"false\">Hidden<nested>value</nested></secret_s>\n" +
+            "  <count_i>5</count_i>\n" +
+            "  <body_html><![CDATA[<p>Some &amp; text</p>]]></body_html>\n" +
+            "  <empty/>\n" +
+            "  <tags item-list=\"true\">\n" +
+            "    <item><key>a</key><value_smv tokenized=\"true\">Tag A</value_smv></item>\n" +
+            "  </tags>\n" +
+            "  <sections item-list=\"true\">\n" +
+            "    <item><title_s>One</title_s><summary_html>First</summary_html></item>\n" +
+            "    <item><title_s>Two</title_s><!-- comment --></item>\n" +
+            "  </sections>\n" +
+            "  <links item-list=\"true\">\n" +
+            "    <link_html>Copied</link_html>\n" +
+            "  </links>\n" +
+            "</page>";
+
+    private OpenSearchDocumentBuilder domBuilder;
+    private StreamingOpenSearchDocumentBuilder streamingBuilder;
+
+    @Before
+    public void setUp() {
+        FieldValueConverter converter = (name, value) -> name.endsWith("_i")? Integer.valueOf(value) : value;
+        List<ElementParser<Map<String, Object>>> parsers = Arrays.asList(new ItemListElementParser(),
+                                                                         new TokenizedElementParser<>(),
+                                                                         new OpenSearchElementParserImpl(converter));
+        Map<String, String> copyFields = Collections.singletonMap(".+_html", "_raw");
+
+        domBuilder = new OpenSearchDocumentBuilder(new ElementParserServiceImpl<>(parsers), converter);
+        domBuilder.setCopyFields(copyFields);
+
+        streamingBuilder = new StreamingOpenSearchDocumentBuilder(new ElementParserServiceImpl<>(parsers),
+                                                                  converter);
+        streamingBuilder.setCopyFields(copyFields);
+    }
+
+    @Test
+    public void testBuildMatchesElementParsers() {
+        Map<String, Object> expected = withoutDates(domBuilder.build(SITE_NAME, PATH, XML, true));
+        Map<String, Object> actual = withoutDates(streamingBuilder.build(SITE_NAME, PATH, XML, true));
+
+        assertEquals(expected, actual);
+        assertEquals("Home", actual.get("title_t"));
+        assertEquals(5, actual.get("count_i"));
+        assertFalse(actual.containsKey("secret_s"));
+    }
+
+    @Test
+    public void testBuildWithRootInFieldNamesMatchesElementParsers() {
+        Map<String, Object> expected = withoutDates(domBuilder.build(SITE_NAME, PATH, XML, false));
+        Map<String, Object> actual = withoutDates(streamingBuilder.build(SITE_NAME, PATH, XML, false));
+
+        assertEquals(expected, actual);
+        assertEquals("Home", actual.get("page.title_s"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBuildFromMapWithNestedFields() {
+        Map<String, Object> section = new HashMap<>();
+        section.put("title_s", "One");
+        section.put("summary_html", "First");
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("title_s", "Home");
+        fields.put("count_i", "5");
+        fields.put("section", section);
+        fields.put("empty", Collections.emptyMap());
+
+        Map<String, Object> doc = domBuilder.buildFromMap(SITE_NAME, PATH, fields);
+
+        assertEquals(SITE_NAME + ":" + PATH, doc.get(AbstractDocumentBuilder.DEFAULT_ID_FIELD_NAME));
+        assertEquals(SITE_NAME + ":" + PATH, doc.get(AbstractDocumentBuilder.DEFAULT_ROOT_ID_FIELD_NAME));
+        assertEquals(SITE_NAME, doc.get(AbstractDocumentBuilder.DEFAULT_SITE_FIELD_NAME));
+        assertEquals(PATH, doc.get(AbstractDocumentBuilder.DEFAULT_LOCAL_ID_FIELD_NAME));
+        assertTrue(doc.containsKey(AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_FIELD_NAME));
+        assertEquals("Home", doc.get("title_s"));
+        assertEquals(5, doc.get("count_i"));
+        assertFalse(doc.containsKey("empty"));
+
+        Map<String, Object> nested = (Map<String, Object>) doc.get("section");
+        assertTrue(nested instanceof MixedMultivaluedMap);
+        assertEquals("One", nested.get("title_s"));
+        assertEquals("First", nested.get("summary_html"));
+        assertEquals("First", nested.get("summary_html_raw"));
+    }
+
+    private Map<String, Object> withoutDates(Map<String, Object> doc) {
+        doc.remove(AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_FIELD_NAME);
+        doc.remove(AbstractDocumentBuilder.DEFAULT_PUBLISHING_DATE_ALT_FIELD_NAME);
+        return doc;
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl.tika;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.Tika;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.craftercms.search.commons.exception.SearchException;
+import org.craftercms.search.opensearch.MetadataExtractor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the timeout handling of {@link TikaDocumentParser}.
+ */
+public class TikaDocumentParserTest {
+
+    private static final String FILENAME = "test.pdf";
+    private static final String TITLE = "Slow Document";
+    private static final String TEXT = "Some text";
+
+    private volatile ParseAction parseAction;
+    private TikaDocumentParser documentParser;
+    private Resource resource;
+
+    @Before
+    public void setUp() {
+        Tika tika = mock(Tika.class);
+        when(tika.getParser()).thenReturn(new TestParser());
+        when(tika.detect(FILENAME)).thenReturn("application/pdf");
+
+        MetadataExtractor<Metadata> extractor = (resource, metadata, properties) -> {
+            if (metadata.get("title") != null) {
+                properties.put("title", metadata.get("title"));
+            }
+            if (metadata.get(Metadata.CONTENT_TYPE) != null) {
+                properties.put("mimeType", metadata.get(Metadata.CONTENT_TYPE));
+            }
+        };
+
+        documentParser = new TikaDocumentParser(Collections.singletonList(extractor));
+        documentParser.setTika(tika);
+        documentParser.setCharLimit(1000);
+        documentParser.setParseThreads(1);
+        documentParser.setStuckWorkerGracePeriod(100);
+
+        resource = new ByteArrayResource("test".getBytes());
+    }
+
+    @After
+    public void tearDown() {
+        documentParser.destroy();
+    }
+
+    @Test
+    public void testTimeoutKeepsMetadata() {
+        documentParser.setParseTimeout(200);
+        parseAction = (handler, metadata) -> {
+            metadata.set("title", TITLE);
+            Thread.sleep(10000);
+        };
+
+        Map<String, Object> fields = documentParser.parseToMap(FILENAME, resource, null, null);
+
+        assertEquals(true, fields.get("contentTimedOut"));
+        assertEquals(TITLE, fields.get("title"));
+        assertEquals("application/pdf", fields.get("mimeType"));
+        assertNull(fields.get("content"));
+        assertEquals(0, documentParser.getStuckWorkers());
+    }
+
+    @Test
+    public void testTimeoutReplacesStuckWorker() throws Exception {
+        documentParser.setParseTimeout(200);
+        CountDownLatch release = new CountDownLatch(1);
+        parseAction = (handler, metadata) -> {
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Simulates a parser that ignores interruptions
+                }
+            }
+        };
+
+        Map<String, Object> fields = documentParser.parseToMap(FILENAME, resource, null, null);
+        assertEquals(true, fields.get("contentTimedOut"));
+        assertEquals(1, documentParser.getStuckWorkers());
+
+        // The only configured thread is still stuck, a new one should parse the next file
+        parseAction = (handler, metadata) -> writeText(handler);
+        fields = documentParser.parseToMap(FILENAME, resource, null, null);
+        assertNull(fields.get("contentTimedOut"));
+        assertEquals(TEXT, fields.get("content").toString().trim());
+
+        release.countDown();
+        for (int i = 0; i < 50 && documentParser.getStuckWorkers() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, documentParser.getStuckWorkers());
+    }
+
+    @Test
+    public void testQueueTimeIsNotCountedForTimeout() throws Exception {
+        documentParser.setParseTimeout(600);
+        parseAction = (handler, metadata) -> {
+            Thread.sleep(400);
+            writeText(handler);
+        };
+
+        // With a single thread the second file waits for the first one, more than the timeout in total
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<String, Object>> first =
+                    callers.submit(() -> documentParser.parseToMap(FILENAME, resource, null, null));
+            Future<Map<String, Object>> second =
+                    callers.submit(() -> documentParser.parseToMap(FILENAME, resource, null, null));
+
+            for (Map<String, Object> fields : Arrays.asList(first.get(), second.get())) {
+                assertFalse(fields.containsKey("contentTimedOut"));
+                assertEquals(TEXT, fields.get("content").toString().trim());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoTimeout() {
+        documentParser.setParseTimeout(0);
+        parseAction = (handler, metadata) -> {
+            metadata.set("title", TITLE);
+            writeText(handler);
+        };
+
+        Map<String, Object> fields = documentParser.parseToMap(FILENAME, resource, null, null);
+
+        assertFalse(fields.containsKey("contentTimedOut"));
+        assertEquals(TITLE, fields.get("title"));
+        assertTrue(fields.get("content").toString().contains(TEXT));
+    }
+
+    @Test
+    public void testNoTimeoutByDefault() {
+        TikaDocumentParser defaultParser = new TikaDocumentParser(Collections.emptyList());
+        defaultParser.setTika(documentParser.tika);
+        defaultParser.setCharLimit(1000);
+        Thread caller = Thread.currentThread();
+        parseAction = (handler, metadata) -> {
+            assertSame(caller, Thread.currentThread());
+            writeText(handler);
+        };
+
+        try {
+            Map<String, Object> fields = defaultParser.parseToMap(FILENAME, resource, null, null);
+
+            assertFalse(defaultParser.isTimeoutEnabled());
+            assertEquals(TEXT, fields.get("content").toString().trim());
+            assertNull(defaultParser.parseExecutor);
+        } finally {
+            defaultParser.destroy();
+        }
+    }
+
+    @Test
+    public void testDestroyStopsQueuedParses() throws Exception {
+        documentParser.setParseTimeout(10000);
+        CountDownLatch running = new CountDownLatch(1);
+        parseAction = (handler, metadata) -> {
+            running.countDown();
+            Thread.sleep(10000);
+        };
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<String, Object>> first =
+                    callers.submit(() -> documentParser.parseToMap(FILENAME, resource, null, null));
+            running.await();
+            Future<Map<String, Object>> second =
+                    callers.submit(() -> documentParser.parseToMap(FILENAME, resource, null, null));
+            for (int i = 0; i < 50 && documentParser.parseExecutor.getQueue().isEmpty(); i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(1, documentParser.parseExecutor.getQueue().size());
+
+            documentParser.destroy();
+
+            // The queued parse is dropped, the caller must not wait for it forever
+            try {
+                second.get(5, TimeUnit.SECONDS);
+                fail("Expected the parse to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SearchException);
+            }
+            first.get(5, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static void writeText(ContentHandler handler) throws Exception {
+        handler.startDocument();
+        handler.startElement("", "p", "p", new AttributesImpl());
+        handler.characters(TEXT.toCharArray(), 0, TEXT.length());
+        handler.endElement("", "p", "p");
+        handler.endDocument();
+    }
+
+    private interface ParseAction {
+
+        void parse(ContentHandler handler, Metadata metadata) throws Exception;
+
+    }
+
+    private class TestParser implements Parser {
+
+        @Override
+        public Set<MediaType> getSupportedTypes(final ParseContext context) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void parse(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+                          final ParseContext context) {
+            try {
+                parseAction.parse(handler, metadata);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
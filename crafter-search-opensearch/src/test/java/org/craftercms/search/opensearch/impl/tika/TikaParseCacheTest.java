@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2007-2022 Crafter Software Corporation. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.search.opensearch.impl.tika;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.tika.metadata.Metadata;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for {@link TikaParseCache}.
+ */
+public class TikaParseCacheTest {
+
+    private static final String KEY = "0123456789abcdef";
+    private static final String CONTENT = "Some parsed text";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private TikaParseCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("tika");
+        cache = new TikaParseCache(directory);
+    }
+
+    @Test
+    public void testMissingEntry() {
+        Metadata metadata = new Metadata();
+
+        assertNull(cache.get(KEY, metadata));
+        assertEquals(0, metadata.names().length);
+    }
+
+    @Test
+    public void testEntryIsStored() {
+        cache.put(KEY, CONTENT, metadata());
+
+        Metadata metadata = new Metadata();
+        assertEquals(CONTENT, cache.get(KEY, metadata));
+        assertEquals("Test Document", metadata.get("title"));
+        assertArrayEquals(new String[] { "john", "jane" }, metadata.getValues("author"));
+        assertEquals(new File(directory, KEY + TikaParseCache.FILE_EXTENSION).length(), cache.getTotalSize());
+    }
+
+    @Test
+    public void testEntriesAreLoadedFromFolder() {
+        cache.put(KEY, CONTENT, metadata());
+
+        TikaParseCache loaded = new TikaParseCache(directory);
+        Metadata metadata = new Metadata();
+
+        assertEquals(CONTENT, loaded.get(KEY, metadata));
+        assertEquals("Test Document", metadata.get("title"));
+        assertEquals(cache.getTotalSize(), loaded.getTotalSize());
+    }
+
+    @Test
+    public void testInvalidEntryIsDiscarded() throws Exception {
+        cache.put(KEY, CONTENT, metadata());
+        File file = new File(directory, KEY + TikaParseCache.FILE_EXTENSION);
+        String stored = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        // Simulates a partially written entry
+        Files.write(file.toPath(), stored.substring(0, stored.length() - 5).getBytes(StandardCharsets.UTF_8));
+
+        Metadata metadata = new Metadata();
+        assertNull(cache.get(KEY, metadata));
+        assertEquals(0, metadata.names().length);
+        assertFalse(file.exists());
+        assertEquals(0, cache.getTotalSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        cache.put("a", "AAAA", new Metadata());
+        long entrySize = cache.getTotalSize();
+        cache.setMaxSize(entrySize * 2);
+
+        cache.put("b", "BBBB", new Metadata());
+        // Reading the first entry makes the second one the least recently used
+        assertEquals("AAAA", cache.get("a", new Metadata()));
+        cache.put("c", "CCCC", new Metadata());
+
+        assertNull(cache.get("b", new Metadata()));
+        assertFalse(new File(directory, "b" + TikaParseCache.FILE_EXTENSION).exists());
+        assertEquals("AAAA", cache.get("a", new Metadata()));
+        assertEquals("CCCC", cache.get("c", new Metadata()));
+        assertEquals(entrySize * 2, cache.getTotalSize());
+    }
+
+    @Test
+    public void testEntriesOverTheLimitAreEvictedOnLoad() {
+        cache.put("a", "AAAA", new Metadata());
+        cache.put("b", "BBBB", new Metadata());
+        long entrySize = cache.getTotalSize() / 2;
+
+        TikaParseCache loaded = new TikaParseCache(directory);
+        loaded.setMaxSize(entrySize);
+
+        assertNull(loaded.get("missing", new Metadata()));
+        assertEquals(entrySize, loaded.getTotalSize());
+        assertEquals(1, directory.listFiles((dir, name) -> name.endsWith(TikaParseCache.FILE_EXTENSION)).length);
+    }
+
+    private static Metadata metadata() {
+        Metadata metadata = new Metadata();
+        metadata.set("title", "Test Document");
+        metadata.add("author", "john");
+        metadata.add("author", "jane");
+        return metadata;
+    }
+
+}